@@ -0,0 +1,304 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.component.Destroyable;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Base class for the {@link HttpChannel}s of multiplexed transports, where each
+ * {@link HttpExchange} is carried by its own channel (for example a SPDY stream) and
+ * the response is delivered already parsed, rather than as bytes to be parsed as in
+ * {@link HttpReceiver}.</p>
+ * <p>Subclasses call the {@code request*()} methods as the request is sent, and the
+ * {@code response*()} methods as the response arrives; this class takes care of the
+ * listener notifications, of the protocol handlers, of cookies, of content decoding
+ * and of the completion of the exchange, as {@link HttpSender} and {@link HttpReceiver}
+ * do for HTTP/1.1.</p>
+ */
+public abstract class AbstractHttpChannel implements HttpChannel
+{
+    private static final Logger LOG = Log.getLogger(AbstractHttpChannel.class);
+
+    private final HttpDestination destination;
+    private final HttpExchange exchange;
+    private volatile boolean committed;
+    private ContentDecoder decoder;
+
+    protected AbstractHttpChannel(HttpDestination destination, HttpExchange exchange)
+    {
+        this.destination = destination;
+        this.exchange = exchange;
+        exchange.setChannel(this);
+    }
+
+    public HttpDestination getHttpDestination()
+    {
+        return destination;
+    }
+
+    public HttpExchange getHttpExchange()
+    {
+        return exchange;
+    }
+
+    /**
+     * <p>Normalizes the request and notifies the request listeners that it is about to be sent.</p>
+     */
+    protected void requestBegin()
+    {
+        Request request = exchange.getRequest();
+        destination.normalizeRequest(request);
+        destination.getRequestNotifier().notifyBegin(request);
+    }
+
+    protected void requestHeaders()
+    {
+        destination.getRequestNotifier().notifyHeaders(exchange.getRequest());
+    }
+
+    protected void requestCommit()
+    {
+        committed = true;
+        destination.getRequestNotifier().notifyCommit(exchange.getRequest());
+    }
+
+    protected boolean requestSuccess()
+    {
+        AtomicMarkableReference<Result> completion = exchange.requestComplete(null);
+        if (!completion.isMarked())
+            return false;
+
+        exchange.terminateRequest();
+
+        Request request = exchange.getRequest();
+        destination.getRequestNotifier().notifySuccess(request);
+        LOG.debug("Sent {}", request);
+
+        Result result = completion.getReference();
+        if (result != null)
+            complete(result);
+
+        return true;
+    }
+
+    protected boolean requestFailure(Throwable failure)
+    {
+        AtomicMarkableReference<Result> completion = exchange.requestComplete(failure);
+        if (!completion.isMarked())
+            return false;
+
+        exchange.terminateRequest();
+
+        Request request = exchange.getRequest();
+        destination.getRequestNotifier().notifyFailure(request, failure);
+        LOG.debug("Failed {} {}", request, failure);
+
+        Result result = completion.getReference();
+        if (result == null && !committed && request.getAbortCause() == null)
+        {
+            // The request never reached the server, so there will be no response
+            result = exchange.responseComplete(failure).getReference();
+            exchange.terminateResponse();
+            LOG.debug("Failed on behalf {}", exchange);
+        }
+
+        if (result != null)
+            complete(result);
+
+        return true;
+    }
+
+    protected void responseBegin(HttpVersion version, int status, String reason)
+    {
+        HttpResponse response = exchange.getResponse();
+        response.version(version).status(status).reason(reason);
+
+        // Probe the protocol handlers
+        ProtocolHandler protocolHandler = destination.getHttpClient().findProtocolHandler(exchange.getRequest(), response);
+        Response.Listener handlerListener = protocolHandler == null ? null : protocolHandler.getResponseListener();
+        exchange.getConversation().setResponseListener(handlerListener);
+
+        LOG.debug("Receiving {}", response);
+        exchange.responseBegin();
+        destination.getResponseNotifier().notifyBegin(exchange.getConversation().getResponseListeners(), response);
+    }
+
+    protected void responseHeader(HttpField field)
+    {
+        HttpResponse response = exchange.getResponse();
+        List<Response.ResponseListener> listeners = exchange.getConversation().getResponseListeners();
+        boolean process = destination.getResponseNotifier().notifyHeader(listeners, response, field);
+        if (process)
+        {
+            response.getHeaders().add(field);
+            HttpHeader fieldHeader = field.getHeader();
+            if (fieldHeader == HttpHeader.SET_COOKIE || fieldHeader == HttpHeader.SET_COOKIE2)
+                storeCookie(exchange.getRequest().getURI(), field);
+        }
+    }
+
+    private void storeCookie(URI uri, HttpField field)
+    {
+        try
+        {
+            Map<String, List<String>> header = new HashMap<>(1);
+            header.put(field.getHeader().asString(), Collections.singletonList(field.getValue()));
+            destination.getHttpClient().getCookieManager().put(uri, header);
+        }
+        catch (IOException x)
+        {
+            LOG.debug(x);
+        }
+    }
+
+    protected void responseHeaders()
+    {
+        HttpResponse response = exchange.getResponse();
+        LOG.debug("Headers {}", response);
+        destination.getResponseNotifier().notifyHeaders(exchange.getConversation().getResponseListeners(), response);
+
+        Enumeration<String> contentEncodings = response.getHeaders().getValues(HttpHeader.CONTENT_ENCODING.asString(), ",");
+        if (contentEncodings != null)
+        {
+            while (decoder == null && contentEncodings.hasMoreElements())
+            {
+                String contentEncoding = contentEncodings.nextElement();
+                for (ContentDecoder.Factory factory : destination.getHttpClient().getContentDecoderFactories())
+                {
+                    if (factory.getEncoding().equalsIgnoreCase(contentEncoding))
+                    {
+                        decoder = factory.newContentDecoder();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    protected void responseContent(ByteBuffer buffer)
+    {
+        responseContent(buffer, new Callback.Adapter());
+    }
+
+    /**
+     * @param buffer the response content
+     * @param callback the callback completed when the content has been consumed by the listeners
+     */
+    protected void responseContent(ByteBuffer buffer, Callback callback)
+    {
+        HttpResponse response = exchange.getResponse();
+        LOG.debug("Content {}: {} bytes", response, buffer.remaining());
+
+        ContentDecoder decoder = this.decoder;
+        if (decoder != null)
+        {
+            buffer = decoder.decode(buffer);
+            LOG.debug("{} {}: {} bytes", decoder, response, buffer.remaining());
+        }
+
+        destination.getResponseNotifier().notifyContent(exchange.getConversation().getResponseListeners(), response, buffer, callback);
+    }
+
+    protected boolean responseSuccess()
+    {
+        AtomicMarkableReference<Result> completion = exchange.responseComplete(null);
+        if (!completion.isMarked())
+            return false;
+
+        // The content has been consumed, the decoder can return its resources to the pools
+        ContentDecoder decoder = this.decoder;
+        this.decoder = null;
+        if (decoder instanceof Destroyable)
+            ((Destroyable)decoder).destroy();
+        exchange.terminateResponse();
+
+        HttpResponse response = exchange.getResponse();
+        List<Response.ResponseListener> listeners = exchange.getConversation().getResponseListeners();
+        destination.getResponseNotifier().notifySuccess(listeners, response);
+        LOG.debug("Received {}", response);
+
+        Result result = completion.getReference();
+        if (result != null)
+            complete(result);
+
+        return true;
+    }
+
+    protected boolean responseFailure(Throwable failure)
+    {
+        AtomicMarkableReference<Result> completion = exchange.responseComplete(failure);
+        if (!completion.isMarked())
+            return false;
+
+        // The decoder may be decoding concurrently, so it is not destroyed
+        decoder = null;
+        exchange.terminateResponse();
+
+        HttpResponse response = exchange.getResponse();
+        List<Response.ResponseListener> listeners = exchange.getConversation().getResponseListeners();
+        destination.getResponseNotifier().notifyFailure(listeners, response, failure);
+        LOG.debug("Failed {} {}", response, failure);
+
+        Result result = completion.getReference();
+        if (result != null)
+            complete(result);
+
+        return true;
+    }
+
+    private void complete(Result result)
+    {
+        exchangeTerminated(result);
+        destination.getResponseNotifier().notifyComplete(exchange.getConversation().getResponseListeners(), result);
+    }
+
+    /**
+     * <p>Callback method invoked when both the request and the response of the exchange are complete,
+     * before the complete listeners are notified.</p>
+     *
+     * @param result the result of the exchange
+     */
+    protected abstract void exchangeTerminated(Result result);
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x(%s)", getClass().getSimpleName(), hashCode(), exchange);
+    }
+}
@@ -0,0 +1,354 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+
+/**
+ * <p>The pool of connections of a {@link HttpDestination}.</p>
+ * <p>Connections are either idle, waiting to be acquired, or active, carrying exchanges.
+ * Both sets are held in concurrent collections, so that acquiring and releasing connections
+ * does not contend on a single lock when many requests are sent to the same destination,
+ * and releasing an active connection does not scan the other active connections.</p>
+ * <p>Idle connections are reused in LIFO order: the most recently released connection is
+ * acquired first, so that the busy connections stay warm (with large TCP windows), while
+ * the connections that are not needed remain idle until they idle timeout.</p>
+ * <p>Connections can be opened before they are needed with {@link #prewarm(int)}.</p>
+ */
+@ManagedObject("The connection pool of a destination")
+public class ConnectionPool implements Dumpable
+{
+    private static final Logger LOG = Log.getLogger(ConnectionPool.class);
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsClosed = new AtomicLong();
+    private final SampleStatistic waitTimes = new SampleStatistic();
+    private final Deque<Connection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final Set<Connection> activeConnections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+    private final HttpDestination destination;
+    private final int maxConnections;
+    private final Promise<Connection> requester;
+
+    /**
+     * @param destination the destination the connections are opened to
+     * @param maxConnections the max number of connections in this pool
+     * @param requester the promise notified when a connection opened by this pool is ready, or failed to open
+     */
+    public ConnectionPool(HttpDestination destination, int maxConnections, Promise<Connection> requester)
+    {
+        this.destination = destination;
+        this.maxConnections = maxConnections;
+        this.requester = requester;
+    }
+
+    @ManagedAttribute("The number of open connections")
+    public int getConnectionCount()
+    {
+        return connectionCount.get();
+    }
+
+    @ManagedAttribute("The max number of connections")
+    public int getMaxConnectionCount()
+    {
+        return maxConnections;
+    }
+
+    @ManagedAttribute("The number of idle connections")
+    public int getIdleConnectionCount()
+    {
+        return idleConnections.size();
+    }
+
+    @ManagedAttribute("The number of active connections")
+    public int getActiveConnectionCount()
+    {
+        return activeConnections.size();
+    }
+
+    @ManagedAttribute("The number of connections opened")
+    public long getConnectionsCreated()
+    {
+        return connectionsCreated.get();
+    }
+
+    @ManagedAttribute("The number of connections closed")
+    public long getConnectionsClosed()
+    {
+        return connectionsClosed.get();
+    }
+
+    @ManagedAttribute("The mean time requests waited for a connection, in ms")
+    public double getWaitTimeMean()
+    {
+        return waitTimes.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute("The max time a request waited for a connection, in ms")
+    public long getWaitTimeMax()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(waitTimes.getMax());
+    }
+
+    @ManagedOperation("Resets the statistics")
+    public void resetStatistics()
+    {
+        connectionsCreated.set(0);
+        connectionsClosed.set(0);
+        waitTimes.reset();
+    }
+
+    public Deque<Connection> getIdleConnections()
+    {
+        return idleConnections;
+    }
+
+    public Set<Connection> getActiveConnections()
+    {
+        return activeConnections;
+    }
+
+    /**
+     * <p>Returns the most recently released idle connection, if any; otherwise opens a new
+     * connection, if the max number of connections has not been reached.</p>
+     * <p>Connections are opened asynchronously and notified to the requester promise;
+     * this method returns null if no idle connection is available.</p>
+     *
+     * @return an idle connection, or null
+     */
+    public Connection acquire()
+    {
+        Connection result = idleConnections.pollFirst();
+        if (result != null)
+            return result;
+
+        if (tryCreate())
+        {
+            // Try again the idle connections
+            return idleConnections.pollFirst();
+        }
+
+        LOG.debug("Max connections {} reached for {}", maxConnections, destination);
+        // Try again the idle connections
+        return idleConnections.pollFirst();
+    }
+
+    /**
+     * <p>Opens connections until the given number of connections is open, so that
+     * the first requests do not pay the cost of opening the connections.</p>
+     * <p>The connections are opened asynchronously, and become idle once opened
+     * unless requests are waiting to be sent.</p>
+     *
+     * @param connections the number of connections to open, capped to the max number of connections
+     * @return the number of connections being opened
+     */
+    @ManagedOperation("Opens connections before they are needed")
+    public int prewarm(int connections)
+    {
+        int created = 0;
+        while (connectionCount.get() < connections && tryCreate())
+            ++created;
+        return created;
+    }
+
+    private boolean tryCreate()
+    {
+        while (true)
+        {
+            int current = connectionCount.get();
+            final int next = current + 1;
+
+            if (next > maxConnections)
+                return false;
+
+            if (connectionCount.compareAndSet(current, next))
+            {
+                LOG.debug("Creating connection {}/{} for {}", next, maxConnections, destination);
+
+                // The destination establishes a proxy tunnel, if needed. Differently from the case where
+                // the connection is created explicitly by applications, here we need to do a bit more
+                // logging and keep track of the connection count in case of failures.
+                destination.newConnection(new Promise<Connection>()
+                {
+                    @Override
+                    public void succeeded(Connection connection)
+                    {
+                        LOG.debug("Created connection {}/{} {} for {}", next, maxConnections, connection, destination);
+                        connectionsCreated.incrementAndGet();
+                        requester.succeeded(connection);
+                    }
+
+                    @Override
+                    public void failed(Throwable x)
+                    {
+                        LOG.debug("Connection failed {} for {}", x, destination);
+                        connectionCount.decrementAndGet();
+                        requester.failed(x);
+                    }
+                });
+                return true;
+            }
+        }
+    }
+
+    /**
+     * <p>Makes the given connection idle.</p>
+     * <p>The pool cannot overflow, since only the connections counted when they are opened are pooled.</p>
+     *
+     * @param connection the connection to make idle
+     */
+    public void idle(Connection connection)
+    {
+        // LIFO: the connection is the next to be acquired
+        idleConnections.offerFirst(connection);
+    }
+
+    /**
+     * @param connection the connection to make active
+     */
+    public void active(Connection connection)
+    {
+        activeConnections.add(connection);
+    }
+
+    /**
+     * @param connection the active connection to release
+     * @return whether the connection was active in this pool
+     */
+    public boolean release(Connection connection)
+    {
+        return activeConnections.remove(connection);
+    }
+
+    /**
+     * <p>Removes a connection, that is going to be closed, from this pool.</p>
+     *
+     * @param connection the connection to remove
+     * @return whether the connection was in this pool
+     */
+    public boolean remove(Connection connection)
+    {
+        boolean removed = activeConnections.remove(connection);
+        removed |= idleConnections.remove(connection);
+        if (removed)
+        {
+            connectionsClosed.incrementAndGet();
+            int open = connectionCount.decrementAndGet();
+            LOG.debug("Removed connection {} for {} - open: {}", connection, destination, open);
+        }
+        return removed;
+    }
+
+    /**
+     * <p>Records the time a request waited, queued in the destination, to be sent.</p>
+     *
+     * @param nanos the wait time, in nanoseconds
+     */
+    public void waited(long nanos)
+    {
+        waitTimes.set(nanos);
+    }
+
+    /**
+     * <p>Closes all the connections of this pool.</p>
+     * <p>Only the connections closed here are uncounted: the connections being opened
+     * concurrently are counted until they are removed.</p>
+     */
+    public void close()
+    {
+        List<Connection> idles = new ArrayList<>();
+        drain(idleConnections, idles);
+        for (Connection connection : idles)
+            connection.close();
+
+        // A bit drastic, but we cannot wait for all requests to complete
+        List<Connection> actives = new ArrayList<>();
+        drain(activeConnections, actives);
+        for (Connection connection : actives)
+            connection.close();
+
+        int closed = idles.size() + actives.size();
+        connectionsClosed.addAndGet(closed);
+        int open = connectionCount.addAndGet(-closed);
+        LOG.debug("Closed {} connection(s) for {} - open: {}", closed, destination, open);
+    }
+
+    private void drain(Collection<Connection> source, List<Connection> sink)
+    {
+        for (Connection connection : source)
+        {
+            // A connection removed concurrently is uncounted by remove(Connection)
+            if (source.remove(connection))
+                sink.add(connection);
+        }
+    }
+
+    @Override
+    public String dump()
+    {
+        return ContainerLifeCycle.dump(this);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        ContainerLifeCycle.dumpObject(out, this);
+        List<String> connections = new ArrayList<>();
+        for (Connection connection : idleConnections)
+            connections.add(connection + " - IDLE");
+        for (Connection connection : activeConnections)
+            connections.add(connection + " - ACTIVE");
+        ContainerLifeCycle.dump(out, indent, connections);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[c=%d/%d,a=%d,i=%d]",
+                getClass().getSimpleName(),
+                hashCode(),
+                connectionCount.get(),
+                maxConnections,
+                activeConnections.size(),
+                idleConnections.size());
+    }
+}
@@ -0,0 +1,191 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>{@link ContentDecoder} for the "deflate" encoding.</p>
+ * <p>RFC 2616 defines the "deflate" encoding as zlib-wrapped (RFC 1950) data,
+ * but some servers send raw (RFC 1951) deflate data; both are supported,
+ * by looking at the first byte of the content.</p>
+ */
+public class DeflateContentDecoder extends InflatingContentDecoder
+{
+    private State state;
+    private int size;
+    private int value;
+
+    public DeflateContentDecoder()
+    {
+        this(2048);
+    }
+
+    public DeflateContentDecoder(int bufferSize)
+    {
+        this(null, null, bufferSize);
+    }
+
+    /**
+     * @param inflaterPool the pool of inflaters, or null to allocate an inflater per decoder
+     * @param byteBufferPool the pool of buffers for the decoded bytes, or null to allocate them
+     * @param bufferSize the initial size of the buffers for the decoded bytes
+     */
+    public DeflateContentDecoder(InflaterPool inflaterPool, ByteBufferPool byteBufferPool, int bufferSize)
+    {
+        super(inflaterPool, byteBufferPool, bufferSize);
+        reset();
+    }
+
+    @Override
+    protected ByteBuffer decodeContent(ByteBuffer buffer) throws ZipException
+    {
+        while (buffer.hasRemaining())
+        {
+            byte currByte = buffer.get();
+            switch (state)
+            {
+                case INITIAL:
+                {
+                    // A zlib stream starts with the CMF byte: compression method 8 and a window of at most 32 KiB;
+                    // a raw deflate stream cannot start with such byte, since it would be a stored block with padding
+                    if ((currByte & 0x0F) == 0x08 && (currByte & 0xF0) <= 0x70)
+                    {
+                        value = (currByte & 0xFF) << 8;
+                        state = State.FLG;
+                    }
+                    else
+                    {
+                        buffer.position(buffer.position() - 1);
+                        state = State.RAW_DATA;
+                    }
+                    break;
+                }
+                case FLG:
+                {
+                    value += currByte & 0xFF;
+                    if (value % 31 != 0)
+                        throw new ZipException("Invalid zlib header");
+                    if ((currByte & 0x20) == 0x20)
+                        throw new ZipException("Unsupported zlib preset dictionary");
+                    state = State.DATA;
+                    break;
+                }
+                case DATA:
+                case RAW_DATA:
+                {
+                    buffer.position(buffer.position() - 1);
+                    if (inflate(buffer))
+                    {
+                        if (state == State.RAW_DATA)
+                        {
+                            ByteBuffer result = output();
+                            reset();
+                            return result;
+                        }
+                        state = State.ADLER;
+                        size = 0;
+                    }
+                    else
+                    {
+                        return output();
+                    }
+                    break;
+                }
+                case ADLER:
+                {
+                    // Like for the gzip CRC, the Adler-32 checksum is not verified
+                    ++size;
+                    if (size == 4)
+                    {
+                        ByteBuffer result = output();
+                        reset();
+                        return result;
+                    }
+                    break;
+                }
+                default:
+                    throw new ZipException();
+            }
+        }
+        return BufferUtil.EMPTY_BUFFER;
+    }
+
+    @Override
+    protected void reset()
+    {
+        super.reset();
+        state = State.INITIAL;
+        size = 0;
+        value = 0;
+    }
+
+    protected boolean isFinished()
+    {
+        return state == State.INITIAL;
+    }
+
+    /**
+     * Specialized {@link ContentDecoder.Factory} for the "deflate" encoding.
+     */
+    public static class Factory extends ContentDecoder.Factory
+    {
+        private final InflaterPool inflaterPool;
+        private final ByteBufferPool byteBufferPool;
+        private final int bufferSize;
+
+        public Factory()
+        {
+            this(2048);
+        }
+
+        public Factory(int bufferSize)
+        {
+            this(null, null, bufferSize);
+        }
+
+        /**
+         * @param inflaterPool the pool of inflaters shared by the decoders, or null to allocate an inflater per decoder
+         * @param byteBufferPool the pool of buffers for the decoded bytes, or null to allocate them
+         * @param bufferSize the initial size of the buffers for the decoded bytes
+         */
+        public Factory(InflaterPool inflaterPool, ByteBufferPool byteBufferPool, int bufferSize)
+        {
+            super("deflate");
+            this.inflaterPool = inflaterPool;
+            this.byteBufferPool = byteBufferPool;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public ContentDecoder newContentDecoder()
+        {
+            return new DeflateContentDecoder(inflaterPool, byteBufferPool, bufferSize);
+        }
+    }
+
+    private enum State
+    {
+        INITIAL, FLG, DATA, RAW_DATA, ADLER
+    }
+}
@@ -0,0 +1,154 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * <p>Adapts a {@link Response.DemandedContentListener} to a {@link Response.AsyncContentListener},
+ * holding the callback of the content, and so pausing the reading of the response, while the
+ * listener has no demand.</p>
+ */
+public class DemandedContentAdapter implements Response.BeginListener, Response.HeadersListener, Response.AsyncContentListener, Response.ContentDemand
+{
+    private final Response.DemandedContentListener listener;
+    // Guarded by this
+    private long demand;
+    private Response response;
+    private ByteBuffer content;
+    private Callback callback;
+    private boolean delivered;
+
+    public DemandedContentAdapter(Response.DemandedContentListener listener)
+    {
+        this.listener = listener;
+    }
+
+    public Response.DemandedContentListener getListener()
+    {
+        return listener;
+    }
+
+    @Override
+    public void onBegin(Response response)
+    {
+        synchronized (this)
+        {
+            demand = 0;
+            this.response = null;
+            content = null;
+            callback = null;
+            delivered = false;
+        }
+    }
+
+    @Override
+    public void onHeaders(Response response)
+    {
+        listener.onBeforeContent(response, this);
+    }
+
+    @Override
+    public void onContent(Response response, ByteBuffer content, Callback callback)
+    {
+        synchronized (this)
+        {
+            if (demand == 0)
+            {
+                // Wait for demand to deliver the content
+                this.response = response;
+                this.content = content;
+                this.callback = callback;
+                this.delivered = false;
+                return;
+            }
+            --demand;
+        }
+        deliver(response, content, callback);
+    }
+
+    @Override
+    public void request(long n)
+    {
+        if (n <= 0)
+            throw new IllegalArgumentException("Invalid demand " + n);
+
+        Response response;
+        ByteBuffer content;
+        Callback callback;
+        boolean deliver;
+        synchronized (this)
+        {
+            demand += n;
+            // Overflow means unbounded demand
+            if (demand < 0)
+                demand = Long.MAX_VALUE;
+            response = this.response;
+            content = this.content;
+            callback = this.callback;
+            deliver = callback != null && !delivered;
+            if (deliver)
+                --demand;
+            this.response = null;
+            this.content = null;
+            this.callback = null;
+        }
+
+        if (deliver)
+            deliver(response, content, callback);
+        else if (callback != null)
+            callback.succeeded();
+    }
+
+    private void deliver(Response response, ByteBuffer content, Callback callback)
+    {
+        try
+        {
+            listener.onContent(response, content, this);
+        }
+        catch (Throwable x)
+        {
+            callback.failed(x);
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (demand == 0)
+            {
+                // The content has been consumed, but reading
+                // must wait for the listener to demand more
+                this.callback = callback;
+                this.delivered = true;
+                return;
+            }
+        }
+        callback.succeeded();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), listener);
+    }
+}
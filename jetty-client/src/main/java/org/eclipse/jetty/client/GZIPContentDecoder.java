@@ -19,21 +19,16 @@
 package org.eclipse.jetty.client;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 import java.util.zip.ZipException;
 
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
 
 /**
  * {@link ContentDecoder} for the "gzip" encoding.
  */
-public class GZIPContentDecoder implements ContentDecoder
+public class GZIPContentDecoder extends InflatingContentDecoder
 {
-    private final Inflater inflater = new Inflater(true);
-    private final byte[] bytes;
-    private byte[] output;
     private State state;
     private int size;
     private int value;
@@ -46,278 +41,213 @@ public class GZIPContentDecoder implements ContentDecoder
 
     public GZIPContentDecoder(int bufferSize)
     {
-        this.bytes = new byte[bufferSize];
-        reset();
+        this(null, null, bufferSize);
     }
 
     /**
-     * {@inheritDoc}
-     * <p>If the decoding did not produce any output, for example because it consumed gzip header
-     * or trailer bytes, it returns a buffer with zero capacity.</p>
-     * <p>This method never returns null.</p>
-     * <p>The given {@code buffer}'s position will be modified to reflect the bytes consumed during
-     * the decoding.</p>
-     * <p>The decoding may be finished without consuming the buffer completely if the buffer contains
-     * gzip bytes plus other bytes (either plain or gzipped).</p>
+     * @param inflaterPool the pool of inflaters, or null to allocate an inflater per decoder
+     * @param byteBufferPool the pool of buffers for the decoded bytes, or null to allocate them
+     * @param bufferSize the initial size of the buffers for the decoded bytes
      */
+    public GZIPContentDecoder(InflaterPool inflaterPool, ByteBufferPool byteBufferPool, int bufferSize)
+    {
+        super(inflaterPool, byteBufferPool, bufferSize);
+        reset();
+    }
+
     @Override
-    public ByteBuffer decode(ByteBuffer buffer)
+    protected ByteBuffer decodeContent(ByteBuffer buffer) throws ZipException
     {
-        try
+        while (buffer.hasRemaining())
         {
-            while (buffer.hasRemaining())
+            byte currByte = buffer.get();
+            switch (state)
             {
-                byte currByte = buffer.get();
-                switch (state)
+                case INITIAL:
                 {
-                    case INITIAL:
-                    {
-                        buffer.position(buffer.position() - 1);
-                        state = State.ID;
-                        break;
-                    }
-                    case ID:
-                    {
-                        value += (currByte & 0xFF) << 8 * size;
-                        ++size;
-                        if (size == 2)
-                        {
-                            if (value != 0x8B1F)
-                                throw new ZipException("Invalid gzip bytes");
-                            state = State.CM;
-                        }
-                        break;
-                    }
-                    case CM:
+                    buffer.position(buffer.position() - 1);
+                    state = State.ID;
+                    break;
+                }
+                case ID:
+                {
+                    value += (currByte & 0xFF) << 8 * size;
+                    ++size;
+                    if (size == 2)
                     {
-                        if ((currByte & 0xFF) != 0x08)
-                            throw new ZipException("Invalid gzip compression method");
-                        state = State.FLG;
-                        break;
+                        if (value != 0x8B1F)
+                            throw new ZipException("Invalid gzip bytes");
+                        state = State.CM;
                     }
-                    case FLG:
+                    break;
+                }
+                case CM:
+                {
+                    if ((currByte & 0xFF) != 0x08)
+                        throw new ZipException("Invalid gzip compression method");
+                    state = State.FLG;
+                    break;
+                }
+                case FLG:
+                {
+                    flags = currByte;
+                    state = State.MTIME;
+                    size = 0;
+                    value = 0;
+                    break;
+                }
+                case MTIME:
+                {
+                    // Skip the 4 MTIME bytes
+                    ++size;
+                    if (size == 4)
+                        state = State.XFL;
+                    break;
+                }
+                case XFL:
+                {
+                    // Skip XFL
+                    state = State.OS;
+                    break;
+                }
+                case OS:
+                {
+                    // Skip OS
+                    state = State.FLAGS;
+                    break;
+                }
+                case FLAGS:
+                {
+                    buffer.position(buffer.position() - 1);
+                    if ((flags & 0x04) == 0x04)
                     {
-                        flags = currByte;
-                        state = State.MTIME;
+                        state = State.EXTRA_LENGTH;
                         size = 0;
                         value = 0;
-                        break;
-                    }
-                    case MTIME:
-                    {
-                        // Skip the 4 MTIME bytes
-                        ++size;
-                        if (size == 4)
-                            state = State.XFL;
-                        break;
                     }
-                    case XFL:
+                    else if ((flags & 0x08) == 0x08)
+                        state = State.NAME;
+                    else if ((flags & 0x10) == 0x10)
+                        state = State.COMMENT;
+                    else if ((flags & 0x2) == 0x2)
                     {
-                        // Skip XFL
-                        state = State.OS;
-                        break;
+                        state = State.HCRC;
+                        size = 0;
+                        value = 0;
                     }
-                    case OS:
+                    else
+                        state = State.DATA;
+                    break;
+                }
+                case EXTRA_LENGTH:
+                {
+                    value += (currByte & 0xFF) << 8 * size;
+                    ++size;
+                    if (size == 2)
+                        state = State.EXTRA;
+                    break;
+                }
+                case EXTRA:
+                {
+                    // Skip EXTRA bytes
+                    --value;
+                    if (value == 0)
                     {
-                        // Skip OS
+                        // Clear the EXTRA flag and loop on the flags
+                        flags &= ~0x04;
                         state = State.FLAGS;
-                        break;
-                    }
-                    case FLAGS:
-                    {
-                        buffer.position(buffer.position() - 1);
-                        if ((flags & 0x04) == 0x04)
-                        {
-                            state = State.EXTRA_LENGTH;
-                            size = 0;
-                            value = 0;
-                        }
-                        else if ((flags & 0x08) == 0x08)
-                            state = State.NAME;
-                        else if ((flags & 0x10) == 0x10)
-                            state = State.COMMENT;
-                        else if ((flags & 0x2) == 0x2)
-                        {
-                            state = State.HCRC;
-                            size = 0;
-                            value = 0;
-                        }
-                        else
-                            state = State.DATA;
-                        break;
                     }
-                    case EXTRA_LENGTH:
-                    {
-                        value += (currByte & 0xFF) << 8 * size;
-                        ++size;
-                        if (size == 2)
-                            state = State.EXTRA;
-                        break;
-                    }
-                    case EXTRA:
+                    break;
+                }
+                case NAME:
+                {
+                    // Skip NAME bytes
+                    if (currByte == 0)
                     {
-                        // Skip EXTRA bytes
-                        --value;
-                        if (value == 0)
-                        {
-                            // Clear the EXTRA flag and loop on the flags
-                            flags &= ~0x04;
-                            state = State.FLAGS;
-                        }
-                        break;
+                        // Clear the NAME flag and loop on the flags
+                        flags &= ~0x08;
+                        state = State.FLAGS;
                     }
-                    case NAME:
+                    break;
+                }
+                case COMMENT:
+                {
+                    // Skip COMMENT bytes
+                    if (currByte == 0)
                     {
-                        // Skip NAME bytes
-                        if (currByte == 0)
-                        {
-                            // Clear the NAME flag and loop on the flags
-                            flags &= ~0x08;
-                            state = State.FLAGS;
-                        }
-                        break;
+                        // Clear the COMMENT flag and loop on the flags
+                        flags &= ~0x10;
+                        state = State.FLAGS;
                     }
-                    case COMMENT:
+                    break;
+                }
+                case HCRC:
+                {
+                    // Skip HCRC
+                    ++size;
+                    if (size == 2)
                     {
-                        // Skip COMMENT bytes
-                        if (currByte == 0)
-                        {
-                            // Clear the COMMENT flag and loop on the flags
-                            flags &= ~0x10;
-                            state = State.FLAGS;
-                        }
-                        break;
+                        // Clear the HCRC flag and loop on the flags
+                        flags &= ~0x02;
+                        state = State.FLAGS;
                     }
-                    case HCRC:
+                    break;
+                }
+                case DATA:
+                {
+                    buffer.position(buffer.position() - 1);
+                    if (inflate(buffer))
                     {
-                        // Skip HCRC
-                        ++size;
-                        if (size == 2)
-                        {
-                            // Clear the HCRC flag and loop on the flags
-                            flags &= ~0x02;
-                            state = State.FLAGS;
-                        }
-                        break;
+                        state = State.CRC;
+                        size = 0;
+                        value = 0;
                     }
-                    case DATA:
+                    else
                     {
-                        buffer.position(buffer.position() - 1);
-                        while (true)
-                        {
-                            int decoded = inflate(bytes);
-                            if (decoded == 0)
-                            {
-                                if (inflater.needsInput())
-                                {
-                                    if (buffer.hasRemaining())
-                                    {
-                                        byte[] input = new byte[buffer.remaining()];
-                                        buffer.get(input);
-                                        inflater.setInput(input);
-                                    }
-                                    else
-                                    {
-                                        if (output != null)
-                                        {
-                                            ByteBuffer result = ByteBuffer.wrap(output);
-                                            output = null;
-                                            return result;
-                                        }
-                                        break;
-                                    }
-                                }
-                                else if (inflater.finished())
-                                {
-                                    int remaining = inflater.getRemaining();
-                                    buffer.position(buffer.limit() - remaining);
-                                    state = State.CRC;
-                                    size = 0;
-                                    value = 0;
-                                    break;
-                                }
-                                else
-                                {
-                                    throw new ZipException("Invalid inflater state");
-                                }
-                            }
-                            else
-                            {
-                                if (output == null)
-                                {
-                                    // Save the inflated bytes and loop to see if we have finished
-                                    output = new byte[decoded];
-                                    System.arraycopy(bytes, 0, output, 0, decoded);
-                                }
-                                else
-                                {
-                                    // Accumulate inflated bytes and loop to see if we have finished
-                                    byte[] newOutput = new byte[output.length + decoded];
-                                    System.arraycopy(output, 0, newOutput, 0, output.length);
-                                    System.arraycopy(bytes, 0, newOutput, output.length, decoded);
-                                    output = newOutput;
-                                }
-                            }
-                        }
-                        break;
+                        return output();
                     }
-                    case CRC:
+                    break;
+                }
+                case CRC:
+                {
+                    value += (currByte & 0xFF) << 8 * size;
+                    ++size;
+                    if (size == 4)
                     {
-                        value += (currByte & 0xFF) << 8 * size;
-                        ++size;
-                        if (size == 4)
-                        {
-                            // From RFC 1952, compliant decoders need not to verify the CRC
-                            state = State.ISIZE;
-                            size = 0;
-                            value = 0;
-                        }
-                        break;
+                        // From RFC 1952, compliant decoders need not to verify the CRC
+                        state = State.ISIZE;
+                        size = 0;
+                        value = 0;
                     }
-                    case ISIZE:
+                    break;
+                }
+                case ISIZE:
+                {
+                    value += (currByte & 0xFF) << 8 * size;
+                    ++size;
+                    if (size == 4)
                     {
-                        value += (currByte & 0xFF) << 8 * size;
-                        ++size;
-                        if (size == 4)
-                        {
-                            if (value != inflater.getBytesWritten())
-                                throw new ZipException("Invalid input size");
+                        // ISIZE is the size of the uncompressed data modulo 2^32
+                        if (value != (int)getBytesWritten())
+                            throw new ZipException("Invalid input size");
 
-                            ByteBuffer result = output == null ? BufferUtil.EMPTY_BUFFER : ByteBuffer.wrap(output);
-                            reset();
-                            return result;
-                        }
-                        break;
+                        ByteBuffer result = output();
+                        reset();
+                        return result;
                     }
-                    default:
-                        throw new ZipException();
+                    break;
                 }
+                default:
+                    throw new ZipException();
             }
-            return BufferUtil.EMPTY_BUFFER;
-        }
-        catch (ZipException x)
-        {
-            throw new RuntimeException(x);
-        }
-    }
-
-    private int inflate(byte[] bytes) throws ZipException
-    {
-        try
-        {
-            return inflater.inflate(bytes);
-        }
-        catch (DataFormatException x)
-        {
-            throw new ZipException(x.getMessage());
         }
+        return BufferUtil.EMPTY_BUFFER;
     }
 
-    private void reset()
+    @Override
+    protected void reset()
     {
-        inflater.reset();
-        Arrays.fill(bytes, (byte)0);
-        output = null;
+        super.reset();
         state = State.INITIAL;
         size = 0;
         value = 0;
@@ -334,6 +264,8 @@ public class GZIPContentDecoder implements ContentDecoder
      */
     public static class Factory extends ContentDecoder.Factory
     {
+        private final InflaterPool inflaterPool;
+        private final ByteBufferPool byteBufferPool;
         private final int bufferSize;
 
         public Factory()
@@ -342,15 +274,27 @@ public class GZIPContentDecoder implements ContentDecoder
         }
 
         public Factory(int bufferSize)
+        {
+            this(null, null, bufferSize);
+        }
+
+        /**
+         * @param inflaterPool the pool of inflaters shared by the decoders, or null to allocate an inflater per decoder
+         * @param byteBufferPool the pool of buffers for the decoded bytes, or null to allocate them
+         * @param bufferSize the initial size of the buffers for the decoded bytes
+         */
+        public Factory(InflaterPool inflaterPool, ByteBufferPool byteBufferPool, int bufferSize)
         {
             super("gzip");
+            this.inflaterPool = inflaterPool;
+            this.byteBufferPool = byteBufferPool;
             this.bufferSize = bufferSize;
         }
 
         @Override
         public ContentDecoder newContentDecoder()
         {
-            return new GZIPContentDecoder(bufferSize);
+            return new GZIPContentDecoder(inflaterPool, byteBufferPool, bufferSize);
         }
     }
 
@@ -0,0 +1,48 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+/**
+ * <p>{@link HttpChannel} is the transport specific carrier of a {@link HttpExchange}:
+ * an {@link HttpConnection} for HTTP/1.1, where one exchange at a time is carried
+ * by the connection (or more, when requests are pipelined), or a stream for
+ * multiplexed transports such as SPDY.</p>
+ *
+ * @see HttpExchange#setChannel(HttpChannel)
+ */
+public interface HttpChannel
+{
+    /**
+     * <p>Aborts the given exchange carried by this channel.</p>
+     *
+     * @param exchange the exchange to abort
+     * @param cause the abort cause
+     * @return whether the exchange was aborted, false if the response had already been received
+     */
+    public boolean abort(HttpExchange exchange, Throwable cause);
+
+    /**
+     * <p>Resumes, or fails, the sending of the request content held back by an
+     * {@code Expect: 100-continue} request header.</p>
+     *
+     * @param proceed whether to send the request content
+     */
+    public void proceed(boolean proceed);
+}
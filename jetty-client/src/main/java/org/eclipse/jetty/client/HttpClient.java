@@ -117,6 +117,7 @@ public class HttpClient extends ContainerLifeCycle
     private final List<Request.Listener> requestListeners = new ArrayList<>();
     private final AuthenticationStore authenticationStore = new HttpAuthenticationStore();
     private final Set<ContentDecoder.Factory> decoderFactories = new ContentDecoderFactorySet();
+    private final HttpClientTransport transport;
     private final SslContextFactory sslContextFactory;
     private volatile CookieManager cookieManager;
     private volatile CookieStore cookieStore;
@@ -124,6 +125,7 @@ public class HttpClient extends ContainerLifeCycle
     private volatile ByteBufferPool byteBufferPool;
     private volatile Scheduler scheduler;
     private volatile SocketAddressResolver resolver;
+    private volatile InflaterPool inflaterPool;
     private volatile SelectorManager selectorManager;
     private volatile HttpField agentField = new HttpField(HttpHeader.USER_AGENT, "Jetty/" + Jetty.VERSION);
     private volatile boolean followRedirects = true;
@@ -161,7 +163,30 @@ public class HttpClient extends ContainerLifeCycle
      */
     public HttpClient(SslContextFactory sslContextFactory)
     {
+        this(new HttpClientTransportOverHTTP(), sslContextFactory);
+    }
+
+    /**
+     * Creates a {@link HttpClient} instance that sends requests using the given transport.
+     *
+     * @param transport the {@link HttpClientTransport} that carries the requests to the destinations
+     * @param sslContextFactory the {@link SslContextFactory} that manages TLS encryption
+     * @see #getTransport()
+     */
+    public HttpClient(HttpClientTransport transport, SslContextFactory sslContextFactory)
+    {
+        this.transport = transport;
         this.sslContextFactory = sslContextFactory;
+        transport.setHttpClient(this);
+    }
+
+    /**
+     * @return the {@link HttpClientTransport} that carries the requests to the destinations
+     * @see #HttpClient(HttpClientTransport, SslContextFactory)
+     */
+    public HttpClientTransport getTransport()
+    {
+        return transport;
     }
 
     /**
@@ -207,11 +232,17 @@ public class HttpClient extends ContainerLifeCycle
         selectorManager.setConnectTimeout(getConnectTimeout());
         addBean(selectorManager);
 
+        addBean(transport);
+
         handlers.add(new ContinueProtocolHandler(this));
         handlers.add(new RedirectProtocolHandler(this));
         handlers.add(new AuthenticationProtocolHandler(this));
 
-        decoderFactories.add(new GZIPContentDecoder.Factory());
+        // The decoders inflate into pooled buffers, sharing the pool of inflaters
+        inflaterPool = new InflaterPool();
+        addBean(inflaterPool);
+        decoderFactories.add(new GZIPContentDecoder.Factory(inflaterPool, byteBufferPool, 2048));
+        decoderFactories.add(new DeflateContentDecoder.Factory(inflaterPool, byteBufferPool, 2048));
 
         cookieManager = newCookieManager();
         cookieStore = cookieManager.getCookieStore();
@@ -239,10 +270,15 @@ public class HttpClient extends ContainerLifeCycle
         cookieStore.removeAll();
         cookieStore = null;
         decoderFactories.clear();
+        removeBean(inflaterPool);
+        inflaterPool.clear();
         handlers.clear();
 
         for (HttpDestination destination : destinations.values())
+        {
+            removeDestinationBeans(destination);
             destination.close();
+        }
         destinations.clear();
 
         conversations.clear();
@@ -455,22 +491,42 @@ public class HttpClient extends ContainerLifeCycle
         HttpDestination destination = destinations.get(address);
         if (destination == null)
         {
-            destination = new HttpDestination(this, scheme, host, port);
+            destination = transport.newHttpDestination(scheme, host, port);
             if (isRunning())
             {
                 HttpDestination existing = destinations.putIfAbsent(address, destination);
                 if (existing != null)
+                {
                     destination = existing;
+                }
                 else
+                {
+                    // Exposes the connection pool and latency statistics via JMX
+                    ConnectionPool connectionPool = destination.getConnectionPool();
+                    if (connectionPool != null)
+                        addBean(connectionPool);
+                    addBean(destination.getLatencyStatistics());
                     LOG.debug("Created {}", destination);
+                }
                 if (!isRunning())
+                {
                     destinations.remove(address);
+                    removeDestinationBeans(destination);
+                }
             }
 
         }
         return destination;
     }
 
+    private void removeDestinationBeans(HttpDestination destination)
+    {
+        ConnectionPool connectionPool = destination.getConnectionPool();
+        if (connectionPool != null)
+            removeBean(connectionPool);
+        removeBean(destination.getLatencyStatistics());
+    }
+
     /**
      * @return the list of destinations known to this {@link HttpClient}.
      */
@@ -492,11 +548,14 @@ public class HttpClient extends ContainerLifeCycle
     protected void newConnection(final HttpDestination destination, final Promise<Connection> promise)
     {
         Destination.Address address = destination.getConnectAddress();
+        final long resolveTime = System.nanoTime();
         resolver.resolve(address.getHost(), address.getPort(), new Promise<SocketAddress>()
         {
             @Override
             public void succeeded(SocketAddress socketAddress)
             {
+                long connectTime = System.nanoTime();
+                destination.getLatencyStatistics().record(LatencyStatistics.Phase.DNS, connectTime - resolveTime);
                 SocketChannel channel = null;
                 try
                 {
@@ -508,7 +567,7 @@ public class HttpClient extends ContainerLifeCycle
                     channel.configureBlocking(false);
                     channel.connect(socketAddress);
 
-                    Future<Connection> futureConnection = new ConnectionCallback(destination, promise);
+                    Future<Connection> futureConnection = new ConnectionCallback(destination, promise, connectTime);
                     selectorManager.connect(channel, futureConnection);
                 }
                 // Must catch all exceptions, since some like
@@ -634,6 +693,14 @@ public class HttpClient extends ContainerLifeCycle
         this.addressResolutionTimeout = addressResolutionTimeout;
     }
 
+    /**
+     * @return the resolver of host addresses, with its cache configuration and statistics, or null if this client is not started
+     */
+    public SocketAddressResolver getSocketAddressResolver()
+    {
+        return resolver;
+    }
+
     /**
      * @return the max time a connection can be idle (that is, without traffic of bytes in either direction)
      */
@@ -920,14 +987,27 @@ public class HttpClient extends ContainerLifeCycle
 
     protected SslConnection newSslConnection(HttpClient httpClient, EndPoint endPoint, SSLEngine engine)
     {
-        return new SslConnection(httpClient.getByteBufferPool(), httpClient.getExecutor(), endPoint, engine);
+        return new SslConnection(httpClient.getByteBufferPool(), httpClient.getExecutor(), endPoint, engine)
+        {
+            @Override
+            protected void onHandshakeComplete()
+            {
+                org.eclipse.jetty.io.Connection connection = getDecryptedEndPoint().getConnection();
+                if (connection instanceof HttpConnection)
+                    ((HttpConnection)connection).handshakeComplete();
+            }
+        };
     }
 
     @Override
     public void dump(Appendable out, String indent) throws IOException
     {
         dumpThis(out);
-        dump(out, indent, getBeans(), destinations.values());
+        // The connection pools and latency statistics are dumped by their destinations
+        List<Object> beans = new ArrayList<>(getBeans());
+        beans.removeAll(getBeans(ConnectionPool.class));
+        beans.removeAll(getBeans(LatencyStatistics.class));
+        dump(out, indent, beans, destinations.values());
     }
 
     protected class ClientSelectorManager extends SelectorManager
@@ -953,6 +1033,8 @@ public class HttpClient extends ContainerLifeCycle
         {
             ConnectionCallback callback = (ConnectionCallback)attachment;
             HttpDestination destination = callback.destination;
+            long connectedTime = System.nanoTime();
+            destination.getLatencyStatistics().record(LatencyStatistics.Phase.CONNECT, connectedTime - callback.connectTime);
 
             SslContextFactory sslContextFactory = getSslContextFactory();
             if ("https".equals(destination.getScheme()))
@@ -971,6 +1053,7 @@ public class HttpClient extends ContainerLifeCycle
                     SslConnection sslConnection = newSslConnection(HttpClient.this, endPoint, engine);
                     EndPoint appEndPoint = sslConnection.getDecryptedEndPoint();
                     HttpConnection connection = newHttpConnection(HttpClient.this, appEndPoint, destination);
+                    connection.handshakeStarted(connectedTime);
 
                     appEndPoint.setConnection(connection);
                     callback.promise.succeeded(connection);
@@ -998,11 +1081,13 @@ public class HttpClient extends ContainerLifeCycle
     {
         private final HttpDestination destination;
         private final Promise<Connection> promise;
+        private final long connectTime;
 
-        private ConnectionCallback(HttpDestination destination, Promise<Connection> promise)
+        private ConnectionCallback(HttpDestination destination, Promise<Connection> promise, long connectTime)
         {
             this.destination = destination;
             this.promise = promise;
+            this.connectTime = connectTime;
         }
     }
 
@@ -0,0 +1,49 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+/**
+ * <p>{@link HttpClientTransport} is the pluggable transport layer of {@link HttpClient}.</p>
+ * <p>The transport creates the {@link HttpDestination}s of the client, and the destinations
+ * decide how their connections are established and how requests are carried over them:
+ * one exchange at a time per connection for HTTP/1.1 (see {@link HttpClientTransportOverHTTP}),
+ * or many concurrent exchanges over a single connection for multiplexed protocols.</p>
+ * <p>If the transport implementation is a {@link org.eclipse.jetty.util.component.LifeCycle},
+ * it is started and stopped along with the {@link HttpClient}.</p>
+ *
+ * @see HttpClient#HttpClient(HttpClientTransport, org.eclipse.jetty.util.ssl.SslContextFactory)
+ */
+public interface HttpClientTransport
+{
+    /**
+     * @param client the {@link HttpClient} that uses this transport
+     */
+    public void setHttpClient(HttpClient client);
+
+    /**
+     * <p>Creates a new destination for the given scheme, host and port.</p>
+     *
+     * @param scheme the destination scheme
+     * @param host the destination host
+     * @param port the destination port
+     * @return a new destination
+     */
+    public HttpDestination newHttpDestination(String scheme, String host, int port);
+}
@@ -18,47 +18,47 @@
 
 package org.eclipse.jetty.client;
 
-import java.io.UnsupportedEncodingException;
-import java.net.HttpCookie;
-import java.net.URLEncoder;
-import java.nio.charset.UnsupportedCharsetException;
+import java.nio.channels.AsynchronousCloseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicMarkableReference;
 
-import org.eclipse.jetty.client.api.Authentication;
 import org.eclipse.jetty.client.api.Connection;
-import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
-import org.eclipse.jetty.client.util.StringContentProvider;
-import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
-import org.eclipse.jetty.http.HttpHeaderValue;
-import org.eclipse.jetty.http.HttpMethod;
-import org.eclipse.jetty.http.HttpVersion;
-import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.EndPoint;
-import org.eclipse.jetty.util.Fields;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
-public class HttpConnection extends AbstractConnection implements Connection
+public class HttpConnection extends AbstractConnection implements Connection, HttpChannel
 {
     private static final Logger LOG = Log.getLogger(HttpConnection.class);
-    private static final HttpField CHUNKED_FIELD = new HttpField(HttpHeader.TRANSFER_ENCODING, HttpHeaderValue.CHUNKED);
 
-    private final AtomicReference<HttpExchange> exchange = new AtomicReference<>();
+    // The exchanges whose responses are expected, in the order their requests have been sent
+    private final Queue<HttpExchange> exchanges = new ConcurrentLinkedQueue<>();
+    // The pipelined exchanges that have been aborted, whose responses are discarded
+    private final Set<HttpExchange> aborted = Collections.newSetFromMap(new ConcurrentHashMap<HttpExchange, Boolean>());
     private final HttpClient client;
     private final HttpDestination destination;
     private final HttpSender sender;
     private final HttpReceiver receiver;
+    private volatile HttpExchange sending;
+    private boolean closed;
+    // Whether a request was aborted while being sent, so that no more requests can be sent
+    private boolean retired;
     private long idleTimeout;
+    private volatile long handshakeTime;
 
     public HttpConnection(HttpClient client, EndPoint endPoint, HttpDestination destination)
     {
@@ -124,178 +124,129 @@ public class HttpConnection extends AbstractConnection implements Connection
     }
 
     public void send(HttpExchange exchange)
+    {
+        // Associate the exchange to the connection
+        associate(exchange);
+        send(exchange, true);
+    }
+
+    private void send(HttpExchange exchange, boolean first)
     {
         Request request = exchange.getRequest();
-        normalizeRequest(request);
+        destination.normalizeRequest(request);
 
-        // Save the old idle timeout to restore it
         EndPoint endPoint = getEndPoint();
-        idleTimeout = endPoint.getIdleTimeout();
+        // Save the old idle timeout to restore it, unless other
+        // pipelined requests already changed it
+        if (first)
+            idleTimeout = endPoint.getIdleTimeout();
         endPoint.setIdleTimeout(request.getIdleTimeout());
 
-        // Associate the exchange to the connection
-        associate(exchange);
-
         sender.send(exchange);
     }
 
-    private void normalizeRequest(Request request)
+    /**
+     * @return the exchange whose response is expected next on this connection
+     */
+    public HttpExchange getExchange()
     {
-        if (request.getMethod() == null)
-            request.method(HttpMethod.GET);
-
-        if (request.getVersion() == null)
-            request.version(HttpVersion.HTTP_1_1);
-
-        if (request.getIdleTimeout() <= 0)
-            request.idleTimeout(client.getIdleTimeout(), TimeUnit.MILLISECONDS);
-
-        HttpMethod method = request.getMethod();
-        HttpVersion version = request.getVersion();
-        HttpFields headers = request.getHeaders();
-        ContentProvider content = request.getContent();
-
-        if (request.getAgent() == null)
-            headers.put(client.getUserAgentField());
-
-        // Make sure the path is there
-        String path = request.getPath();
-        if (path.trim().length() == 0)
-        {
-            path = "/";
-            request.path(path);
-        }
-        if (destination.isProxied() && HttpMethod.CONNECT != request.getMethod())
-        {
-            path = request.getURI().toString();
-            request.path(path);
-        }
-
-        Fields fields = request.getParams();
-        if (!fields.isEmpty())
-        {
-            StringBuilder params = new StringBuilder();
-            for (Iterator<Fields.Field> fieldIterator = fields.iterator(); fieldIterator.hasNext();)
-            {
-                Fields.Field field = fieldIterator.next();
-                String[] values = field.values();
-                for (int i = 0; i < values.length; ++i)
-                {
-                    if (i > 0)
-                        params.append("&");
-                    params.append(field.name()).append("=");
-                    params.append(urlEncode(values[i]));
-                }
-                if (fieldIterator.hasNext())
-                    params.append("&");
-            }
-
-            // Behave as a GET, adding the params to the path, if it's a POST with some content
-            if (method == HttpMethod.POST && request.getContent() != null)
-                method = HttpMethod.GET;
-
-            switch (method)
-            {
-                case GET:
-                {
-                    path += "?";
-                    path += params.toString();
-                    request.path(path);
-                    break;
-                }
-                case POST:
-                {
-                    request.header(HttpHeader.CONTENT_TYPE.asString(), MimeTypes.Type.FORM_ENCODED.asString());
-                    request.content(new StringContentProvider(params.toString()));
-                    break;
-                }
-            }
-        }
-
-        // If we are HTTP 1.1, add the Host header
-        if (version.getVersion() > 10)
-        {
-            if (!headers.containsKey(HttpHeader.HOST.asString()))
-                headers.put(getDestination().getHostField());
-        }
+        return exchanges.peek();
+    }
 
-        // Add content headers
-        if (content != null)
-        {
-            long contentLength = content.getLength();
-            if (contentLength >= 0)
-            {
-                if (!headers.containsKey(HttpHeader.CONTENT_LENGTH.asString()))
-                    headers.put(HttpHeader.CONTENT_LENGTH, String.valueOf(contentLength));
-            }
-            else
-            {
-                if (!headers.containsKey(HttpHeader.TRANSFER_ENCODING.asString()))
-                    headers.put(CHUNKED_FIELD);
-            }
-        }
+    /**
+     * @return the exchange whose request is being sent on this connection
+     */
+    public HttpExchange getSendingExchange()
+    {
+        return sending;
+    }
 
-        // Cookies
-        List<HttpCookie> cookies = client.getCookieStore().get(request.getURI());
-        StringBuilder cookieString = null;
-        for (int i = 0; i < cookies.size(); ++i)
+    protected void associate(HttpExchange exchange)
+    {
+        synchronized (this)
         {
-            if (cookieString == null)
-                cookieString = new StringBuilder();
-            if (i > 0)
-                cookieString.append("; ");
-            HttpCookie cookie = cookies.get(i);
-            cookieString.append(cookie.getName()).append("=").append(cookie.getValue());
+            if (sending != null || !exchanges.isEmpty())
+                throw new IllegalStateException("Connection " + this + " is busy");
+            sending = exchange;
+            exchanges.offer(exchange);
         }
-        if (cookieString != null)
-            request.header(HttpHeader.COOKIE.asString(), cookieString.toString());
-
-        // Authorization
-        Authentication.Result authnResult = client.getAuthenticationStore().findAuthenticationResult(request.getURI());
-        if (authnResult != null)
-            authnResult.apply(request);
+        exchange.setChannel(this);
+        LOG.debug("{} associated to {}", exchange, this);
+    }
 
-        if (!headers.containsKey(HttpHeader.ACCEPT_ENCODING.asString()))
-        {
-            HttpField acceptEncodingField = client.getAcceptEncodingField();
-            if (acceptEncodingField != null)
-                headers.put(acceptEncodingField);
-        }
+    /**
+     * @param nanoTime the {@link System#nanoTime()} at which the TLS handshake of this connection started
+     */
+    public void handshakeStarted(long nanoTime)
+    {
+        this.handshakeTime = nanoTime;
     }
 
-    private String urlEncode(String value)
+    /**
+     * <p>Called when the TLS handshake of this connection completes, to record its latency.</p>
+     * <p>Only the initial handshake is recorded, not the renegotiations.</p>
+     */
+    public void handshakeComplete()
     {
-        String encoding = "UTF-8";
-        try
-        {
-            return URLEncoder.encode(value, encoding);
-        }
-        catch (UnsupportedEncodingException e)
+        long handshakeTime = this.handshakeTime;
+        if (handshakeTime != 0)
         {
-            throw new UnsupportedCharsetException(encoding);
+            this.handshakeTime = 0;
+            destination.getLatencyStatistics().record(LatencyStatistics.Phase.TLS, System.nanoTime() - handshakeTime);
         }
     }
 
-    public HttpExchange getExchange()
+    /**
+     * <p>Called by {@link HttpSender} when the request of the given exchange has been
+     * sent but its response has not yet been received, so that further requests may
+     * be pipelined on this connection.</p>
+     *
+     * @param exchange the exchange whose request has been sent
+     */
+    protected void sent(HttpExchange exchange)
     {
-        return exchange.get();
+        boolean pipeline;
+        synchronized (this)
+        {
+            pipeline = sending == exchange;
+            if (pipeline)
+                sending = null;
+        }
+        if (pipeline)
+            pipeline();
     }
 
-    protected void associate(HttpExchange exchange)
+    /**
+     * <p>Sends queued requests of the destination on this connection while their
+     * responses are not yet received, up to {@link HttpDestination#getMaxRequestsPipelined()}
+     * requests outstanding at once.</p>
+     * <p>Only requests that can be pipelined are sent, see {@link HttpDestination#isPipelinable(Request)};
+     * requests are sent one after the other, and the next one is pipelined only after
+     * the previous one has been completely sent.</p>
+     *
+     * @return whether a request has been pipelined
+     */
+    protected boolean pipeline()
     {
-        if (!this.exchange.compareAndSet(null, exchange))
-            throw new UnsupportedOperationException("Pipelined requests not supported");
-        exchange.setConnection(this);
-        LOG.debug("{} associated to {}", exchange, this);
-    }
+        int maxRequestsPipelined = destination.getMaxRequestsPipelined();
+        if (maxRequestsPipelined <= 1)
+            return false;
 
-    protected HttpExchange disassociate()
-    {
-        HttpExchange exchange = this.exchange.getAndSet(null);
-        if (exchange != null)
-            exchange.setConnection(null);
-        LOG.debug("{} disassociated from {}", exchange, this);
-        return exchange;
+        HttpExchange exchange;
+        synchronized (this)
+        {
+            if (closed || retired || sending != null || exchanges.isEmpty() || exchanges.size() >= maxRequestsPipelined)
+                return false;
+            exchange = destination.pollPipelinable();
+            if (exchange == null)
+                return false;
+            sending = exchange;
+            exchanges.offer(exchange);
+        }
+        exchange.setChannel(this);
+        LOG.debug("{} pipelined to {}", exchange, this);
+        send(exchange, false);
+        return true;
     }
 
     @Override
@@ -321,15 +272,25 @@ public class HttpConnection extends AbstractConnection implements Connection
 
     public void complete(HttpExchange exchange, boolean success)
     {
-        HttpExchange existing = disassociate();
-        if (existing == exchange)
-        {
-            exchange.awaitTermination();
+        // An aborted pipelined exchange stays in the pipeline until its response is discarded
+        if (aborted.contains(exchange))
+            return;
 
-            // Restore idle timeout
-            getEndPoint().setIdleTimeout(idleTimeout);
+        boolean removed;
+        synchronized (this)
+        {
+            removed = exchanges.remove(exchange);
+            if (sending == exchange)
+                sending = null;
+        }
 
+        if (removed)
+        {
+            exchange.setChannel(null);
             LOG.debug("{} disassociated from {}", exchange, this);
+
+            exchange.awaitTermination();
+
             if (success)
             {
                 HttpFields responseHeaders = exchange.getResponse().getHeaders();
@@ -345,14 +306,18 @@ public class HttpConnection extends AbstractConnection implements Connection
                         }
                     }
                 }
-                destination.release(this);
+
+                next();
             }
             else
             {
-                close();
+                Throwable failure = exchange.getResponseFailure();
+                if (failure == null)
+                    failure = exchange.getRequestFailure();
+                close(failure != null ? failure : new AsynchronousCloseException());
             }
         }
-        else if (existing == null)
+        else
         {
             // It is possible that the exchange has already been disassociated,
             // for example if the connection idle timeouts: this will fail
@@ -361,21 +326,112 @@ public class HttpConnection extends AbstractConnection implements Connection
             // and will arrive here without an exchange being present.
             // We just ignore this fact, as the exchange has already been processed
         }
-        else
+    }
+
+    @Override
+    public boolean abort(HttpExchange exchange, Throwable cause)
+    {
+        boolean sending = exchange == getSendingExchange();
+        if (exchange == getExchange())
         {
-            throw new IllegalStateException();
+            // We want the return value to be that of the response
+            // because if the response has already successfully
+            // arrived then we failed to abort the exchange
+            if (sending)
+                sender.abort(cause);
+            return receiver.abort(cause);
         }
+
+        synchronized (this)
+        {
+            if (!exchanges.contains(exchange) || !aborted.add(exchange))
+                return false;
+            // A request aborted while being sent may be partially written,
+            // so no other request can follow it on this connection
+            if (sending)
+                retired = true;
+        }
+
+        // The response of a pipelined exchange arrives after the responses
+        // of the exchanges before it: the exchange is failed now, and its
+        // response is discarded when it arrives, without closing the connection
+        if (sending)
+        {
+            sender.abort(cause);
+            synchronized (this)
+            {
+                if (this.sending == exchange)
+                    this.sending = null;
+            }
+        }
+        failResponse(exchange, cause);
+        LOG.debug("{} aborted in the pipeline of {}", exchange, this);
+        return true;
     }
 
-    public boolean abort(Throwable cause)
+    /**
+     * @param exchange the exchange to test
+     * @return whether the given exchange is a pipelined exchange that has been aborted,
+     * whose response is discarded
+     */
+    protected boolean isAborted(HttpExchange exchange)
     {
-        // We want the return value to be that of the response
-        // because if the response has already successfully
-        // arrived then we failed to abort the exchange
-        sender.abort(cause);
-        return receiver.abort(cause);
+        return aborted.contains(exchange);
     }
 
+    /**
+     * <p>Called by {@link HttpReceiver} when the response of an aborted pipelined exchange has been discarded.</p>
+     *
+     * @param exchange the aborted exchange
+     */
+    protected void discarded(HttpExchange exchange)
+    {
+        synchronized (this)
+        {
+            exchanges.remove(exchange);
+        }
+        aborted.remove(exchange);
+        exchange.setChannel(null);
+        LOG.debug("{} discarded from {}", exchange, this);
+        next();
+    }
+
+    /**
+     * <p>Continues after a response has been received or discarded: this connection is released
+     * to the destination when no more responses are expected, otherwise another request may be
+     * pipelined.</p>
+     */
+    private void next()
+    {
+        boolean idle;
+        boolean drained;
+        synchronized (this)
+        {
+            idle = sending == null && exchanges.isEmpty();
+            drained = retired && aborted.containsAll(exchanges);
+        }
+
+        if (retired)
+        {
+            // Only close once the responses that are still expected have arrived
+            if (idle || drained)
+                close();
+        }
+        else if (idle)
+        {
+            // Restore idle timeout
+            getEndPoint().setIdleTimeout(idleTimeout);
+            destination.release(this);
+        }
+        else
+        {
+            // Other pipelined responses are expected, and
+            // there may be room for another pipelined request
+            pipeline();
+        }
+    }
+
+    @Override
     public void proceed(boolean proceed)
     {
         sender.proceed(proceed);
@@ -383,12 +439,75 @@ public class HttpConnection extends AbstractConnection implements Connection
 
     @Override
     public void close()
+    {
+        close(new AsynchronousCloseException());
+    }
+
+    private void close(Throwable failure)
     {
         destination.remove(this);
         getEndPoint().shutdownOutput();
         LOG.debug("{} oshut", this);
         getEndPoint().close();
         LOG.debug("{} closed", this);
+        receiver.close(failure);
+        failPipelined(failure);
+    }
+
+    /**
+     * <p>Fails the pipelined exchanges whose requests have been sent, but whose responses
+     * will never be received because this connection is closed.</p>
+     * <p>The exchange whose response is being received is left to {@link HttpReceiver},
+     * and the request of the exchange being sent is left to {@link HttpSender}.
+     * The requests are not sent again, since they may not be idempotent.</p>
+     *
+     * @param failure the cause of the close
+     */
+    private void failPipelined(Throwable failure)
+    {
+        List<HttpExchange> pipelined = new ArrayList<>();
+        synchronized (this)
+        {
+            closed = true;
+            if (destination.getMaxRequestsPipelined() <= 1)
+                return;
+
+            Iterator<HttpExchange> iterator = exchanges.iterator();
+            if (iterator.hasNext() && receiver.isReceiving())
+                iterator.next();
+            while (iterator.hasNext())
+            {
+                pipelined.add(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        for (HttpExchange exchange : pipelined)
+        {
+            aborted.remove(exchange);
+            exchange.setChannel(null);
+            Throwable cause = exchange.getRequest().getAbortCause();
+            failResponse(exchange, cause != null ? cause : failure);
+        }
+    }
+
+    private void failResponse(HttpExchange exchange, Throwable failure)
+    {
+        AtomicMarkableReference<Result> completion = exchange.responseComplete(failure);
+        if (!completion.isMarked())
+            return;
+
+        exchange.terminateResponse();
+
+        List<Response.ResponseListener> listeners = exchange.getConversation().getResponseListeners();
+        ResponseNotifier notifier = destination.getResponseNotifier();
+        notifier.notifyFailure(listeners, exchange.getResponse(), failure);
+        LOG.debug("Failed {} {}", exchange.getResponse(), failure);
+
+        // If the request is still being sent, HttpSender notifies the completion
+        Result result = completion.getReference();
+        if (result != null)
+            notifier.notifyComplete(listeners, result);
     }
 
     @Override
@@ -19,26 +19,41 @@
 package org.eclipse.jetty.client;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpCookie;
+import java.net.URLEncoder;
 import java.nio.channels.AsynchronousCloseException;
-import java.util.ArrayList;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.jetty.client.api.Authentication;
 import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.ProxyConfiguration;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.Fields;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.Dumpable;
@@ -48,19 +63,20 @@ import org.eclipse.jetty.util.log.Logger;
 public class HttpDestination implements Destination, AutoCloseable, Dumpable
 {
     private static final Logger LOG = Log.getLogger(HttpDestination.class);
+    private static final HttpField CHUNKED_FIELD = new HttpField(HttpHeader.TRANSFER_ENCODING, HttpHeaderValue.CHUNKED);
 
-    private final AtomicInteger connectionCount = new AtomicInteger();
     private final HttpClient client;
     private final String scheme;
     private final String host;
     private final Address address;
-    private final Queue<HttpExchange> exchanges;
-    private final BlockingQueue<Connection> idleConnections;
-    private final BlockingQueue<Connection> activeConnections;
+    private final BlockingArrayQueue<HttpExchange> exchanges;
+    private final ConnectionPool connectionPool;
+    private final LatencyStatistics latencyStatistics = new LatencyStatistics();
     private final RequestNotifier requestNotifier;
     private final ResponseNotifier responseNotifier;
     private final Address proxyAddress;
     private final HttpField hostField;
+    private volatile int maxRequestsPipelined = 1;
 
     public HttpDestination(HttpClient client, String scheme, String host, int port)
     {
@@ -73,10 +89,7 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         int capacity = Math.min(32, maxRequestsQueued);
         this.exchanges = new BlockingArrayQueue<>(capacity, capacity, maxRequestsQueued);
 
-        int maxConnections = client.getMaxConnectionsPerDestination();
-        capacity = Math.min(8, maxConnections);
-        this.idleConnections = new BlockingArrayQueue<>(capacity, capacity, maxConnections);
-        this.activeConnections = new BlockingArrayQueue<>(capacity, capacity, maxConnections);
+        this.connectionPool = newConnectionPool(client.getMaxConnectionsPerDestination());
 
         this.requestNotifier = new RequestNotifier(client);
         this.responseNotifier = new ResponseNotifier(client);
@@ -88,14 +101,73 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         hostField = new HttpField(HttpHeader.HOST, host + ":" + port);
     }
 
-    protected BlockingQueue<Connection> getIdleConnections()
+    public HttpClient getHttpClient()
     {
-        return idleConnections;
+        return client;
     }
 
-    protected BlockingQueue<Connection> getActiveConnections()
+    protected Queue<HttpExchange> getHttpExchanges()
     {
-        return activeConnections;
+        return exchanges;
+    }
+
+    /**
+     * @param maxConnections the max number of connections to this destination
+     * @return a new pool for the connections to this destination, or null if this destination does not pool connections
+     */
+    protected ConnectionPool newConnectionPool(int maxConnections)
+    {
+        return new ConnectionPool(this, maxConnections, new Promise<Connection>()
+        {
+            @Override
+            public void succeeded(Connection connection)
+            {
+                process(connection, true);
+            }
+
+            @Override
+            public void failed(final Throwable x)
+            {
+                client.getExecutor().execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        abort(x);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the pool of the connections to this destination, or null if this destination does not pool connections
+     */
+    public ConnectionPool getConnectionPool()
+    {
+        return connectionPool;
+    }
+
+    protected Deque<Connection> getIdleConnections()
+    {
+        if (connectionPool == null)
+            return new ArrayDeque<>();
+        return connectionPool.getIdleConnections();
+    }
+
+    protected Set<Connection> getActiveConnections()
+    {
+        if (connectionPool == null)
+            return new HashSet<>();
+        return connectionPool.getActiveConnections();
+    }
+
+    /**
+     * @return the latency histograms of the phases of the exchanges of this destination
+     */
+    public LatencyStatistics getLatencyStatistics()
+    {
+        return latencyStatistics;
     }
 
     public RequestNotifier getRequestNotifier()
@@ -143,6 +215,202 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         return hostField;
     }
 
+    /**
+     * @return the max number of requests that may be outstanding at once on a connection
+     * @see #setMaxRequestsPipelined(int)
+     */
+    public int getMaxRequestsPipelined()
+    {
+        return maxRequestsPipelined;
+    }
+
+    /**
+     * <p>Sets the max number of requests that may be sent on a connection before
+     * their responses are received (HTTP/1.1 pipelining).</p>
+     * <p>When all connections are busy, queued requests that can be pipelined (see
+     * {@link #isPipelinable(Request)}) are sent on the busy connections rather than
+     * waiting for a connection to be released.
+     * Responses are received in the same order the requests have been sent; if the
+     * connection fails, the requests whose responses have not been received are failed.
+     * Requests still queued are sent on another connection.</p>
+     * <p>Pipelining is disabled by default (a value of 1), as it should only be used
+     * with servers known to support it.</p>
+     *
+     * @param maxRequestsPipelined the max number of requests outstanding on a connection
+     */
+    public void setMaxRequestsPipelined(int maxRequestsPipelined)
+    {
+        this.maxRequestsPipelined = maxRequestsPipelined;
+    }
+
+    /**
+     * <p>Returns whether the given request can be pipelined: only idempotent HTTP/1.1
+     * requests without content and without expectations are pipelined.</p>
+     *
+     * @param request the request to check
+     * @return whether the request can be pipelined
+     */
+    protected boolean isPipelinable(Request request)
+    {
+        // Null method and version default to GET and HTTP/1.1, see normalizeRequest()
+        HttpMethod method = request.getMethod();
+        if (method != null && method != HttpMethod.GET && method != HttpMethod.HEAD)
+            return false;
+        HttpVersion version = request.getVersion();
+        if (version != null && version != HttpVersion.HTTP_1_1)
+            return false;
+        if (request.getContent() != null)
+            return false;
+        HttpFields headers = request.getHeaders();
+        if (headers.containsKey(HttpHeader.EXPECT.asString()))
+            return false;
+        return !headers.contains(HttpHeader.CONNECTION, HttpHeaderValue.CLOSE.asString());
+    }
+
+    /**
+     * <p>Completes the request with the defaults and the headers that do not depend
+     * on the transport: method, version, path and parameters, content headers,
+     * cookies, authorization and accepted encodings.</p>
+     *
+     * @param request the request to normalize before it is sent
+     */
+    protected void normalizeRequest(Request request)
+    {
+        if (request.getMethod() == null)
+            request.method(HttpMethod.GET);
+
+        if (request.getVersion() == null)
+            request.version(HttpVersion.HTTP_1_1);
+
+        if (request.getIdleTimeout() <= 0)
+            request.idleTimeout(client.getIdleTimeout(), TimeUnit.MILLISECONDS);
+
+        HttpMethod method = request.getMethod();
+        HttpVersion version = request.getVersion();
+        HttpFields headers = request.getHeaders();
+        ContentProvider content = request.getContent();
+
+        if (request.getAgent() == null)
+            headers.put(client.getUserAgentField());
+
+        // Make sure the path is there
+        String path = request.getPath();
+        if (path.trim().length() == 0)
+        {
+            path = "/";
+            request.path(path);
+        }
+        if (isProxied() && HttpMethod.CONNECT != request.getMethod())
+        {
+            path = request.getURI().toString();
+            request.path(path);
+        }
+
+        Fields fields = request.getParams();
+        if (!fields.isEmpty())
+        {
+            StringBuilder params = new StringBuilder();
+            for (Iterator<Fields.Field> fieldIterator = fields.iterator(); fieldIterator.hasNext();)
+            {
+                Fields.Field field = fieldIterator.next();
+                String[] values = field.values();
+                for (int i = 0; i < values.length; ++i)
+                {
+                    if (i > 0)
+                        params.append("&");
+                    params.append(field.name()).append("=");
+                    params.append(urlEncode(values[i]));
+                }
+                if (fieldIterator.hasNext())
+                    params.append("&");
+            }
+
+            // Behave as a GET, adding the params to the path, if it's a POST with some content
+            if (method == HttpMethod.POST && request.getContent() != null)
+                method = HttpMethod.GET;
+
+            switch (method)
+            {
+                case GET:
+                {
+                    path += "?";
+                    path += params.toString();
+                    request.path(path);
+                    break;
+                }
+                case POST:
+                {
+                    request.header(HttpHeader.CONTENT_TYPE.asString(), MimeTypes.Type.FORM_ENCODED.asString());
+                    request.content(new StringContentProvider(params.toString()));
+                    break;
+                }
+            }
+        }
+
+        // If we are HTTP 1.1, add the Host header
+        if (version.getVersion() > 10)
+        {
+            if (!headers.containsKey(HttpHeader.HOST.asString()))
+                headers.put(getHostField());
+        }
+
+        // Add content headers
+        if (content != null)
+        {
+            long contentLength = content.getLength();
+            if (contentLength >= 0)
+            {
+                if (!headers.containsKey(HttpHeader.CONTENT_LENGTH.asString()))
+                    headers.put(HttpHeader.CONTENT_LENGTH, String.valueOf(contentLength));
+            }
+            else
+            {
+                if (!headers.containsKey(HttpHeader.TRANSFER_ENCODING.asString()))
+                    headers.put(CHUNKED_FIELD);
+            }
+        }
+
+        // Cookies
+        List<HttpCookie> cookies = client.getCookieStore().get(request.getURI());
+        StringBuilder cookieString = null;
+        for (int i = 0; i < cookies.size(); ++i)
+        {
+            if (cookieString == null)
+                cookieString = new StringBuilder();
+            if (i > 0)
+                cookieString.append("; ");
+            HttpCookie cookie = cookies.get(i);
+            cookieString.append(cookie.getName()).append("=").append(cookie.getValue());
+        }
+        if (cookieString != null)
+            request.header(HttpHeader.COOKIE.asString(), cookieString.toString());
+
+        // Authorization
+        Authentication.Result authnResult = client.getAuthenticationStore().findAuthenticationResult(request.getURI());
+        if (authnResult != null)
+            authnResult.apply(request);
+
+        if (!headers.containsKey(HttpHeader.ACCEPT_ENCODING.asString()))
+        {
+            HttpField acceptEncodingField = client.getAcceptEncodingField();
+            if (acceptEncodingField != null)
+                headers.put(acceptEncodingField);
+        }
+    }
+
+    private String urlEncode(String value)
+    {
+        String encoding = "UTF-8";
+        try
+        {
+            return URLEncoder.encode(value, encoding);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new UnsupportedCharsetException(encoding);
+        }
+    }
+
     public void send(Request request, List<Response.ResponseListener> listeners)
     {
         if (!scheme.equals(request.getScheme()))
@@ -153,8 +421,7 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         if (port >= 0 && getPort() != port)
             throw new IllegalArgumentException("Invalid request port " + port + " for destination " + this);
 
-        HttpConversation conversation = client.getConversation(request.getConversationID(), true);
-        HttpExchange exchange = new HttpExchange(conversation, this, request, listeners);
+        HttpExchange exchange = newHttpExchange(request, listeners);
 
         if (client.isRunning())
         {
@@ -171,6 +438,8 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
                     Connection connection = acquire();
                     if (connection != null)
                         process(connection, false);
+                    else
+                        pipeline();
                 }
             }
             else
@@ -184,6 +453,12 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         }
     }
 
+    protected HttpExchange newHttpExchange(Request request, List<Response.ResponseListener> listeners)
+    {
+        HttpConversation conversation = client.getConversation(request.getConversationID(), true);
+        return new HttpExchange(conversation, this, request, listeners);
+    }
+
     public void newConnection(Promise<Connection> promise)
     {
         createConnection(new ProxyPromise(promise));
@@ -196,74 +471,48 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
 
     protected Connection acquire()
     {
-        Connection result = idleConnections.poll();
-        if (result != null)
-            return result;
-
-        final int maxConnections = client.getMaxConnectionsPerDestination();
-        while (true)
-        {
-            int current = connectionCount.get();
-            final int next = current + 1;
-
-            if (next > maxConnections)
-            {
-                LOG.debug("Max connections {} reached for {}", current, this);
-                // Try again the idle connections
-                return idleConnections.poll();
-            }
-
-            if (connectionCount.compareAndSet(current, next))
-            {
-                LOG.debug("Creating connection {}/{} for {}", next, maxConnections, this);
-
-                // This is the promise that is being called when a connection (eventually proxied) succeeds or fails.
-                Promise<Connection> promise = new Promise<Connection>()
-                {
-                    @Override
-                    public void succeeded(Connection connection)
-                    {
-                        process(connection, true);
-                    }
-
-                    @Override
-                    public void failed(final Throwable x)
-                    {
-                        client.getExecutor().execute(new Runnable()
-                        {
-                            @Override
-                            public void run()
-                            {
-                                abort(x);
-                            }
-                        });
-                    }
-                };
+        return connectionPool.acquire();
+    }
 
-                // Create a new connection, and pass a ProxyPromise to establish a proxy tunnel, if needed.
-                // Differently from the case where the connection is created explicitly by applications, here
-                // we need to do a bit more logging and keep track of the connection count in case of failures.
-                createConnection(new ProxyPromise(promise)
-                {
-                    @Override
-                    public void succeeded(Connection connection)
-                    {
-                        LOG.debug("Created connection {}/{} {} for {}", next, maxConnections, connection, HttpDestination.this);
-                        super.succeeded(connection);
-                    }
+    /**
+     * <p>Pipelines the queued requests on the active connections, if pipelining is enabled.</p>
+     *
+     * @see #setMaxRequestsPipelined(int)
+     */
+    protected void pipeline()
+    {
+        if (getMaxRequestsPipelined() <= 1)
+            return;
 
-                    @Override
-                    public void failed(Throwable x)
-                    {
-                        LOG.debug("Connection failed {} for {}", x, HttpDestination.this);
-                        connectionCount.decrementAndGet();
-                        super.failed(x);
-                    }
-                });
+        for (Connection connection : getActiveConnections())
+        {
+            if (exchanges.isEmpty())
+                break;
+            if (connection instanceof HttpConnection)
+                ((HttpConnection)connection).pipeline();
+        }
+    }
 
-                // Try again the idle connections
-                return idleConnections.poll();
-            }
+    /**
+     * @return the exchange at the head of the queue, if it can be pipelined, or null
+     */
+    protected HttpExchange pollPipelinable()
+    {
+        while (true)
+        {
+            HttpExchange exchange = exchanges.peek();
+            if (exchange == null)
+                return null;
+            Request request = exchange.getRequest();
+            if (!isPipelinable(request))
+                return null;
+            if (!exchanges.remove(exchange))
+                continue;
+            Throwable cause = request.getAbortCause();
+            if (cause == null)
+                return exchange;
+            abort(exchange, cause);
+            LOG.debug("Aborted before pipelining {}: {}", exchange, cause);
         }
     }
 
@@ -293,11 +542,7 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         if (exchange == null)
         {
             LOG.debug("{} idle", httpConnection);
-            if (!idleConnections.offer(httpConnection))
-            {
-                LOG.debug("{} idle overflow");
-                httpConnection.close();
-            }
+            connectionPool.idle(httpConnection);
             if (!client.isRunning())
             {
                 LOG.debug("{} is stopping", client);
@@ -307,6 +552,9 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         }
         else
         {
+            long waited = System.nanoTime() - exchange.getQueueTime();
+            connectionPool.waited(waited);
+            latencyStatistics.record(LatencyStatistics.Phase.QUEUE, waited);
             final Request request = exchange.getRequest();
             Throwable cause = request.getAbortCause();
             if (cause != null)
@@ -317,10 +565,7 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
             else
             {
                 LOG.debug("{} active", httpConnection);
-                if (!activeConnections.offer(httpConnection))
-                {
-                    LOG.warn("{} active overflow");
-                }
+                connectionPool.active(httpConnection);
                 if (dispatch)
                 {
                     client.getExecutor().execute(new Runnable()
@@ -345,7 +590,7 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
         LOG.debug("{} released", connection);
         if (client.isRunning())
         {
-            boolean removed = activeConnections.remove(connection);
+            boolean removed = connectionPool.release(connection);
             if (removed)
                 process(connection, false);
             else
@@ -361,13 +606,7 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
 
     public void remove(Connection connection)
     {
-        boolean removed = activeConnections.remove(connection);
-        removed |= idleConnections.remove(connection);
-        if (removed)
-        {
-            int open = connectionCount.decrementAndGet();
-            LOG.debug("Removed connection {} for {} - open: {}", connection, this, open);
-        }
+        connectionPool.remove(connection);
 
         // We need to execute queued requests even if this connection failed.
         // We may create a connection that is not needed, but it will eventually
@@ -382,19 +621,11 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
 
     public void close()
     {
-        for (Connection connection : idleConnections)
-            connection.close();
-        idleConnections.clear();
-
-        // A bit drastic, but we cannot wait for all requests to complete
-        for (Connection connection : activeConnections)
-            connection.close();
-        activeConnections.clear();
+        if (connectionPool != null)
+            connectionPool.close();
 
         abort(new AsynchronousCloseException());
 
-        connectionCount.set(0);
-
         LOG.debug("Closed {}", this);
     }
 
@@ -423,12 +654,7 @@ public class HttpDestination implements Destination, AutoCloseable, Dumpable
     public void dump(Appendable out, String indent) throws IOException
     {
         ContainerLifeCycle.dumpObject(out, this + " - requests queued: " + exchanges.size());
-        List<String> connections = new ArrayList<>();
-        for (Connection connection : idleConnections)
-            connections.add(connection + " - IDLE");
-        for (Connection connection : activeConnections)
-            connections.add(connection + " - ACTIVE");
-        ContainerLifeCycle.dump(out, indent, connections);
+        ContainerLifeCycle.dump(out, indent, Arrays.asList(connectionPool, latencyStatistics));
     }
 
     @Override
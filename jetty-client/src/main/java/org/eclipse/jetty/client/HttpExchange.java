@@ -40,7 +40,10 @@ public class HttpExchange
     private final Request request;
     private final List<Response.ResponseListener> listeners;
     private final HttpResponse response;
-    private volatile HttpConnection connection;
+    private final long queueTime = System.nanoTime();
+    private volatile long requestTime;
+    private volatile long responseTime;
+    private volatile HttpChannel channel;
     private volatile Throwable requestFailure;
     private volatile Throwable responseFailure;
 
@@ -85,16 +88,51 @@ public class HttpExchange
         return responseFailure;
     }
 
-    public void setConnection(HttpConnection connection)
+    /**
+     * @return the {@link System#nanoTime()} at which this exchange was created, before being queued
+     */
+    public long getQueueTime()
+    {
+        return queueTime;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the request was sent, or 0 if it has not been sent yet
+     */
+    public long getRequestTime()
+    {
+        return requestTime;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the response began, or 0 if it has not begun yet
+     */
+    public long getResponseTime()
+    {
+        return responseTime;
+    }
+
+    /**
+     * <p>Marks the beginning of the response, to compute the time to first byte.</p>
+     */
+    public void responseBegin()
+    {
+        responseTime = System.nanoTime();
+    }
+
+    public void setChannel(HttpChannel channel)
     {
-        this.connection = connection;
+        this.channel = channel;
     }
 
     public AtomicMarkableReference<Result> requestComplete(Throwable failure)
     {
         int requestSuccess = 0b0011;
         int requestFailure = 0b0001;
-        return complete(failure == null ? requestSuccess : requestFailure, failure);
+        AtomicMarkableReference<Result> completion = complete(failure == null ? requestSuccess : requestFailure, failure);
+        if (failure == null && completion.isMarked())
+            requestTime = System.nanoTime();
+        return completion;
     }
 
     public AtomicMarkableReference<Result> responseComplete(Throwable failure)
@@ -102,7 +140,10 @@ public class HttpExchange
         if (failure == null)
         {
             int responseSuccess = 0b1100;
-            return complete(responseSuccess, failure);
+            AtomicMarkableReference<Result> completion = complete(responseSuccess, failure);
+            if (completion.isMarked())
+                destination.getLatencyStatistics().record(this);
+            return completion;
         }
         else
         {
@@ -181,12 +222,12 @@ public class HttpExchange
         }
         else
         {
-            HttpConnection connection = this.connection;
-            // If there is no connection, this exchange is already completed
-            if (connection == null)
+            HttpChannel channel = this.channel;
+            // If there is no channel, this exchange is already completed
+            if (channel == null)
                 return false;
 
-            boolean aborted = connection.abort(cause);
+            boolean aborted = channel.abort(this, cause);
             LOG.debug("Aborted while active ({}) {}: {}", aborted, this, cause);
             return aborted;
         }
@@ -202,9 +243,9 @@ public class HttpExchange
 
     public void proceed(boolean proceed)
     {
-        HttpConnection connection = this.connection;
-        if (connection != null)
-            connection.proceed(proceed);
+        HttpChannel channel = this.channel;
+        if (channel != null)
+            channel.proceed(proceed);
     }
 
     public void terminateRequest()
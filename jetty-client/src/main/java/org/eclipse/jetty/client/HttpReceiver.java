@@ -41,6 +41,8 @@ import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.component.Destroyable;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -51,7 +53,10 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
     private final HttpParser parser = new HttpParser(this);
     private final HttpConnection connection;
-    private ContentDecoder decoder;
+    private final AtomicReference<ContentDecoder> decoder = new AtomicReference<>();
+    private ByteBuffer buffer;
+    private ContentCallback callback;
+    private volatile ContentCallback paused;
 
     public HttpReceiver(HttpConnection connection)
     {
@@ -63,23 +68,38 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
         EndPoint endPoint = connection.getEndPoint();
         HttpClient client = connection.getHttpClient();
         ByteBufferPool bufferPool = client.getByteBufferPool();
-        ByteBuffer buffer = bufferPool.acquire(client.getResponseBufferSize(), true);
+        // Resuming after content has been consumed asynchronously
+        // continues with the buffer that was being parsed
+        ByteBuffer buffer = this.buffer;
+        boolean resume = buffer != null;
+        if (!resume)
+        {
+            buffer = bufferPool.acquire(client.getResponseBufferSize(), true);
+            this.buffer = buffer;
+        }
+        boolean paused = false;
         try
         {
             while (true)
             {
-                int read = endPoint.fill(buffer);
-                LOG.debug("Read {} bytes from {}", read, connection);
-                if (read > 0)
+                if (!parse(buffer, resume))
                 {
-                    parse(buffer);
+                    // Content is being consumed asynchronously, the
+                    // completion of its callback will resume reading
+                    paused = true;
+                    break;
                 }
-                else if (read == 0)
+
+                resume = false;
+                int read = endPoint.fill(buffer);
+                LOG.debug("Read {} bytes from {}", read, connection);
+                // The bytes read are parsed at the next iteration
+                if (read == 0)
                 {
                     fillInterested();
                     break;
                 }
-                else
+                else if (read < 0)
                 {
                     shutdown();
                     break;
@@ -98,14 +118,44 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
         }
         finally
         {
-            bufferPool.release(buffer);
+            if (!paused)
+            {
+                this.buffer = null;
+                bufferPool.release(buffer);
+            }
         }
     }
 
-    private void parse(ByteBuffer buffer)
+    /**
+     * @param buffer the buffer to parse
+     * @param resume whether parsing resumes after it paused, in which case the parser
+     * is invoked even if the buffer is empty, to complete a message whose last content
+     * chunk has been consumed asynchronously
+     * @return true if the buffer has been parsed, false if parsing paused
+     * waiting for the content to be consumed asynchronously
+     */
+    private boolean parse(ByteBuffer buffer, boolean resume)
     {
-        while (buffer.hasRemaining())
+        while (resume || buffer.hasRemaining())
+        {
+            resume = false;
             parser.parseNext(buffer);
+            ContentCallback callback = this.callback;
+            if (callback != null)
+            {
+                this.callback = null;
+                paused = callback;
+                if (callback.pause())
+                {
+                    // The response may have failed before it could see the paused callback
+                    if (state.get() == State.FAILURE)
+                        release();
+                    return false;
+                }
+                paused = null;
+            }
+        }
+        return true;
     }
 
     private void fillInterested()
@@ -133,6 +183,13 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
         if (updateState(State.IDLE, State.RECEIVE))
         {
             HttpExchange exchange = connection.getExchange();
+            if (exchange != null && connection.isAborted(exchange))
+            {
+                // The response of an aborted pipelined exchange is parsed and discarded
+                parser.setHeadResponse(exchange.getRequest().getMethod() == HttpMethod.HEAD);
+                LOG.debug("Discarding response of {}", exchange);
+                return false;
+            }
             // The exchange may be null if it failed concurrently
             if (exchange != null)
             {
@@ -149,6 +206,7 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
                 exchange.getConversation().setResponseListener(handlerListener);
 
                 LOG.debug("Receiving {}", response);
+                exchange.responseBegin();
                 ResponseNotifier notifier = connection.getDestination().getResponseNotifier();
                 notifier.notifyBegin(conversation.getResponseListeners(), response);
             }
@@ -161,7 +219,7 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     {
         if (updateState(State.RECEIVE, State.RECEIVE))
         {
-            HttpExchange exchange = connection.getExchange();
+            HttpExchange exchange = getExchange();
             // The exchange may be null if it failed concurrently
             if (exchange != null)
             {
@@ -214,7 +272,7 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     {
         if (updateState(State.RECEIVE, State.RECEIVE))
         {
-            HttpExchange exchange = connection.getExchange();
+            HttpExchange exchange = getExchange();
             // The exchange may be null if it failed concurrently
             if (exchange != null)
             {
@@ -224,18 +282,30 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
                 ResponseNotifier notifier = connection.getDestination().getResponseNotifier();
                 notifier.notifyHeaders(conversation.getResponseListeners(), response);
 
+                // Only a single content coding is decoded: stacked codings such as
+                // "deflate, gzip" are passed through undecoded to the application
+                String contentEncoding = null;
+                int codings = 0;
                 Enumeration<String> contentEncodings = response.getHeaders().getValues(HttpHeader.CONTENT_ENCODING.asString(), ",");
                 if (contentEncodings != null)
+                {
+                    while (contentEncodings.hasMoreElements())
+                    {
+                        String coding = contentEncodings.nextElement().trim();
+                        if (coding.length() == 0 || "identity".equalsIgnoreCase(coding))
+                            continue;
+                        contentEncoding = coding;
+                        ++codings;
+                    }
+                }
+                if (codings == 1)
                 {
                     for (ContentDecoder.Factory factory : connection.getHttpClient().getContentDecoderFactories())
                     {
-                        while (contentEncodings.hasMoreElements())
+                        if (factory.getEncoding().equalsIgnoreCase(contentEncoding))
                         {
-                            if (factory.getEncoding().equalsIgnoreCase(contentEncodings.nextElement()))
-                            {
-                                this.decoder = factory.newContentDecoder();
-                                break;
-                            }
+                            restore(factory.newContentDecoder());
+                            break;
                         }
                     }
                 }
@@ -249,7 +319,7 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     {
         if (updateState(State.RECEIVE, State.RECEIVE))
         {
-            HttpExchange exchange = connection.getExchange();
+            HttpExchange exchange = getExchange();
             // The exchange may be null if it failed concurrently
             if (exchange != null)
             {
@@ -257,15 +327,32 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
                 HttpResponse response = exchange.getResponse();
                 LOG.debug("Content {}: {} bytes", response, buffer.remaining());
 
-                ContentDecoder decoder = this.decoder;
+                // The decoder is taken until the decoded content has been consumed,
+                // so that a concurrent failure does not destroy it while it is in use
+                ContentDecoder decoder = this.decoder.getAndSet(null);
                 if (decoder != null)
                 {
-                    buffer = decoder.decode(buffer);
+                    try
+                    {
+                        buffer = decoder.decode(buffer);
+                    }
+                    catch (RuntimeException x)
+                    {
+                        restore(decoder);
+                        throw x;
+                    }
                     LOG.debug("{} {}: {} bytes", decoder, response, buffer.remaining());
                 }
 
                 ResponseNotifier notifier = connection.getDestination().getResponseNotifier();
-                notifier.notifyContent(conversation.getResponseListeners(), response, buffer);
+                ContentCallback callback = new ContentCallback(exchange, decoder);
+                notifier.notifyContent(conversation.getResponseListeners(), response, buffer, callback);
+                if (callback.isPending())
+                {
+                    // Stop parsing until the content has been consumed
+                    this.callback = callback;
+                    return true;
+                }
             }
         }
         return false;
@@ -275,13 +362,40 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     public boolean messageComplete()
     {
         if (updateState(State.RECEIVE, State.RECEIVE))
-            success();
+        {
+            HttpExchange exchange = connection.getExchange();
+            if (exchange != null && connection.isAborted(exchange))
+                discard(exchange);
+            else
+                success();
+        }
         return true;
     }
 
-    protected boolean success()
+    private void discard(HttpExchange exchange)
+    {
+        parser.reset();
+        if (!updateState(State.RECEIVE, State.IDLE))
+            throw new IllegalStateException();
+        LOG.debug("Discarded response of {}", exchange);
+        connection.discarded(exchange);
+    }
+
+    /**
+     * @return the exchange whose response is being received, or null if it failed
+     * concurrently or if it is an aborted pipelined exchange whose response is discarded
+     */
+    private HttpExchange getExchange()
     {
         HttpExchange exchange = connection.getExchange();
+        if (exchange != null && connection.isAborted(exchange))
+            return null;
+        return exchange;
+    }
+
+    protected boolean success()
+    {
+        HttpExchange exchange = getExchange();
         if (exchange == null)
             return false;
 
@@ -290,7 +404,8 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
             return false;
 
         parser.reset();
-        decoder = null;
+        // The content has been consumed, the decoder can return its resources to the pools
+        destroy(decoder.getAndSet(null));
 
         if (!updateState(State.RECEIVE, State.IDLE))
             throw new IllegalStateException();
@@ -315,7 +430,7 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
 
     protected boolean fail(Throwable failure)
     {
-        HttpExchange exchange = connection.getExchange();
+        HttpExchange exchange = getExchange();
         // In case of a response error, the failure has already been notified
         // and it is possible that a further attempt to read in the receive
         // loop throws an exception that reenters here but without exchange;
@@ -328,7 +443,6 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
             return false;
 
         parser.close();
-        decoder = null;
 
         while (true)
         {
@@ -337,6 +451,11 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
                 break;
         }
 
+        // Reading does not resume after a failure
+        release();
+        // If the decoder is decoding concurrently, it is destroyed when it is restored
+        destroy(decoder.getAndSet(null));
+
         exchange.terminateResponse();
 
         HttpResponse response = exchange.getResponse();
@@ -390,6 +509,64 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
         return fail(cause);
     }
 
+    /**
+     * <p>Called when the connection is closed: if reading paused waiting for the
+     * content to be consumed, it will not resume, so the paused buffer is released
+     * and the response is failed.</p>
+     *
+     * @param failure the cause of the close
+     */
+    public void close(Throwable failure)
+    {
+        if (release())
+            fail(failure);
+    }
+
+    /**
+     * @return whether reading was paused, in which case it will not resume and
+     * the paused buffer has been released
+     */
+    private boolean release()
+    {
+        ContentCallback callback = paused;
+        return callback != null && callback.complete(false);
+    }
+
+    private void releaseBuffer()
+    {
+        ByteBuffer buffer = this.buffer;
+        this.buffer = null;
+        if (buffer != null)
+            connection.getHttpClient().getByteBufferPool().release(buffer);
+    }
+
+    /**
+     * @return whether a response is being received
+     */
+    public boolean isReceiving()
+    {
+        return state.get() == State.RECEIVE;
+    }
+
+    /**
+     * <p>Makes the given decoder available to decode the response content,
+     * or destroys it if the response failed concurrently.</p>
+     *
+     * @param decoder the decoder to restore
+     */
+    private void restore(ContentDecoder decoder)
+    {
+        this.decoder.set(decoder);
+        if (state.get() == State.FAILURE)
+            destroy(this.decoder.getAndSet(null));
+    }
+
+    private void destroy(ContentDecoder decoder)
+    {
+        if (decoder instanceof Destroyable)
+            ((Destroyable)decoder).destroy();
+    }
+
     private boolean updateState(State from, State to)
     {
         boolean updated = state.compareAndSet(from, to);
@@ -402,4 +579,104 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     {
         IDLE, RECEIVE, FAILURE
     }
+
+    /**
+     * <p>The callback for the consumption of a content chunk.</p>
+     * <p>If the content is consumed before the parser returns, parsing continues;
+     * otherwise parsing {@link #pause() pauses} and reading is resumed when the
+     * content has been consumed, so that the network applies backpressure.</p>
+     */
+    private class ContentCallback implements Callback
+    {
+        private final AtomicReference<ContentState> state = new AtomicReference<>(ContentState.PENDING);
+        private final HttpExchange exchange;
+        private final ContentDecoder decoder;
+
+        private ContentCallback(HttpExchange exchange, ContentDecoder decoder)
+        {
+            this.exchange = exchange;
+            this.decoder = decoder;
+        }
+
+        private boolean isPending()
+        {
+            return state.get() == ContentState.PENDING;
+        }
+
+        private boolean pause()
+        {
+            return state.compareAndSet(ContentState.PENDING, ContentState.PAUSED);
+        }
+
+        @Override
+        public void succeeded()
+        {
+            complete(true);
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            LOG.debug("Content consumption failed for {}", exchange, x);
+            // The remaining content is not read, so the connection cannot be reused
+            if (!exchange.abort(x))
+                connection.close();
+            // Reading does not resume after a failure
+            complete(false);
+        }
+
+        private void restore()
+        {
+            // The decoded content has been consumed
+            if (decoder != null)
+                HttpReceiver.this.restore(decoder);
+        }
+
+        /**
+         * @param resume whether to resume reading if it paused, or to release the paused buffer
+         * @return whether reading was paused
+         */
+        private boolean complete(boolean resume)
+        {
+            while (true)
+            {
+                ContentState current = state.get();
+                switch (current)
+                {
+                    case PENDING:
+                    {
+                        if (state.compareAndSet(current, ContentState.COMPLETE))
+                        {
+                            restore();
+                            return false;
+                        }
+                        break;
+                    }
+                    case PAUSED:
+                    {
+                        if (state.compareAndSet(current, ContentState.COMPLETE))
+                        {
+                            restore();
+                            paused = null;
+                            if (resume)
+                                receive();
+                            else
+                                releaseBuffer();
+                            return true;
+                        }
+                        break;
+                    }
+                    default:
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    private enum ContentState
+    {
+        PENDING, PAUSED, COMPLETE
+    }
 }
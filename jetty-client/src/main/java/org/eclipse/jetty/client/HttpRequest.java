@@ -334,6 +334,20 @@ public class HttpRequest implements Request
         return this;
     }
 
+    @Override
+    public Request onResponseContentAsync(Response.AsyncContentListener listener)
+    {
+        this.responseListeners.add(listener);
+        return this;
+    }
+
+    @Override
+    public Request onResponseContentDemanded(Response.DemandedContentListener listener)
+    {
+        this.responseListeners.add(new DemandedContentAdapter(listener));
+        return this;
+    }
+
     @Override
     public Request onResponseSuccess(Response.SuccessListener listener)
     {
@@ -460,7 +474,11 @@ public class HttpRequest implements Request
     private void send(Request request, Response.CompleteListener listener)
     {
         if (listener != null)
+        {
             responseListeners.add(listener);
+            if (listener instanceof Response.DemandedContentListener)
+                responseListeners.add(new DemandedContentAdapter((Response.DemandedContentListener)listener));
+        }
         client.send(request, responseListeners);
     }
 
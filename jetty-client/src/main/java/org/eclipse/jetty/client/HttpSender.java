@@ -139,7 +139,7 @@ public class HttpSender implements AsyncContentProvider.Listener
         ByteBuffer chunk = null;
         try
         {
-            HttpExchange exchange = connection.getExchange();
+            HttpExchange exchange = connection.getSendingExchange();
             // The exchange may be null if it failed concurrently
             if (exchange == null)
                 return;
@@ -376,13 +376,13 @@ public class HttpSender implements AsyncContentProvider.Listener
                 // which in turn invokes send(), with the risk of a concurrent invocation of send().
                 // Therefore we wait here on the ContinueContentChunk to send, and send() will signal
                 // when it is ok to proceed.
-                LOG.debug("Proceeding {}", connection.getExchange());
+                LOG.debug("Proceeding {}", connection.getSendingExchange());
                 contentChunk.await();
                 send();
             }
             else
             {
-                HttpExchange exchange = connection.getExchange();
+                HttpExchange exchange = connection.getSendingExchange();
                 if (exchange != null)
                     fail(new HttpRequestException("Expectation failed", exchange.getRequest()));
             }
@@ -459,7 +459,7 @@ public class HttpSender implements AsyncContentProvider.Listener
 
     protected boolean success()
     {
-        HttpExchange exchange = connection.getExchange();
+        HttpExchange exchange = connection.getSendingExchange();
         if (exchange == null)
             return false;
 
@@ -490,13 +490,18 @@ public class HttpSender implements AsyncContentProvider.Listener
             HttpConversation conversation = exchange.getConversation();
             destination.getResponseNotifier().notifyComplete(conversation.getResponseListeners(), result);
         }
+        else
+        {
+            // The response is yet to arrive, other requests may be pipelined
+            connection.sent(exchange);
+        }
 
         return true;
     }
 
     protected boolean fail(Throwable failure)
     {
-        HttpExchange exchange = connection.getExchange();
+        HttpExchange exchange = connection.getSendingExchange();
         if (exchange == null)
             return false;
 
@@ -0,0 +1,117 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A pool of raw (nowrap) {@link Inflater}s, shared by the {@link InflatingContentDecoder}s.</p>
+ * <p>Each inflater holds a large native context, so decoders borrow one for the duration
+ * of a response only, rather than allocating (and leaving to finalization) one per response.</p>
+ */
+@ManagedObject("Pool of Inflaters")
+public class InflaterPool
+{
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idle = new AtomicInteger();
+    private final int capacity;
+
+    public InflaterPool()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the max number of idle inflaters kept in the pool
+     */
+    public InflaterPool(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return an idle inflater, or a new one if the pool is empty
+     */
+    public Inflater acquire()
+    {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null)
+            return new Inflater(true);
+        idle.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * <p>Returns an inflater to the pool, resetting its decompression context.</p>
+     * <p>If the pool is full, the inflater native resources are released.</p>
+     *
+     * @param inflater the inflater, acquired from this pool
+     */
+    public void release(Inflater inflater)
+    {
+        inflater.reset();
+        if (idle.incrementAndGet() <= capacity)
+        {
+            inflaters.offer(inflater);
+        }
+        else
+        {
+            idle.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    @ManagedOperation(value = "Releases the native resources of the idle inflaters", impact = "ACTION")
+    public void clear()
+    {
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null)
+        {
+            idle.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    @ManagedAttribute("The max number of idle inflaters")
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @ManagedAttribute("The number of idle inflaters")
+    public int getIdleInflaters()
+    {
+        return idle.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[idle=%d/%d]", getClass().getSimpleName(), hashCode(), getIdleInflaters(), getCapacity());
+    }
+}
@@ -0,0 +1,261 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * <p>Base class for {@link ContentDecoder}s that inflate deflate-compressed data,
+ * possibly wrapped by an encoding specific header and trailer.</p>
+ * <p>The {@link Inflater} is borrowed from an {@link InflaterPool} and the decoded bytes
+ * are written into buffers borrowed from a {@link ByteBufferPool}; both are returned
+ * to their pools by {@link #destroy()}.</p>
+ * <p>When the pools are configured, the buffer returned by {@link #decode(ByteBuffer)}
+ * is only valid until the next call to {@link #decode(ByteBuffer)} or {@link #destroy()}.</p>
+ */
+public abstract class InflatingContentDecoder implements ContentDecoder, Destroyable
+{
+    private final InflaterPool inflaterPool;
+    private final ByteBufferPool byteBufferPool;
+    private final int bufferSize;
+    private Inflater inflater;
+    private ByteBuffer output;
+    private ByteBuffer decoded;
+    private byte[] input;
+
+    /**
+     * @param inflaterPool the pool of inflaters, or null to allocate an inflater per decoder
+     * @param byteBufferPool the pool of buffers for the decoded bytes, or null to allocate them
+     * @param bufferSize the initial size of the buffers for the decoded bytes
+     */
+    protected InflatingContentDecoder(InflaterPool inflaterPool, ByteBufferPool byteBufferPool, int bufferSize)
+    {
+        this.inflaterPool = inflaterPool;
+        this.byteBufferPool = byteBufferPool;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>If the decoding did not produce any output, for example because it consumed header
+     * or trailer bytes, it returns a buffer with zero capacity.</p>
+     * <p>This method never returns null.</p>
+     * <p>The given {@code buffer}'s position will be modified to reflect the bytes consumed during
+     * the decoding.</p>
+     * <p>The decoding may be finished without consuming the buffer completely if the buffer contains
+     * compressed bytes plus other bytes (either plain or compressed).</p>
+     */
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer)
+    {
+        // The previously decoded bytes have been consumed
+        release(decoded);
+        decoded = null;
+        try
+        {
+            return decodeContent(buffer);
+        }
+        catch (ZipException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * <p>Decodes the given {@code buffer}, using {@link #inflate(ByteBuffer)} for the compressed
+     * data and {@link #output()} to return the decoded bytes.</p>
+     *
+     * @param buffer the buffer containing encoded bytes
+     * @return a buffer containing decoded bytes, if any
+     * @throws ZipException if the encoded bytes are invalid
+     */
+    protected abstract ByteBuffer decodeContent(ByteBuffer buffer) throws ZipException;
+
+    /**
+     * <p>Inflates the compressed bytes of the given {@code buffer}, accumulating the decoded bytes.</p>
+     *
+     * @param buffer the buffer containing compressed bytes
+     * @return true if the end of the compressed data has been reached, in which case the buffer's
+     * position is moved to the first byte after the compressed data; false if more compressed data
+     * is needed, in which case the buffer has been consumed
+     * @throws ZipException if the compressed bytes are invalid
+     */
+    protected boolean inflate(ByteBuffer buffer) throws ZipException
+    {
+        Inflater inflater = getInflater();
+        while (true)
+        {
+            ByteBuffer output = space();
+            int length = inflate(inflater, output.array(), output.arrayOffset() + output.limit(), output.capacity() - output.limit());
+            output.limit(output.limit() + length);
+            if (length == 0)
+            {
+                // Check finished() first, as needsInput() may be true also when the compressed data ends with the input
+                if (inflater.finished())
+                {
+                    buffer.position(buffer.limit() - inflater.getRemaining());
+                    return true;
+                }
+                else if (inflater.needsInput())
+                {
+                    if (!buffer.hasRemaining())
+                        return false;
+                    setInput(inflater, buffer);
+                }
+                else
+                {
+                    throw new ZipException("Invalid inflater state");
+                }
+            }
+        }
+    }
+
+    private int inflate(Inflater inflater, byte[] bytes, int offset, int length) throws ZipException
+    {
+        try
+        {
+            return inflater.inflate(bytes, offset, length);
+        }
+        catch (DataFormatException x)
+        {
+            throw new ZipException(x.getMessage());
+        }
+    }
+
+    private void setInput(Inflater inflater, ByteBuffer buffer)
+    {
+        int length = buffer.remaining();
+        if (buffer.hasArray())
+        {
+            // The inflater consumes the input before decode() returns, so there is no need to copy it
+            inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        }
+        else
+        {
+            if (input == null || input.length < length)
+                input = new byte[Math.max(length, bufferSize)];
+            buffer.get(input, 0, length);
+            inflater.setInput(input, 0, length);
+        }
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * @return the output buffer, grown if it has no space left for the decoded bytes
+     */
+    private ByteBuffer space()
+    {
+        ByteBuffer output = this.output;
+        if (output == null)
+        {
+            output = acquire(bufferSize);
+        }
+        else if (output.limit() == output.capacity())
+        {
+            ByteBuffer bigger = acquire(output.capacity() * 2);
+            int position = BufferUtil.flipToFill(bigger);
+            bigger.put(output);
+            BufferUtil.flipToFlush(bigger, position);
+            release(output);
+            output = bigger;
+        }
+        this.output = output;
+        return output;
+    }
+
+    /**
+     * @return the bytes decoded so far, or an empty buffer if no bytes have been decoded
+     */
+    protected ByteBuffer output()
+    {
+        ByteBuffer output = this.output;
+        if (output == null || !output.hasRemaining())
+            return BufferUtil.EMPTY_BUFFER;
+        this.output = null;
+        decoded = output;
+        return output;
+    }
+
+    private Inflater getInflater()
+    {
+        if (inflater == null)
+            inflater = inflaterPool == null ? new Inflater(true) : inflaterPool.acquire();
+        return inflater;
+    }
+
+    /**
+     * @return the total number of decoded bytes since the last {@link #reset()}
+     */
+    protected long getBytesWritten()
+    {
+        Inflater inflater = this.inflater;
+        return inflater == null ? 0 : inflater.getBytesWritten();
+    }
+
+    /**
+     * <p>Resets the decompression context, to decode another compressed stream.</p>
+     */
+    protected void reset()
+    {
+        Inflater inflater = this.inflater;
+        if (inflater != null)
+            inflater.reset();
+    }
+
+    private ByteBuffer acquire(int capacity)
+    {
+        return byteBufferPool == null ? BufferUtil.allocate(capacity) : byteBufferPool.acquire(capacity, false);
+    }
+
+    private void release(ByteBuffer buffer)
+    {
+        if (buffer != null && byteBufferPool != null)
+            byteBufferPool.release(buffer);
+    }
+
+    /**
+     * <p>Returns the inflater and the buffers to their pools.</p>
+     * <p>This method must only be called once the decoded bytes have been consumed,
+     * and never concurrently with {@link #decode(ByteBuffer)}.</p>
+     */
+    @Override
+    public void destroy()
+    {
+        release(decoded);
+        decoded = null;
+        release(output);
+        output = null;
+        Inflater inflater = this.inflater;
+        this.inflater = null;
+        if (inflater != null)
+        {
+            if (inflaterPool == null)
+                inflater.end();
+            else
+                inflaterPool.release(inflater);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.statistic.HistogramStatistic;
+
+/**
+ * <p>The latency histograms of the phases of the exchanges of a {@link HttpDestination}.</p>
+ * <p>Each {@link Phase} is recorded, in microseconds, in a {@link HistogramStatistic},
+ * whose power of two buckets allow to estimate percentiles with a constant, small,
+ * memory footprint and without locking.</p>
+ */
+@ManagedObject("The latency histograms of the exchanges of a destination")
+public class LatencyStatistics implements Dumpable
+{
+    /**
+     * The phases of an exchange.
+     */
+    public enum Phase
+    {
+        /**
+         * The DNS resolution of the address of a new connection
+         */
+        DNS,
+        /**
+         * The TCP connect of a new connection
+         */
+        CONNECT,
+        /**
+         * The TLS handshake of a new connection
+         */
+        TLS,
+        /**
+         * The wait of an exchange in the destination queue, until a connection is available
+         */
+        QUEUE,
+        /**
+         * The time from the request being sent to the response beginning
+         */
+        FIRST_BYTE,
+        /**
+         * The time from the response beginning to the response completing
+         */
+        TRANSFER,
+        /**
+         * The time from the exchange being queued to the response completing
+         */
+        TOTAL
+    }
+
+    private final Map<Phase, HistogramStatistic> histograms = new EnumMap<>(Phase.class);
+
+    public LatencyStatistics()
+    {
+        for (Phase phase : Phase.values())
+            histograms.put(phase, new HistogramStatistic());
+    }
+
+    /**
+     * @param phase the phase
+     * @param nanos the latency of the phase, in nanoseconds
+     */
+    public void record(Phase phase, long nanos)
+    {
+        histograms.get(phase).set(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * <p>Records the phases of a successful exchange, when its response completes.</p>
+     *
+     * @param exchange the exchange
+     */
+    public void record(HttpExchange exchange)
+    {
+        long now = System.nanoTime();
+        record(Phase.TOTAL, now - exchange.getQueueTime());
+        long responseTime = exchange.getResponseTime();
+        if (responseTime != 0)
+        {
+            record(Phase.TRANSFER, now - responseTime);
+            long requestTime = exchange.getRequestTime();
+            // The response may begin before the request is sent
+            if (requestTime != 0 && responseTime - requestTime >= 0)
+                record(Phase.FIRST_BYTE, responseTime - requestTime);
+        }
+    }
+
+    /**
+     * @param phase the phase
+     * @return the histogram of the latencies, in microseconds, of the given phase
+     */
+    public HistogramStatistic getHistogram(Phase phase)
+    {
+        return histograms.get(phase);
+    }
+
+    @ManagedAttribute("DNS resolution latencies (us)")
+    public String getDnsLatencies()
+    {
+        return summary(Phase.DNS);
+    }
+
+    @ManagedAttribute("TCP connect latencies (us)")
+    public String getConnectLatencies()
+    {
+        return summary(Phase.CONNECT);
+    }
+
+    @ManagedAttribute("TLS handshake latencies (us)")
+    public String getTlsLatencies()
+    {
+        return summary(Phase.TLS);
+    }
+
+    @ManagedAttribute("Queueing latencies (us)")
+    public String getQueueLatencies()
+    {
+        return summary(Phase.QUEUE);
+    }
+
+    @ManagedAttribute("Time to first byte latencies (us)")
+    public String getFirstByteLatencies()
+    {
+        return summary(Phase.FIRST_BYTE);
+    }
+
+    @ManagedAttribute("Response transfer latencies (us)")
+    public String getTransferLatencies()
+    {
+        return summary(Phase.TRANSFER);
+    }
+
+    @ManagedAttribute("Total exchange latencies (us)")
+    public String getTotalLatencies()
+    {
+        return summary(Phase.TOTAL);
+    }
+
+    @ManagedOperation(value = "The estimated percentile of the latencies (us) of a phase", impact = "INFO")
+    public long getPercentile(@Name("phase") String phase, @Name("percentile") double percentile)
+    {
+        return getHistogram(Phase.valueOf(phase.toUpperCase(Locale.ENGLISH))).getPercentile(percentile);
+    }
+
+    @ManagedOperation(value = "Resets the latency histograms", impact = "ACTION")
+    public void reset()
+    {
+        for (HistogramStatistic histogram : histograms.values())
+            histogram.reset();
+    }
+
+    private String summary(Phase phase)
+    {
+        HistogramStatistic histogram = getHistogram(phase);
+        return String.format("count=%d,mean=%.0f,p50=%d,p90=%d,p99=%d,max=%d",
+                histogram.getCount(),
+                histogram.getMean(),
+                histogram.getPercentile(50),
+                histogram.getPercentile(90),
+                histogram.getPercentile(99),
+                histogram.getMax());
+    }
+
+    @Override
+    public String dump()
+    {
+        return ContainerLifeCycle.dump(this);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        ContainerLifeCycle.dumpObject(out, this);
+        List<String> phases = new ArrayList<>();
+        for (Phase phase : Phase.values())
+        {
+            HistogramStatistic histogram = getHistogram(phase);
+            String line = phase + " " + summary(phase);
+            if (histogram.getCount() > 0)
+                line += " [" + histogram.toHistogramString() + "]";
+            phases.add(line);
+        }
+        ContainerLifeCycle.dump(out, indent, phases);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[exchanges=%d]", getClass().getSimpleName(), hashCode(), getHistogram(Phase.TOTAL).getCount());
+    }
+}
@@ -21,12 +21,14 @@ package org.eclipse.jetty.client;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -114,13 +116,44 @@ public class ResponseNotifier
 
     public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer)
     {
+        notifyContent(listeners, response, buffer, new Callback.Adapter());
+    }
+
+    /**
+     * <p>Notifies the content to the listeners, completing the given callback when all the
+     * {@link Response.AsyncContentListener}s have consumed the content, or when the first of
+     * them fails.</p>
+     *
+     * @param listeners the response listeners
+     * @param response the response
+     * @param buffer the content
+     * @param callback the callback completed when the content has been consumed
+     */
+    public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer, Callback callback)
+    {
+        ContentCallback contentCallback = null;
         // Optimized to avoid allocations of iterator instances
         for (int i = 0; i < listeners.size(); ++i)
         {
             Response.ResponseListener listener = listeners.get(i);
-            if (listener instanceof Response.ContentListener)
+            // Notified through their DemandedContentAdapter
+            if (listener instanceof Response.DemandedContentListener)
+                continue;
+            if (listener instanceof Response.AsyncContentListener)
+            {
+                if (contentCallback == null)
+                    contentCallback = new ContentCallback(callback);
+                notifyContent((Response.AsyncContentListener)listener, response, buffer.slice(), contentCallback);
+            }
+            else if (listener instanceof Response.ContentListener)
+            {
                 notifyContent((Response.ContentListener)listener, response, buffer);
+            }
         }
+        if (contentCallback == null)
+            callback.succeeded();
+        else
+            contentCallback.succeeded();
     }
 
     private void notifyContent(Response.ContentListener listener, Response response, ByteBuffer buffer)
@@ -135,6 +168,20 @@ public class ResponseNotifier
         }
     }
 
+    private void notifyContent(Response.AsyncContentListener listener, Response response, ByteBuffer buffer, ContentCallback callback)
+    {
+        callback.increment();
+        try
+        {
+            listener.onContent(response, buffer, callback);
+        }
+        catch (Exception x)
+        {
+            LOG.info("Exception while notifying listener " + listener, x);
+            callback.failed(x);
+        }
+    }
+
     public void notifySuccess(List<Response.ResponseListener> listeners, Response response)
     {
         // Optimized to avoid allocations of iterator instances
@@ -249,4 +296,49 @@ public class ResponseNotifier
         conversation.complete();
         notifyComplete(listeners, new Result(request, requestFailure, response, responseFailure));
     }
+
+    /**
+     * <p>Completes the wrapped callback when all the asynchronous content listeners,
+     * plus the notifier itself, have succeeded, or when the first of them fails.</p>
+     */
+    private static class ContentCallback implements Callback
+    {
+        private final AtomicInteger count = new AtomicInteger(1);
+        private final Callback callback;
+
+        private ContentCallback(Callback callback)
+        {
+            this.callback = callback;
+        }
+
+        private void increment()
+        {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void succeeded()
+        {
+            while (true)
+            {
+                int current = count.get();
+                // Already completed, either succeeded or failed
+                if (current <= 0)
+                    return;
+                if (count.compareAndSet(current, current - 1))
+                {
+                    if (current == 1)
+                        callback.succeeded();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            if (count.getAndSet(0) > 0)
+                callback.failed(x);
+        }
+    }
 }
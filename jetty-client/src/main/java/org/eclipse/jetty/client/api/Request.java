@@ -301,6 +301,18 @@ public interface Request
      */
     Request onResponseContent(Response.ContentListener listener);
 
+    /**
+     * @param listener an asynchronous listener for response content events
+     * @return this request object
+     */
+    Request onResponseContentAsync(Response.AsyncContentListener listener);
+
+    /**
+     * @param listener a listener for response content events that demands the content
+     * @return this request object
+     */
+    Request onResponseContentDemanded(Response.DemandedContentListener listener);
+
     /**
      * @param listener a listener for response success event
      * @return this request object
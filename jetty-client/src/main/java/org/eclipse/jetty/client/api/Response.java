@@ -26,6 +26,7 @@ import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.Callback;
 
 /**
  * <p>{@link Response} represents a HTTP response and offers methods to retrieve status code, HTTP version
@@ -145,6 +146,75 @@ public interface Response
         public void onContent(Response response, ByteBuffer content);
     }
 
+    /**
+     * Listener for the response content events that consumes the content asynchronously.
+     * <p>
+     * Until the {@code callback} is completed, no further content is read from the network,
+     * so that a slow consumer pushes back on the server instead of buffering content.
+     * If a listener implements both this interface and {@link ContentListener}, only
+     * this interface is notified.
+     */
+    public interface AsyncContentListener extends ResponseListener
+    {
+        /**
+         * Callback method invoked when the response content has been received.
+         * This method may be invoked multiple times, and the {@code content} buffer must not be
+         * used after the {@code callback} has been completed.
+         *
+         * @param response the response containing the response line data and the headers
+         * @param content the content bytes received
+         * @param callback the callback to succeed when the content has been consumed,
+         * or to fail to abort the response
+         */
+        public void onContent(Response response, ByteBuffer content, Callback callback);
+    }
+
+    /**
+     * The demand for response content of a {@link DemandedContentListener}.
+     */
+    public interface ContentDemand
+    {
+        /**
+         * Demands more content chunks to be delivered.
+         * This method may be invoked from any thread, also from within
+         * {@link DemandedContentListener#onContent(Response, ByteBuffer, ContentDemand)}.
+         *
+         * @param n the number of further content chunks that can be delivered
+         */
+        public void request(long n);
+    }
+
+    /**
+     * Listener for the response content events that explicitly demands the content.
+     * <p>
+     * Content is delivered only while there is demand: the demand is zero when the
+     * headers are received, and each content chunk delivered decrements it. While
+     * the demand is zero, no further content is read from the network, so that a
+     * slow consumer pushes back on the server instead of buffering content.
+     */
+    public interface DemandedContentListener extends ResponseListener
+    {
+        /**
+         * Callback method invoked when the response headers have been received,
+         * before any content, typically to {@link ContentDemand#request(long) demand}
+         * the first content chunks.
+         *
+         * @param response the response containing the response line data and the headers
+         * @param demand the demand for the content of the response
+         */
+        public void onBeforeContent(Response response, ContentDemand demand);
+
+        /**
+         * Callback method invoked when demanded response content has been received.
+         * The {@code content} buffer must be consumed before returning from this method.
+         *
+         * @param response the response containing the response line data and the headers
+         * @param content the content bytes received
+         * @param demand the demand for the content of the response
+         */
+        public void onContent(Response response, ByteBuffer content, ContentDemand demand);
+    }
+
     /**
      * Listener for the response succeeded event.
      */
@@ -0,0 +1,129 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * <p>Implementation of {@link Response.Listener} that writes the response content to a
+ * {@link WritableByteChannel}, such as a {@link FileChannel}, without copying it.</p>
+ * <p>No further content is read from the network until the channel has written the current
+ * content, so that the memory used does not depend on the response content length, and
+ * a slow channel pushes back on the server.</p>
+ * <p>The content is written by the thread that delivers it, or by the {@link Executor}
+ * specified to the constructor, so that slow writes do not hold the network thread.
+ * The channel is not closed by this listener; the outcome of the download may be
+ * retrieved from {@link #onComplete(Result)}, along with {@link #getBytesWritten()}.</p>
+ */
+public abstract class ChannelResponseListener extends Response.Listener.Empty implements Response.AsyncContentListener
+{
+    private final WritableByteChannel channel;
+    private final Executor executor;
+    private volatile long bytesWritten;
+
+    /**
+     * Creates an instance that writes the content in the thread that delivers it.
+     *
+     * @param channel the blocking channel to write the content to
+     */
+    public ChannelResponseListener(WritableByteChannel channel)
+    {
+        this(channel, null);
+    }
+
+    /**
+     * Creates an instance that writes the content in the given executor.
+     *
+     * @param channel the blocking channel to write the content to
+     * @param executor the executor that writes the content, or null to write it in the thread that delivers it
+     */
+    public ChannelResponseListener(WritableByteChannel channel, Executor executor)
+    {
+        if (channel instanceof SelectableChannel && !((SelectableChannel)channel).isBlocking())
+            throw new IllegalArgumentException("Channel must be in blocking mode: " + channel);
+        this.channel = channel;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onContent(final Response response, final ByteBuffer content, final Callback callback)
+    {
+        if (executor == null)
+        {
+            write(content, callback);
+        }
+        else
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    write(content, callback);
+                }
+            });
+        }
+    }
+
+    private void write(ByteBuffer content, Callback callback)
+    {
+        try
+        {
+            // Only one write at a time, as content is not delivered until the callback completes
+            long written = bytesWritten;
+            while (content.hasRemaining())
+                written += channel.write(content);
+            bytesWritten = written;
+            callback.succeeded();
+        }
+        catch (IOException x)
+        {
+            callback.failed(x);
+        }
+    }
+
+    @Override
+    public abstract void onComplete(Result result);
+
+    /**
+     * @return the channel the content is written to
+     */
+    public WritableByteChannel getChannel()
+    {
+        return channel;
+    }
+
+    /**
+     * @return the number of content bytes written to the channel
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,120 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.component.Destroyable;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the CPU time spent to decode compressed JSON responses of typical sizes by decoders
+ * that allocate their inflater and buffers per response, and by decoders that borrow them from pools.
+ */
+@Ignore
+public class ContentDecoderBenchmarkTest
+{
+    private static final Logger LOG = Log.getLogger(ContentDecoderBenchmarkTest.class);
+    private static final int CHUNK_SIZE = 4096;
+    private static final long BYTES_PER_RUN = 64 * 1024 * 1024;
+
+    @Test
+    public void testCpuPerMegabyte() throws Exception
+    {
+        int[] sizes = {512, 4 * 1024, 32 * 1024, 256 * 1024};
+        for (int i = 0; i < 3; ++i)
+        {
+            for (int size : sizes)
+            {
+                byte[] json = newJSON(size);
+
+                byte[] gzipped = compress(json, true);
+                benchmark("gzip unpooled", size, gzipped, new GZIPContentDecoder.Factory());
+                benchmark("gzip pooled", size, gzipped, new GZIPContentDecoder.Factory(new InflaterPool(), new MappedByteBufferPool(), 2048));
+
+                byte[] deflated = compress(json, false);
+                benchmark("deflate unpooled", size, deflated, new DeflateContentDecoder.Factory());
+                benchmark("deflate pooled", size, deflated, new DeflateContentDecoder.Factory(new InflaterPool(), new MappedByteBufferPool(), 2048));
+            }
+        }
+    }
+
+    private void benchmark(String name, int size, byte[] content, ContentDecoder.Factory factory)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long responses = BYTES_PER_RUN / size;
+        long bytes = 0;
+        long cpuBegin = threads.getCurrentThreadCpuTime();
+        for (long i = 0; i < responses; ++i)
+        {
+            ContentDecoder decoder = factory.newContentDecoder();
+            // Feed the content in network sized chunks
+            for (int offset = 0; offset < content.length; offset += CHUNK_SIZE)
+            {
+                ByteBuffer chunk = ByteBuffer.wrap(content, offset, Math.min(CHUNK_SIZE, content.length - offset));
+                bytes += decoder.decode(chunk).remaining();
+            }
+            if (decoder instanceof Destroyable)
+                ((Destroyable)decoder).destroy();
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuBegin;
+
+        double megabytes = bytes / (1024.0 * 1024.0);
+        LOG.info("{} {} B: {} ms CPU/MB, ratio {}", name, size, String.format("%.3f", TimeUnit.NANOSECONDS.toMicros(cpu) / 1000.0 / megabytes), String.format("%.2f", (double)content.length / size));
+    }
+
+    private byte[] newJSON(int size)
+    {
+        // A typical REST response: an array of small JSON objects
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; builder.length() < size - 2; ++i)
+        {
+            if (i > 0)
+                builder.append(",");
+            builder.append("{\"id\":").append(i)
+                    .append(",\"name\":\"item-").append(i)
+                    .append("\",\"price\":").append(100 + i % 37).append(".25")
+                    .append(",\"tags\":[\"new\",\"sale\"],\"available\":").append(i % 3 == 0)
+                    .append("}");
+        }
+        builder.setLength(size - 1);
+        return builder.append("]").toString().getBytes();
+    }
+
+    private byte[] compress(byte[] data, boolean gzip) throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream output = gzip ? new GZIPOutputStream(baos) : new DeflaterOutputStream(baos))
+        {
+            output.write(data);
+        }
+        return baos.toByteArray();
+    }
+}
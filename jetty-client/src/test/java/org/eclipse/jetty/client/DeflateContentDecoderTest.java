@@ -0,0 +1,163 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DeflateContentDecoderTest
+{
+    @Rule
+    public final TestTracker tracker = new TestTracker();
+
+    @Test
+    public void testNoBlocks() throws Exception
+    {
+        byte[] bytes = deflate("", false);
+
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(bytes));
+        assertEquals(0, decoded.remaining());
+        assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testSmallBlock() throws Exception
+    {
+        String data = "0";
+        byte[] bytes = deflate(data, false);
+
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(bytes));
+        assertEquals(data, Charset.forName("UTF-8").decode(decoded).toString());
+        assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testSmallRawBlock() throws Exception
+    {
+        String data = "0";
+        byte[] bytes = deflate(data, true);
+
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(bytes));
+        assertEquals(data, Charset.forName("UTF-8").decode(decoded).toString());
+        assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testSmallBlockWithChecksumChunked() throws Exception
+    {
+        String data = "0";
+        byte[] bytes = deflate(data, false);
+
+        // The Adler-32 checksum is 4 bytes, split it
+        byte[] bytes1 = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, bytes1, 0, bytes1.length);
+        byte[] bytes2 = new byte[bytes.length - bytes1.length];
+        System.arraycopy(bytes, bytes1.length, bytes2, 0, bytes2.length);
+
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(bytes1));
+        assertEquals(0, decoded.capacity());
+        assertFalse(decoder.isFinished());
+        decoded = decoder.decode(ByteBuffer.wrap(bytes2));
+        assertEquals(data, Charset.forName("UTF-8").decode(decoded).toString());
+        assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testBigBlockOneByteAtATime() throws Exception
+    {
+        String data = "0123456789ABCDEF";
+        for (int i = 0; i < 10; ++i)
+            data += data;
+        byte[] bytes = deflate(data, false);
+
+        String result = "";
+        DeflateContentDecoder decoder = new DeflateContentDecoder(64);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+        {
+            ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(new byte[]{buffer.get()}));
+            if (decoded.hasRemaining())
+                result += Charset.forName("UTF-8").decode(decoded).toString();
+        }
+        assertEquals(data, result);
+        assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testBigRawBlockWithPools() throws Exception
+    {
+        String data = "0123456789ABCDEF";
+        for (int i = 0; i < 12; ++i)
+            data += data;
+        byte[] bytes = deflate(data, true);
+
+        InflaterPool inflaterPool = new InflaterPool();
+        DeflateContentDecoder decoder = new DeflateContentDecoder(inflaterPool, new MappedByteBufferPool(), 64);
+        ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(bytes));
+        assertEquals(data, Charset.forName("UTF-8").decode(decoded).toString());
+        assertTrue(decoder.isFinished());
+
+        decoder.destroy();
+        assertEquals(1, inflaterPool.getIdleInflaters());
+    }
+
+    @Test
+    public void testBlockWithTrailingBytes() throws Exception
+    {
+        String data1 = "0";
+        byte[] bytes1 = deflate(data1, false);
+        String data2 = "1";
+        byte[] bytes2 = data2.getBytes("UTF-8");
+        byte[] bytes = new byte[bytes1.length + bytes2.length];
+        System.arraycopy(bytes1, 0, bytes, 0, bytes1.length);
+        System.arraycopy(bytes2, 0, bytes, bytes1.length, bytes2.length);
+
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        ByteBuffer decoded = decoder.decode(buffer);
+        assertEquals(data1, Charset.forName("UTF-8").decode(decoded).toString());
+        assertTrue(decoder.isFinished());
+        assertEquals(data2, Charset.forName("UTF-8").decode(buffer).toString());
+    }
+
+    private byte[] deflate(String data, boolean raw) throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DeflaterOutputStream output = new DeflaterOutputStream(baos, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        output.write(data.getBytes("UTF-8"));
+        output.close();
+        return baos.toByteArray();
+    }
+}
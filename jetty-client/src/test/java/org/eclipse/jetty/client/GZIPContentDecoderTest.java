@@ -29,6 +29,8 @@ import java.nio.charset.Charset;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.toolchain.test.TestTracker;
 import org.junit.Rule;
 import org.junit.Test;
@@ -289,4 +291,40 @@ public class GZIPContentDecoderTest
         assertTrue(buffer.hasRemaining());
         assertEquals(data2, Charset.forName("UTF-8").decode(buffer).toString());
     }
+
+    @Test
+    public void testBigBlockWithPools() throws Exception
+    {
+        String data = "0123456789ABCDEF";
+        for (int i = 0; i < 12; ++i)
+            data += data;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(baos);
+        output.write(data.getBytes("UTF-8"));
+        output.close();
+        byte[] bytes = baos.toByteArray();
+
+        InflaterPool inflaterPool = new InflaterPool();
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        for (int i = 0; i < 2; ++i)
+        {
+            GZIPContentDecoder decoder = new GZIPContentDecoder(inflaterPool, byteBufferPool, 64);
+            String result = "";
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+            {
+                ByteBuffer chunk = buffer.slice();
+                chunk.limit(Math.min(chunk.remaining(), 1024));
+                buffer.position(buffer.position() + chunk.limit());
+                ByteBuffer decoded = decoder.decode(chunk);
+                result += Charset.forName("UTF-8").decode(decoded).toString();
+            }
+            assertTrue(decoder.isFinished());
+            assertEquals(data, result);
+
+            decoder.destroy();
+            // The inflater is returned to the pool and reused by the next decoder
+            assertEquals(1, inflaterPool.getIdleInflaters());
+        }
+    }
 }
@@ -115,6 +115,55 @@ public class HttpClientLoadTest extends AbstractHttpClientServerTest
         Assert.assertTrue(failures.toString(), failures.isEmpty());
     }
 
+    @Stress("High I/O, High CPU")
+    @Slow
+    @Test
+    public void testPipelinedThroughput() throws Exception
+    {
+        start(new LoadHandler());
+
+        client.setMaxConnectionsPerDestination(1);
+        client.setMaxRequestsQueuedPerDestination(1024 * 1024);
+
+        int iterations = 5000;
+        // Warm up
+        fanOut(iterations, 1);
+
+        long serial = fanOut(iterations, 1);
+        long pipelined = fanOut(iterations, 8);
+        logger.info("{} requests on one connection: {} ms serial, {} ms pipelined", iterations, serial, pipelined);
+    }
+
+    private long fanOut(int iterations, int maxRequestsPipelined) throws InterruptedException
+    {
+        HttpDestination destination = (HttpDestination)client.getDestination(scheme, "localhost", connector.getLocalPort());
+        destination.setMaxRequestsPipelined(maxRequestsPipelined);
+
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(iterations);
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .header("X-Download", "1024")
+                    .send(new Response.CompleteListener()
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            if (result.isFailed())
+                                failures.incrementAndGet();
+                            latch.countDown();
+                        }
+                    });
+        }
+        Assert.assertTrue(latch.await(iterations, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        Assert.assertEquals(0, failures.get());
+        return elapsed;
+    }
+
     private void test(Random random, final CountDownLatch latch, final List<String> failures) throws InterruptedException
     {
         int maxContentLength = 64 * 1024;
@@ -0,0 +1,298 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpClientPipeliningTest extends AbstractHttpClientServerTest
+{
+    public HttpClientPipeliningTest(SslContextFactory sslContextFactory)
+    {
+        super(sslContextFactory);
+    }
+
+    @Test
+    public void testRequestsArePipelinedOnBusyConnection() throws Exception
+    {
+        final int requests = 4;
+        final CountDownLatch sentLatch = new CountDownLatch(requests);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                // The first response is held back until all requests have been sent
+                if ("/0".equals(target))
+                    await(sentLatch);
+                response.setHeader("X-Target", target);
+            }
+        });
+        client.setMaxConnectionsPerDestination(1);
+        HttpDestination destination = (HttpDestination)client.getDestination(scheme, "localhost", connector.getLocalPort());
+        destination.setMaxRequestsPipelined(requests);
+
+        final List<String> targets = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .path("/" + i)
+                    .onRequestSuccess(new Request.SuccessListener()
+                    {
+                        @Override
+                        public void onSuccess(Request request)
+                        {
+                            sentLatch.countDown();
+                        }
+                    })
+                    .send(new Response.CompleteListener()
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            Assert.assertFalse(result.isFailed());
+                            Assert.assertEquals(200, result.getResponse().getStatus());
+                            synchronized (targets)
+                            {
+                                targets.add(result.getResponse().getHeaders().get("X-Target"));
+                            }
+                            latch.countDown();
+                        }
+                    });
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // Responses arrive in the order the requests have been sent
+        for (int i = 0; i < requests; ++i)
+            Assert.assertEquals("/" + i, targets.get(i));
+        Assert.assertEquals(1, destination.getIdleConnections().size());
+    }
+
+    @Test
+    public void testRequestWithContentIsNotPipelined() throws Exception
+    {
+        final CountDownLatch postLatch = new CountDownLatch(1);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                if (HttpMethod.GET.is(request.getMethod()))
+                    await(postLatch);
+            }
+        });
+        client.setMaxConnectionsPerDestination(1);
+        HttpDestination destination = (HttpDestination)client.getDestination(scheme, "localhost", connector.getLocalPort());
+        destination.setMaxRequestsPipelined(4);
+
+        final CountDownLatch getLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded())
+                            getLatch.countDown();
+                    }
+                });
+
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .method(HttpMethod.POST)
+                .content(new BytesContentProvider(new byte[16]))
+                .onRequestBegin(new Request.BeginListener()
+                {
+                    @Override
+                    public void onBegin(Request request)
+                    {
+                        postLatch.countDown();
+                    }
+                })
+                .send(null);
+
+        // The POST is not sent while the GET is outstanding
+        Assert.assertFalse(postLatch.await(1, TimeUnit.SECONDS));
+        Assert.assertFalse(getLatch.await(0, TimeUnit.SECONDS));
+        Assert.assertEquals(1, destination.getHttpExchanges().size());
+    }
+
+    @Test
+    public void testPipelinedRequestsFailOnConnectionFailure() throws Exception
+    {
+        final int requests = 3;
+        final CountDownLatch sentLatch = new CountDownLatch(requests);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                if ("/close".equals(target))
+                {
+                    // Close the connection with the pipelined requests unanswered
+                    await(sentLatch);
+                    baseRequest.getHttpChannel().getEndPoint().close();
+                }
+            }
+        });
+        client.setMaxConnectionsPerDestination(1);
+        HttpDestination destination = (HttpDestination)client.getDestination(scheme, "localhost", connector.getLocalPort());
+        destination.setMaxRequestsPipelined(requests);
+
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger requestSuccesses = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .path(i == 0 ? "/close" : "/" + i)
+                    .onRequestSuccess(new Request.SuccessListener()
+                    {
+                        @Override
+                        public void onSuccess(Request request)
+                        {
+                            requestSuccesses.incrementAndGet();
+                            sentLatch.countDown();
+                        }
+                    })
+                    .send(new Response.CompleteListener()
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            if (result.isFailed())
+                                failures.incrementAndGet();
+                            latch.countDown();
+                        }
+                    });
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // The requests already sent are not sent again, since they may not be idempotent
+        Assert.assertEquals(requests, failures.get());
+        Assert.assertEquals(requests, requestSuccesses.get());
+    }
+
+    @Test
+    public void testAbortPipelinedRequestDoesNotFailOtherRequests() throws Exception
+    {
+        final int requests = 3;
+        final CountDownLatch sentLatch = new CountDownLatch(requests);
+        final CountDownLatch abortLatch = new CountDownLatch(1);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                // The first response is held back until the second request has been aborted
+                if ("/0".equals(target))
+                    await(abortLatch);
+                response.setHeader("X-Target", target);
+            }
+        });
+        client.setMaxConnectionsPerDestination(1);
+        HttpDestination destination = (HttpDestination)client.getDestination(scheme, "localhost", connector.getLocalPort());
+        destination.setMaxRequestsPipelined(requests);
+
+        final List<Request> sent = new ArrayList<>();
+        final List<Result> results = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            Request request = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .path("/" + i)
+                    .onRequestSuccess(new Request.SuccessListener()
+                    {
+                        @Override
+                        public void onSuccess(Request request)
+                        {
+                            sentLatch.countDown();
+                        }
+                    });
+            sent.add(request);
+            request.send(new Response.CompleteListener()
+            {
+                @Override
+                public void onComplete(Result result)
+                {
+                    synchronized (results)
+                    {
+                        results.add(result);
+                    }
+                    latch.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(sentLatch.await(5, TimeUnit.SECONDS));
+        Exception cause = new Exception("explicitly_aborted_by_test");
+        Assert.assertTrue(sent.get(1).abort(cause));
+        abortLatch.countDown();
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // The aborted request fails first, while the others succeed in order
+        Assert.assertSame(cause, results.get(0).getFailure());
+        Assert.assertEquals("/0", results.get(1).getResponse().getHeaders().get("X-Target"));
+        Assert.assertTrue(results.get(1).isSucceeded());
+        Assert.assertEquals("/2", results.get(2).getResponse().getHeaders().get("X-Target"));
+        Assert.assertTrue(results.get(2).isSucceeded());
+        // The connection is still usable
+        Assert.assertEquals(1, destination.getIdleConnections().size());
+    }
+
+    private static void await(CountDownLatch latch) throws IOException
+    {
+        try
+        {
+            if (!latch.await(5, TimeUnit.SECONDS))
+                throw new IOException("Timeout");
+        }
+        catch (InterruptedException x)
+        {
+            throw new IOException(x);
+        }
+    }
+}
@@ -26,12 +26,19 @@ import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -45,19 +52,25 @@ import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.ChannelResponseListener;
 import org.eclipse.jetty.client.util.DeferredContentProvider;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.client.util.OutputStreamContentProvider;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
 import org.eclipse.jetty.toolchain.test.annotation.Slow;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.junit.Assert;
 import org.junit.Test;
 
 import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.junit.Assert.fail;
 
 public class HttpClientStreamTest extends AbstractHttpClientServerTest
@@ -549,4 +562,333 @@ public class HttpClientStreamTest extends AbstractHttpClientServerTest
 
         Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
     }
+
+    @Test
+    public void testDownloadToChannel() throws Exception
+    {
+        final byte[] data = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(data);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setContentLength(data.length);
+                response.getOutputStream().write(data);
+            }
+        });
+
+        Path targetTestsDir = MavenTestingUtils.getTargetTestingDir().toPath();
+        Files.createDirectories(targetTestsDir);
+        Path download = Paths.get(targetTestsDir.toString(), "http_client_download.big");
+        final CountDownLatch latch = new CountDownLatch(1);
+        try (FileChannel channel = FileChannel.open(download, CREATE, WRITE, TRUNCATE_EXISTING))
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .send(new ChannelResponseListener(channel, client.getExecutor())
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            if (result.isSucceeded() && getBytesWritten() == data.length)
+                                latch.countDown();
+                        }
+                    });
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(download));
+    }
+
+    @Test
+    public void testAsyncContentStopsReading() throws Exception
+    {
+        final byte[] data = new byte[16 * 1024 * 1024];
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setContentLength(data.length);
+                response.getOutputStream().write(data);
+            }
+        });
+
+        final BlockingQueue<Callback> callbacks = new LinkedBlockingQueue<>();
+        final AtomicLong received = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentAsync(new Response.AsyncContentListener()
+                {
+                    @Override
+                    public void onContent(Response response, ByteBuffer content, Callback callback)
+                    {
+                        received.addAndGet(content.remaining());
+                        callbacks.offer(callback);
+                    }
+                })
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded())
+                            latch.countDown();
+                    }
+                });
+
+        // Without consuming the content, nothing more is read
+        Callback callback = callbacks.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(callback);
+        Thread.sleep(500);
+        Assert.assertTrue(callbacks.isEmpty());
+        Assert.assertTrue(received.get() <= client.getResponseBufferSize());
+
+        while (callback != null)
+        {
+            callback.succeeded();
+            callback = callbacks.poll(5, TimeUnit.SECONDS);
+            if (received.get() == data.length && callbacks.isEmpty() && latch.getCount() == 0)
+                break;
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(data.length, received.get());
+    }
+
+    @Test
+    public void testAsyncContentFailureAbortsResponse() throws Exception
+    {
+        final byte[] data = new byte[1024];
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.getOutputStream().write(data);
+            }
+        });
+
+        final Exception failure = new Exception("explicitly_thrown_by_test");
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentAsync(new Response.AsyncContentListener()
+                {
+                    @Override
+                    public void onContent(Response response, ByteBuffer content, final Callback callback)
+                    {
+                        client.getExecutor().execute(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                callback.failed(failure);
+                            }
+                        });
+                    }
+                })
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isFailed() && result.getResponseFailure() == failure)
+                            latch.countDown();
+                    }
+                });
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncContentAbortWhilePausedReleasesBuffer() throws Exception
+    {
+        final byte[] data = new byte[1024 * 1024];
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.getOutputStream().write(data);
+            }
+        });
+
+        // Track the response buffers that are not returned to the pool
+        final int bufferSize = 2048;
+        final ByteBufferPool bufferPool = new MappedByteBufferPool();
+        final Set<ByteBuffer> acquired = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>()));
+        client.stop();
+        client.setResponseBufferSize(bufferSize);
+        client.setByteBufferPool(new ByteBufferPool()
+        {
+            @Override
+            public ByteBuffer acquire(int size, boolean direct)
+            {
+                ByteBuffer buffer = bufferPool.acquire(size, direct);
+                if (size == bufferSize)
+                    acquired.add(buffer);
+                return buffer;
+            }
+
+            @Override
+            public void release(ByteBuffer buffer)
+            {
+                acquired.remove(buffer);
+                bufferPool.release(buffer);
+            }
+        });
+        client.start();
+
+        final BlockingQueue<Callback> callbacks = new LinkedBlockingQueue<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        Request request = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentAsync(new Response.AsyncContentListener()
+                {
+                    @Override
+                    public void onContent(Response response, ByteBuffer content, Callback callback)
+                    {
+                        callbacks.offer(callback);
+                    }
+                });
+        request.send(new Response.CompleteListener()
+        {
+            @Override
+            public void onComplete(Result result)
+            {
+                if (result.isFailed())
+                    latch.countDown();
+            }
+        });
+
+        Callback callback = callbacks.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(callback);
+        Assert.assertTrue(request.abort(new Exception("explicitly_thrown_by_test")));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        // Reading does not resume, and the paused buffer has been released
+        callback.succeeded();
+        Thread.sleep(500);
+        Assert.assertTrue(callbacks.isEmpty());
+        Assert.assertTrue(acquired.isEmpty());
+    }
+
+    @Test
+    public void testDemandedContent() throws Exception
+    {
+        final byte[] data = new byte[16 * 1024 * 1024];
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.getOutputStream().write(data);
+            }
+        });
+
+        final AtomicReference<Response.ContentDemand> demandRef = new AtomicReference<>();
+        final AtomicInteger chunks = new AtomicInteger();
+        final AtomicLong received = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentDemanded(new Response.DemandedContentListener()
+                {
+                    @Override
+                    public void onBeforeContent(Response response, Response.ContentDemand demand)
+                    {
+                        demandRef.set(demand);
+                        demand.request(1);
+                    }
+
+                    @Override
+                    public void onContent(Response response, ByteBuffer content, Response.ContentDemand demand)
+                    {
+                        chunks.incrementAndGet();
+                        received.addAndGet(content.remaining());
+                        content.position(content.limit());
+                    }
+                })
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded())
+                            latch.countDown();
+                    }
+                });
+
+        // Only the demanded chunk is delivered
+        Thread.sleep(1000);
+        Assert.assertEquals(1, chunks.get());
+        Assert.assertTrue(received.get() < data.length);
+
+        demandRef.get().request(1);
+        Thread.sleep(500);
+        Assert.assertEquals(2, chunks.get());
+
+        demandRef.get().request(Long.MAX_VALUE);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(data.length, received.get());
+    }
+
+    @Test
+    public void testDemandedContentFromListener() throws Exception
+    {
+        final byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setContentLength(data.length);
+                response.getOutputStream().write(data);
+            }
+        });
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .send(new DemandingResponseListener()
+                {
+                    @Override
+                    public void onContent(Response response, ByteBuffer content, Response.ContentDemand demand)
+                    {
+                        byte[] bytes = new byte[content.remaining()];
+                        content.get(bytes);
+                        output.write(bytes, 0, bytes.length);
+                        demand.request(1);
+                    }
+
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded())
+                            latch.countDown();
+                    }
+                });
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertArrayEquals(data, output.toByteArray());
+    }
+
+    private static abstract class DemandingResponseListener extends Response.Listener.Empty implements Response.DemandedContentListener
+    {
+        @Override
+        public void onBeforeContent(Response response, Response.ContentDemand demand)
+        {
+            demand.request(1);
+        }
+    }
 }
@@ -36,6 +36,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -544,7 +545,7 @@ public class HttpClientTest extends AbstractHttpClientServerTest
                     public void onBegin(Request request)
                     {
                         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
-                        destination.getActiveConnections().peek().close();
+                        destination.getActiveConnections().iterator().next().close();
                     }
                 })
                 .send(new Response.Listener.Empty()
@@ -585,6 +586,34 @@ public class HttpClientTest extends AbstractHttpClientServerTest
         Assert.assertArrayEquals(data, response.getContent());
     }
 
+    @Test
+    public void test_Deflate_ContentEncoding() throws Exception
+    {
+        final byte[] data = new byte[64 * 1024];
+        for (int i = 0; i < data.length; ++i)
+            data[i] = (byte)('A' + i % 26);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setHeader("Content-Encoding", "deflate");
+                DeflaterOutputStream deflateOutput = new DeflaterOutputStream(response.getOutputStream());
+                deflateOutput.write(data);
+                deflateOutput.finish();
+            }
+        });
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertArrayEquals(data, response.getContent());
+    }
+
     @Slow
     @Test
     public void test_Request_IdleTimeout() throws Exception
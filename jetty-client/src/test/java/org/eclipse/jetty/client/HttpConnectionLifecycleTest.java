@@ -20,7 +20,8 @@ package org.eclipse.jetty.client;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.BlockingQueue;
+import java.util.Collection;
+import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -59,10 +60,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
         int port = connector.getLocalPort();
         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-        final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+        final Queue<Connection> idleConnections = destination.getIdleConnections();
         Assert.assertEquals(0, idleConnections.size());
 
-        final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+        final Collection<Connection> activeConnections = destination.getActiveConnections();
         Assert.assertEquals(0, activeConnections.size());
 
         final CountDownLatch headersLatch = new CountDownLatch(1);
@@ -119,10 +120,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
         int port = connector.getLocalPort();
         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-        final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+        final Queue<Connection> idleConnections = destination.getIdleConnections();
         Assert.assertEquals(0, idleConnections.size());
 
-        final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+        final Collection<Connection> activeConnections = destination.getActiveConnections();
         Assert.assertEquals(0, activeConnections.size());
 
         final CountDownLatch beginLatch = new CountDownLatch(1);
@@ -132,7 +133,7 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
             @Override
             public void onBegin(Request request)
             {
-                activeConnections.peek().close();
+                activeConnections.iterator().next().close();
                 beginLatch.countDown();
             }
 
@@ -169,10 +170,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
         int port = connector.getLocalPort();
         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-        final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+        final Queue<Connection> idleConnections = destination.getIdleConnections();
         Assert.assertEquals(0, idleConnections.size());
 
-        final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+        final Collection<Connection> activeConnections = destination.getActiveConnections();
         Assert.assertEquals(0, activeConnections.size());
 
         final CountDownLatch successLatch = new CountDownLatch(3);
@@ -228,10 +229,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
         int port = connector.getLocalPort();
         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-        final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+        final Queue<Connection> idleConnections = destination.getIdleConnections();
         Assert.assertEquals(0, idleConnections.size());
 
-        final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+        final Collection<Connection> activeConnections = destination.getActiveConnections();
         Assert.assertEquals(0, activeConnections.size());
 
         final long delay = 1000;
@@ -300,10 +301,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
         int port = connector.getLocalPort();
         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-        final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+        final Queue<Connection> idleConnections = destination.getIdleConnections();
         Assert.assertEquals(0, idleConnections.size());
 
-        final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+        final Collection<Connection> activeConnections = destination.getActiveConnections();
         Assert.assertEquals(0, activeConnections.size());
 
         server.stop();
@@ -352,10 +353,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
         int port = connector.getLocalPort();
         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-        final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+        final Queue<Connection> idleConnections = destination.getIdleConnections();
         Assert.assertEquals(0, idleConnections.size());
 
-        final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+        final Collection<Connection> activeConnections = destination.getActiveConnections();
         Assert.assertEquals(0, activeConnections.size());
 
         final CountDownLatch latch = new CountDownLatch(1);
@@ -401,10 +402,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
             int port = connector.getLocalPort();
             HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-            final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+            final Queue<Connection> idleConnections = destination.getIdleConnections();
             Assert.assertEquals(0, idleConnections.size());
 
-            final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+            final Collection<Connection> activeConnections = destination.getActiveConnections();
             Assert.assertEquals(0, activeConnections.size());
 
             Log.getLogger(HttpConnection.class).info("Expecting java.lang.IllegalStateException: HttpParser{s=CLOSED,...");
@@ -445,10 +446,10 @@ public class HttpConnectionLifecycleTest extends AbstractHttpClientServerTest
         int port = connector.getLocalPort();
         HttpDestination destination = (HttpDestination)client.getDestination(scheme, host, port);
 
-        final BlockingQueue<Connection> idleConnections = destination.getIdleConnections();
+        final Queue<Connection> idleConnections = destination.getIdleConnections();
         Assert.assertEquals(0, idleConnections.size());
 
-        final BlockingQueue<Connection> activeConnections = destination.getActiveConnections();
+        final Collection<Connection> activeConnections = destination.getActiveConnections();
         Assert.assertEquals(0, activeConnections.size());
 
         ContentResponse response = client.newRequest(host, port)
@@ -20,9 +20,12 @@ package org.eclipse.jetty.client;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.toolchain.test.annotation.Slow;
+import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.junit.Assert;
 import org.junit.Before;
@@ -49,7 +52,7 @@ public class HttpDestinationTest extends AbstractHttpClientServerTest
         if (connection == null)
         {
             // There are no queued requests, so the newly created connection will be idle
-            connection = destination.getIdleConnections().poll(5, TimeUnit.SECONDS);
+            connection = pollIdleConnection(destination, 5, TimeUnit.SECONDS);
         }
         Assert.assertNotNull(connection);
     }
@@ -107,9 +110,9 @@ public class HttpDestinationTest extends AbstractHttpClientServerTest
         latch.countDown();
 
         // There must be 2 idle connections
-        Connection connection = destination.getIdleConnections().poll(5, TimeUnit.SECONDS);
+        Connection connection = pollIdleConnection(destination, 5, TimeUnit.SECONDS);
         Assert.assertNotNull(connection);
-        connection = destination.getIdleConnections().poll(5, TimeUnit.SECONDS);
+        connection = pollIdleConnection(destination, 5, TimeUnit.SECONDS);
         Assert.assertNotNull(connection);
     }
 
@@ -119,7 +122,7 @@ public class HttpDestinationTest extends AbstractHttpClientServerTest
         HttpDestination destination = new HttpDestination(client, "http", "localhost", connector.getLocalPort());
         Connection connection1 = destination.acquire();
         if (connection1 == null)
-            connection1 = destination.getIdleConnections().poll(5, TimeUnit.SECONDS);
+            connection1 = pollIdleConnection(destination, 5, TimeUnit.SECONDS);
         Assert.assertNotNull(connection1);
 
         destination.process(connection1, false);
@@ -155,4 +158,130 @@ public class HttpDestinationTest extends AbstractHttpClientServerTest
             Assert.assertNull(connection1);
         }
     }
+
+    @Test
+    public void test_Prewarm_OpensIdleConnections() throws Exception
+    {
+        HttpDestination destination = new HttpDestination(client, "http", "localhost", connector.getLocalPort());
+        ConnectionPool connectionPool = destination.getConnectionPool();
+
+        Assert.assertEquals(2, connectionPool.prewarm(2));
+        // Already opening the connections
+        Assert.assertEquals(0, connectionPool.prewarm(2));
+
+        long start = System.nanoTime();
+        while (connectionPool.getIdleConnectionCount() < 2 && TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5)
+            TimeUnit.MILLISECONDS.sleep(50);
+        Assert.assertEquals(2, connectionPool.getIdleConnectionCount());
+        Assert.assertEquals(2, connectionPool.getConnectionCount());
+        Assert.assertEquals(2, connectionPool.getConnectionsCreated());
+    }
+
+    @Test
+    public void test_Release_ReusesMostRecentlyReleasedConnection() throws Exception
+    {
+        HttpDestination destination = new HttpDestination(client, "http", "localhost", connector.getLocalPort());
+        ConnectionPool connectionPool = destination.getConnectionPool();
+        connectionPool.prewarm(2);
+        Connection connection1 = pollIdleConnection(destination, 5, TimeUnit.SECONDS);
+        Connection connection2 = pollIdleConnection(destination, 5, TimeUnit.SECONDS);
+        Assert.assertNotNull(connection1);
+        Assert.assertNotNull(connection2);
+
+        connectionPool.active(connection1);
+        connectionPool.active(connection2);
+        destination.release(connection1);
+        destination.release(connection2);
+
+        // LIFO: the last released connection is acquired first
+        Assert.assertSame(connection2, destination.acquire());
+        Assert.assertSame(connection1, destination.acquire());
+    }
+
+    @Test
+    public void test_Remove_CountsClosedConnections() throws Exception
+    {
+        HttpDestination destination = new HttpDestination(client, "http", "localhost", connector.getLocalPort());
+        ConnectionPool connectionPool = destination.getConnectionPool();
+        connectionPool.prewarm(1);
+        long start = System.nanoTime();
+        while (connectionPool.getIdleConnectionCount() < 1 && TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5)
+            TimeUnit.MILLISECONDS.sleep(50);
+
+        Connection connection = connectionPool.getIdleConnections().peek();
+        Assert.assertNotNull(connection);
+        connection.close();
+
+        Assert.assertEquals(0, connectionPool.getConnectionCount());
+        Assert.assertEquals(1, connectionPool.getConnectionsClosed());
+    }
+
+    @Test
+    public void test_Close_KeepsCountingConnectionsBeingOpened() throws Exception
+    {
+        final AtomicReference<Promise<Connection>> opening = new AtomicReference<>();
+        HttpDestination destination = new HttpDestination(client, "http", "localhost", connector.getLocalPort())
+        {
+            @Override
+            public void newConnection(Promise<Connection> promise)
+            {
+                // The first connection opens, the others are held while being opened
+                if (getConnectionPool().getConnectionCount() > 1)
+                    opening.set(promise);
+                else
+                    super.newConnection(promise);
+            }
+        };
+        ConnectionPool connectionPool = destination.getConnectionPool();
+        connectionPool.prewarm(1);
+        long start = System.nanoTime();
+        while (connectionPool.getIdleConnectionCount() < 1 && TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5)
+            TimeUnit.MILLISECONDS.sleep(50);
+        Assert.assertEquals(1, connectionPool.prewarm(2));
+        Assert.assertNotNull(opening.get());
+
+        connectionPool.close();
+        Assert.assertEquals(1, connectionPool.getConnectionCount());
+        Assert.assertEquals(1, connectionPool.getConnectionsClosed());
+
+        opening.get().failed(new Exception("explicitly_thrown_by_test"));
+        Assert.assertEquals(0, connectionPool.getConnectionCount());
+    }
+
+    @Test
+    public void test_Exchange_RecordsLatencies() throws Exception
+    {
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        Assert.assertEquals(200, response.getStatus());
+
+        HttpDestination destination = (HttpDestination)client.getDestination(scheme, "localhost", connector.getLocalPort());
+        LatencyStatistics statistics = destination.getLatencyStatistics();
+        Assert.assertEquals(1, statistics.getHistogram(LatencyStatistics.Phase.DNS).getCount());
+        Assert.assertEquals(1, statistics.getHistogram(LatencyStatistics.Phase.CONNECT).getCount());
+        Assert.assertEquals(sslContextFactory == null ? 0 : 1, statistics.getHistogram(LatencyStatistics.Phase.TLS).getCount());
+        Assert.assertEquals(1, statistics.getHistogram(LatencyStatistics.Phase.QUEUE).getCount());
+        Assert.assertEquals(1, statistics.getHistogram(LatencyStatistics.Phase.FIRST_BYTE).getCount());
+        Assert.assertEquals(1, statistics.getHistogram(LatencyStatistics.Phase.TRANSFER).getCount());
+        Assert.assertEquals(1, statistics.getHistogram(LatencyStatistics.Phase.TOTAL).getCount());
+        Assert.assertTrue(destination.dump().contains(LatencyStatistics.class.getSimpleName()));
+
+        statistics.reset();
+        Assert.assertEquals(0, statistics.getHistogram(LatencyStatistics.Phase.TOTAL).getCount());
+    }
+
+    private Connection pollIdleConnection(HttpDestination destination, long time, TimeUnit unit) throws InterruptedException
+    {
+        long start = System.nanoTime();
+        while (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < unit.toMillis(time))
+        {
+            Connection connection = destination.getIdleConnections().poll();
+            if (connection != null)
+                return connection;
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return null;
+    }
 }
@@ -22,10 +22,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.jetty.client.api.ContentResponse;
@@ -36,6 +39,8 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.ByteArrayEndPoint;
 import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.component.Destroyable;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -241,4 +246,107 @@ public class HttpReceiverTest
         Assert.assertEquals(200, response.getStatus());
         Assert.assertArrayEquals(data, response.getContent());
     }
+
+    @Test
+    public void test_Receive_StackedContentEncodings_PassedThrough() throws Exception
+    {
+        byte[] data = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(baos))
+        {
+            gzipOutput.write(data);
+        }
+        byte[] gzip = baos.toByteArray();
+
+        // Only one of the stacked codings could be decoded, so none is
+        byte[] head = ("" +
+                "HTTP/1.1 200 OK\r\n" +
+                "Content-Length: " + gzip.length + "\r\n" +
+                "Content-Encoding: deflate, gzip\r\n" +
+                "\r\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer input = ByteBuffer.allocate(head.length + gzip.length);
+        input.put(head).put(gzip).flip();
+        endPoint.setInput(input);
+        HttpExchange exchange = newExchange();
+        FutureResponseListener listener = (FutureResponseListener)exchange.getResponseListeners().get(0);
+        connection.receive();
+
+        ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(response);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertArrayEquals(gzip, response.getContent());
+    }
+
+    @Test
+    public void test_Receive_FailureWhileContentIsConsumed_DestroysDecoder() throws Exception
+    {
+        final AtomicInteger destroys = new AtomicInteger();
+        client.getContentDecoderFactories().add(new ContentDecoder.Factory("test")
+        {
+            @Override
+            public ContentDecoder newContentDecoder()
+            {
+                return new DestroyableContentDecoder(destroys);
+            }
+        });
+
+        String content = "0123456789ABCDEF";
+        endPoint.setInput("" +
+                "HTTP/1.1 200 OK\r\n" +
+                "Content-Length: " + content.length() + "\r\n" +
+                "Content-Encoding: test\r\n" +
+                "\r\n" +
+                content);
+        final AtomicReference<Callback> callbackRef = new AtomicReference<>();
+        HttpRequest request = new HttpRequest(client, URI.create("http://localhost"));
+        Response.AsyncContentListener listener = new Response.AsyncContentListener()
+        {
+            @Override
+            public void onContent(Response response, ByteBuffer content, Callback callback)
+            {
+                callbackRef.set(callback);
+            }
+        };
+        HttpExchange exchange = new HttpExchange(conversation, destination, request, Collections.<Response.ResponseListener>singletonList(listener));
+        conversation.getExchanges().offer(exchange);
+        connection.associate(exchange);
+        exchange.requestComplete(null);
+        exchange.terminateRequest();
+        connection.receive();
+
+        // The decoded content is being consumed, so the decoder is in use
+        Callback callback = callbackRef.get();
+        Assert.assertNotNull(callback);
+        Assert.assertEquals(0, destroys.get());
+
+        Assert.assertTrue(exchange.abort(new Exception("explicitly_thrown_by_test")));
+        Assert.assertEquals(1, destroys.get());
+
+        callback.succeeded();
+        Assert.assertEquals(1, destroys.get());
+    }
+
+    private static class DestroyableContentDecoder implements ContentDecoder, Destroyable
+    {
+        private final AtomicInteger destroys;
+
+        private DestroyableContentDecoder(AtomicInteger destroys)
+        {
+            this.destroys = destroys;
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer buffer)
+        {
+            ByteBuffer decoded = buffer.slice();
+            buffer.position(buffer.limit());
+            return decoded;
+        }
+
+        @Override
+        public void destroy()
+        {
+            destroys.incrementAndGet();
+        }
+    }
 }
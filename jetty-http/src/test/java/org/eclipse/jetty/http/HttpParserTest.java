@@ -560,6 +560,94 @@ public class HttpParserTest
         assertTrue(_messageCompleted);
     }
 
+    @Test
+    public void testResponseContentEndingAtEndOfBuffer() throws Exception
+    {
+        ByteBuffer buffer= BufferUtil.toBuffer(
+                "HTTP/1.1 200 OK\015\012"
+                        + "Content-Length: 10\015\012"
+                        + "\015\012"
+                        + "0123456789");
+
+        Handler handler = new Handler()
+        {
+            @Override
+            public boolean content(ByteBuffer ref)
+            {
+                super.content(ref);
+                return true;
+            }
+        };
+        HttpParser parser= new HttpParser((HttpParser.ResponseHandler)handler);
+        assertTrue(parser.parseNext(buffer));
+        assertEquals("0123456789", _content);
+        assertFalse(buffer.hasRemaining());
+        assertFalse(_messageCompleted);
+
+        // The message completes without further bytes
+        assertTrue(parser.parseNext(BufferUtil.EMPTY_BUFFER));
+        assertTrue(_messageCompleted);
+        assertEquals(HttpParser.State.END, parser.getState());
+    }
+
+    @Test
+    public void testResponseZeroContentLength() throws Exception
+    {
+        ByteBuffer buffer= BufferUtil.toBuffer(
+                "HTTP/1.1 200 OK\015\012"
+                        + "Content-Length: 0\015\012"
+                        + "\015\012");
+
+        Handler handler = new Handler();
+        HttpParser parser= new HttpParser((HttpParser.ResponseHandler)handler);
+        assertTrue(parser.parseNext(buffer));
+        assertEquals(null, _content);
+        assertTrue(_headerCompleted);
+        assertTrue(_messageCompleted);
+        assertEquals(HttpParser.State.END, parser.getState());
+
+        // An empty buffer neither completes the message again nor fails it
+        _messageCompleted = false;
+        assertFalse(parser.parseNext(BufferUtil.EMPTY_BUFFER));
+        assertFalse(_messageCompleted);
+        assertEquals(null, _bad);
+        assertEquals(HttpParser.State.END, parser.getState());
+    }
+
+    @Test
+    public void testResponseChunkEndingAtEndOfBuffer() throws Exception
+    {
+        ByteBuffer buffer= BufferUtil.toBuffer(
+                "HTTP/1.1 200 OK\015\012"
+                        + "Transfer-Encoding: chunked\015\012"
+                        + "\015\012"
+                        + "a\015\012"
+                        + "0123456789");
+
+        Handler handler = new Handler()
+        {
+            @Override
+            public boolean content(ByteBuffer ref)
+            {
+                super.content(ref);
+                return true;
+            }
+        };
+        HttpParser parser= new HttpParser((HttpParser.ResponseHandler)handler);
+        assertTrue(parser.parseNext(buffer));
+        assertEquals("0123456789", _content);
+        assertFalse(buffer.hasRemaining());
+
+        // The end of a chunk is not the end of the message
+        assertFalse(parser.parseNext(BufferUtil.EMPTY_BUFFER));
+        assertFalse(_messageCompleted);
+
+        assertTrue(parser.parseNext(BufferUtil.toBuffer("\015\0120\015\012\015\012")));
+        assertEquals("0123456789", _content);
+        assertTrue(_messageCompleted);
+        assertEquals(HttpParser.State.END, parser.getState());
+    }
+
     @Test
     public void testResponse304WithContentLength() throws Exception
     {
@@ -180,6 +180,14 @@ public class SslConnection extends AbstractConnection
         getDecryptedEndPoint().getConnection().close();
     }
 
+    /**
+     * <p>Invoked when a TLS handshake, either the initial one or a renegotiation, completes.</p>
+     * <p>The default implementation does nothing.</p>
+     */
+    protected void onHandshakeComplete()
+    {
+    }
+
     /* ------------------------------------------------------------ */
     @Override
     public void onFillable()
@@ -489,6 +497,8 @@ public class SslConnection extends AbstractConnection
                     BufferUtil.flipToFlush(app_in, pos);
                     if (DEBUG)
                         LOG.debug("{} unwrap {}", SslConnection.this, unwrapResult);
+                    if (unwrapResult.getHandshakeStatus() == HandshakeStatus.FINISHED)
+                        onHandshakeComplete();
 
                     // and deal with the results
                     switch (unwrapResult.getStatus())
@@ -658,6 +668,8 @@ public class SslConnection extends AbstractConnection
                     if (DEBUG)
                         LOG.debug("{} wrap {}", SslConnection.this, wrapResult);
                     BufferUtil.flipToFlush(_encryptedOutput, pos);
+                    if (wrapResult.getHandshakeStatus() == HandshakeStatus.FINISHED)
+                        onHandshakeComplete();
                     if (wrapResult.bytesConsumed()>0)
                         consumed+=wrapResult.bytesConsumed();
 
@@ -25,16 +25,60 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
-
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>A {@link ProxyServlet} that balances requests over a set of balancer members,
+ * each configured with the {@code balancerMember.<name>.proxyTo} init parameter.</p>
+ * <p>The following init parameters may be used to configure the servlet:</p>
+ * <ul>
+ * <li>stickySessions - whether requests with a session are sent to the member that created the session</li>
+ * <li>proxyPassReverse - whether the backend locations in the response headers are rewritten</li>
+ * <li>balancerStrategy - how members are selected: {@code roundRobin} (the default), {@code leastRequests}
+ * to select the member with the least outstanding requests, or {@code latency} to select the member
+ * with the lowest moving average of the response latency, weighted by its outstanding requests</li>
+ * <li>healthCheckPath - if set, the path that is periodically requested to each member;
+ * members that do not reply with a 2xx or 3xx status are not selected until they do</li>
+ * <li>healthCheckInterval - the interval in milliseconds between health checks, 10000 by default</li>
+ * <li>healthCheckTimeout - the timeout in milliseconds of health checks, 5000 by default</li>
+ * <li>maxConsecutiveFailures - the number of consecutive failed exchanges after which a member
+ * is ejected, 5 by default; 0 disables ejections</li>
+ * <li>ejectionTime - the time in milliseconds a member is ejected for, 30000 by default</li>
+ * </ul>
+ * <p>An exchange fails if the member cannot be reached, fails or times out while the request is
+ * proxied, or replies with a 502, 503 or 504 status; exchanges aborted because of the downstream
+ * client do not count against the member. The latency is the time until the member response
+ * is received, regardless of how fast it is relayed to the client.
+ * When no member is available, requests are balanced over all members.</p>
+ * <p>To facilitate JMX monitoring, each {@link BalancerMember} is set as context attribute,
+ * named after the servlet's name followed by {@code .balancerMember.<name>}, and exposed
+ * by the mechanism provided by {@link ContextHandler#MANAGED_ATTRIBUTES}.</p>
+ */
 public class BalancerServlet extends ProxyServlet
 {
     private static final String BALANCER_MEMBER_PREFIX = "balancerMember.";
+    private static final String BALANCER_MEMBER_ATTRIBUTE = BalancerServlet.class.getName() + ".balancerMember";
+    private static final String UPSTREAM_LISTENER_ATTRIBUTE = BalancerServlet.class.getName() + ".upstreamListener";
     private static final List<String> FORBIDDEN_CONFIG_PARAMETERS;
 
     static
@@ -61,9 +105,17 @@ public class BalancerServlet extends ProxyServlet
     private static final String JSESSIONID_URL_PREFIX = JSESSIONID + "=";
 
     private final List<BalancerMember> _balancerMembers = new ArrayList<>();
+    private final List<HealthCheck> _healthChecks = new ArrayList<>();
     private final AtomicLong counter = new AtomicLong();
     private boolean _stickySessions;
     private boolean _proxyPassReverse;
+    private Strategy _strategy;
+    private String _healthCheckPath;
+    private long _healthCheckInterval;
+    private long _healthCheckTimeout;
+    private int _maxConsecutiveFailures;
+    private long _ejectionTime;
+    private volatile boolean _destroyed;
 
     @Override
     public void init() throws ServletException
@@ -73,6 +125,18 @@ public class BalancerServlet extends ProxyServlet
         initStickySessions();
         initBalancers();
         initProxyPassReverse();
+        initStrategy();
+        initOutlierEjection();
+        initHealthChecks();
+    }
+
+    @Override
+    public void destroy()
+    {
+        _destroyed = true;
+        for (HealthCheck healthCheck : _healthChecks)
+            healthCheck.cancel();
+        super.destroy();
     }
 
     private void validateConfig() throws ServletException
@@ -103,6 +167,11 @@ public class BalancerServlet extends ProxyServlet
             members.add(new BalancerMember(balancerName, proxyTo));
         }
         _balancerMembers.addAll(members);
+
+        // Put the members in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
+        String prefix = getServletConfig().getServletName() + "." + BALANCER_MEMBER_PREFIX;
+        for (BalancerMember balancerMember : _balancerMembers)
+            getServletContext().setAttribute(prefix + balancerMember.getName(), balancerMember);
     }
 
     private void initProxyPassReverse()
@@ -110,6 +179,52 @@ public class BalancerServlet extends ProxyServlet
         _proxyPassReverse = Boolean.parseBoolean(getServletConfig().getInitParameter("proxyPassReverse"));
     }
 
+    private void initStrategy() throws ServletException
+    {
+        String strategy = getServletConfig().getInitParameter("balancerStrategy");
+        if (strategy == null || "roundRobin".equals(strategy))
+            _strategy = Strategy.ROUND_ROBIN;
+        else if ("leastRequests".equals(strategy))
+            _strategy = Strategy.LEAST_REQUESTS;
+        else if ("latency".equals(strategy))
+            _strategy = Strategy.LATENCY;
+        else
+            throw new UnavailableException("balancerStrategy parameter value not supported: " + strategy);
+    }
+
+    private void initOutlierEjection()
+    {
+        ServletConfig config = getServletConfig();
+
+        String value = config.getInitParameter("maxConsecutiveFailures");
+        _maxConsecutiveFailures = value == null ? 5 : Integer.parseInt(value);
+
+        value = config.getInitParameter("ejectionTime");
+        _ejectionTime = value == null ? 30000 : Long.parseLong(value);
+    }
+
+    private void initHealthChecks()
+    {
+        ServletConfig config = getServletConfig();
+
+        _healthCheckPath = config.getInitParameter("healthCheckPath");
+        if (_healthCheckPath == null)
+            return;
+
+        String value = config.getInitParameter("healthCheckInterval");
+        _healthCheckInterval = value == null ? 10000 : Long.parseLong(value);
+
+        value = config.getInitParameter("healthCheckTimeout");
+        _healthCheckTimeout = value == null ? 5000 : Long.parseLong(value);
+
+        for (BalancerMember balancerMember : _balancerMembers)
+        {
+            HealthCheck healthCheck = new HealthCheck(balancerMember);
+            _healthChecks.add(healthCheck);
+            healthCheck.run();
+        }
+    }
+
     private Set<String> getBalancerNames() throws ServletException
     {
         Set<String> names = new HashSet<>();
@@ -132,6 +247,7 @@ public class BalancerServlet extends ProxyServlet
     {
         BalancerMember balancerMember = selectBalancerMember(request);
         _log.debug("Selected {}", balancerMember);
+        request.setAttribute(BALANCER_MEMBER_ATTRIBUTE, balancerMember);
         String path = request.getRequestURI();
         String query = request.getQueryString();
         if (query != null)
@@ -147,12 +263,76 @@ public class BalancerServlet extends ProxyServlet
             if (name != null)
             {
                 BalancerMember balancerMember = findBalancerMemberByName(name);
-                if (balancerMember != null)
+                if (balancerMember != null && balancerMember.isAvailable())
                     return balancerMember;
             }
         }
-        int index = (int)(counter.getAndIncrement() % _balancerMembers.size());
-        return _balancerMembers.get(index);
+
+        List<BalancerMember> members = new ArrayList<>(_balancerMembers.size());
+        for (BalancerMember balancerMember : _balancerMembers)
+        {
+            if (balancerMember.isAvailable())
+                members.add(balancerMember);
+        }
+        // Better to try a member that may be down than to fail for sure
+        if (members.isEmpty())
+            members = _balancerMembers;
+
+        int size = members.size();
+        int index = (int)(counter.getAndIncrement() % size);
+        switch (_strategy)
+        {
+            case LEAST_REQUESTS:
+            {
+                // Ties are broken in round-robin order
+                BalancerMember result = null;
+                for (int i = 0; i < size; ++i)
+                {
+                    BalancerMember balancerMember = members.get((index + i) % size);
+                    if (result == null || balancerMember.getOutstandingRequests() < result.getOutstandingRequests())
+                        result = balancerMember;
+                }
+                return result;
+            }
+            case LATENCY:
+            {
+                // Members without latency samples are assumed to have the average latency
+                // of the other members, so that their outstanding requests still count
+                double defaultLatency = 0;
+                int sampled = 0;
+                for (BalancerMember balancerMember : members)
+                {
+                    double latency = balancerMember.getLatency();
+                    if (latency > 0)
+                    {
+                        defaultLatency += latency;
+                        ++sampled;
+                    }
+                }
+                defaultLatency = sampled == 0 ? 1 : defaultLatency / sampled;
+
+                BalancerMember result = null;
+                double resultCost = 0;
+                for (int i = 0; i < size; ++i)
+                {
+                    BalancerMember balancerMember = members.get((index + i) % size);
+                    double latency = balancerMember.getLatency();
+                    if (latency <= 0)
+                        latency = defaultLatency;
+                    double cost = latency * (balancerMember.getOutstandingRequests() + 1);
+                    if (result == null || cost < resultCost)
+                    {
+                        result = balancerMember;
+                        resultCost = cost;
+                    }
+                }
+                return result;
+            }
+            default:
+            {
+                return members.get(index);
+            }
+        }
     }
 
     private BalancerMember findBalancerMemberByName(String name)
@@ -252,11 +432,222 @@ public class BalancerServlet extends ProxyServlet
         return true;
     }
 
-    private static class BalancerMember
+
+    @Override
+    protected void customizeProxyRequest(Request proxyRequest, HttpServletRequest request)
     {
+        super.customizeProxyRequest(proxyRequest, request);
+        BalancerMember balancerMember = (BalancerMember)request.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember != null)
+        {
+            // Registered before the listener that relays the response, so that
+            // the member is updated as soon as the upstream exchange completes.
+            // Request listeners are notified by type, so the listener is registered
+            // once to be notified of both the begin and the failure of the request
+            UpstreamListener listener = new UpstreamListener(balancerMember);
+            request.setAttribute(UPSTREAM_LISTENER_ATTRIBUTE, listener);
+            proxyRequest.onRequestBegin(listener)
+                    .onResponseFailure(listener)
+                    .onResponseSuccess(listener);
+        }
+    }
+
+    @Override
+    protected void onClientFailure(HttpServletRequest request, Throwable failure)
+    {
+        super.onClientFailure(request, failure);
+        UpstreamListener listener = (UpstreamListener)request.getAttribute(UPSTREAM_LISTENER_ATTRIBUTE);
+        if (listener != null)
+            listener._clientFailed = true;
+    }
+
+    private boolean isFailure(int status)
+    {
+        switch (status)
+        {
+            case HttpServletResponse.SC_BAD_GATEWAY:
+            case HttpServletResponse.SC_SERVICE_UNAVAILABLE:
+            case HttpServletResponse.SC_GATEWAY_TIMEOUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private enum Strategy
+    {
+        ROUND_ROBIN, LEAST_REQUESTS, LATENCY
+    }
+
+    private enum UpstreamState
+    {
+        IDLE, BEGUN, COMPLETE
+    }
+
+    /**
+     * <p>Updates a {@link BalancerMember} when the exchange with it completes.</p>
+     * <p>The request is outstanding from when it begins to be sent to the member until
+     * the exchange completes, so a request that fails before being sent is not counted.</p>
+     * <p>Only the failures of the member count against it: failures to connect,
+     * I/O failures and timeouts of the upstream exchange, and 502, 503 or 504 replies.
+     * Exchanges aborted because of the downstream client only release the member.</p>
+     */
+    private class UpstreamListener implements Request.BeginListener, Request.FailureListener, Response.SuccessListener, Response.FailureListener
+    {
+        private final AtomicReference<UpstreamState> _state = new AtomicReference<>(UpstreamState.IDLE);
+        private final BalancerMember _balancerMember;
+        private volatile long _requestBegin;
+        private volatile boolean _clientFailed;
+
+        private UpstreamListener(BalancerMember balancerMember)
+        {
+            _balancerMember = balancerMember;
+        }
+
+        @Override
+        public void onBegin(Request request)
+        {
+            _requestBegin = System.nanoTime();
+            _balancerMember.requestBegin();
+            // The exchange may have completed concurrently
+            if (!_state.compareAndSet(UpstreamState.IDLE, UpstreamState.BEGUN))
+                _balancerMember.requestEnd();
+        }
+
+        /**
+         * @return whether the exchange completed now, rather than before
+         */
+        private boolean complete()
+        {
+            UpstreamState previous = _state.getAndSet(UpstreamState.COMPLETE);
+            if (previous == UpstreamState.BEGUN)
+                _balancerMember.requestEnd();
+            return previous != UpstreamState.COMPLETE;
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            if (!complete())
+                return;
+            if (isFailure(response.getStatus()))
+            {
+                memberFailed();
+            }
+            else
+            {
+                double latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - _requestBegin) / 1000D;
+                _balancerMember.requestSucceeded(latency);
+            }
+        }
+
+        @Override
+        public void onFailure(Request request, Throwable failure)
+        {
+            failed(failure);
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable failure)
+        {
+            failed(failure);
+        }
+
+        private void failed(Throwable failure)
+        {
+            if (!complete())
+                return;
+            if (_clientFailed)
+            {
+                _log.debug("Client aborted the exchange with " + _balancerMember, failure);
+            }
+            else
+            {
+                _log.debug("Exchange with " + _balancerMember + " failed", failure);
+                memberFailed();
+            }
+        }
+
+        private void memberFailed()
+        {
+            if (_balancerMember.requestFailed(_maxConsecutiveFailures, _ejectionTime))
+                _log.info("Ejected {} for {} ms", _balancerMember, _ejectionTime);
+        }
+    }
+
+    /**
+     * <p>Periodically requests the health check path to a {@link BalancerMember},
+     * scheduling the next check when the previous completes.</p>
+     */
+    private class HealthCheck implements Runnable, Response.CompleteListener
+    {
+        private final BalancerMember _balancerMember;
+        private volatile Scheduler.Task _task;
+
+        private HealthCheck(BalancerMember balancerMember)
+        {
+            _balancerMember = balancerMember;
+        }
+
+        @Override
+        public void run()
+        {
+            if (_destroyed)
+                return;
+            URI uri = URI.create(_balancerMember.getProxyTo() + "/" + _healthCheckPath).normalize();
+            getHttpClient().newRequest(uri)
+                    .timeout(_healthCheckTimeout, TimeUnit.MILLISECONDS)
+                    .send(this);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            int status = result.getResponse().getStatus();
+            boolean healthy = !result.isFailed() && status >= 200 && status < 400;
+            if (_balancerMember.setHealthy(healthy))
+                _log.info("{} is {}", _balancerMember, healthy ? "healthy" : "unhealthy");
+            if (!healthy)
+                _log.debug("Health check failed for " + _balancerMember, result.getFailure());
+
+            if (_destroyed)
+                return;
+            try
+            {
+                _task = getHttpClient().getScheduler().schedule(this, _healthCheckInterval, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException x)
+            {
+                // The scheduler has been stopped
+                _log.ignore(x);
+            }
+        }
+
+        private void cancel()
+        {
+            Scheduler.Task task = _task;
+            if (task != null)
+                task.cancel();
+        }
+    }
+
+    @ManagedObject("Balancer member")
+    public static class BalancerMember
+    {
+        private static final double LATENCY_WEIGHT = 0.2;
+
+        private final AtomicInteger _outstandingRequests = new AtomicInteger();
+        private final AtomicLong _requests = new AtomicLong();
+        private final AtomicLong _failures = new AtomicLong();
         private final String _name;
         private final String _proxyTo;
         private final URI _backendURI;
+        private volatile boolean _healthy = true;
+        private double _latency;
+        private int _consecutiveFailures;
+        private boolean _ejected;
+        private long _ejectedUntil;
+        private int _ejections;
 
         public BalancerMember(String name, String proxyTo)
         {
@@ -265,11 +656,13 @@ public class BalancerServlet extends ProxyServlet
             _backendURI = URI.create(_proxyTo).normalize();
         }
 
+        @ManagedAttribute("The name of this member")
         public String getName()
         {
             return _name;
         }
 
+        @ManagedAttribute("The URI requests are proxied to")
         public String getProxyTo()
         {
             return _proxyTo;
@@ -280,6 +673,118 @@ public class BalancerServlet extends ProxyServlet
             return _backendURI;
         }
 
+        @ManagedAttribute("Whether this member is healthy and not ejected")
+        public boolean isAvailable()
+        {
+            return isHealthy() && !isEjected();
+        }
+
+        @ManagedAttribute("Whether the last health check succeeded")
+        public boolean isHealthy()
+        {
+            return _healthy;
+        }
+
+        /**
+         * @param healthy whether the last health check succeeded
+         * @return whether the health of this member changed
+         */
+        boolean setHealthy(boolean healthy)
+        {
+            boolean result = _healthy != healthy;
+            _healthy = healthy;
+            return result;
+        }
+
+        @ManagedAttribute("Whether this member is ejected after consecutive failures")
+        public synchronized boolean isEjected()
+        {
+            if (_ejected && System.nanoTime() - _ejectedUntil >= 0)
+                _ejected = false;
+            return _ejected;
+        }
+
+        @ManagedAttribute("The number of times this member has been ejected")
+        public synchronized int getEjections()
+        {
+            return _ejections;
+        }
+
+        @ManagedAttribute("The number of consecutive failed requests")
+        public synchronized int getConsecutiveFailures()
+        {
+            return _consecutiveFailures;
+        }
+
+        @ManagedAttribute("The number of requests being proxied to this member")
+        public int getOutstandingRequests()
+        {
+            return _outstandingRequests.get();
+        }
+
+        @ManagedAttribute("The number of requests proxied to this member")
+        public long getRequests()
+        {
+            return _requests.get();
+        }
+
+        @ManagedAttribute("The number of failed requests proxied to this member")
+        public long getFailures()
+        {
+            return _failures.get();
+        }
+
+        @ManagedAttribute("The moving average of the response latency, in milliseconds")
+        public synchronized double getLatency()
+        {
+            return _latency;
+        }
+
+        @ManagedOperation(value = "Reinstates this member if it is ejected", impact = "ACTION")
+        public synchronized void reinstate()
+        {
+            _ejected = false;
+            _consecutiveFailures = 0;
+        }
+
+        void requestBegin()
+        {
+            _outstandingRequests.incrementAndGet();
+            _requests.incrementAndGet();
+        }
+
+        void requestEnd()
+        {
+            _outstandingRequests.decrementAndGet();
+        }
+
+        synchronized void requestSucceeded(double latency)
+        {
+            _consecutiveFailures = 0;
+            if (_latency == 0)
+                _latency = latency;
+            else
+                _latency += LATENCY_WEIGHT * (latency - _latency);
+        }
+
+        /**
+         * @param maxConsecutiveFailures the number of consecutive failures after which this member is ejected
+         * @param ejectionTime the time in milliseconds this member is ejected for
+         * @return whether this member has been ejected
+         */
+        synchronized boolean requestFailed(int maxConsecutiveFailures, long ejectionTime)
+        {
+            _failures.incrementAndGet();
+            ++_consecutiveFailures;
+            if (maxConsecutiveFailures <= 0 || _consecutiveFailures < maxConsecutiveFailures)
+                return false;
+            _consecutiveFailures = 0;
+            _ejected = true;
+            _ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+            ++_ejections;
+            return true;
+        }
+
         @Override
         public String toString()
         {
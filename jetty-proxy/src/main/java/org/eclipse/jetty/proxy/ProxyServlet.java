@@ -18,7 +18,9 @@
 
 package org.eclipse.jetty.proxy;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
@@ -39,6 +41,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
@@ -47,6 +50,7 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -68,6 +72,7 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
  * <li>viaHost - the name to use in the Via header: Via: http/1.1 &lt;viaHost&gt;</li>
  * <li>whiteList - comma-separated list of allowed proxy hosts</li>
  * <li>blackList - comma-separated list of forbidden proxy hosts</li>
+ * <li>asyncRelay - whether the upstream response content is relayed with demand, see {@link #setAsyncRelay(boolean)}</li>
  * </ul>
  * <p/>
  * In addition, see {@link #createHttpClient()} for init parameters used to configure
@@ -100,6 +105,7 @@ public class ProxyServlet extends HttpServlet
     private String _viaHost;
     private HttpClient _client;
     private long _timeout;
+    private boolean _asyncRelay;
 
     @Override
     public void init() throws ServletException
@@ -128,6 +134,10 @@ public class ProxyServlet extends HttpServlet
             String blackList = config.getInitParameter("blackList");
             if (blackList != null)
                 getBlackListHosts().addAll(parseList(blackList));
+
+            String asyncRelay = config.getInitParameter("asyncRelay");
+            if (asyncRelay != null)
+                setAsyncRelay(Boolean.parseBoolean(asyncRelay));
         }
         catch (Exception e)
         {
@@ -145,6 +155,32 @@ public class ProxyServlet extends HttpServlet
         this._timeout = timeout;
     }
 
+    public boolean isAsyncRelay()
+    {
+        return _asyncRelay;
+    }
+
+    /**
+     * <p>Sets whether the upstream response content is relayed with demand.</p>
+     * <p>When the async relay is enabled, the upstream response is relayed with a
+     * {@link Response.AsyncContentListener}: each content buffer is written to the client
+     * through {@link #onResponseContent(HttpServletRequest, HttpServletResponse, Response, ByteBuffer, Callback)},
+     * and the next buffer is read from the upstream server only when the previous one
+     * has been written. The writes to the client are blocking, and the request content
+     * is relayed as in the default mode.</p>
+     *
+     * @param asyncRelay whether the upstream response content is relayed with demand
+     */
+    public void setAsyncRelay(boolean asyncRelay)
+    {
+        _asyncRelay = asyncRelay;
+    }
+
+    protected HttpClient getHttpClient()
+    {
+        return _client;
+    }
+
     public Set<String> getWhiteListHosts()
     {
         return _whiteList;
@@ -406,21 +442,7 @@ public class ProxyServlet extends HttpServlet
         proxyRequest.header("X-Forwarded-Host", request.getHeader("Host"));
         proxyRequest.header("X-Forwarded-Server", request.getLocalName());
 
-        proxyRequest.content(new InputStreamContentProvider(request.getInputStream())
-        {
-            @Override
-            public long getLength()
-            {
-                return request.getContentLength();
-            }
-
-            @Override
-            protected ByteBuffer onRead(byte[] buffer, int offset, int length)
-            {
-                _log.debug("{} proxying content to upstream: {} bytes", requestId, length);
-                return super.onRead(buffer, offset, length);
-            }
-        });
+        proxyRequest.content(proxyRequestContent(proxyRequest, request));
 
         final AsyncContext asyncContext = request.startAsync();
         // We do not timeout the continuation, but the proxy request
@@ -463,7 +485,45 @@ public class ProxyServlet extends HttpServlet
         }
 
         proxyRequest.timeout(getTimeout(), TimeUnit.MILLISECONDS);
-        proxyRequest.send(new ProxyResponseListener(request, response));
+        proxyRequest.send(newProxyResponseListener(request, response));
+    }
+
+    /**
+     * @param proxyRequest the request to the upstream server
+     * @param request the request from the downstream client
+     * @return the content provider that relays the client request content to the upstream server
+     * @throws IOException if the client request content cannot be accessed
+     */
+    protected ContentProvider proxyRequestContent(final Request proxyRequest, final HttpServletRequest request) throws IOException
+    {
+        final int requestId = getRequestId(request);
+        return new InputStreamContentProvider(new ClientInputStream(request, request.getInputStream()))
+        {
+            @Override
+            public long getLength()
+            {
+                return request.getContentLength();
+            }
+
+            @Override
+            protected ByteBuffer onRead(byte[] buffer, int offset, int length)
+            {
+                _log.debug("{} proxying content to upstream: {} bytes", requestId, length);
+                return super.onRead(buffer, offset, length);
+            }
+        };
+    }
+
+    /**
+     * @param request the request from the downstream client
+     * @param response the response to the downstream client
+     * @return the listener that relays the upstream response to the downstream client
+     */
+    protected Response.Listener newProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
+    {
+        if (isAsyncRelay())
+            return new AsyncProxyResponseListener(request, response);
+        return new ProxyResponseListener(request, response);
     }
 
     protected void onResponseHeaders(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
@@ -489,6 +549,55 @@ public class ProxyServlet extends HttpServlet
         _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), length);
     }
 
+    /**
+     * <p>Writes the given upstream response content to the client,
+     * used when the {@link #setAsyncRelay(boolean) async relay} is enabled.</p>
+     * <p>The upstream response content is not read further until the callback is completed.
+     * The default implementation writes the content with
+     * {@link #onResponseContent(HttpServletRequest, HttpServletResponse, Response, byte[], int, int)},
+     * without copying it when the buffer has a backing array.</p>
+     *
+     * @param request the request from the downstream client
+     * @param response the response to the downstream client
+     * @param proxyResponse the response from the upstream server
+     * @param content the response content, which must not be retained after the callback is completed
+     * @param callback the callback to complete when the content has been written
+     */
+    protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, ByteBuffer content, Callback callback)
+    {
+        try
+        {
+            int length = content.remaining();
+            if (content.hasArray())
+            {
+                onResponseContent(request, response, proxyResponse, content.array(), content.arrayOffset() + content.position(), length);
+            }
+            else
+            {
+                byte[] buffer = new byte[length];
+                content.get(buffer);
+                onResponseContent(request, response, proxyResponse, buffer, 0, length);
+            }
+            callback.succeeded();
+        }
+        catch (IOException x)
+        {
+            callback.failed(x);
+        }
+    }
+
+    /**
+     * <p>Invoked when the content cannot be read from or written to the downstream client,
+     * before the exchange with the upstream server is aborted because of it.</p>
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param request the request from the downstream client
+     * @param failure the failure of the downstream client
+     */
+    protected void onClientFailure(HttpServletRequest request, Throwable failure)
+    {
+    }
+
     protected void onResponseSuccess(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
     {
         AsyncContext asyncContext = (AsyncContext)request.getAttribute(ASYNC_CONTEXT);
@@ -623,12 +732,12 @@ public class ProxyServlet extends HttpServlet
         }
     }
 
-    private class ProxyResponseListener extends Response.Listener.Empty
+    protected class ProxyResponseListener extends Response.Listener.Empty
     {
         private final HttpServletRequest request;
         private final HttpServletResponse response;
 
-        public ProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
+        protected ProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
         {
             this.request = request;
             this.response = response;
@@ -697,6 +806,7 @@ public class ProxyServlet extends HttpServlet
             }
             catch (IOException x)
             {
+                onClientFailure(request, x);
                 proxyResponse.abort(x);
             }
         }
@@ -719,4 +829,83 @@ public class ProxyServlet extends HttpServlet
             _log.debug("{} proxying complete", getRequestId(request));
         }
     }
+
+    /**
+     * <p>Relays the upstream response content with the callbacks of {@link Response.AsyncContentListener},
+     * so that the upstream response is read only as fast as the client reads the proxied response.</p>
+     */
+    protected class AsyncProxyResponseListener extends ProxyResponseListener implements Response.AsyncContentListener
+    {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+
+        protected AsyncProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
+        {
+            super(request, response);
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public void onContent(Response proxyResponse, ByteBuffer content, final Callback callback)
+        {
+            onResponseContent(request, response, proxyResponse, content, new Callback()
+            {
+                @Override
+                public void succeeded()
+                {
+                    callback.succeeded();
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    onClientFailure(request, x);
+                    callback.failed(x);
+                }
+            });
+        }
+    }
+
+    /**
+     * <p>Reports the failures to read the client request content to {@link #onClientFailure(HttpServletRequest, Throwable)}.</p>
+     */
+    private class ClientInputStream extends FilterInputStream
+    {
+        private final HttpServletRequest request;
+
+        private ClientInputStream(HttpServletRequest request, InputStream input)
+        {
+            super(input);
+            this.request = request;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            try
+            {
+                return super.read();
+            }
+            catch (IOException x)
+            {
+                onClientFailure(request, x);
+                throw x;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            try
+            {
+                return super.read(b, off, len);
+            }
+            catch (IOException x)
+            {
+                onClientFailure(request, x);
+                throw x;
+            }
+        }
+    }
 }
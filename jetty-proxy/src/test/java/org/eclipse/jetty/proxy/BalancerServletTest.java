@@ -22,6 +22,11 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -32,12 +37,15 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.server.NetworkConnector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.session.HashSessionIdManager;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -48,6 +56,7 @@ public class BalancerServletTest
     private static final String CONTEXT_PATH = "/context";
     private static final String SERVLET_PATH = "/mapping";
 
+    private final Map<String, String> balancerParams = new HashMap<>();
     private boolean stickySessions;
     private Server server1;
     private Server server2;
@@ -72,13 +81,21 @@ public class BalancerServletTest
 
     protected void startBalancer(Class<? extends HttpServlet> servletClass) throws Exception
     {
-        server1 = createServer(new ServletHolder(servletClass), "node1");
+        startBalancer(new ServletHolder(servletClass), new ServletHolder(servletClass));
+    }
+
+    private void startBalancer(ServletHolder servletHolder1, ServletHolder servletHolder2) throws Exception
+    {
+        server1 = createServer(servletHolder1, "node1");
         server1.start();
 
-        server2 = createServer(new ServletHolder(servletClass), "node2");
+        server2 = createServer(servletHolder2, "node2");
         server2.start();
 
         ServletHolder balancerServletHolder = new ServletHolder(BalancerServlet.class);
+        balancerServletHolder.setName("balancer");
+        balancerServletHolder.setInitOrder(1);
+        balancerServletHolder.setInitParameters(balancerParams);
         balancerServletHolder.setInitParameter("stickySessions", String.valueOf(stickySessions));
         balancerServletHolder.setInitParameter("proxyPassReverse", "true");
         balancerServletHolder.setInitParameter("balancerMember." + "node1" + ".proxyTo", "http://localhost:" + getServerPort(server1));
@@ -112,13 +129,23 @@ public class BalancerServletTest
         return server.getURI().getPort();
     }
 
+    private BalancerServlet.BalancerMember getBalancerMember(String name)
+    {
+        ServletContextHandler context = balancer.getChildHandlerByClass(ServletContextHandler.class);
+        return (BalancerServlet.BalancerMember)context.getServletContext().getAttribute("balancer.balancerMember." + name);
+    }
+
     protected byte[] sendRequestToBalancer(String path) throws Exception
     {
-        ContentResponse response = client.newRequest("localhost", getServerPort(balancer))
+        return sendToBalancer(path).getContent();
+    }
+
+    private ContentResponse sendToBalancer(String path) throws Exception
+    {
+        return client.newRequest("localhost", getServerPort(balancer))
                 .path(CONTEXT_PATH + SERVLET_PATH + path)
                 .timeout(5, TimeUnit.SECONDS)
                 .send();
-        return response.getContent();
     }
 
     @Test
@@ -161,6 +188,244 @@ public class BalancerServletTest
         Assert.assertEquals("success", msg);
     }
 
+    @Test
+    public void testLeastRequestsBalancer() throws Exception
+    {
+        balancerParams.put("balancerStrategy", "leastRequests");
+        NodeServlet node1 = new NodeServlet();
+        NodeServlet node2 = new NodeServlet();
+        startBalancer(new ServletHolder(node1), new ServletHolder(node2));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", getServerPort(balancer))
+                .path(CONTEXT_PATH + SERVLET_PATH + "/block")
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        Assert.assertFalse(result.isFailed());
+                        latch.countDown();
+                    }
+                });
+
+        NodeServlet blocked = awaitBlocked(node1, node2);
+        Server other = blocked == node1 ? server2 : server1;
+
+        // The node with the outstanding request is not selected
+        for (int i = 0; i < 4; ++i)
+        {
+            ContentResponse response = sendToBalancer("/leastRequests");
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(String.valueOf(getServerPort(other)), response.getContentAsString());
+        }
+
+        blocked.blockLatch.countDown();
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLatencyBalancer() throws Exception
+    {
+        balancerParams.put("balancerStrategy", "latency");
+        NodeServlet node1 = new NodeServlet();
+        NodeServlet node2 = new NodeServlet();
+        node2.delay = 200;
+        startBalancer(new ServletHolder(node1), new ServletHolder(node2));
+
+        // Each node is tried once, to sample its latency
+        for (int i = 0; i < 2; ++i)
+            Assert.assertEquals(200, sendToBalancer("/latency").getStatus());
+
+        for (int i = 0; i < 5; ++i)
+        {
+            ContentResponse response = sendToBalancer("/latency");
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(String.valueOf(getServerPort(server1)), response.getContentAsString());
+        }
+        Assert.assertThat(getBalancerMember("node2").getLatency(), Matchers.greaterThan(getBalancerMember("node1").getLatency()));
+    }
+
+    @Test
+    public void testLatencyBalancerWeighsOutstandingRequestsOfUnsampledMembers() throws Exception
+    {
+        balancerParams.put("balancerStrategy", "latency");
+        NodeServlet node1 = new NodeServlet();
+        NodeServlet node2 = new NodeServlet();
+        startBalancer(new ServletHolder(node1), new ServletHolder(node2));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", getServerPort(balancer))
+                .path(CONTEXT_PATH + SERVLET_PATH + "/block")
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        Assert.assertFalse(result.isFailed());
+                        latch.countDown();
+                    }
+                });
+
+        NodeServlet blocked = awaitBlocked(node1, node2);
+        Server other = blocked == node1 ? server2 : server1;
+
+        // The blocked node has no latency sample, but its outstanding request still counts
+        for (int i = 0; i < 4; ++i)
+        {
+            ContentResponse response = sendToBalancer("/latency");
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(String.valueOf(getServerPort(other)), response.getContentAsString());
+        }
+
+        blocked.blockLatch.countDown();
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testClientAbortIsNotMemberFailure() throws Exception
+    {
+        balancerParams.put("maxConsecutiveFailures", "1");
+        NodeServlet node1 = new NodeServlet();
+        NodeServlet node2 = new NodeServlet();
+        startBalancer(new ServletHolder(node1), new ServletHolder(node2));
+
+        NodeServlet blocked;
+        try (Socket socket = new Socket("localhost", getServerPort(balancer)))
+        {
+            // The client announces more content than it sends, then goes away
+            String request = "" +
+                    "GET " + CONTEXT_PATH + SERVLET_PATH + "/block HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Content-Length: 1024\r\n" +
+                    "\r\n" +
+                    "partial";
+            OutputStream output = socket.getOutputStream();
+            output.write(request.getBytes("UTF-8"));
+            output.flush();
+
+            blocked = awaitBlocked(node1, node2);
+        }
+
+        BalancerServlet.BalancerMember balancerMember = getBalancerMember(blocked == node1 ? "node1" : "node2");
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (balancerMember.getOutstandingRequests() > 0 && System.nanoTime() < wait)
+            Thread.sleep(10);
+        Assert.assertEquals(0, balancerMember.getOutstandingRequests());
+        Assert.assertEquals(0, balancerMember.getFailures());
+        Assert.assertFalse(balancerMember.isEjected());
+
+        blocked.blockLatch.countDown();
+    }
+
+    @Test
+    public void testProxyRequestNotSentIsNotOutstanding() throws Exception
+    {
+        startBalancer(new ServletHolder(new NodeServlet()), new ServletHolder(new NodeServlet()));
+
+        // The stopped proxy client rejects the proxy request, so it is never sent to a member
+        ServletContextHandler context = balancer.getChildHandlerByClass(ServletContextHandler.class);
+        HttpClient proxyClient = (HttpClient)context.getServletContext().getAttribute("balancer.HttpClient");
+        proxyClient.stop();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", getServerPort(balancer))
+                .path(CONTEXT_PATH + SERVLET_PATH + "/rejected")
+                .timeout(5, TimeUnit.SECONDS)
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        latch.countDown();
+                    }
+                });
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(0, getBalancerMember("node1").getOutstandingRequests());
+        Assert.assertEquals(0, getBalancerMember("node2").getOutstandingRequests());
+    }
+
+    @Test
+    public void testFailingMemberIsEjected() throws Exception
+    {
+        balancerParams.put("maxConsecutiveFailures", "1");
+        balancerParams.put("ejectionTime", "60000");
+        startBalancer(new ServletHolder(new NodeServlet()), new ServletHolder(new NodeServlet()));
+        server2.stop();
+
+        int failures = 0;
+        for (int i = 0; i < 10; ++i)
+        {
+            ContentResponse response = sendToBalancer("/ejection");
+            if (response.getStatus() == 502)
+                ++failures;
+            else
+                Assert.assertEquals(String.valueOf(getServerPort(server1)), response.getContentAsString());
+        }
+        Assert.assertEquals(1, failures);
+
+        BalancerServlet.BalancerMember balancerMember = getBalancerMember("node2");
+        Assert.assertTrue(balancerMember.isEjected());
+        Assert.assertFalse(balancerMember.isAvailable());
+        Assert.assertEquals(1, balancerMember.getEjections());
+        Assert.assertEquals(1, balancerMember.getFailures());
+        Assert.assertEquals(0, balancerMember.getOutstandingRequests());
+
+        balancerMember.reinstate();
+        Assert.assertTrue(balancerMember.isAvailable());
+    }
+
+    @Test
+    public void testUnhealthyMemberIsNotSelected() throws Exception
+    {
+        balancerParams.put("healthCheckPath", CONTEXT_PATH + SERVLET_PATH + "/health");
+        balancerParams.put("healthCheckInterval", "100");
+        NodeServlet node1 = new NodeServlet();
+        NodeServlet node2 = new NodeServlet();
+        node2.healthy = false;
+        startBalancer(new ServletHolder(node1), new ServletHolder(node2));
+
+        BalancerServlet.BalancerMember balancerMember = getBalancerMember("node2");
+        awaitHealthy(balancerMember, false);
+        for (int i = 0; i < 6; ++i)
+        {
+            ContentResponse response = sendToBalancer("/healthCheck");
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(String.valueOf(getServerPort(server1)), response.getContentAsString());
+        }
+
+        node2.healthy = true;
+        awaitHealthy(balancerMember, true);
+        int requests = 0;
+        for (int i = 0; i < 2; ++i)
+        {
+            ContentResponse response = sendToBalancer("/healthCheck");
+            if (String.valueOf(getServerPort(server2)).equals(response.getContentAsString()))
+                ++requests;
+        }
+        Assert.assertEquals(1, requests);
+    }
+
+    private NodeServlet awaitBlocked(NodeServlet node1, NodeServlet node2) throws InterruptedException
+    {
+        // Wait for the request to block in one of the nodes
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (node1.requestLatch.getCount() > 0 && node2.requestLatch.getCount() > 0 && System.nanoTime() < wait)
+            Thread.sleep(10);
+        NodeServlet blocked = node1.requestLatch.getCount() == 0 ? node1 : node2;
+        Assert.assertEquals(0, blocked.requestLatch.getCount());
+        return blocked;
+    }
+
+    private void awaitHealthy(BalancerServlet.BalancerMember balancerMember, boolean healthy) throws InterruptedException
+    {
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (balancerMember.isHealthy() != healthy && System.nanoTime() < wait)
+            Thread.sleep(10);
+        Assert.assertEquals(healthy, balancerMember.isHealthy());
+    }
+
     private String readFirstLine(byte[] responseBytes) throws IOException
     {
         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(responseBytes)));
@@ -198,4 +463,41 @@ public class BalancerServletTest
             }
         }
     }
+
+    private static class NodeServlet extends HttpServlet
+    {
+        private final CountDownLatch requestLatch = new CountDownLatch(1);
+        private final CountDownLatch blockLatch = new CountDownLatch(1);
+        private volatile boolean healthy = true;
+        private volatile long delay;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+        {
+            String uri = req.getRequestURI();
+            if (uri.endsWith("/health"))
+            {
+                resp.setStatus(healthy ? 200 : 503);
+                return;
+            }
+
+            try
+            {
+                if (uri.endsWith("/block"))
+                {
+                    requestLatch.countDown();
+                    blockLatch.await(5, TimeUnit.SECONDS);
+                }
+                if (delay > 0)
+                    TimeUnit.MILLISECONDS.sleep(delay);
+            }
+            catch (InterruptedException x)
+            {
+                throw new ServletException(x);
+            }
+
+            resp.setContentType("text/plain");
+            resp.getWriter().print(req.getLocalPort());
+        }
+    }
 }
@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -55,6 +56,8 @@ import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.client.util.FutureResponseListener;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
@@ -389,6 +392,115 @@ public class ProxyServletTest
         Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testAsyncRelayWithSlowRequestContentAndResponseContent() throws Exception
+    {
+        ProxyServlet proxyServlet = new ProxyServlet();
+        proxyServlet.setAsyncRelay(true);
+        prepareProxy(proxyServlet);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                if (req.getHeader("Via") != null)
+                    resp.addHeader(PROXIED_HEADER, "true");
+                IO.copy(req.getInputStream(), resp.getOutputStream());
+            }
+        });
+
+        DeferredContentProvider content = new DeferredContentProvider();
+        FutureResponseListener listener = new FutureResponseListener(client.newRequest("localhost", serverConnector.getLocalPort())
+                .method(HttpMethod.POST)
+                .content(content), 1024 * 1024);
+        listener.getRequest().send(listener);
+
+        // Send the content slowly, so that the proxy must wait for it
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 16; ++i)
+        {
+            byte[] chunk = new byte[16 * 1024];
+            Arrays.fill(chunk, (byte)('A' + i));
+            expected.write(chunk);
+            content.offer(ByteBuffer.wrap(chunk));
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        content.close();
+
+        ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertTrue(response.getHeaders().containsKey(PROXIED_HEADER));
+        Assert.assertArrayEquals(expected.toByteArray(), response.getContent());
+    }
+
+    @Slow
+    @Test
+    public void testAsyncRelayWithBigResponseContentWithSlowReader() throws Exception
+    {
+        ProxyServlet proxyServlet = new ProxyServlet();
+        proxyServlet.setAsyncRelay(true);
+        prepareProxy(proxyServlet);
+
+        final byte[] content = new byte[4 * 1024 * 1024];
+        new Random().nextBytes(content);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.getOutputStream().write(content);
+            }
+        });
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", serverConnector.getLocalPort()).send(new BufferingResponseListener(2 * content.length)
+        {
+            @Override
+            public void onContent(Response response, ByteBuffer content)
+            {
+                try
+                {
+                    // Slow down the reader
+                    TimeUnit.MILLISECONDS.sleep(5);
+                    super.onContent(response, content);
+                }
+                catch (InterruptedException x)
+                {
+                    response.abort(x);
+                }
+            }
+
+            @Override
+            public void onComplete(Result result)
+            {
+                Assert.assertFalse(result.isFailed());
+                Assert.assertEquals(200, result.getResponse().getStatus());
+                Assert.assertArrayEquals(content, getContent());
+                latch.countDown();
+            }
+        });
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncRelayWithServerDown() throws Exception
+    {
+        ProxyServlet proxyServlet = new ProxyServlet();
+        proxyServlet.setAsyncRelay(true);
+        prepareProxy(proxyServlet);
+        prepareServer(new EmptyHttpServlet());
+
+        // Shutdown the server
+        int serverPort = serverConnector.getLocalPort();
+        server.stop();
+
+        ContentResponse response = client.newRequest("localhost", serverPort)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(502, response.getStatus());
+    }
+
     @Test
     public void testProxyWithQueryString() throws Exception
     {
@@ -30,6 +30,7 @@ import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.SSLEngine;
 
@@ -47,6 +48,7 @@ import org.eclipse.jetty.spdy.api.Session;
 import org.eclipse.jetty.spdy.api.SessionFrameListener;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
@@ -61,6 +63,8 @@ public class SPDYClient
     private volatile SocketAddress bindAddress;
     private volatile long idleTimeout = -1;
     private volatile int initialWindowSize;
+    private volatile boolean compressHeaders = true;
+    private volatile boolean adaptiveFlowControl;
 
     protected SPDYClient(short version, Factory factory)
     {
@@ -69,6 +73,14 @@ public class SPDYClient
         setInitialWindowSize(65536);
     }
 
+    /**
+     * @return the SPDY protocol version spoken by this client
+     */
+    public short getVersion()
+    {
+        return version;
+    }
+
     /**
      * @return the address to bind the socket channel to
      * @see #setBindAddress(SocketAddress)
@@ -93,17 +105,58 @@ public class SPDYClient
             throw new IllegalStateException(Factory.class.getSimpleName() + " is not started");
 
         SocketChannel channel = SocketChannel.open();
+        SessionPromise result = new SessionPromise(channel, this, listener, null);
+        connect(channel, address, result);
+        return result;
+    }
+
+    /**
+     * <p>Connects asynchronously to the given address.</p>
+     *
+     * @param address the address to connect to
+     * @param listener the session listener that will be notified of session events
+     * @param promise the promise notified when the session is established, or when the connection fails
+     */
+    public void connect(InetSocketAddress address, SessionFrameListener listener, Promise<Session> promise)
+    {
+        if (!factory.isStarted())
+            throw new IllegalStateException(Factory.class.getSimpleName() + " is not started");
+
+        SocketChannel channel = null;
+        try
+        {
+            channel = SocketChannel.open();
+            connect(channel, address, new SessionPromise(channel, this, listener, promise));
+        }
+        catch (IOException x)
+        {
+            if (channel != null)
+                close(channel);
+            promise.failed(x);
+        }
+    }
+
+    private void connect(SocketChannel channel, InetSocketAddress address, SessionPromise promise) throws IOException
+    {
         if (bindAddress != null)
             channel.bind(bindAddress);
         channel.socket().setTcpNoDelay(true);
         channel.configureBlocking(false);
 
-        SessionPromise result = new SessionPromise(channel, this, listener);
-
         channel.connect(address);
-        factory.selector.connect(channel, result);
+        factory.selector.connect(channel, promise);
+    }
 
-        return result;
+    private void close(SocketChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException x)
+        {
+            // Ignore
+        }
     }
 
     public long getIdleTimeout()
@@ -126,6 +179,43 @@ public class SPDYClient
         this.initialWindowSize = initialWindowSize;
     }
 
+    /**
+     * @return whether header blocks are compressed
+     * @see #setCompressHeaders(boolean)
+     */
+    public boolean isCompressHeaders()
+    {
+        return compressHeaders;
+    }
+
+    /**
+     * @param compressHeaders whether header blocks are compressed; disabling header compression
+     * saves the memory of a compression context for each session, at the cost of bigger frames
+     * @see #isCompressHeaders()
+     */
+    public void setCompressHeaders(boolean compressHeaders)
+    {
+        this.compressHeaders = compressHeaders;
+    }
+
+    /**
+     * @return whether the receive windows grow with the bandwidth-delay product of the connection
+     * @see #setAdaptiveFlowControl(boolean)
+     */
+    public boolean isAdaptiveFlowControl()
+    {
+        return adaptiveFlowControl;
+    }
+
+    /**
+     * @param adaptiveFlowControl whether the receive windows grow with the bandwidth-delay product of the connection
+     * @see FlowControlStrategyFactory#newFlowControlStrategy(short, boolean)
+     */
+    public void setAdaptiveFlowControl(boolean adaptiveFlowControl)
+    {
+        this.adaptiveFlowControl = adaptiveFlowControl;
+    }
+
     protected String selectProtocol(List<String> serverProtocols)
     {
         String protocol = "spdy/" + version;
@@ -153,7 +243,7 @@ public class SPDYClient
 
     protected FlowControlStrategy newFlowControlStrategy()
     {
-        return FlowControlStrategyFactory.newFlowControlStrategy(version);
+        return FlowControlStrategyFactory.newFlowControlStrategy(version, isAdaptiveFlowControl());
     }
 
     public static class Factory extends ContainerLifeCycle
@@ -331,12 +421,31 @@ public class SPDYClient
         private final SocketChannel channel;
         final SPDYClient client;
         final SessionFrameListener listener;
+        private final Promise<Session> delegate;
+        private final AtomicBoolean completed = new AtomicBoolean();
 
-        private SessionPromise(SocketChannel channel, SPDYClient client, SessionFrameListener listener)
+        private SessionPromise(SocketChannel channel, SPDYClient client, SessionFrameListener listener, Promise<Session> delegate)
         {
             this.channel = channel;
             this.client = client;
             this.listener = listener;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void succeeded(Session session)
+        {
+            super.succeeded(session);
+            if (delegate != null && completed.compareAndSet(false, true))
+                delegate.succeeded(session);
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            super.failed(x);
+            if (delegate != null && completed.compareAndSet(false, true))
+                delegate.failed(x);
         }
 
         @Override
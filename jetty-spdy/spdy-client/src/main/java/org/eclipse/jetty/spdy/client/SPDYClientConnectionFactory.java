@@ -41,7 +41,7 @@ public class SPDYClientConnectionFactory
         Factory factory = client.factory;
         ByteBufferPool bufferPool = factory.getByteBufferPool();
 
-        CompressionFactory compressionFactory = new StandardCompressionFactory();
+        CompressionFactory compressionFactory = new StandardCompressionFactory(client.isCompressHeaders());
         Parser parser = new Parser(compressionFactory.newDecompressor());
         Generator generator = new Generator(bufferPool, compressionFactory.newCompressor());
 
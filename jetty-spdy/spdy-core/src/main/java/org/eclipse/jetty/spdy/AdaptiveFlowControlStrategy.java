@@ -0,0 +1,199 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.spdy.api.DataInfo;
+import org.eclipse.jetty.spdy.frames.WindowUpdateFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A SPDY/3 {@link FlowControlStrategy} that grows the receive windows so that they
+ * do not limit the throughput on links with a large bandwidth-delay product.</p>
+ * <p>The round trip time is measured by periodically sending PING frames, whose replies
+ * are not notified to the session listener; a PING that is not replied within the ping
+ * timeout is abandoned, and a new one is sent at the next interval.
+ * Every round trip, the bytes consumed on each stream give an estimate of the
+ * bandwidth-delay product: when it exceeds half of the stream window, the window is
+ * doubled (up to {@link #getMaxWindowSize()}) by sending a WINDOW_UPDATE larger than
+ * the bytes consumed.</p>
+ * <p>Streams start from the window configured on the session, possibly updated by
+ * SETTINGS frames. The largest window learned so far is the session window: streams
+ * that start receiving data are immediately granted the session window, so that they
+ * do not need to learn it again.</p>
+ */
+public class AdaptiveFlowControlStrategy extends SPDYv3FlowControlStrategy
+{
+    private static final Logger LOG = Log.getLogger(AdaptiveFlowControlStrategy.class);
+    private static final String WINDOW_ATTRIBUTE = AdaptiveFlowControlStrategy.class.getName() + ".window";
+
+    private final AtomicBoolean pinging = new AtomicBoolean();
+    private final AtomicInteger sessionWindowSize = new AtomicInteger();
+    private final int maxWindowSize;
+    private final long pingInterval;
+    private final long pingTimeout;
+    private volatile long roundTripTime;
+    private volatile long lastPingTime;
+
+    public AdaptiveFlowControlStrategy()
+    {
+        this(16 * 1024 * 1024, TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * @param maxWindowSize the maximum size the receive windows can grow to
+     * @param pingInterval the interval, in milliseconds, between round trip measurements
+     * @param pingTimeout the time, in milliseconds, to wait for the reply to a PING
+     */
+    public AdaptiveFlowControlStrategy(int maxWindowSize, long pingInterval, long pingTimeout)
+    {
+        this.maxWindowSize = maxWindowSize;
+        this.pingInterval = TimeUnit.MILLISECONDS.toNanos(pingInterval);
+        this.pingTimeout = pingTimeout;
+    }
+
+    public int getMaxWindowSize()
+    {
+        return maxWindowSize;
+    }
+
+    /**
+     * @return the receive window size learned so far for this session, or 0 if no window has grown yet
+     */
+    public int getSessionWindowSize()
+    {
+        return sessionWindowSize.get();
+    }
+
+    /**
+     * @return the smoothed round trip time, in nanoseconds, or 0 if not yet measured
+     */
+    public long getRoundTripTime()
+    {
+        return roundTripTime;
+    }
+
+    @Override
+    public void onDataConsumed(ISession session, IStream stream, DataInfo dataInfo, int delta)
+    {
+        int length = dataInfo.length();
+        if (dataInfo.consumed() == length && !stream.isClosed() && length > 0)
+        {
+            long now = System.nanoTime();
+            int growth = grow(session, stream, length, now);
+            WindowUpdateFrame windowUpdateFrame = new WindowUpdateFrame(session.getVersion(), stream.getId(), length + growth);
+            session.control(stream, windowUpdateFrame, 0, TimeUnit.MILLISECONDS, new Callback.Adapter());
+            if (now - lastPingTime >= pingInterval)
+                ping(session, now);
+        }
+    }
+
+    private int grow(ISession session, IStream stream, int length, long now)
+    {
+        StreamWindow window = (StreamWindow)stream.getAttribute(WINDOW_ATTRIBUTE);
+        if (window == null)
+        {
+            window = new StreamWindow(getWindowSize(session), now);
+            stream.setAttribute(WINDOW_ATTRIBUTE, window);
+        }
+
+        synchronized (window)
+        {
+            int target = sessionWindowSize.get();
+            window.consumed += length;
+            long rtt = roundTripTime;
+            long elapsed = now - window.epoch;
+            if (rtt > 0 && elapsed >= rtt)
+            {
+                long bandwidthDelayProduct = window.consumed * rtt / elapsed;
+                if (2 * bandwidthDelayProduct >= window.size)
+                    target = Math.max(target, (int)Math.min(maxWindowSize, Math.max(2L * window.size, 2 * bandwidthDelayProduct)));
+                window.consumed = 0;
+                window.epoch = now;
+            }
+
+            if (target <= window.size)
+                return 0;
+
+            int growth = target - window.size;
+            window.size = target;
+            updateSessionWindowSize(target);
+            LOG.debug("Grown receive window of {} by {} to {}", stream, growth, target);
+            return growth;
+        }
+    }
+
+    private void updateSessionWindowSize(int windowSize)
+    {
+        while (true)
+        {
+            int current = sessionWindowSize.get();
+            if (windowSize <= current || sessionWindowSize.compareAndSet(current, windowSize))
+                return;
+        }
+    }
+
+    private void ping(ISession session, long now)
+    {
+        if (pinging.compareAndSet(false, true))
+        {
+            lastPingTime = now;
+            session.roundTrip(pingTimeout, TimeUnit.MILLISECONDS, new Callback()
+            {
+                @Override
+                public void succeeded()
+                {
+                    pinging.set(false);
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    pinging.set(false);
+                    LOG.debug(x);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onRoundTrip(ISession session, long roundTripTime)
+    {
+        long previous = this.roundTripTime;
+        this.roundTripTime = previous == 0 ? roundTripTime : (7 * previous + roundTripTime) / 8;
+    }
+
+    private class StreamWindow
+    {
+        private int size;
+        private long consumed;
+        private long epoch;
+
+        private StreamWindow(int size, long epoch)
+        {
+            this.size = size;
+            this.epoch = epoch;
+        }
+    }
+}
@@ -37,6 +37,14 @@ public interface FlowControlStrategy
 
     public void onDataConsumed(ISession session, IStream stream, DataInfo dataInfo, int delta);
 
+    /**
+     * <p>Invoked when the reply to a PING sent by {@code ISession.roundTrip(...)} is received.</p>
+     *
+     * @param session the session
+     * @param roundTripTime the time, in nanoseconds, between sending the PING and receiving its reply
+     */
+    public void onRoundTrip(ISession session, long roundTripTime);
+
     public static class None implements FlowControlStrategy
     {
         private volatile int windowSize;
@@ -88,5 +96,10 @@ public interface FlowControlStrategy
         public void onDataConsumed(ISession session, IStream stream, DataInfo dataInfo, int delta)
         {
         }
+
+        @Override
+        public void onRoundTrip(ISession session, long roundTripTime)
+        {
+        }
     }
 }
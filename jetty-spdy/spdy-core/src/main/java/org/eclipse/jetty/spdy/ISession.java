@@ -38,6 +38,17 @@ public interface ISession extends Session
 
     public void data(IStream stream, DataInfo dataInfo, long timeout, TimeUnit unit, Callback callback);
 
+    /**
+     * <p>Sends a PING to measure the round trip time, which is reported to
+     * {@link FlowControlStrategy#onRoundTrip(ISession, long)}.</p>
+     * <p>The reply to this PING is not notified to the session listener.</p>
+     *
+     * @param timeout the time to wait for the reply
+     * @param unit the timeout unit
+     * @param callback the callback notified when the reply arrives, or failed if it does not arrive in time
+     */
+    public void roundTrip(long timeout, TimeUnit unit, Callback callback);
+
     /**
      * <p>Gracefully shuts down this session.</p>
      * <p>A special item is queued that will close the connection when it will be dequeued.</p>
@@ -87,4 +87,10 @@ public class SPDYv3FlowControlStrategy implements FlowControlStrategy
             session.control(stream, windowUpdateFrame, 0, TimeUnit.MILLISECONDS, new Callback.Adapter());
         }
     }
+
+    @Override
+    public void onRoundTrip(ISession session, long roundTripTime)
+    {
+        // Do nothing
+    }
 }
@@ -18,6 +18,8 @@
 
 package org.eclipse.jetty.spdy;
 
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Adler32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -25,10 +27,32 @@ import java.util.zip.ZipException;
 
 public class StandardCompressionFactory implements CompressionFactory
 {
+    private final boolean compressHeaders;
+
+    public StandardCompressionFactory()
+    {
+        this(true);
+    }
+
+    /**
+     * @param compressHeaders whether header blocks are compressed; if false, header blocks are
+     * written as stored deflate blocks, so that no compression state is kept for each session
+     * @see StoredCompressor
+     */
+    public StandardCompressionFactory(boolean compressHeaders)
+    {
+        this.compressHeaders = compressHeaders;
+    }
+
+    public boolean isCompressHeaders()
+    {
+        return compressHeaders;
+    }
+
     @Override
     public Compressor newCompressor()
     {
-        return new StandardCompressor();
+        return compressHeaders ? new StandardCompressor() : new StoredCompressor();
     }
 
     @Override
@@ -60,6 +84,91 @@ public class StandardCompressionFactory implements CompressionFactory
         }
     }
 
+    /**
+     * <p>A {@link Compressor} that produces a valid zlib stream made of stored (that is, not
+     * compressed) deflate blocks.</p>
+     * <p>SPDY requires the header compression context to span the whole session, so it cannot
+     * be shared or released while the session is open, and {@link Deflater} does not allow to
+     * configure the window size and memory level, allocating about 256 KiB of native memory.
+     * This compressor trades bandwidth for memory: it keeps no compression state, while the
+     * remote peer can still decompress the header blocks with its regular zlib inflater.</p>
+     */
+    public static class StoredCompressor implements Compressor
+    {
+        private static final int MAX_BLOCK_LENGTH = 0xFFFF;
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private byte[] pending = new byte[0];
+        private int offset;
+        private long dictionaryId = -1;
+        private boolean headerWritten;
+
+        @Override
+        public void setInput(byte[] input)
+        {
+            output.reset();
+            if (!headerWritten)
+            {
+                writeHeader();
+                headerWritten = true;
+            }
+
+            int index = 0;
+            do
+            {
+                int length = Math.min(input.length - index, MAX_BLOCK_LENGTH);
+                // BFINAL=0, BTYPE=00 (stored), padded to the byte boundary
+                output.write(0);
+                output.write(length & 0xFF);
+                output.write(length >>> 8);
+                output.write(~length & 0xFF);
+                output.write((~length >>> 8) & 0xFF);
+                output.write(input, index, length);
+                index += length;
+            }
+            while (index < input.length);
+
+            pending = output.toByteArray();
+            offset = 0;
+        }
+
+        private void writeHeader()
+        {
+            // CMF: deflate with a 32 KiB window
+            int cmf = 0x78;
+            int flg = dictionaryId < 0 ? 0 : 0x20;
+            flg += 31 - (cmf * 256 + flg) % 31;
+            output.write(cmf);
+            output.write(flg);
+            if (dictionaryId >= 0)
+            {
+                output.write((int)(dictionaryId >>> 24) & 0xFF);
+                output.write((int)(dictionaryId >>> 16) & 0xFF);
+                output.write((int)(dictionaryId >>> 8) & 0xFF);
+                output.write((int)dictionaryId & 0xFF);
+            }
+        }
+
+        @Override
+        public void setDictionary(byte[] dictionary)
+        {
+            if (headerWritten)
+                throw new IllegalStateException();
+            Adler32 adler = new Adler32();
+            adler.update(dictionary, 0, dictionary.length);
+            dictionaryId = adler.getValue();
+        }
+
+        @Override
+        public int compress(byte[] output)
+        {
+            int length = Math.min(output.length, pending.length - offset);
+            System.arraycopy(pending, offset, output, 0, length);
+            offset += length;
+            return length;
+        }
+    }
+
     public static class StandardDecompressor implements CompressionFactory.Decompressor
     {
         private final Inflater inflater = new Inflater();
@@ -24,14 +24,18 @@ import java.nio.ByteBuffer;
 import java.nio.channels.InterruptedByTimeoutException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -39,6 +43,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EndPoint;
@@ -89,12 +94,14 @@ import org.eclipse.jetty.util.thread.Scheduler;
 public class StandardSession implements ISession, Parser.Listener, Dumpable
 {
     private static final Logger LOG = Log.getLogger(Session.class);
+    public static final int DEFAULT_MAX_GATHER_BYTES = 64 * 1024;
 
     private final ForkInvoker<Callback> invoker = new SessionInvoker();
     private final Map<String, Object> attributes = new ConcurrentHashMap<>();
     private final List<Listener> listeners = new CopyOnWriteArrayList<>();
     private final ConcurrentMap<Integer, IStream> streams = new ConcurrentHashMap<>();
-    private final LinkedList<FrameBytes> queue = new LinkedList<>();
+    private final ConcurrentNavigableMap<Integer, RoundTrip> roundTrips = new ConcurrentSkipListMap<>();
+    private final FrameQueue queue = new FrameQueue();
     private final ByteBufferPool bufferPool;
     private final Executor threadPool;
     private final Scheduler scheduler;
@@ -110,8 +117,10 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
     private final AtomicBoolean goAwayReceived = new AtomicBoolean();
     private final AtomicInteger lastStreamId = new AtomicInteger();
     private final FlowControlStrategy flowControlStrategy;
-    private boolean flushing;
-    private Throwable failure;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final AtomicInteger flushRequests = new AtomicInteger();
+    private volatile Throwable failure;
+    private volatile int maxGatherBytes = DEFAULT_MAX_GATHER_BYTES;
 
     public StandardSession(short version, ByteBufferPool bufferPool, Executor threadPool, Scheduler scheduler,
                            Controller controller, EndPoint endPoint, IdleListener idleListener, int initialStreamId,
@@ -257,6 +266,17 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         control(null, frame, pingInfo.getTimeout(), pingInfo.getUnit(), pingInfoCallback);
     }
 
+    @Override
+    public void roundTrip(long timeout, TimeUnit unit, Callback callback)
+    {
+        int pingId = pingIds.getAndAdd(2);
+        RoundTrip roundTrip = new RoundTrip(pingId, callback);
+        roundTrips.put(pingId, roundTrip);
+        roundTrip.task = scheduler.schedule(roundTrip, timeout, unit);
+        PingFrame frame = new PingFrame(version, pingId);
+        control(null, frame, timeout, unit, roundTrip);
+    }
+
     @Override
     public void goAway(GoAwayInfo goAwayInfo) throws ExecutionException, InterruptedException, TimeoutException
     {
@@ -581,6 +601,7 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         IStream removed = streams.remove(stream.getId());
         if (removed != null)
             assert removed == stream;
+        queue.removeStream(stream);
 
         LOG.debug("Removed {}", stream);
         notifyStreamClosed(stream);
@@ -666,8 +687,23 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         int pingId = frame.getPingId();
         if (pingId % 2 == pingIds.get() % 2)
         {
-            PingResultInfo pingResultInfo = new PingResultInfo(frame.getPingId());
-            notifyOnPing(listener, pingResultInfo);
+            RoundTrip roundTrip = roundTrips.remove(pingId);
+            // PING replies arrive in order, so the earlier round trips will never complete
+            for (RoundTrip lost : roundTrips.headMap(pingId).values())
+            {
+                if (roundTrips.remove(lost.pingId, lost))
+                    lost.expire(new IOException("Lost PING reply " + lost.pingId));
+            }
+            if (roundTrip != null)
+            {
+                // Replies to the PINGs sent to measure the round trip time are not notified
+                roundTrip.complete();
+            }
+            else
+            {
+                PingResultInfo pingResultInfo = new PingResultInfo(frame.getPingId());
+                notifyOnPing(listener, pingResultInfo);
+            }
             flush();
         }
         else
@@ -930,116 +966,84 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
     @Override
     public void flush()
     {
-        FrameBytes frameBytes = null;
-        ByteBuffer buffer = null;
-        synchronized (queue)
+        flushRequests.incrementAndGet();
+        while (true)
         {
-            if (flushing || queue.isEmpty())
+            if (!flushing.compareAndSet(false, true))
                 return;
 
-            Set<IStream> stalledStreams = null;
-            for (int i = 0; i < queue.size(); ++i)
-            {
-                frameBytes = queue.get(i);
+            int requests = flushRequests.get();
+            List<FrameBytes> frames = new ArrayList<>();
+            List<ByteBuffer> buffers = new ArrayList<>();
+            int bytes = queue.poll(frames, buffers, maxGatherBytes);
 
-                IStream stream = frameBytes.getStream();
-                if (stream != null && stalledStreams != null && stalledStreams.contains(stream))
-                    continue;
-
-                buffer = frameBytes.getByteBuffer();
-                if (buffer != null)
-                {
-                    queue.remove(i);
-                    if (stream != null && stream.isReset() && !(frameBytes instanceof ControlFrameBytes))
-                    {
-                        frameBytes.fail(new StreamException(stream.getId(), StreamStatus.INVALID_STREAM,
-                                "Stream: " + stream + " is reset!"));
-                        return;
-                    }
-                    break;
-                }
-
-                if (stalledStreams == null)
-                    stalledStreams = new HashSet<>();
-                if (stream != null)
-                    stalledStreams.add(stream);
-
-                LOG.debug("Flush stalled for {}, {} frame(s) in queue", frameBytes, queue.size());
+            if (!frames.isEmpty())
+            {
+                LOG.debug("Flushing {} frame(s) ({} bytes), {} frame(s) in queue", frames.size(), bytes, queue.size());
+                Callback callback = frames.size() == 1 ? frames.get(0) : new GatheredFrameBytes(frames);
+                write(callback, buffers.toArray(new ByteBuffer[buffers.size()]));
+                return;
             }
 
-            if (buffer == null)
-                return;
+            flushing.set(false);
 
-            flushing = true;
-            LOG.debug("Flushing {}, {} frame(s) in queue", frameBytes, queue.size());
+            // Frames queued or unstalled while we were polling
+            // may have been missed, so poll again if needed
+            if (flushRequests.get() == requests)
+                return;
         }
-        write(buffer, frameBytes);
     }
 
     private void append(FrameBytes frameBytes)
     {
-        Throwable failure;
-        synchronized (queue)
-        {
-            failure = this.failure;
-            if (failure == null)
-            {
-                // Frames containing headers must be send in the order the headers have been generated. We don't need
-                // to do this check in StandardSession.prepend() as no frames containing headers will be prepended.
-                if (frameBytes instanceof ControlFrameBytes)
-                    queue.addLast(frameBytes);
-                else
-                {
-                    int index = queue.size();
-                    while (index > 0)
-                    {
-                        FrameBytes element = queue.get(index - 1);
-                        if (element.compareTo(frameBytes) >= 0)
-                            break;
-                        --index;
-                    }
-                    queue.add(index, frameBytes);
-                }
-            }
-        }
-
-        if (failure != null)
-            frameBytes.fail(new SPDYException(failure));
+        queue.append((AbstractFrameBytes)frameBytes);
+        failQueuedAfterFailure(frameBytes);
     }
 
     private void prepend(FrameBytes frameBytes)
     {
-        Throwable failure;
-        synchronized (queue)
-        {
-            failure = this.failure;
-            if (failure == null)
-            {
-                int index = 0;
-                while (index < queue.size())
-                {
-                    FrameBytes element = queue.get(index);
-                    if (element.compareTo(frameBytes) <= 0)
-                        break;
-                    ++index;
-                }
-                queue.add(index, frameBytes);
-            }
-        }
+        queue.prepend((AbstractFrameBytes)frameBytes);
+        failQueuedAfterFailure(frameBytes);
+    }
 
-        if (failure != null)
+    private void failQueuedAfterFailure(FrameBytes frameBytes)
+    {
+        // The queue is not locked, so a write failure may have
+        // drained it before this frame was queued
+        Throwable failure = this.failure;
+        if (failure != null && queue.remove(frameBytes))
             frameBytes.fail(new SPDYException(failure));
     }
 
-    protected void write(ByteBuffer buffer, Callback callback)
+    protected void write(Callback callback, ByteBuffer... buffers)
     {
         if (controller != null)
         {
-            LOG.debug("Writing {} frame bytes of {}", buffer.remaining(), buffer.limit());
-            controller.write(buffer, callback);
+            LOG.debug("Writing {} frame buffer(s)", buffers.length);
+            controller.write(callback, buffers);
         }
     }
 
+    /**
+     * @return the maximum number of bytes gathered from queued frames into a single write
+     */
+    public int getMaxGatherBytes()
+    {
+        return maxGatherBytes;
+    }
+
+    /**
+     * <p>Sets the maximum number of bytes gathered from queued frames into a single write.</p>
+     * <p>Frames are gathered until this limit is reached, so a single write may exceed it
+     * by at most one frame; a value of 1 disables gathering.</p>
+     *
+     * @param maxGatherBytes the maximum number of bytes per write
+     */
+    public void setMaxGatherBytes(int maxGatherBytes)
+    {
+        this.maxGatherBytes = maxGatherBytes;
+    }
+
     private void complete(final Callback callback)
     {
         // Applications may send and queue up a lot of frames and
@@ -1126,6 +1130,272 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         }
     }
 
+    /**
+     * <p>The queue of frames waiting to be written.</p>
+     * <p>Control frames are kept in a single FIFO lane, since frames containing headers must be
+     * written in the order their headers have been compressed, and SYN_STREAM frames in the
+     * order of their stream ids. Data frames are kept in one FIFO lane per stream priority.</p>
+     * <p>Queuing frames is lock free and O(1); frames are only polled by the thread that
+     * holds the {@link #flushing} flag.</p>
+     * <p>Frames containing headers wait for the data frames of the same stream that were queued
+     * before them; GO_AWAY and close frames wait for the data frames queued before them.</p>
+     */
+    private class FrameQueue
+    {
+        private static final int PRIORITIES = 8;
+
+        private final Deque<AbstractFrameBytes> controls = new ConcurrentLinkedDeque<>();
+        private final List<Deque<AbstractFrameBytes>> datas = new ArrayList<>(PRIORITIES);
+        private final ConcurrentMap<IStream, DataCounter> dataCounters = new ConcurrentHashMap<>();
+        private final DataCounter sessionDataCounter = new DataCounter();
+        private final AtomicInteger size = new AtomicInteger();
+        // Only accessed by the flushing thread
+        private final Set<IStream> deferredStreams = new HashSet<>();
+        private final Set<IStream> skippedStreams = new HashSet<>();
+
+        private FrameQueue()
+        {
+            for (int i = 0; i < PRIORITIES; ++i)
+                datas.add(new ConcurrentLinkedDeque<AbstractFrameBytes>());
+        }
+
+        private void append(AbstractFrameBytes frameBytes)
+        {
+            if (frameBytes instanceof DataFrameBytes)
+            {
+                IStream stream = frameBytes.getStream();
+                DataCounter counter = dataCounters.get(stream);
+                if (counter == null)
+                {
+                    counter = new DataCounter();
+                    DataCounter existing = dataCounters.putIfAbsent(stream, counter);
+                    if (existing != null)
+                        counter = existing;
+                }
+                counter.queued.incrementAndGet();
+                sessionDataCounter.queued.incrementAndGet();
+                frameBytes.dataCounter = counter;
+                laneOf(stream).offerLast(frameBytes);
+            }
+            else
+            {
+                DataCounter counter = dataCounterOf(frameBytes);
+                frameBytes.dataCounter = counter;
+                frameBytes.dataQueuedBefore = counter.queued.get();
+                controls.offerLast(frameBytes);
+            }
+            size.incrementAndGet();
+        }
+
+        private void prepend(AbstractFrameBytes frameBytes)
+        {
+            if (frameBytes instanceof DataFrameBytes)
+                laneOf(frameBytes.getStream()).offerFirst(frameBytes);
+            else
+                controls.offerFirst(frameBytes);
+            size.incrementAndGet();
+        }
+
+        private boolean remove(FrameBytes frameBytes)
+        {
+            boolean removed = frameBytes instanceof DataFrameBytes ?
+                    laneOf(frameBytes.getStream()).remove(frameBytes) :
+                    controls.remove(frameBytes);
+            if (removed)
+                size.decrementAndGet();
+            return removed;
+        }
+
+        private void drainTo(List<FrameBytes> frames)
+        {
+            drainTo(controls, frames);
+            for (Deque<AbstractFrameBytes> lane : datas)
+                drainTo(lane, frames);
+        }
+
+        private void drainTo(Deque<AbstractFrameBytes> lane, List<FrameBytes> frames)
+        {
+            AbstractFrameBytes frameBytes;
+            while ((frameBytes = lane.pollFirst()) != null)
+            {
+                size.decrementAndGet();
+                frames.add(frameBytes);
+            }
+        }
+
+        /**
+         * <p>Polls the frames that are ready to be written, control frames first
+         * and then data frames from the highest to the lowest priority.</p>
+         *
+         * @param frames the list to add the polled frames to
+         * @param buffers the list to add the buffers of the polled frames to
+         * @param maxBytes the number of bytes after which no more frames are polled
+         * @return the number of bytes polled
+         */
+        private int poll(List<FrameBytes> frames, List<ByteBuffer> buffers, int maxBytes)
+        {
+            deferredStreams.clear();
+            skippedStreams.clear();
+            int bytes = 0;
+
+            boolean headersBlocked = false;
+            Iterator<AbstractFrameBytes> controlIterator = controls.iterator();
+            while (bytes < maxBytes && controlIterator.hasNext())
+            {
+                AbstractFrameBytes frameBytes = controlIterator.next();
+                IStream stream = frameBytes.getStream();
+                if (stream != null && deferredStreams.contains(stream))
+                    continue;
+
+                boolean headers = hasHeaders(frameBytes);
+                boolean dataWritten = isDataWritten(frameBytes);
+                if (headers && headersBlocked || !dataWritten)
+                {
+                    // Frames containing headers cannot be written before a deferred
+                    // one, nor can the frames of its stream, including data frames
+                    // unless the frame is waiting for those data frames to be written
+                    headersBlocked |= headers;
+                    if (stream != null)
+                    {
+                        deferredStreams.add(stream);
+                        if (dataWritten)
+                            skippedStreams.add(stream);
+                    }
+                    LOG.debug("Flush deferred for {}", frameBytes);
+                    continue;
+                }
+
+                controlIterator.remove();
+                size.decrementAndGet();
+                ByteBuffer buffer = frameBytes.getByteBuffer();
+                frames.add(frameBytes);
+                buffers.add(buffer);
+                bytes += buffer.remaining();
+            }
+
+            for (int priority = 0; priority < PRIORITIES && bytes < maxBytes; ++priority)
+            {
+                Iterator<AbstractFrameBytes> dataIterator = datas.get(priority).iterator();
+                while (bytes < maxBytes && dataIterator.hasNext())
+                {
+                    AbstractFrameBytes frameBytes = dataIterator.next();
+                    IStream stream = frameBytes.getStream();
+                    if (skippedStreams.contains(stream))
+                        continue;
+
+                    if (stream.isReset())
+                    {
+                        dataIterator.remove();
+                        size.decrementAndGet();
+                        frameBytes.fail(new StreamException(stream.getId(), StreamStatus.INVALID_STREAM,
+                                "Stream: " + stream + " is reset!"));
+                        continue;
+                    }
+
+                    // The window of a stream is only updated when its data frame is
+                    // written, so poll at most one data frame per stream; this also
+                    // keeps the data frames of a stream in the order they were queued
+                    skippedStreams.add(stream);
+
+                    ByteBuffer buffer = frameBytes.getByteBuffer();
+                    if (buffer == null)
+                    {
+                        LOG.debug("Flush stalled for {}", frameBytes);
+                        continue;
+                    }
+
+                    dataIterator.remove();
+                    size.decrementAndGet();
+                    frames.add(frameBytes);
+                    buffers.add(buffer);
+                    bytes += buffer.remaining();
+                }
+            }
+
+            return bytes;
+        }
+
+        private boolean hasHeaders(AbstractFrameBytes frameBytes)
+        {
+            if (frameBytes instanceof ControlFrameBytes)
+            {
+                switch (((ControlFrameBytes)frameBytes).frame.getType())
+                {
+                    case SYN_STREAM:
+                    case SYN_REPLY:
+                    case HEADERS:
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+            return false;
+        }
+
+        private boolean isDataWritten(AbstractFrameBytes frameBytes)
+        {
+            if (frameBytes.dataQueuedBefore == 0)
+                return true;
+            return frameBytes.dataCounter.written.get() >= frameBytes.dataQueuedBefore;
+        }
+
+        private void dataWritten(AbstractFrameBytes frameBytes)
+        {
+            // Count on the frame's own counter, since the stream may have
+            // been removed (for example, reset) while its frames were queued
+            DataCounter counter = frameBytes.dataCounter;
+            if (counter != null)
+                counter.written.incrementAndGet();
+            sessionDataCounter.written.incrementAndGet();
+        }
+
+        private DataCounter dataCounterOf(AbstractFrameBytes frameBytes)
+        {
+            IStream stream = frameBytes.getStream();
+            if (stream == null)
+            {
+                // PING, SETTINGS and the like do not wait for data frames
+                if (frameBytes instanceof CloseFrameBytes ||
+                        frameBytes instanceof ControlFrameBytes && ((ControlFrameBytes)frameBytes).frame.getType() == ControlFrameType.GO_AWAY)
+                    return sessionDataCounter;
+                return DataCounter.NONE;
+            }
+            if (!hasHeaders(frameBytes))
+                return DataCounter.NONE;
+            DataCounter counter = dataCounters.get(stream);
+            return counter == null ? DataCounter.NONE : counter;
+        }
+
+        private void removeStream(IStream stream)
+        {
+            // Frames still queued for the stream keep a reference to its counter
+            dataCounters.remove(stream);
+        }
+
+        private Deque<AbstractFrameBytes> laneOf(IStream stream)
+        {
+            int priority = stream.getPriority();
+            return datas.get(Math.max(0, Math.min(priority, PRIORITIES - 1)));
+        }
+
+        private int size()
+        {
+            return size.get();
+        }
+    }
+
+    /**
+     * <p>Counts the data frames queued and completely written (or failed)
+     * for a stream or for the whole session.</p>
+     */
+    private static class DataCounter
+    {
+        private static final DataCounter NONE = new DataCounter();
+
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+    }
+
     public interface FrameBytes extends Comparable<FrameBytes>, Callback
     {
         public IStream getStream();
@@ -1142,6 +1412,10 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         private final IStream stream;
         private final Callback callback;
         protected volatile Scheduler.Task task;
+        // The counter of the data frames this frame is queued with or waits for
+        private volatile DataCounter dataCounter;
+        // The number of data frames that must be written before this frame
+        private volatile long dataQueuedBefore;
 
         protected AbstractFrameBytes(IStream stream, Callback callback)
         {
@@ -1202,36 +1476,70 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         @Override
         public void succeeded()
         {
-            synchronized (queue)
-            {
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Completed write of {}, {} frame(s) in queue", this, queue.size());
-                flushing = false;
-            }
-            complete();
+            writeSucceeded(Collections.<FrameBytes>singletonList(this));
         }
 
         @Override
         public void failed(Throwable x)
         {
-            List<FrameBytes> frameBytesToFail = new ArrayList<>();
-            frameBytesToFail.add(this);
+            writeFailed(Collections.<FrameBytes>singletonList(this), x);
+        }
+    }
 
-            synchronized (queue)
-            {
-                failure = x;
-                if (LOG.isDebugEnabled())
-                {
-                    String logMessage = String.format("Failed write of %s, failing all %d frame(s) in queue", this, queue.size());
-                    LOG.debug(logMessage, x);
-                }
-                frameBytesToFail.addAll(queue);
-                queue.clear();
-                flushing = false;
-            }
+    private void writeSucceeded(List<FrameBytes> frames)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Completed write of {}, {} frame(s) in queue", frames, queue.size());
+        flushing.set(false);
+        for (FrameBytes frameBytes : frames)
+            frameBytes.complete();
+    }
 
-            for (FrameBytes fb : frameBytesToFail)
-                fb.fail(x);
+    private void writeFailed(List<FrameBytes> frames, Throwable x)
+    {
+        failure = x;
+        List<FrameBytes> frameBytesToFail = new ArrayList<>(frames);
+        queue.drainTo(frameBytesToFail);
+        if (LOG.isDebugEnabled())
+        {
+            String logMessage = String.format("Failed write of %s, failing all %d frame(s) in queue", frames, frameBytesToFail.size() - frames.size());
+            LOG.debug(logMessage, x);
+        }
+        flushing.set(false);
+
+        for (FrameBytes fb : frameBytesToFail)
+            fb.fail(x);
+    }
+
+    /**
+     * <p>The callback of a write that gathered more than one frame,
+     * completing or failing all of them in order.</p>
+     */
+    private class GatheredFrameBytes implements Callback
+    {
+        private final List<FrameBytes> frames;
+
+        private GatheredFrameBytes(List<FrameBytes> frames)
+        {
+            this.frames = frames;
+        }
+
+        @Override
+        public void succeeded()
+        {
+            writeSucceeded(frames);
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            writeFailed(frames, x);
+        }
+
+        @Override
+        public String toString()
+        {
+            return frames.toString();
         }
     }
 
@@ -1281,6 +1589,7 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
     private class DataFrameBytes extends AbstractFrameBytes
     {
         private final DataInfo dataInfo;
+        private final AtomicBoolean done = new AtomicBoolean();
         private int size;
         private volatile ByteBuffer buffer;
 
@@ -1309,6 +1618,7 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
             }
             catch (Throwable x)
             {
+                queue.remove(this);
                 fail(x);
                 return null;
             }
@@ -1330,6 +1640,8 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
             }
             else
             {
+                if (done.compareAndSet(false, true))
+                    queue.dataWritten(this);
                 super.complete();
                 stream.updateCloseState(dataInfo.isClose(), true);
                 if (stream.isClosed())
@@ -1337,6 +1649,14 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
             }
         }
 
+        @Override
+        public void fail(Throwable x)
+        {
+            if (done.compareAndSet(false, true))
+                queue.dataWritten(this);
+            super.fail(x);
+        }
+
         @Override
         public String toString()
         {
@@ -1365,6 +1685,76 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         }
     }
 
+    /**
+     * <p>A PING sent to measure the round trip time.</p>
+     * <p>When it expires, the round trip is failed but is remembered for a while,
+     * so that a late reply is still not notified to the listener.</p>
+     */
+    private class RoundTrip implements Runnable, Callback
+    {
+        private static final int MAX_EXPIRED = 16;
+
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final long pingTime = System.nanoTime();
+        private final int pingId;
+        private final Callback callback;
+        private volatile Scheduler.Task task;
+
+        private RoundTrip(int pingId, Callback callback)
+        {
+            this.pingId = pingId;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run()
+        {
+            expire(new TimeoutException("PING reply timeout " + pingId));
+            // Forget the oldest expired round trips, in case the remote peer never replies
+            while (roundTrips.size() > MAX_EXPIRED)
+                roundTrips.pollFirstEntry();
+        }
+
+        @Override
+        public void succeeded()
+        {
+            // The PING has been written, wait for the reply
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            roundTrips.remove(pingId, this);
+            expire(x);
+        }
+
+        private void complete()
+        {
+            if (done.compareAndSet(false, true))
+            {
+                cancel();
+                flowControlStrategy.onRoundTrip(StandardSession.this, System.nanoTime() - pingTime);
+                callback.succeeded();
+            }
+        }
+
+        private void expire(Throwable x)
+        {
+            if (done.compareAndSet(false, true))
+            {
+                cancel();
+                notifyCallbackFailed(callback, x);
+            }
+        }
+
+        private void cancel()
+        {
+            Scheduler.Task task = this.task;
+            if (task != null)
+                task.cancel();
+        }
+    }
+
     private static class PingInfoCallback extends PingResultInfo implements Callback
     {
         private final Promise<PingResultInfo> promise;
@@ -0,0 +1,250 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.api.BytesDataInfo;
+import org.eclipse.jetty.spdy.api.DataInfo;
+import org.eclipse.jetty.spdy.api.PingResultInfo;
+import org.eclipse.jetty.spdy.api.ReplyInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.Session;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.api.server.ServerSessionFrameListener;
+import org.eclipse.jetty.spdy.generator.Generator;
+import org.eclipse.jetty.spdy.parser.Parser;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.util.thread.TimerScheduler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class AdaptiveFlowControlStrategyTest
+{
+    private static final int LATENCY = 25;
+    private static final int WINDOW_SIZE = 65536;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int CONTENT_LENGTH = 2 * 1024 * 1024;
+
+    private ExecutorService threadPool;
+    private Scheduler scheduler;
+    private ScheduledExecutorService network;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        threadPool = Executors.newCachedThreadPool();
+        scheduler = new TimerScheduler();
+        scheduler.start();
+        // A single thread delivers the bytes in order, after the simulated latency
+        network = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        network.shutdownNow();
+        scheduler.stop();
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void testAdaptiveWindowOutperformsFixedWindowOnHighLatencyLink() throws Exception
+    {
+        long fixed = download(new SPDYv3FlowControlStrategy());
+        AdaptiveFlowControlStrategy adaptive = new AdaptiveFlowControlStrategy(16 * 1024 * 1024, 1000, 10000);
+        long elapsed = download(adaptive);
+
+        Assert.assertThat(adaptive.getRoundTripTime(), greaterThan(TimeUnit.MILLISECONDS.toNanos(2 * LATENCY) / 2));
+        Assert.assertThat(adaptive.getSessionWindowSize(), greaterThan(WINDOW_SIZE));
+        Assert.assertThat(elapsed, lessThan(fixed));
+    }
+
+    @Test
+    public void testWindowDoesNotGrowBeyondMaxWindowSize() throws Exception
+    {
+        int maxWindowSize = 2 * WINDOW_SIZE;
+        AdaptiveFlowControlStrategy adaptive = new AdaptiveFlowControlStrategy(maxWindowSize, 1000, 10000);
+        download(adaptive);
+
+        Assert.assertEquals(maxWindowSize, adaptive.getSessionWindowSize());
+    }
+
+    @Test
+    public void testRoundTripPingsAreNotNotifiedToListener() throws Exception
+    {
+        final AtomicInteger pings = new AtomicInteger();
+        AdaptiveFlowControlStrategy adaptive = new AdaptiveFlowControlStrategy(16 * 1024 * 1024, 0, 10000);
+        download(adaptive, new ServerSessionFrameListener.Adapter()
+        {
+            @Override
+            public void onPing(Session session, PingResultInfo pingResultInfo)
+            {
+                pings.incrementAndGet();
+            }
+        });
+
+        Assert.assertThat(adaptive.getRoundTripTime(), greaterThan(0L));
+        Assert.assertEquals(0, pings.get());
+    }
+
+    @Test
+    public void testUnansweredRoundTripPingTimesOut() throws Exception
+    {
+        StandardSession session = newSession(new Controller()
+        {
+            @Override
+            public void write(Callback callback, ByteBuffer... buffers)
+            {
+                // The remote peer never replies
+                callback.succeeded();
+            }
+
+            @Override
+            public void close(boolean onlyOutput)
+            {
+            }
+        }, 1, null, new AdaptiveFlowControlStrategy());
+
+        for (int i = 0; i < 2; ++i)
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            session.roundTrip(100, TimeUnit.MILLISECONDS, new Callback.Adapter()
+            {
+                @Override
+                public void failed(Throwable x)
+                {
+                    if (x instanceof TimeoutException)
+                        latch.countDown();
+                }
+            });
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private long download(FlowControlStrategy clientStrategy) throws Exception
+    {
+        return download(clientStrategy, null);
+    }
+
+    private long download(FlowControlStrategy clientStrategy, ServerSessionFrameListener clientListener) throws Exception
+    {
+        LatencyController clientController = new LatencyController();
+        LatencyController serverController = new LatencyController();
+
+        StandardSession client = newSession(clientController, 1, clientListener, clientStrategy);
+        final StandardSession server = newSession(serverController, 2, new ServerSessionFrameListener.Adapter()
+        {
+            @Override
+            public StreamFrameListener onSyn(Stream stream, SynInfo synInfo)
+            {
+                stream.reply(new ReplyInfo(false), new Callback.Adapter());
+                for (int written = 0; written < CONTENT_LENGTH; written += CHUNK_SIZE)
+                    stream.data(new BytesDataInfo(new byte[CHUNK_SIZE], written + CHUNK_SIZE >= CONTENT_LENGTH), new Callback.Adapter());
+                return null;
+            }
+        }, new SPDYv3FlowControlStrategy());
+        clientController.connect(server);
+        serverController.connect(client);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        long begin = System.nanoTime();
+        client.syn(new SynInfo(new Fields(), true), new StreamFrameListener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataInfo dataInfo)
+            {
+                dataInfo.consume(dataInfo.length());
+                if (dataInfo.isClose())
+                    latch.countDown();
+            }
+        }, new FuturePromise<Stream>());
+
+        Assert.assertTrue(latch.await(60, TimeUnit.SECONDS));
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+    }
+
+    private StandardSession newSession(Controller controller, int initialStreamId, ServerSessionFrameListener listener, FlowControlStrategy flowControlStrategy)
+    {
+        MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+        Generator generator = new Generator(bufferPool, new StandardCompressionFactory.StandardCompressor());
+        StandardSession session = new StandardSession(SPDY.V3, bufferPool, threadPool, scheduler, controller, null,
+                null, initialStreamId, listener, generator, flowControlStrategy);
+        session.setWindowSize(WINDOW_SIZE);
+        return session;
+    }
+
+    /**
+     * A {@link Controller} with infinite bandwidth that delivers the bytes
+     * to the remote session after a fixed latency.
+     */
+    private class LatencyController implements Controller
+    {
+        private final Parser parser = new Parser(new StandardCompressionFactory.StandardDecompressor());
+
+        private void connect(StandardSession remote)
+        {
+            parser.addListener(remote);
+        }
+
+        @Override
+        public void write(Callback callback, ByteBuffer... buffers)
+        {
+            int length = 0;
+            for (ByteBuffer buffer : buffers)
+                length += buffer.remaining();
+            final ByteBuffer copy = ByteBuffer.allocate(length);
+            for (ByteBuffer buffer : buffers)
+                copy.put(buffer);
+            copy.flip();
+            network.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    parser.parse(copy);
+                }
+            }, LATENCY, TimeUnit.MILLISECONDS);
+            callback.succeeded();
+        }
+
+        @Override
+        public void close(boolean onlyOutput)
+        {
+        }
+    }
+}
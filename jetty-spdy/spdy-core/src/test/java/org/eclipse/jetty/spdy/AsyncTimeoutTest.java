@@ -106,14 +106,17 @@ public class AsyncTimeoutTest
                 null, null, 1, null, generator, new FlowControlStrategy.None())
         {
             @Override
-            protected void write(ByteBuffer buffer, Callback callback)
+            protected void write(Callback callback, ByteBuffer... buffers)
             {
                 try
                 {
                     // Wait if we're writing the data frame (control frame's first byte is 0x80)
-                    if (buffer.get(0) == 0)
-                        unit.sleep(2 * timeout);
-                    super.write(buffer, callback);
+                    for (ByteBuffer buffer : buffers)
+                    {
+                        if (buffer.get(0) == 0)
+                            unit.sleep(2 * timeout);
+                    }
+                    super.write(callback, buffers);
                 }
                 catch (InterruptedException x)
                 {
@@ -139,7 +142,7 @@ public class AsyncTimeoutTest
     private static class TestController implements Controller
     {
         @Override
-        public void write(ByteBuffer buffer, Callback callback)
+        public void write(Callback callback, ByteBuffer... buffers)
         {
             callback.succeeded();
         }
@@ -30,13 +30,18 @@ import static org.mockito.Mockito.verify;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.MappedByteBufferPool;
@@ -53,11 +58,13 @@ import org.eclipse.jetty.spdy.api.StreamStatus;
 import org.eclipse.jetty.spdy.api.StringDataInfo;
 import org.eclipse.jetty.spdy.api.SynInfo;
 import org.eclipse.jetty.spdy.frames.DataFrame;
+import org.eclipse.jetty.spdy.frames.RstStreamFrame;
 import org.eclipse.jetty.spdy.frames.SynReplyFrame;
 import org.eclipse.jetty.spdy.frames.SynStreamFrame;
 import org.eclipse.jetty.spdy.generator.Generator;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.FutureCallback;
 import org.eclipse.jetty.util.FuturePromise;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.log.Log;
@@ -69,6 +76,7 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -115,7 +123,7 @@ public class StandardSessionTest
             public Object answer(InvocationOnMock invocation)
             {
                 Object[] args = invocation.getArguments();
-                Callback callback = (Callback)args[1];
+                Callback callback = (Callback)args[0];
                 if (fail)
                     callback.failed(new ClosedChannelException());
                 else
@@ -123,7 +131,7 @@ public class StandardSessionTest
                 return null;
             }
         })
-                .when(controller).write(any(ByteBuffer.class), any(Callback.class));
+                .when(controller).write(any(Callback.class), Matchers.<ByteBuffer>anyVararg());
     }
 
     @Test
@@ -442,7 +450,7 @@ public class StandardSessionTest
         // second data frame should fail without controller.write() as the connection is expected to be broken after first controller.write() call failed.
         stream.data(new StringDataInfo(5, TimeUnit.SECONDS, "data", false), callback);
 
-        verify(controller, times(1)).write(any(ByteBuffer.class), any(Callback.class));
+        verify(controller, times(1)).write(any(Callback.class), Matchers.<ByteBuffer>anyVararg());
         assertThat("Callback.failed has been called twice", failedCalledLatch.await(5, TimeUnit.SECONDS), is(true));
     }
 
@@ -456,10 +464,139 @@ public class StandardSessionTest
         session.rst(new RstInfo(stream.getId(), StreamStatus.INVALID_STREAM));
         stream.headers(new HeadersInfo(headers, true));
 
-        verify(controller, times(3)).write(any(ByteBuffer.class), any(Callback.class));
+        verify(controller, times(3)).write(any(Callback.class), Matchers.<ByteBuffer>anyVararg());
 
     }
 
+    @Test
+    public void testQueuedFramesAreGatheredInOneWrite() throws Exception
+    {
+        GatheringControllerMock gatheringController = new GatheringControllerMock();
+        StandardSession testLocalSession = new StandardSession(VERSION, bufferPool, threadPool, scheduler,
+                gatheringController, null, null, 1, null, generator, new FlowControlStrategy.None());
+
+        // The first frame is written immediately, the others queue up until its write completes
+        for (int i = 0; i < 3; i++)
+            testLocalSession.syn(new SynInfo(headers, false, (byte)0), new StreamFrameListener.Adapter(), new FuturePromise<Stream>());
+
+        gatheringController.callbacks.poll(5, TimeUnit.SECONDS).succeeded();
+        gatheringController.callbacks.poll(5, TimeUnit.SECONDS).succeeded();
+
+        assertThat("first write", gatheringController.writes.get(0), is(1));
+        assertThat("queued frames gathered in one write", gatheringController.writes.get(1), is(2));
+    }
+
+    @Test
+    public void testGatheredWriteIsCappedByMaxGatherBytes() throws Exception
+    {
+        GatheringControllerMock gatheringController = new GatheringControllerMock();
+        StandardSession testLocalSession = new StandardSession(VERSION, bufferPool, threadPool, scheduler,
+                gatheringController, null, null, 1, null, generator, new FlowControlStrategy.None());
+        testLocalSession.setMaxGatherBytes(1);
+
+        for (int i = 0; i < 3; i++)
+            testLocalSession.syn(new SynInfo(headers, false, (byte)0), new StreamFrameListener.Adapter(), new FuturePromise<Stream>());
+
+        for (int i = 0; i < 3; i++)
+            gatheringController.callbacks.poll(5, TimeUnit.SECONDS).succeeded();
+
+        assertThat(gatheringController.writes.size(), is(3));
+        for (Integer buffers : gatheringController.writes)
+            assertThat(buffers, is(1));
+    }
+
+    @Test
+    public void testQueuedDataFramesAreWrittenInPriorityOrder() throws Exception
+    {
+        GatheringControllerMock gatheringController = new GatheringControllerMock();
+        StandardSession testLocalSession = new StandardSession(VERSION, bufferPool, threadPool, scheduler,
+                gatheringController, null, null, 1, null, generator, new FlowControlStrategy.None());
+
+        Stream high = syn(testLocalSession, gatheringController, (byte)0);
+        Stream low1 = syn(testLocalSession, gatheringController, (byte)3);
+        Stream low2 = syn(testLocalSession, gatheringController, (byte)3);
+        gatheringController.clear();
+
+        // The first data frame is written immediately, the others queue up until its write completes
+        low1.data(new StringDataInfo("low1", false), new Callback.Adapter());
+        low2.data(new StringDataInfo("low2", false), new Callback.Adapter());
+        high.data(new StringDataInfo("high", false), new Callback.Adapter());
+
+        gatheringController.callbacks.poll(5, TimeUnit.SECONDS).succeeded();
+        gatheringController.callbacks.poll(5, TimeUnit.SECONDS).succeeded();
+
+        int[] gathered = gatheringController.frameHeads.get(1);
+        assertThat(gathered.length, is(2));
+        // Data frames start with the stream id
+        assertThat(gathered[0], is(high.getId()));
+        assertThat(gathered[1], is(low2.getId()));
+    }
+
+    @Test
+    public void testHeadersAreNotWrittenBeforeQueuedDataOfSameStream() throws Exception
+    {
+        GatheringControllerMock gatheringController = new GatheringControllerMock();
+        StandardSession testLocalSession = new StandardSession(VERSION, bufferPool, threadPool, scheduler,
+                gatheringController, null, null, 1, null, generator, new FlowControlStrategy.None());
+
+        Stream stream1 = syn(testLocalSession, gatheringController, (byte)0);
+        Stream stream2 = syn(testLocalSession, gatheringController, (byte)0);
+        gatheringController.clear();
+
+        stream2.data(new StringDataInfo("hold", false), new Callback.Adapter());
+        stream1.data(new StringDataInfo("data", false), new Callback.Adapter());
+        stream1.headers(new HeadersInfo(headers, true), new Callback.Adapter());
+
+        for (int i = 0; i < 3; i++)
+            gatheringController.callbacks.poll(5, TimeUnit.SECONDS).succeeded();
+
+        // The HEADERS frame of stream1 waits until its DATA frame has been written
+        int[] second = gatheringController.frameHeads.get(1);
+        assertThat(second.length, is(1));
+        assertThat("data frame", second[0], is(stream1.getId()));
+        int[] third = gatheringController.frameHeads.get(2);
+        assertThat(third.length, is(1));
+        assertThat("control frame", third[0] < 0, is(true));
+    }
+
+    @Test
+    public void testHeadersQueuedOnResetStreamDoNotStallSession() throws Exception
+    {
+        GatheringControllerMock gatheringController = new GatheringControllerMock();
+        StandardSession testLocalSession = new StandardSession(VERSION, bufferPool, threadPool, scheduler,
+                gatheringController, null, null, 1, null, generator, new FlowControlStrategy.None());
+
+        Stream stream1 = syn(testLocalSession, gatheringController, (byte)0);
+        Stream stream2 = syn(testLocalSession, gatheringController, (byte)0);
+        gatheringController.clear();
+
+        stream2.data(new StringDataInfo("hold", false), new Callback.Adapter());
+        stream1.data(new StringDataInfo("data", false), new Callback.Adapter());
+        FutureCallback headers1 = new FutureCallback();
+        stream1.headers(new HeadersInfo(headers, false), headers1);
+
+        // The remote peer resets stream1 while its HEADERS frame is still queued
+        testLocalSession.onControlFrame(new RstStreamFrame(VERSION, stream1.getId(), StreamStatus.CANCEL_STREAM.getCode(VERSION)));
+
+        FutureCallback headers2 = new FutureCallback();
+        stream2.headers(new HeadersInfo(headers, true), headers2);
+
+        Callback callback;
+        while (!headers2.isDone() && (callback = gatheringController.callbacks.poll(5, TimeUnit.SECONDS)) != null)
+            callback.succeeded();
+
+        headers1.get(5, TimeUnit.SECONDS);
+        headers2.get(5, TimeUnit.SECONDS);
+    }
+
+    private Stream syn(StandardSession session, GatheringControllerMock controller, byte priority) throws Exception
+    {
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.syn(new SynInfo(headers, false, priority), new StreamFrameListener.Adapter(), promise);
+        controller.callbacks.poll(5, TimeUnit.SECONDS).succeeded();
+        return promise.get(5, TimeUnit.SECONDS);
+    }
+
     @Test
     public void testHeaderFramesAreSentInTheOrderTheyAreCreated() throws ExecutionException,
             TimeoutException, InterruptedException
@@ -476,8 +613,9 @@ public class StandardSessionTest
 
     private void testHeaderFramesAreSentInOrder(final byte priority0, final byte priority1, final byte priority2) throws InterruptedException, ExecutionException
     {
+        ControllerMock controllerMock = new ControllerMock();
         final StandardSession testLocalSession = new StandardSession(VERSION, bufferPool, threadPool, scheduler,
-                new ControllerMock(), null, null, 1, null, generator, new FlowControlStrategy.None());
+                controllerMock, null, null, 1, null, generator, new FlowControlStrategy.None());
         HashSet<Future> tasks = new HashSet<>();
 
         int numberOfTasksToRun = 128;
@@ -509,25 +647,62 @@ public class StandardSessionTest
 
         threadPool.shutdown();
         threadPool.awaitTermination(60, TimeUnit.SECONDS);
+
+        // Every SYN_STREAM frame has gone through the stream id ordering check
+        assertThat(controllerMock.frames.get(), is(3 * numberOfTasksToRun));
+    }
+
+    private class GatheringControllerMock implements Controller
+    {
+        private final BlockingQueue<Callback> callbacks = new LinkedBlockingQueue<>();
+        private final List<Integer> writes = new CopyOnWriteArrayList<>();
+        // The first 4 bytes of each frame written, per write
+        private final List<int[]> frameHeads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(Callback callback, ByteBuffer... buffers)
+        {
+            writes.add(buffers.length);
+            int[] heads = new int[buffers.length];
+            for (int i = 0; i < buffers.length; ++i)
+                heads[i] = buffers[i].getInt(buffers[i].position());
+            frameHeads.add(heads);
+            callbacks.offer(callback);
+        }
+
+        private void clear()
+        {
+            writes.clear();
+            frameHeads.clear();
+        }
+
+        @Override
+        public void close(boolean onlyOutput)
+        {
+        }
     }
 
     private class ControllerMock implements Controller
     {
         long lastStreamId = 0;
+        final AtomicInteger frames = new AtomicInteger();
 
         @Override
-        public void write(ByteBuffer buffer, Callback callback)
+        public void write(Callback callback, ByteBuffer... buffers)
         {
-            StandardSession.FrameBytes frameBytes = (StandardSession.FrameBytes)callback;
-
-            int streamId = frameBytes.getStream().getId();
-            LOG.debug("last: {}, current: {}", lastStreamId, streamId);
-            if (lastStreamId < streamId)
-                lastStreamId = streamId;
-            else
-                throw new IllegalStateException("Last streamId: " + lastStreamId + " is not smaller than current StreamId: " +
-                        streamId);
-            frameBytes.succeeded();
+            for (ByteBuffer buffer : buffers)
+            {
+                frames.incrementAndGet();
+                // SYN_STREAM frames carry the stream id right after the 8 bytes control frame header
+                int streamId = buffer.getInt(buffer.position() + 8) & 0x7F_FF_FF_FF;
+                LOG.debug("last: {}, current: {}", lastStreamId, streamId);
+                if (lastStreamId < streamId)
+                    lastStreamId = streamId;
+                else
+                    throw new IllegalStateException("Last streamId: " + lastStreamId + " is not smaller than current StreamId: " +
+                            streamId);
+            }
+            callback.succeeded();
         }
 
         @Override
@@ -0,0 +1,105 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy.frames;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.StandardCompressionFactory;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.generator.Generator;
+import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+@Ignore
+public class HeadersCompressionMemoryBenchmarkTest
+{
+    private static final Logger LOG = Log.getLogger(HeadersCompressionMemoryBenchmarkTest.class);
+    private static final int SESSIONS = 10000;
+
+    @Test
+    public void testCompressedVersusStoredHeadersMemory() throws Exception
+    {
+        for (int i = 0; i < 3; ++i)
+        {
+            benchmark(true);
+            benchmark(false);
+        }
+    }
+
+    private void benchmark(boolean compressHeaders) throws Exception
+    {
+        Fields headers = new Fields();
+        headers.put("method", "GET");
+        headers.put("url", "/index.html");
+        headers.put("version", "HTTP/1.1");
+        headers.put("host", "localhost:8080");
+        headers.put("user-agent", "Mozilla/5.0 (X11; Linux x86_64; rv:18.0) Gecko/20100101 Firefox/18.0");
+        SynStreamFrame frame = new SynStreamFrame(SPDY.V3, SynInfo.FLAG_CLOSE, 1, 0, (byte)0, (short)0, headers);
+
+        System.gc();
+        long rssBefore = residentSetSize();
+        long heapBefore = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+        MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+        StandardCompressionFactory compressionFactory = new StandardCompressionFactory(compressHeaders);
+        List<Generator> generators = new ArrayList<>(SESSIONS);
+        long bytes = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < SESSIONS; ++i)
+        {
+            // Simulate a session: the compression context lives as long as the session
+            Generator generator = new Generator(bufferPool, compressionFactory.newCompressor());
+            ByteBuffer buffer = generator.control(frame);
+            bytes += buffer.remaining();
+            bufferPool.release(buffer);
+            generators.add(generator);
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        System.gc();
+        long rssAfter = residentSetSize();
+        long heapAfter = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+        LOG.info("compressed={}: {} sessions, {} bytes/frame, {} ms, rss {} KiB/session, heap {} B/session",
+                compressHeaders, generators.size(), bytes / SESSIONS, elapsed / 1_000_000,
+                (rssAfter - rssBefore) / 1024 / SESSIONS, (heapAfter - heapBefore) / SESSIONS);
+        generators.clear();
+    }
+
+    private long residentSetSize() throws Exception
+    {
+        // Native zlib memory is only visible in the resident set size of the process
+        Path statm = Paths.get("/proc/self/statm");
+        if (!Files.exists(statm))
+            return 0;
+        String[] fields = new String(Files.readAllBytes(statm), StandardCharsets.UTF_8).trim().split(" ");
+        return Long.parseLong(fields[1]) * 4096;
+    }
+}
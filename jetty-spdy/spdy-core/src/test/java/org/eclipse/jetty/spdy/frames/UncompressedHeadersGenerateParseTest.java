@@ -0,0 +1,97 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy.frames;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.StandardCompressionFactory;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.generator.Generator;
+import org.eclipse.jetty.spdy.parser.Parser;
+import org.eclipse.jetty.util.Fields;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UncompressedHeadersGenerateParseTest
+{
+    @Test
+    public void testGenerateParseV2() throws Exception
+    {
+        testGenerateParse(SPDY.V2);
+    }
+
+    @Test
+    public void testGenerateParseV3() throws Exception
+    {
+        testGenerateParse(SPDY.V3);
+    }
+
+    private void testGenerateParse(short version) throws Exception
+    {
+        Generator generator = new Generator(new MappedByteBufferPool(), new StandardCompressionFactory(false).newCompressor());
+        TestSPDYParserListener listener = new TestSPDYParserListener();
+        Parser parser = new Parser(new StandardCompressionFactory().newDecompressor());
+        parser.addListener(listener);
+
+        // Multiple frames on the same session share the same zlib stream
+        for (int streamId = 1; streamId < 10; streamId += 2)
+        {
+            Fields headers = new Fields();
+            headers.put("method", "GET");
+            headers.put("url", "/" + streamId);
+            SynStreamFrame frame1 = new SynStreamFrame(version, SynInfo.FLAG_CLOSE, streamId, 0, (byte)0, (short)0, headers);
+            ByteBuffer buffer = generator.control(frame1);
+
+            parser.parse(buffer);
+            SynStreamFrame frame2 = (SynStreamFrame)listener.getControlFrame();
+
+            Assert.assertNotNull(frame2);
+            Assert.assertEquals(streamId, frame2.getStreamId());
+            Assert.assertEquals(headers, frame2.getHeaders());
+        }
+    }
+
+    @Test
+    public void testGenerateParseHeadersLargerThanStoredBlock() throws Exception
+    {
+        Generator generator = new Generator(new MappedByteBufferPool(), new StandardCompressionFactory(false).newCompressor());
+        TestSPDYParserListener listener = new TestSPDYParserListener();
+        Parser parser = new Parser(new StandardCompressionFactory().newDecompressor());
+        parser.addListener(listener);
+
+        char[] chars = new char[150 * 1024];
+        Arrays.fill(chars, 'x');
+        Fields headers = new Fields();
+        headers.put("large", new String(chars));
+        SynStreamFrame frame1 = new SynStreamFrame(SPDY.V3, SynInfo.FLAG_CLOSE, 1, 0, (byte)0, (short)0, headers);
+        ByteBuffer buffer = generator.control(frame1);
+
+        // Stored blocks are not compressed
+        Assert.assertTrue(buffer.remaining() > chars.length);
+
+        parser.parse(buffer);
+        SynStreamFrame frame2 = (SynStreamFrame)listener.getControlFrame();
+
+        Assert.assertNotNull(frame2);
+        Assert.assertEquals(headers, frame2.getHeaders());
+    }
+}
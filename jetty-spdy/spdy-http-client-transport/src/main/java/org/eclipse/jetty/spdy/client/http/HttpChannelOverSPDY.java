@@ -0,0 +1,498 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy.client.http;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.client.AbstractHttpChannel;
+import org.eclipse.jetty.client.AsyncContentProvider;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.client.HttpResponseException;
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.spdy.api.ByteBufferDataInfo;
+import org.eclipse.jetty.spdy.api.DataInfo;
+import org.eclipse.jetty.spdy.api.HeadersInfo;
+import org.eclipse.jetty.spdy.api.ReplyInfo;
+import org.eclipse.jetty.spdy.api.RstInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.StreamStatus;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Carries one {@link HttpExchange} over a SPDY stream: the request headers are sent
+ * in the SYN_STREAM frame and the request content in DATA frames, while the response
+ * headers are received in the SYN_REPLY frame and the response content in DATA frames.</p>
+ * <p>Since the request content is sent without waiting for the server, the
+ * {@code Expect: 100-continue} request header is not forwarded, and {@link #proceed(boolean)}
+ * has no effect.</p>
+ */
+public class HttpChannelOverSPDY extends AbstractHttpChannel
+{
+    private static final Logger LOG = Log.getLogger(HttpChannelOverSPDY.class);
+
+    private final HttpConnectionOverSPDY connection;
+    private final short version;
+    private volatile Stream stream;
+
+    public HttpChannelOverSPDY(HttpConnectionOverSPDY connection, HttpExchange exchange)
+    {
+        super(connection.getHttpDestination(), exchange);
+        this.connection = connection;
+        this.version = connection.getSession().getVersion();
+    }
+
+    /**
+     * @return the stream carrying the exchange, or null if the stream is not yet created
+     */
+    public Stream getStream()
+    {
+        return stream;
+    }
+
+    public void send()
+    {
+        final Request request = getHttpExchange().getRequest();
+        requestBegin();
+        Fields headers = newRequestHeaders(request);
+        requestHeaders();
+
+        final ContentProvider content = request.getContent();
+        SynInfo synInfo = new SynInfo(headers, content == null);
+        connection.getSession().syn(synInfo, new ResponseListener(), new Promise<Stream>()
+        {
+            @Override
+            public void succeeded(Stream stream)
+            {
+                HttpChannelOverSPDY.this.stream = stream;
+                LOG.debug("Sent {} on {}", request, stream);
+                if (request.getAbortCause() != null)
+                {
+                    // Aborted before the stream was created
+                    reset(stream);
+                    return;
+                }
+
+                requestCommit();
+                if (content == null)
+                    requestSuccess();
+                else
+                    new ContentSender(content).sendNext();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                LOG.debug("Could not send {}: {}", request, x);
+                // The session cannot create streams anymore
+                connection.getHttpDestination().remove(connection);
+                requestFailure(x);
+            }
+        });
+    }
+
+    private Fields newRequestHeaders(Request request)
+    {
+        Fields headers = new Fields();
+        headers.put(Header.METHOD.name(version), request.getMethod().asString());
+        headers.put(Header.PATH.name(version), request.getPath());
+        headers.put(Header.VERSION.name(version), request.getVersion().asString());
+        headers.put(Header.SCHEME.name(version), request.getScheme());
+        String host = request.getHeaders().getStringField(HttpHeader.HOST);
+        if (host == null)
+            host = getHttpDestination().getHostField().getValue();
+        headers.put(Header.HOST.name(version), host);
+
+        for (HttpField field : request.getHeaders())
+        {
+            HttpHeader header = field.getHeader();
+            if (header != null)
+            {
+                switch (header)
+                {
+                    // Connection specific headers are not allowed in SPDY
+                    case HOST:
+                    case CONNECTION:
+                    case KEEP_ALIVE:
+                    case PROXY_CONNECTION:
+                    case TRANSFER_ENCODING:
+                    case EXPECT:
+                        continue;
+                    default:
+                        break;
+                }
+            }
+            headers.add(field.getName().toLowerCase(Locale.ENGLISH), field.getValue());
+        }
+        return headers;
+    }
+
+    @Override
+    public boolean abort(HttpExchange exchange, Throwable cause)
+    {
+        Stream stream = this.stream;
+        if (stream != null)
+            reset(stream);
+        requestFailure(cause);
+        return responseFailure(cause);
+    }
+
+    private void reset(Stream stream)
+    {
+        if (!stream.isClosed())
+            stream.getSession().rst(new RstInfo(stream.getId(), StreamStatus.CANCEL_STREAM), new Callback.Adapter());
+    }
+
+    void onReset(RstInfo rstInfo)
+    {
+        Throwable failure = new IllegalStateException("Stream " + rstInfo.getStreamId() + " reset: " + rstInfo.getStreamStatus());
+        requestFailure(failure);
+        responseFailure(failure);
+    }
+
+    @Override
+    public void proceed(boolean proceed)
+    {
+    }
+
+    @Override
+    protected void exchangeTerminated(Result result)
+    {
+        connection.release(this);
+    }
+
+    private boolean isHeader(String name)
+    {
+        for (Header header : Header.values())
+        {
+            if (header.name(version).equals(name))
+                return true;
+        }
+        return false;
+    }
+
+    private class ResponseListener extends StreamFrameListener.Adapter
+    {
+        private final Queue<CopiedDataInfo> dataInfos = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean delivering = new AtomicBoolean();
+
+        @Override
+        public void onReply(Stream stream, ReplyInfo replyInfo)
+        {
+            Fields headers = replyInfo.getHeaders();
+            Fields.Field status = headers.get(Header.STATUS.name(version));
+            Fields.Field httpVersion = headers.get(Header.VERSION.name(version));
+            if (status == null)
+            {
+                replyFailed(stream, "Missing response status");
+                return;
+            }
+
+            // The status is the code followed by the optional reason
+            String value = status.value().trim();
+            int space = value.indexOf(' ');
+            int code;
+            try
+            {
+                code = Integer.parseInt(space < 0 ? value : value.substring(0, space));
+            }
+            catch (NumberFormatException x)
+            {
+                replyFailed(stream, "Invalid response status " + value);
+                return;
+            }
+            String reason = space < 0 ? null : value.substring(space + 1);
+            HttpVersion responseVersion = httpVersion == null ? null : HttpVersion.fromString(httpVersion.value());
+            responseBegin(responseVersion == null ? HttpVersion.HTTP_1_1 : responseVersion, code, reason);
+
+            for (Fields.Field field : headers)
+            {
+                if (isHeader(field.name()))
+                    continue;
+                for (String fieldValue : field.values())
+                    responseHeader(new HttpField(field.name(), fieldValue));
+            }
+            responseHeaders();
+
+            if (replyInfo.isClose())
+                responseSuccess();
+        }
+
+        private void replyFailed(Stream stream, String message)
+        {
+            reset(stream);
+            Throwable failure = new HttpResponseException(message, getHttpExchange().getResponse());
+            requestFailure(failure);
+            responseFailure(failure);
+        }
+
+        @Override
+        public void onHeaders(Stream stream, HeadersInfo headersInfo)
+        {
+            // Trailers are not supported
+            if (headersInfo.isClose())
+                responseSuccess();
+        }
+
+        @Override
+        public void onData(Stream stream, DataInfo dataInfo)
+        {
+            // The frame content must be copied, since the frame may wait to be
+            // delivered after the buffer it has been parsed from is released
+            dataInfos.offer(new CopiedDataInfo(dataInfo));
+            deliver();
+        }
+
+        /**
+         * <p>Delivers the DATA frames one at a time, consuming each frame, and so enlarging
+         * the flow control window, only after the response listeners have consumed its content.</p>
+         */
+        private void deliver()
+        {
+            while (true)
+            {
+                if (!delivering.compareAndSet(false, true))
+                    return;
+
+                CopiedDataInfo dataInfo = dataInfos.poll();
+                if (dataInfo == null)
+                {
+                    delivering.set(false);
+                    // Retry if a frame has been queued concurrently
+                    if (dataInfos.isEmpty())
+                        return;
+                    continue;
+                }
+
+                DataCallback callback = new DataCallback(dataInfo);
+                ByteBuffer buffer = dataInfo.content;
+                if (buffer.hasRemaining())
+                {
+                    responseContent(buffer, callback);
+                    // Wait for the content to be consumed asynchronously
+                    if (callback.pause())
+                        return;
+                }
+                callback.consumed();
+                delivering.set(false);
+            }
+        }
+
+        private class DataCallback implements Callback
+        {
+            private final AtomicReference<DataState> state = new AtomicReference<>(DataState.PENDING);
+            private final DataInfo dataInfo;
+            private final int length;
+
+            private DataCallback(DataInfo dataInfo)
+            {
+                this.dataInfo = dataInfo;
+                this.length = dataInfo.available();
+            }
+
+            private boolean pause()
+            {
+                // If already completed, the delivering thread consumes the frame
+                return state.compareAndSet(DataState.PENDING, DataState.PAUSED);
+            }
+
+            private void consumed()
+            {
+                // Consuming the data enlarges the flow control window
+                dataInfo.consume(length);
+                if (dataInfo.isClose())
+                    responseSuccess();
+            }
+
+            @Override
+            public void succeeded()
+            {
+                if (state.compareAndSet(DataState.PENDING, DataState.COMPLETE))
+                    return;
+                if (state.compareAndSet(DataState.PAUSED, DataState.COMPLETE))
+                {
+                    consumed();
+                    delivering.set(false);
+                    deliver();
+                }
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                abort(getHttpExchange(), x);
+            }
+        }
+    }
+
+    /**
+     * <p>A copy of the content of a DATA frame that, when consumed,
+     * also consumes the original frame to update the flow control window.</p>
+     */
+    private static class CopiedDataInfo extends ByteBufferDataInfo
+    {
+        private final DataInfo dataInfo;
+        private final ByteBuffer content;
+
+        private CopiedDataInfo(DataInfo dataInfo)
+        {
+            this(dataInfo, dataInfo.asByteBuffer(false));
+        }
+
+        private CopiedDataInfo(DataInfo dataInfo, ByteBuffer content)
+        {
+            super(content, dataInfo.isClose());
+            this.dataInfo = dataInfo;
+            this.content = content;
+        }
+
+        @Override
+        public void consume(int delta)
+        {
+            super.consume(delta);
+            dataInfo.consume(delta);
+        }
+    }
+
+    private enum DataState
+    {
+        PENDING, PAUSED, COMPLETE
+    }
+
+    /**
+     * <p>Sends the request content one DATA frame at a time, dispatching each frame after
+     * the previous one is written to avoid unbounded recursion when writes complete
+     * synchronously, and waiting for {@link AsyncContentProvider}s to provide deferred content.</p>
+     */
+    private class ContentSender implements Callback, Runnable, AsyncContentProvider.Listener
+    {
+        private final AtomicBoolean waiting = new AtomicBoolean();
+        private final AtomicBoolean available = new AtomicBoolean();
+        private final Iterator<ByteBuffer> iterator;
+        private boolean last;
+
+        private ContentSender(ContentProvider content)
+        {
+            this.iterator = content.iterator();
+            if (content instanceof AsyncContentProvider)
+                ((AsyncContentProvider)content).setListener(this);
+        }
+
+        private void sendNext()
+        {
+            while (true)
+            {
+                Stream stream = HttpChannelOverSPDY.this.stream;
+                available.set(false);
+                ByteBuffer buffer = iterator.hasNext() ? iterator.next() : null;
+                last = !iterator.hasNext();
+                if (buffer == null && !last)
+                {
+                    // Deferred content, wait to be notified
+                    waiting.set(true);
+                    if (available.get() && waiting.compareAndSet(true, false))
+                        continue;
+                    return;
+                }
+                stream.data(new ByteBufferDataInfo(buffer == null ? ByteBuffer.allocate(0) : buffer, last), this);
+                return;
+            }
+        }
+
+        @Override
+        public void onContent()
+        {
+            available.set(true);
+            if (waiting.compareAndSet(true, false))
+                getExecutor().execute(this);
+        }
+
+        @Override
+        public void run()
+        {
+            sendNext();
+        }
+
+        @Override
+        public void succeeded()
+        {
+            if (last)
+                requestSuccess();
+            else
+                getExecutor().execute(this);
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            abort(getHttpExchange(), x);
+        }
+
+        private Executor getExecutor()
+        {
+            return getHttpDestination().getHttpClient().getExecutor();
+        }
+    }
+
+    /**
+     * <p>The names of the SPDY headers that carry the HTTP request and status lines.</p>
+     */
+    private enum Header
+    {
+        METHOD("method", ":method"),
+        PATH("url", ":path"),
+        VERSION("version", ":version"),
+        SCHEME("scheme", ":scheme"),
+        HOST("host", ":host"),
+        STATUS("status", ":status");
+
+        private final String v2Name;
+        private final String v3Name;
+
+        private Header(String v2Name, String v3Name)
+        {
+            this.v2Name = v2Name;
+            this.v3Name = v3Name;
+        }
+
+        private String name(short version)
+        {
+            return version == SPDY.V2 ? v2Name : v3Name;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy.client.http;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.spdy.client.SPDYClient;
+
+/**
+ * <p>A {@link HttpClientTransport} that carries the requests of {@link HttpClient} over SPDY.</p>
+ * <p>Each destination opens a single SPDY session, and every request sent to the destination
+ * is carried by its own stream of that session, so that many requests are in flight at the same
+ * time over one connection; request and response listeners are notified as for HTTP/1.1.</p>
+ * <pre>
+ * SPDYClient.Factory factory = new SPDYClient.Factory();
+ * factory.start();
+ * HttpClient httpClient = new HttpClient(new HttpClientTransportOverSPDY(factory.newSPDYClient(SPDY.V3)), null);
+ * httpClient.start();
+ * </pre>
+ * <p>The {@link SPDYClient.Factory} is not managed by this transport, and must be started
+ * and stopped by the application.</p>
+ */
+public class HttpClientTransportOverSPDY implements HttpClientTransport
+{
+    private final SPDYClient client;
+    private volatile HttpClient httpClient;
+
+    public HttpClientTransportOverSPDY(SPDYClient client)
+    {
+        this.client = client;
+    }
+
+    public SPDYClient getSPDYClient()
+    {
+        return client;
+    }
+
+    @Override
+    public void setHttpClient(HttpClient client)
+    {
+        this.httpClient = client;
+    }
+
+    @Override
+    public HttpDestination newHttpDestination(String scheme, String host, int port)
+    {
+        return new HttpDestinationOverSPDY(httpClient, client, scheme, host, port);
+    }
+}
@@ -0,0 +1,139 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy.client.http;
+
+import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.client.TimeoutCompleteListener;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.spdy.api.GoAwayInfo;
+import org.eclipse.jetty.spdy.api.RstInfo;
+import org.eclipse.jetty.spdy.api.Session;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link Connection} over a SPDY {@link Session}, where each request is carried
+ * by a {@link HttpChannelOverSPDY} over its own stream, concurrently with the others.</p>
+ */
+public class HttpConnectionOverSPDY implements Connection
+{
+    private static final Logger LOG = Log.getLogger(HttpConnectionOverSPDY.class);
+
+    private final Set<HttpChannelOverSPDY> channels = Collections.newSetFromMap(new ConcurrentHashMap<HttpChannelOverSPDY, Boolean>());
+    private final HttpDestinationOverSPDY destination;
+    private final Session session;
+
+    public HttpConnectionOverSPDY(HttpDestinationOverSPDY destination, Session session)
+    {
+        this.destination = destination;
+        this.session = session;
+    }
+
+    public HttpDestinationOverSPDY getHttpDestination()
+    {
+        return destination;
+    }
+
+    public Session getSession()
+    {
+        return session;
+    }
+
+    /**
+     * @return the number of requests in flight over this connection
+     */
+    public int getActiveStreams()
+    {
+        return channels.size();
+    }
+
+    @Override
+    public void send(Request request, Response.CompleteListener listener)
+    {
+        ArrayList<Response.ResponseListener> listeners = new ArrayList<>(2);
+        if (request.getTimeout() > 0)
+        {
+            TimeoutCompleteListener timeoutListener = new TimeoutCompleteListener(request);
+            timeoutListener.schedule(destination.getHttpClient().getScheduler());
+            listeners.add(timeoutListener);
+        }
+        if (listener != null)
+            listeners.add(listener);
+
+        send(destination.newExchange(request, listeners));
+    }
+
+    public void send(HttpExchange exchange)
+    {
+        HttpChannelOverSPDY channel = new HttpChannelOverSPDY(this, exchange);
+        channels.add(channel);
+        channel.send();
+    }
+
+    void release(HttpChannelOverSPDY channel)
+    {
+        channels.remove(channel);
+    }
+
+    /**
+     * <p>Notifies the channel of the reset stream, that is found by id because the
+     * reset notification is delivered to the session, not to the stream.</p>
+     */
+    void onReset(RstInfo rstInfo)
+    {
+        for (HttpChannelOverSPDY channel : channels)
+        {
+            Stream stream = channel.getStream();
+            if (stream != null && stream.getId() == rstInfo.getStreamId())
+                channel.onReset(rstInfo);
+        }
+    }
+
+    void fail(Throwable failure)
+    {
+        destination.remove(this);
+        for (HttpChannelOverSPDY channel : channels)
+            channel.abort(channel.getHttpExchange(), failure);
+    }
+
+    @Override
+    public void close()
+    {
+        LOG.debug("Closing {}", this);
+        session.goAway(new GoAwayInfo(), new Callback.Adapter());
+        fail(new AsynchronousCloseException());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x(%s)", HttpConnectionOverSPDY.class.getSimpleName(), hashCode(), session);
+    }
+}
@@ -0,0 +1,268 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy.client.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.client.LatencyStatistics;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.spdy.api.GoAwayReceivedInfo;
+import org.eclipse.jetty.spdy.api.RstInfo;
+import org.eclipse.jetty.spdy.api.Session;
+import org.eclipse.jetty.spdy.api.SessionFrameListener;
+import org.eclipse.jetty.spdy.client.SPDYClient;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link HttpDestination} that multiplexes all its requests over a single SPDY session.</p>
+ * <p>Differently from HTTP/1.1 destinations, there is no pool of connections: the first request
+ * opens the session, the requests queued while the session is being established are sent as soon
+ * as it is, and further requests are sent immediately as new streams of the session.
+ * If the session is closed, the next request opens a new one.</p>
+ */
+public class HttpDestinationOverSPDY extends HttpDestination
+{
+    private static final Logger LOG = Log.getLogger(HttpDestinationOverSPDY.class);
+
+    private final AtomicReference<HttpConnectionOverSPDY> connection = new AtomicReference<>();
+    private final AtomicBoolean connecting = new AtomicBoolean();
+    private final SPDYClient client;
+
+    public HttpDestinationOverSPDY(HttpClient httpClient, SPDYClient client, String scheme, String host, int port)
+    {
+        super(httpClient, scheme, host, port);
+        this.client = client;
+    }
+
+    public SPDYClient getSPDYClient()
+    {
+        return client;
+    }
+
+    @Override
+    protected ConnectionPool newConnectionPool(int maxConnections)
+    {
+        // The single session is not pooled
+        return null;
+    }
+
+    /**
+     * @return the connection that carries the requests of this destination, or null if there is no open session
+     */
+    public HttpConnectionOverSPDY getConnection()
+    {
+        return connection.get();
+    }
+
+    HttpExchange newExchange(Request request, List<Response.ResponseListener> listeners)
+    {
+        return newHttpExchange(request, listeners);
+    }
+
+    @Override
+    protected void createConnection(final Promise<Connection> promise)
+    {
+        final long resolveTime = System.nanoTime();
+        getHttpClient().getSocketAddressResolver().resolve(getHost(), getPort(), new Promise<SocketAddress>()
+        {
+            @Override
+            public void succeeded(SocketAddress address)
+            {
+                final long connectTime = System.nanoTime();
+                getLatencyStatistics().record(LatencyStatistics.Phase.DNS, connectTime - resolveTime);
+
+                final SessionListener listener = new SessionListener();
+                client.connect((InetSocketAddress)address, listener, new Promise<Session>()
+                {
+                    @Override
+                    public void succeeded(Session session)
+                    {
+                        // The session is established after the TLS handshake, if any
+                        getLatencyStatistics().record(LatencyStatistics.Phase.CONNECT, System.nanoTime() - connectTime);
+                        HttpConnectionOverSPDY connection = new HttpConnectionOverSPDY(HttpDestinationOverSPDY.this, session);
+                        listener.connection = connection;
+                        promise.succeeded(connection);
+                    }
+
+                    @Override
+                    public void failed(Throwable x)
+                    {
+                        promise.failed(x);
+                    }
+                });
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                promise.failed(x);
+            }
+        });
+    }
+
+    @Override
+    protected Connection acquire()
+    {
+        HttpConnectionOverSPDY result = connection.get();
+        if (result != null)
+            return result;
+
+        if (connecting.compareAndSet(false, true))
+        {
+            LOG.debug("Creating session for {}", this);
+            createConnection(new Promise<Connection>()
+            {
+                @Override
+                public void succeeded(Connection result)
+                {
+                    LOG.debug("Created {} for {}", result, HttpDestinationOverSPDY.this);
+                    connection.set((HttpConnectionOverSPDY)result);
+                    connecting.set(false);
+                    process(result, false);
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    LOG.debug("Session failed {} for {}", x, HttpDestinationOverSPDY.this);
+                    connecting.set(false);
+                    HttpExchange exchange;
+                    while ((exchange = getHttpExchanges().poll()) != null)
+                        abort(exchange, x);
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * <p>Sends all the queued requests as streams of the given connection.</p>
+     *
+     * @param connection the connection to send the queued requests to
+     * @param dispatch ignored, since sending a request never blocks waiting for the response
+     */
+    @Override
+    protected void process(Connection connection, boolean dispatch)
+    {
+        HttpConnectionOverSPDY spdyConnection = (HttpConnectionOverSPDY)connection;
+        HttpExchange exchange;
+        while ((exchange = getHttpExchanges().poll()) != null)
+        {
+            Throwable cause = exchange.getRequest().getAbortCause();
+            if (cause != null)
+            {
+                abort(exchange, cause);
+                LOG.debug("Aborted before processing {}: {}", exchange, cause);
+            }
+            else
+            {
+                getLatencyStatistics().record(LatencyStatistics.Phase.QUEUE, System.nanoTime() - exchange.getQueueTime());
+                spdyConnection.send(exchange);
+            }
+        }
+    }
+
+    @Override
+    public void release(Connection connection)
+    {
+        // The session is shared by all the requests, there is nothing to release
+    }
+
+    @Override
+    public void remove(Connection connection)
+    {
+        if (this.connection.compareAndSet((HttpConnectionOverSPDY)connection, null))
+            LOG.debug("Removed {} for {}", connection, this);
+
+        // Send the queued requests over a new session
+        if (!getHttpExchanges().isEmpty())
+        {
+            connection = acquire();
+            if (connection != null)
+                process(connection, false);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        // Abort the queued requests first, so that closing
+        // the connection does not open a new session for them
+        super.close();
+        HttpConnectionOverSPDY connection = this.connection.getAndSet(null);
+        if (connection != null)
+            connection.close();
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        ContainerLifeCycle.dumpObject(out, this + " - requests queued: " + getHttpExchanges().size());
+        HttpConnectionOverSPDY connection = this.connection.get();
+        if (connection != null)
+            ContainerLifeCycle.dump(out, indent, Collections.singletonList(connection + " - streams: " + connection.getActiveStreams()));
+    }
+
+    private class SessionListener extends SessionFrameListener.Adapter
+    {
+        private volatile HttpConnectionOverSPDY connection;
+
+        @Override
+        public void onRst(Session session, RstInfo rstInfo)
+        {
+            HttpConnectionOverSPDY connection = this.connection;
+            if (connection != null)
+                connection.onReset(rstInfo);
+        }
+
+        @Override
+        public void onGoAway(Session session, GoAwayReceivedInfo goAwayReceivedInfo)
+        {
+            // The streams already accepted by the server complete normally,
+            // but new requests must be sent over a new session
+            HttpConnectionOverSPDY connection = this.connection;
+            if (connection != null)
+                remove(connection);
+        }
+
+        @Override
+        public void onException(Throwable x)
+        {
+            HttpConnectionOverSPDY connection = this.connection;
+            if (connection != null)
+                connection.fail(x);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponseException;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.spdy.api.ReplyInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.api.server.ServerSessionFrameListener;
+import org.eclipse.jetty.spdy.client.SPDYClient;
+import org.eclipse.jetty.spdy.server.SPDYServerConnectionFactory;
+import org.eclipse.jetty.spdy.server.http.HTTPSPDYHeader;
+import org.eclipse.jetty.spdy.server.http.HTTPSPDYServerConnector;
+import org.eclipse.jetty.spdy.server.http.PushStrategy;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Parameterized.class)
+public class HttpClientTransportOverSPDYTest
+{
+    @Parameterized.Parameters
+    public static Collection<Short[]> parameters()
+    {
+        return Arrays.asList(new Short[]{SPDY.V2}, new Short[]{SPDY.V3});
+    }
+
+    private final short version;
+    private Server server;
+    private ServerConnector connector;
+    private SPDYClient.Factory factory;
+    private HttpClient client;
+
+    public HttpClientTransportOverSPDYTest(short version)
+    {
+        this.version = version;
+    }
+
+    private void start(Handler handler) throws Exception
+    {
+        server = new Server();
+        connector = new HTTPSPDYServerConnector(server, version, new HttpConfiguration(), new PushStrategy.None());
+        server.addConnector(connector);
+        server.setHandler(handler);
+        server.start();
+        startClient();
+    }
+
+    private void start(ServerSessionFrameListener listener) throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector(server, new SPDYServerConnectionFactory(version, listener));
+        server.addConnector(connector);
+        server.start();
+        startClient();
+    }
+
+    private void startClient() throws Exception
+    {
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        threadPool.setName(threadPool.getName() + "-client");
+        factory = new SPDYClient.Factory(threadPool);
+        factory.start();
+        client = new HttpClient(new HttpClientTransportOverSPDY(factory.newSPDYClient(version)), null);
+        client.start();
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (factory != null)
+            factory.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    private String uri()
+    {
+        return "http://localhost:" + connector.getLocalPort();
+    }
+
+    @Test
+    public void testGET() throws Exception
+    {
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setHeader("X-Path", request.getRequestURI());
+                response.setHeader("X-Param", request.getParameter("param"));
+                response.getOutputStream().print("hello");
+            }
+        });
+
+        ContentResponse response = client.newRequest(uri() + "/path").param("param", "value").timeout(5, TimeUnit.SECONDS).send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("/path", response.getHeaders().get("X-Path"));
+        Assert.assertEquals("value", response.getHeaders().get("X-Param"));
+        Assert.assertEquals("hello", response.getContentAsString());
+    }
+
+    @Test
+    public void testPOSTWithContent() throws Exception
+    {
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                InputStream input = request.getInputStream();
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = input.read(buffer)) >= 0)
+                    output.write(buffer, 0, read);
+                response.getOutputStream().write(output.toByteArray());
+            }
+        });
+
+        byte[] chunk1 = new byte[64 * 1024];
+        Arrays.fill(chunk1, (byte)'a');
+        byte[] chunk2 = new byte[32 * 1024];
+        Arrays.fill(chunk2, (byte)'b');
+
+        ContentResponse response = client.newRequest(uri())
+                .method(HttpMethod.POST)
+                .content(new BytesContentProvider(chunk1, chunk2))
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        byte[] content = response.getContent();
+        Assert.assertEquals(chunk1.length + chunk2.length, content.length);
+        Assert.assertEquals('a', content[chunk1.length - 1]);
+        Assert.assertEquals('b', content[chunk1.length]);
+    }
+
+    @Test
+    public void testConcurrentRequestsAreMultiplexedOverOneSession() throws Exception
+    {
+        final int requests = 8;
+        // The handler completes only when all the requests have arrived, which
+        // would not happen if the requests were sent one at a time
+        final CyclicBarrier barrier = new CyclicBarrier(requests);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                try
+                {
+                    barrier.await(5, TimeUnit.SECONDS);
+                }
+                catch (Exception x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+
+        final AtomicInteger successes = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            client.newRequest(uri() + "/" + i).send(new Response.CompleteListener()
+            {
+                @Override
+                public void onComplete(Result result)
+                {
+                    if (result.isSucceeded() && result.getResponse().getStatus() == 200)
+                        successes.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(requests, successes.get());
+        Assert.assertEquals(1, factory.getSessions().size());
+        HttpDestinationOverSPDY destination = (HttpDestinationOverSPDY)client.getDestination("http", "localhost", connector.getLocalPort());
+        Assert.assertNotNull(destination.getConnection());
+        Assert.assertEquals(0, destination.getConnection().getActiveStreams());
+        // The session is not pooled, so there is no connection pool to expose
+        Assert.assertNull(destination.getConnectionPool());
+        Assert.assertTrue(client.getBeans(ConnectionPool.class).isEmpty());
+    }
+
+    @Test
+    public void testTimedOutRequestDoesNotAffectOtherStreams() throws Exception
+    {
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                if ("/slow".equals(target))
+                {
+                    try
+                    {
+                        TimeUnit.SECONDS.sleep(2);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new ServletException(x);
+                    }
+                }
+            }
+        });
+
+        try
+        {
+            client.newRequest(uri() + "/slow").timeout(500, TimeUnit.MILLISECONDS).send();
+            Assert.fail();
+        }
+        catch (TimeoutException | ExecutionException x)
+        {
+            // Expected
+        }
+
+        ContentResponse response = client.newRequest(uri() + "/fast").timeout(5, TimeUnit.SECONDS).send();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(1, factory.getSessions().size());
+    }
+
+    @Test
+    public void testInvalidResponseStatusFailsExchange() throws Exception
+    {
+        start(new ServerSessionFrameListener.Adapter()
+        {
+            @Override
+            public StreamFrameListener onSyn(Stream stream, SynInfo synInfo)
+            {
+                Fields headers = new Fields();
+                headers.put(HTTPSPDYHeader.STATUS.name(version), "OK");
+                headers.put(HTTPSPDYHeader.VERSION.name(version), "HTTP/1.1");
+                stream.reply(new ReplyInfo(headers, true), new Callback.Adapter());
+                return null;
+            }
+        });
+
+        try
+        {
+            client.newRequest(uri()).timeout(5, TimeUnit.SECONDS).send();
+            Assert.fail();
+        }
+        catch (ExecutionException x)
+        {
+            Assert.assertTrue(x.getCause() instanceof HttpResponseException);
+        }
+    }
+}
@@ -69,6 +69,8 @@ public class SPDYServerConnectionFactory extends AbstractConnectionFactory
     private final short version;
     private final ServerSessionFrameListener listener;
     private int initialWindowSize;
+    private boolean compressHeaders = true;
+    private boolean adaptiveFlowControl;
     private final Queue<Session> sessions = new ConcurrentLinkedQueue<>();
 
     public SPDYServerConnectionFactory(int version)
@@ -98,7 +100,7 @@ public class SPDYServerConnectionFactory extends AbstractConnectionFactory
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
-        CompressionFactory compressionFactory = new StandardCompressionFactory();
+        CompressionFactory compressionFactory = new StandardCompressionFactory(isCompressHeaders());
         Parser parser = new Parser(compressionFactory.newDecompressor());
         Generator generator = new Generator(connector.getByteBufferPool(), compressionFactory.newCompressor());
 
@@ -121,7 +123,7 @@ public class SPDYServerConnectionFactory extends AbstractConnectionFactory
 
     protected FlowControlStrategy newFlowControlStrategy(short version)
     {
-        return FlowControlStrategyFactory.newFlowControlStrategy(version);
+        return FlowControlStrategyFactory.newFlowControlStrategy(version, isAdaptiveFlowControl());
     }
 
     protected ServerSessionFrameListener provideServerSessionFrameListener(Connector connector, EndPoint endPoint)
@@ -140,6 +142,37 @@ public class SPDYServerConnectionFactory extends AbstractConnectionFactory
         this.initialWindowSize = initialWindowSize;
     }
 
+    @ManagedAttribute("Whether header blocks are compressed")
+    public boolean isCompressHeaders()
+    {
+        return compressHeaders;
+    }
+
+    /**
+     * @param compressHeaders whether header blocks are compressed; disabling header compression
+     * saves the memory of a compression context for each session, at the cost of bigger frames
+     * @see StandardCompressionFactory.StoredCompressor
+     */
+    public void setCompressHeaders(boolean compressHeaders)
+    {
+        this.compressHeaders = compressHeaders;
+    }
+
+    @ManagedAttribute("Whether receive windows grow with the bandwidth-delay product")
+    public boolean isAdaptiveFlowControl()
+    {
+        return adaptiveFlowControl;
+    }
+
+    /**
+     * @param adaptiveFlowControl whether the receive windows grow with the bandwidth-delay product of the connection
+     * @see FlowControlStrategyFactory#newFlowControlStrategy(short, boolean)
+     */
+    public void setAdaptiveFlowControl(boolean adaptiveFlowControl)
+    {
+        this.adaptiveFlowControl = adaptiveFlowControl;
+    }
+
     protected boolean sessionOpened(Session session)
     {
         // Add sessions only if the connector is not stopping
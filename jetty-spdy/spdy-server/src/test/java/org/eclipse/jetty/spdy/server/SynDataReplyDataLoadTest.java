@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.jetty.spdy.api.ByteBufferDataInfo;
 import org.eclipse.jetty.spdy.api.DataInfo;
 import org.eclipse.jetty.spdy.api.ReplyInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
 import org.eclipse.jetty.spdy.api.Session;
 import org.eclipse.jetty.spdy.api.Stream;
 import org.eclipse.jetty.spdy.api.StreamFrameListener;
@@ -44,11 +45,14 @@ import org.eclipse.jetty.spdy.api.server.ServerSessionFrameListener;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.Fields;
 import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
 import org.junit.Assert;
 import org.junit.Test;
 
 public class SynDataReplyDataLoadTest extends AbstractTest
 {
+    private static final Logger LOG = Log.getLogger(SynDataReplyDataLoadTest.class);
     @Test
     public void testSynDataReplyDataLoad() throws Exception
     {
@@ -143,6 +147,78 @@ public class SynDataReplyDataLoadTest extends AbstractTest
         threadPool.shutdown();
     }
 
+    @Test
+    public void testConcurrentStreamsWithPrioritiesLoad() throws Exception
+    {
+        // SPDY/3 has 8 priorities, while SPDY/2 only has 4
+        final Session session = startClient(SPDY.V3, startServer(SPDY.V3, new EchoServerSessionFrameListener()), null);
+
+        // Many concurrent streams per session, spread over all the priorities,
+        // each sending a few data frames, to load the session frame queue
+        final int iterations = 20;
+        final int count = 500;
+        final int frames = 8;
+
+        final Fields headers = newHeaders();
+
+        ExecutorService threadPool = Executors.newFixedThreadPool(count);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            final byte priority = (byte)(i % 8);
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call() throws Exception
+                {
+                    for (int j = 0; j < iterations; ++j)
+                        synDataFramesWithPriority(session, headers, priority, frames);
+                    return null;
+                }
+            });
+        }
+
+        long begin = System.nanoTime();
+        List<Future<Object>> futures = threadPool.invokeAll(tasks);
+        for (Future<Object> future : futures)
+            future.get(iterations, TimeUnit.SECONDS);
+        long end = System.nanoTime();
+        LOG.info("{} streams x {} DATA with priorities completed in {} ms",
+                count * iterations, frames, TimeUnit.NANOSECONDS.toMillis(end - begin));
+
+        threadPool.shutdown();
+    }
+
+    private void synDataFramesWithPriority(Session session, Fields headers, byte priority, int frames) throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Stream stream = session.syn(new SynInfo(5, TimeUnit.SECONDS, headers, false, priority),
+                new StreamFrameListener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataInfo dataInfo)
+            {
+                dataInfo.asBytes(true);
+                if (dataInfo.isClose())
+                    latch.countDown();
+            }
+        });
+        for (int i = 0; i < frames; ++i)
+            stream.data(new StringDataInfo("data_" + i, i == frames - 1), new Callback.Adapter());
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private Fields newHeaders()
+    {
+        Fields headers = new Fields();
+        headers.put("method", "get");
+        headers.put("url", "/");
+        headers.put("version", "http/1.1");
+        headers.put("host", "localhost:8080");
+        headers.put("content-type", "application/octet-stream");
+        return headers;
+    }
+
     private void synCompletedData(Session session, Fields headers, int iterations) throws Exception
     {
         final Map<Integer, Integer> counter = new ConcurrentHashMap<>(iterations);
@@ -224,4 +300,22 @@ public class SynDataReplyDataLoadTest extends AbstractTest
         Assert.assertTrue(latch.await(iterations, TimeUnit.SECONDS));
         Assert.assertTrue(counter.toString(), counter.isEmpty());
     }
+
+    private static class EchoServerSessionFrameListener extends ServerSessionFrameListener.Adapter
+    {
+        @Override
+        public StreamFrameListener onSyn(Stream stream, SynInfo synInfo)
+        {
+            stream.reply(new ReplyInfo(synInfo.getHeaders(), false), new Callback.Adapter());
+            return new StreamFrameListener.Adapter()
+            {
+                @Override
+                public void onData(Stream stream, DataInfo dataInfo)
+                {
+                    ByteBuffer buffer = dataInfo.asByteBuffer(true);
+                    stream.data(new ByteBufferDataInfo(buffer, dataInfo.isClose()), new Callback.Adapter());
+                }
+            };
+        }
+    }
 }
@@ -18,13 +18,23 @@
 
 package org.eclipse.jetty.util;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.UnknownHostException;
 import java.nio.channels.UnresolvedAddressException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -34,10 +44,18 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * Creates asynchronously {@link SocketAddress} instances, returning them through a {@link Promise},
  * in order to avoid blocking on DNS lookup.
  * <p />
- * {@link InetSocketAddress#InetSocketAddress(String, int)} attempts to perform a DNS resolution of
- * the host name, and this may block for several seconds.
- * This class creates the {@link InetSocketAddress} in a separate thread and provides the result
- * through a {@link Promise}, with the possibility to specify a timeout for the operation.
+ * {@link InetAddress#getAllByName(String)} performs a DNS resolution of the host name, and this may
+ * block for several seconds.
+ * This class performs the lookup in a separate thread and provides the result through a {@link Promise},
+ * with the possibility to specify a timeout for the operation.
+ * <p />
+ * The results of the lookups are cached: successful lookups for {@link #getCacheTTL()} milliseconds,
+ * and failed lookups for {@link #getNegativeCacheTTL()} milliseconds (by default the values of the
+ * {@code networkaddress.cache.ttl} and {@code networkaddress.cache.negative.ttl} security properties,
+ * as used by the JVM).
+ * Concurrent resolutions of the same host are coalesced into a single lookup, and when a host resolves
+ * to multiple addresses, successive resolutions rotate across them to spread the load.
+ * The lookup itself can be replaced with {@link #setLookup(Lookup)}.
  * <p />
  * Example usage:
  * <pre>
@@ -59,10 +77,42 @@ import org.eclipse.jetty.util.thread.Scheduler;
 public class SocketAddressResolver
 {
     private static final Logger LOG = Log.getLogger(SocketAddressResolver.class);
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    /**
+     * The lookup of the addresses of a host name.
+     */
+    public interface Lookup
+    {
+        /**
+         * @param host the host name to look up
+         * @return the addresses of the host, at least one
+         * @throws UnknownHostException if the host cannot be resolved
+         */
+        public InetAddress[] lookup(String host) throws UnknownHostException;
+    }
 
+    /**
+     * The JVM lookup, see {@link InetAddress#getAllByName(String)}.
+     */
+    public static final Lookup DEFAULT_LOOKUP = new Lookup()
+    {
+        @Override
+        public InetAddress[] lookup(String host) throws UnknownHostException
+        {
+            return InetAddress.getAllByName(host);
+        }
+    };
+
+    private final ConcurrentMap<String, Resolution> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
     private final Executor executor;
     private final Scheduler scheduler;
     private final long timeout;
+    private volatile Lookup lookup = DEFAULT_LOOKUP;
+    private volatile long cacheTTL = securityTTL("networkaddress.cache.ttl", 30);
+    private volatile long negativeCacheTTL = securityTTL("networkaddress.cache.negative.ttl", 10);
 
     /**
      * Creates a new instance with the given executor (to perform DNS resolution in a separate thread),
@@ -79,6 +129,22 @@ public class SocketAddressResolver
         this.timeout = timeout;
     }
 
+    private static long securityTTL(String property, long defaultSeconds)
+    {
+        long seconds = defaultSeconds;
+        try
+        {
+            String value = Security.getProperty(property);
+            if (value != null)
+                seconds = Long.parseLong(value.trim());
+        }
+        catch (Exception x)
+        {
+            LOG.ignore(x);
+        }
+        return seconds < 0 ? -1 : TimeUnit.SECONDS.toMillis(seconds);
+    }
+
     public Executor getExecutor()
     {
         return executor;
@@ -94,6 +160,87 @@ public class SocketAddressResolver
         return timeout;
     }
 
+    public Lookup getLookup()
+    {
+        return lookup;
+    }
+
+    /**
+     * @param lookup the lookup of the addresses of host names
+     */
+    public void setLookup(Lookup lookup)
+    {
+        this.lookup = lookup;
+    }
+
+    /**
+     * @return the time, in milliseconds, successful lookups are cached for, 0 to not cache them, -1 to cache them forever
+     */
+    public long getCacheTTL()
+    {
+        return cacheTTL;
+    }
+
+    /**
+     * @param cacheTTL the time, in milliseconds, successful lookups are cached for, 0 to not cache them, -1 to cache them forever
+     */
+    public void setCacheTTL(long cacheTTL)
+    {
+        this.cacheTTL = cacheTTL;
+    }
+
+    /**
+     * @return the time, in milliseconds, failed lookups are cached for, 0 to not cache them, -1 to cache them forever
+     */
+    public long getNegativeCacheTTL()
+    {
+        return negativeCacheTTL;
+    }
+
+    /**
+     * @param negativeCacheTTL the time, in milliseconds, failed lookups are cached for, 0 to not cache them, -1 to cache them forever
+     */
+    public void setNegativeCacheTTL(long negativeCacheTTL)
+    {
+        this.negativeCacheTTL = negativeCacheTTL;
+    }
+
+    /**
+     * @return the number of resolutions served from the cache, or joining a lookup in progress
+     */
+    public long getCacheHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of resolutions that required a lookup
+     */
+    public long getCacheMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the ratio of cache hits over the resolutions, between 0 and 1
+     */
+    public double getCacheHitRate()
+    {
+        long hits = getCacheHits();
+        long total = hits + getCacheMisses();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    /**
+     * Removes the cached lookups, and resets the cache statistics.
+     */
+    public void clearCache()
+    {
+        cache.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
     /**
      * Resolves the given host and port, returning a {@link SocketAddress} through the given {@link Promise}
      * with the default timeout.
@@ -117,59 +264,194 @@ public class SocketAddressResolver
      * @param timeout the timeout, in milliseconds, for the DNS resolution to complete
      * @param promise the callback invoked when the resolution succeeds or fails
      */
-    protected void resolve(final String host, final int port, final long timeout, final Promise<SocketAddress> promise)
+    protected void resolve(String host, int port, long timeout, Promise<SocketAddress> promise)
     {
-        executor.execute(new Runnable()
+        while (true)
         {
-            @Override
-            public void run()
+            Resolution resolution = cache.get(host);
+            if (resolution != null && !resolution.isExpired())
             {
-                Scheduler.Task task = null;
-                final AtomicBoolean complete = new AtomicBoolean();
-                if (timeout > 0)
-                {
-                    final Thread thread = Thread.currentThread();
-                    task = scheduler.schedule(new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            if (complete.compareAndSet(false, true))
-                            {
-                                promise.failed(new TimeoutException());
-                                thread.interrupt();
-                            }
-                        }
-                    }, timeout, TimeUnit.MILLISECONDS);
-                }
+                hits.incrementAndGet();
+                resolution.resolve(port, timeout, promise);
+                return;
+            }
 
+            Resolution candidate = new Resolution(host);
+            boolean installed = resolution == null ?
+                    cache.putIfAbsent(host, candidate) == null :
+                    cache.replace(host, resolution, candidate);
+            if (installed)
+            {
+                misses.incrementAndGet();
+                if (cache.size() > MAX_CACHE_SIZE)
+                    purge();
+                candidate.resolve(port, timeout, promise);
                 try
                 {
-                    long start = System.nanoTime();
-                    InetSocketAddress result = new InetSocketAddress(host, port);
-                    long elapsed = System.nanoTime() - start;
-                    LOG.debug("Resolved {} in {} ms", host, TimeUnit.NANOSECONDS.toMillis(elapsed));
-                    if (complete.compareAndSet(false, true))
-                    {
-                        if (result.isUnresolved())
-                            promise.failed(new UnresolvedAddressException());
-                        else
-                            promise.succeeded(result);
-                    }
+                    executor.execute(candidate);
                 }
-                catch (Throwable x)
+                catch (RejectedExecutionException x)
                 {
-                    if (complete.compareAndSet(false, true))
-                        promise.failed(x);
+                    // The lookup will never run, so later resolutions must not join it
+                    cache.remove(host, candidate);
+                    candidate.complete(null, x);
                 }
-                finally
+                return;
+            }
+        }
+    }
+
+    private void purge()
+    {
+        for (Iterator<Resolution> iterator = cache.values().iterator(); iterator.hasNext();)
+        {
+            if (iterator.next().isExpired())
+                iterator.remove();
+        }
+    }
+
+    /**
+     * The lookup of a host, and the promises waiting for it to complete.
+     */
+    private class Resolution implements Runnable
+    {
+        private final AtomicInteger next = new AtomicInteger();
+        private final String host;
+        // Guarded by this
+        private List<Waiter> waiters = new ArrayList<>();
+        private volatile InetAddress[] addresses;
+        private volatile Throwable failure;
+        private volatile boolean complete;
+        private long expiration;
+        private boolean forever;
+
+        private Resolution(String host)
+        {
+            this.host = host;
+        }
+
+        private boolean isExpired()
+        {
+            // Lookups in progress never expire
+            return complete && !forever && System.nanoTime() - expiration >= 0;
+        }
+
+        @Override
+        public void run()
+        {
+            InetAddress[] addresses = null;
+            Throwable failure = null;
+            try
+            {
+                long start = System.nanoTime();
+                addresses = lookup.lookup(host);
+                long elapsed = System.nanoTime() - start;
+                LOG.debug("Resolved {} in {} ms", host, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                if (addresses == null || addresses.length == 0)
+                    failure = new UnresolvedAddressException();
+            }
+            catch (UnknownHostException x)
+            {
+                LOG.debug(x);
+                failure = new UnresolvedAddressException();
+            }
+            catch (Throwable x)
+            {
+                failure = x;
+            }
+            complete(addresses, failure);
+        }
+
+        private void complete(InetAddress[] addresses, Throwable failure)
+        {
+            long ttl = failure == null ? getCacheTTL() : getNegativeCacheTTL();
+            if (ttl == 0)
+                cache.remove(host, this);
+
+            List<Waiter> waiters;
+            synchronized (this)
+            {
+                this.addresses = addresses;
+                this.failure = failure;
+                this.forever = ttl < 0;
+                this.expiration = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+                this.complete = true;
+                waiters = this.waiters;
+                this.waiters = null;
+            }
+
+            for (Waiter waiter : waiters)
+                waiter.complete();
+        }
+
+        private void resolve(int port, long timeout, Promise<SocketAddress> promise)
+        {
+            Waiter waiter = new Waiter(this, port, promise);
+            synchronized (this)
+            {
+                if (waiters != null)
                 {
-                    if (task != null)
-                        task.cancel();
-                    // Reset the interrupted status before releasing the thread to the pool
-                    Thread.interrupted();
+                    waiters.add(waiter);
+                    waiter.schedule(timeout);
+                    return;
                 }
             }
-        });
+            waiter.complete();
+        }
+
+        private SocketAddress newSocketAddress(int port)
+        {
+            InetAddress[] addresses = this.addresses;
+            // Rotate across the addresses of the host
+            int index = (next.getAndIncrement() & Integer.MAX_VALUE) % addresses.length;
+            return new InetSocketAddress(addresses[index], port);
+        }
+    }
+
+    /**
+     * A promise waiting for a {@link Resolution}, failed if the resolution takes too long.
+     */
+    private class Waiter implements Runnable
+    {
+        private final AtomicInteger done = new AtomicInteger();
+        private final Resolution resolution;
+        private final int port;
+        private final Promise<SocketAddress> promise;
+        private volatile Scheduler.Task task;
+
+        private Waiter(Resolution resolution, int port, Promise<SocketAddress> promise)
+        {
+            this.resolution = resolution;
+            this.port = port;
+            this.promise = promise;
+        }
+
+        private void schedule(long timeout)
+        {
+            if (timeout > 0)
+                task = scheduler.schedule(this, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run()
+        {
+            if (done.compareAndSet(0, 1))
+                promise.failed(new TimeoutException());
+        }
+
+        private void complete()
+        {
+            Scheduler.Task task = this.task;
+            if (task != null)
+                task.cancel();
+            if (!done.compareAndSet(0, 1))
+                return;
+
+            Throwable failure = resolution.failure;
+            if (failure != null)
+                promise.failed(failure);
+            else
+                promise.succeeded(resolution.newSocketAddress(port));
+        }
     }
 }
@@ -36,6 +36,7 @@ import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXBuilderParameters;
 import java.security.cert.X509CertSelector;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -60,6 +61,10 @@ import javax.net.ssl.X509KeyManager;
 import javax.net.ssl.X509TrustManager;
 
 import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.Scanner;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -75,6 +80,7 @@ import org.eclipse.jetty.util.security.Password;
  * creates SSL context based on these parameters to be
  * used by the SSL connectors.
  */
+@ManagedObject("SSL context factory")
 public class SslContextFactory extends AbstractLifeCycle
 {
     public final static TrustManager[] TRUST_ALL_CERTS = new X509TrustManager[]{new X509TrustManager()
@@ -199,7 +205,13 @@ public class SslContextFactory extends AbstractLifeCycle
     private int _sslSessionTimeout;
 
     /** SSL context */
-    private SSLContext _context;
+    private volatile SSLContext _context;
+    /** Set to true if the SSL context can be recreated from the key store and trust store */
+    private volatile boolean _reloadable;
+    private final Object _reloadLock = new Object();
+    /** Interval in seconds between key store scans, 0 to disable */
+    private int _keyStoreScanInterval;
+    private Scanner _keyStoreScanner;
 
     /** EndpointIdentificationAlgorithm - when set to "HTTPS" hostname verification will be enabled */
     private String _endpointIdentificationAlgorithm = "HTTPS";
@@ -244,77 +256,194 @@ public class SslContextFactory extends AbstractLifeCycle
     {
         if (_context == null)
         {
-            if (_keyStore==null && _keyStoreInputStream == null && _keyStorePath == null &&
-                _trustStore==null && _trustStoreInputStream == null && _trustStorePath == null )
+            _reloadable = _keyStoreInputStream == null && _trustStoreInputStream == null;
+            _context = newSslContext();
+
+            SSLEngine engine = newSSLEngine();
+            LOG.debug("Enabled Protocols {} of {}",Arrays.asList(engine.getEnabledProtocols()),Arrays.asList(engine.getSupportedProtocols()));
+            if (LOG.isDebugEnabled())
+                LOG.debug("Enabled Ciphers   {} of {}",Arrays.asList(engine.getEnabledCipherSuites()),Arrays.asList(engine.getSupportedCipherSuites()));
+
+            if (_reloadable && _keyStoreScanInterval > 0)
+                startKeyStoreScanner();
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Scanner scanner = _keyStoreScanner;
+        _keyStoreScanner = null;
+        if (scanner != null)
+            scanner.stop();
+        _context = null;
+        _reloadable = false;
+        super.doStop();
+    }
+
+    /**
+     * Create a new SSLContext from the current key store and trust store configuration.
+     * @return a new, initialized SSLContext
+     * @throws Exception if the key store or trust store cannot be loaded or validated
+     */
+    protected SSLContext newSslContext() throws Exception
+    {
+        if (_keyStore==null && _keyStoreInputStream == null && _keyStorePath == null &&
+            _trustStore==null && _trustStoreInputStream == null && _trustStorePath == null )
+        {
+            TrustManager[] trust_managers=null;
+
+            if (_trustAll)
             {
-                TrustManager[] trust_managers=null;
+                LOG.debug("No keystore or trust store configured.  ACCEPTING UNTRUSTED CERTIFICATES!!!!!");
+                // Create a trust manager that does not validate certificate chains
+                trust_managers = TRUST_ALL_CERTS;
+            }
 
-                if (_trustAll)
-                {
-                    LOG.debug("No keystore or trust store configured.  ACCEPTING UNTRUSTED CERTIFICATES!!!!!");
-                    // Create a trust manager that does not validate certificate chains
-                    trust_managers = TRUST_ALL_CERTS;
-                }
+            SecureRandom secureRandom = (_secureRandomAlgorithm == null)?null:SecureRandom.getInstance(_secureRandomAlgorithm);
+            SSLContext context = SSLContext.getInstance(_sslProtocol);
+            context.init(null, trust_managers, secureRandom);
+            return context;
+        }
+
+        // verify that keystore and truststore
+        // parameters are set up correctly
+        checkKeyStore();
+
+        KeyStore keyStore = loadKeyStore();
+        KeyStore trustStore = loadTrustStore();
+
+        Collection<? extends CRL> crls = loadCRL(_crlPath);
 
-                SecureRandom secureRandom = (_secureRandomAlgorithm == null)?null:SecureRandom.getInstance(_secureRandomAlgorithm);
-                SSLContext context = SSLContext.getInstance(_sslProtocol);
-                context.init(null, trust_managers, secureRandom);
-                _context = context;
+        if (_validateCerts && keyStore != null)
+        {
+            if (_certAlias == null)
+            {
+                List<String> aliases = Collections.list(keyStore.aliases());
+                _certAlias = aliases.size() == 1 ? aliases.get(0) : null;
             }
-            else
+
+            Certificate cert = _certAlias == null?null:keyStore.getCertificate(_certAlias);
+            if (cert == null)
             {
-                // verify that keystore and truststore
-                // parameters are set up correctly
-                checkKeyStore();
+                throw new Exception("No certificate found in the keystore" + (_certAlias==null ? "":" for alias " + _certAlias));
+            }
 
-                KeyStore keyStore = loadKeyStore();
-                KeyStore trustStore = loadTrustStore();
+            CertificateValidator validator = new CertificateValidator(trustStore, crls);
+            validator.setMaxCertPathLength(_maxCertPathLength);
+            validator.setEnableCRLDP(_enableCRLDP);
+            validator.setEnableOCSP(_enableOCSP);
+            validator.setOcspResponderURL(_ocspResponderURL);
+            validator.validate(keyStore, cert);
+        }
 
-                Collection<? extends CRL> crls = loadCRL(_crlPath);
+        KeyManager[] keyManagers = getKeyManagers(keyStore);
+        TrustManager[] trustManagers = getTrustManagers(trustStore,crls);
 
-                if (_validateCerts && keyStore != null)
-                {
-                    if (_certAlias == null)
-                    {
-                        List<String> aliases = Collections.list(keyStore.aliases());
-                        _certAlias = aliases.size() == 1 ? aliases.get(0) : null;
-                    }
+        SecureRandom secureRandom = (_secureRandomAlgorithm == null)?null:SecureRandom.getInstance(_secureRandomAlgorithm);
+        SSLContext context = _sslProvider == null ? SSLContext.getInstance(_sslProtocol) : SSLContext.getInstance(_sslProtocol,_sslProvider);
+        context.init(keyManagers,trustManagers,secureRandom);
+        return context;
+    }
 
-                    Certificate cert = _certAlias == null?null:keyStore.getCertificate(_certAlias);
-                    if (cert == null)
-                    {
-                        throw new Exception("No certificate found in the keystore" + (_certAlias==null ? "":" for alias " + _certAlias));
-                    }
+    /**
+     * Reload the key store and trust store and atomically replace the SSLContext
+     * used for new handshakes.
+     * <p>
+     * {@link SSLEngine}s already created, and therefore the connections using them,
+     * keep the SSLContext they were created with. If the new SSLContext cannot be
+     * created, the current one is retained and the exception is thrown.
+     * <p>
+     * Reloading is only possible when the stores are configured via a path or a
+     * {@link KeyStore}; stores configured via an input stream or a {@link Resource},
+     * as well as a preconfigured SSLContext, cannot be read again.
+     * @throws Exception if the new SSLContext cannot be created
+     */
+    @ManagedOperation(value="Reload the key store and trust store", impact="ACTION")
+    public void reload() throws Exception
+    {
+        synchronized (_reloadLock)
+        {
+            if (!isStarted())
+                throw new IllegalStateException(getState());
+            if (!_reloadable)
+                throw new IllegalStateException("Cannot reload SSLContext configured from a stream or preconfigured");
 
-                    CertificateValidator validator = new CertificateValidator(trustStore, crls);
-                    validator.setMaxCertPathLength(_maxCertPathLength);
-                    validator.setEnableCRLDP(_enableCRLDP);
-                    validator.setEnableOCSP(_enableOCSP);
-                    validator.setOcspResponderURL(_ocspResponderURL);
-                    validator.validate(keyStore, cert);
-                }
+            _context = newSslContext();
+            LOG.info("Reloaded SSLContext for {}",this);
+        }
+    }
 
-                KeyManager[] keyManagers = getKeyManagers(keyStore);
-                TrustManager[] trustManagers = getTrustManagers(trustStore,crls);
+    /**
+     * @return whether the SSLContext can be reloaded via {@link #reload()}
+     */
+    @ManagedAttribute("Whether the key store and trust store can be reloaded")
+    public boolean isReloadable()
+    {
+        return _reloadable;
+    }
 
-                SecureRandom secureRandom = (_secureRandomAlgorithm == null)?null:SecureRandom.getInstance(_secureRandomAlgorithm);
-                SSLContext context = _sslProvider == null ? SSLContext.getInstance(_sslProtocol) : SSLContext.getInstance(_sslProtocol,_sslProvider);
-                context.init(keyManagers,trustManagers,secureRandom);
-                _context = context;
-            }
+    /**
+     * @return the interval in seconds between scans of the key store and trust store
+     * files for changes, or 0 if the files are not scanned
+     */
+    @ManagedAttribute("The interval in seconds between key store scans, or 0 if not scanned")
+    public int getKeyStoreScanInterval()
+    {
+        return _keyStoreScanInterval;
+    }
 
-            SSLEngine engine = newSSLEngine();
-            LOG.debug("Enabled Protocols {} of {}",Arrays.asList(engine.getEnabledProtocols()),Arrays.asList(engine.getSupportedProtocols()));
-            if (LOG.isDebugEnabled())
-                LOG.debug("Enabled Ciphers   {} of {}",Arrays.asList(engine.getEnabledCipherSuites()),Arrays.asList(engine.getSupportedCipherSuites()));
-        }
+    /**
+     * @param keyStoreScanInterval the interval in seconds between scans of the key store and
+     * trust store files; when a change is detected the SSLContext is {@link #reload() reloaded}.
+     * A value of 0 (the default) disables scanning.
+     */
+    public void setKeyStoreScanInterval(int keyStoreScanInterval)
+    {
+        checkNotStarted();
+        _keyStoreScanInterval = keyStoreScanInterval;
     }
 
-    @Override
-    protected void doStop() throws Exception
+    private void startKeyStoreScanner() throws Exception
     {
-        _context = null;
-        super.doStop();
+        List<File> files = new ArrayList<>();
+        for (String path : new String[]{_keyStorePath, _trustStorePath})
+        {
+            if (path == null)
+                continue;
+            File file = Resource.newResource(path).getFile();
+            if (file != null && !files.contains(file))
+                files.add(file);
+        }
+
+        if (files.isEmpty())
+        {
+            LOG.warn("Cannot scan key store {} for changes, not a file",_keyStorePath);
+            return;
+        }
+
+        Scanner scanner = new Scanner();
+        scanner.setScanDirs(files);
+        scanner.setScanInterval(_keyStoreScanInterval);
+        scanner.setReportExistingFilesOnStartup(false);
+        scanner.addListener(new Scanner.BulkListener()
+        {
+            @Override
+            public void filesChanged(List<String> filenames) throws Exception
+            {
+                LOG.debug("Key store changed {}",filenames);
+                try
+                {
+                    reload();
+                }
+                catch (Exception x)
+                {
+                    LOG.warn("Could not reload " + SslContextFactory.this,x);
+                }
+            }
+        });
+        scanner.start();
+        _keyStoreScanner = scanner;
     }
 
     /**
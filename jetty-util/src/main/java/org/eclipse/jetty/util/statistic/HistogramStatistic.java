@@ -0,0 +1,150 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/* ------------------------------------------------------------ */
+/**
+ * HistogramStatistic
+ * <p>
+ * A {@link SampleStatistic} that also counts the samples in
+ * power of two buckets, so that percentiles can be estimated
+ * (within a factor of two) without retaining the samples.
+ * <p>
+ * Bucket 0 counts the samples of value 0, and bucket n (n &gt; 0)
+ * counts the samples between 2<sup>n-1</sup> and 2<sup>n</sup>-1.
+ * Negative samples are counted in bucket 0.
+ */
+public class HistogramStatistic extends SampleStatistic
+{
+    public static final int BUCKETS = 64;
+
+    protected final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param sample the sample value
+     * @return the index of the bucket counting the sample
+     */
+    public static int bucketOf(long sample)
+    {
+        if (sample<=0)
+            return 0;
+        return Math.min(BUCKETS-1,64-Long.numberOfLeadingZeros(sample));
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param bucket the index of the bucket
+     * @return the greatest sample value counted by the bucket
+     */
+    public static long upperBoundOf(int bucket)
+    {
+        if (bucket<=0)
+            return 0;
+        if (bucket>=BUCKETS-1)
+            return Long.MAX_VALUE;
+        return (1L<<bucket)-1;
+    }
+
+    @Override
+    public void reset()
+    {
+        super.reset();
+        for (int i=0;i<BUCKETS;i++)
+            _buckets.set(i,0);
+    }
+
+    @Override
+    public void set(final long sample)
+    {
+        super.set(sample);
+        _buckets.incrementAndGet(bucketOf(sample));
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return a snapshot of the count of samples of each bucket
+     */
+    public long[] getBuckets()
+    {
+        long[] buckets = new long[BUCKETS];
+        for (int i=0;i<BUCKETS;i++)
+            buckets[i]=_buckets.get(i);
+        return buckets;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Estimate a percentile of the samples.
+     * <p>
+     * The estimate is the upper bound of the bucket containing the
+     * percentile, capped by the max sample, so it is at most twice
+     * the actual value.
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated value, or 0 if there are no samples
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] buckets = getBuckets();
+        long count=0;
+        for (long bucket : buckets)
+            count+=bucket;
+        if (count==0)
+            return 0;
+
+        long rank=(long)Math.ceil(count*percentile/100.0);
+        long seen=0;
+        for (int i=0;i<BUCKETS;i++)
+        {
+            seen+=buckets[i];
+            if (seen>=rank && seen>0)
+                return Math.min(upperBoundOf(i),getMax());
+        }
+        return getMax();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the non empty buckets, as "&lt;=upperBound:count" pairs
+     */
+    public String toHistogramString()
+    {
+        StringBuilder b = new StringBuilder();
+        long[] buckets = getBuckets();
+        for (int i=0;i<BUCKETS;i++)
+        {
+            if (buckets[i]==0)
+                continue;
+            if (b.length()>0)
+                b.append(", ");
+            b.append("<=").append(upperBoundOf(i)).append(':').append(buckets[i]);
+        }
+        return b.toString();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{c=%d,m=%d,t=%d,p50=%d,p99=%d}",this.getClass().getSimpleName(),hashCode(),_count.get(),_max.get(),_total.get(),getPercentile(50),getPercentile(99));
+    }
+}
@@ -0,0 +1,265 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SocketAddressResolverTest
+{
+    private ExecutorService executor;
+    private ScheduledExecutorScheduler scheduler;
+    private SocketAddressResolver resolver;
+    private CountingLookup lookup;
+
+    @Before
+    public void prepare() throws Exception
+    {
+        executor = Executors.newCachedThreadPool();
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        resolver = new SocketAddressResolver(executor, scheduler, 5000);
+        lookup = new CountingLookup();
+        resolver.setLookup(lookup);
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        scheduler.stop();
+        executor.shutdownNow();
+    }
+
+    private InetSocketAddress resolve(String host, int port) throws Exception
+    {
+        FuturePromise<SocketAddress> promise = new FuturePromise<>();
+        resolver.resolve(host, port, promise);
+        return (InetSocketAddress)promise.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testLookupIsCached() throws Exception
+    {
+        InetSocketAddress address = resolve("host", 8080);
+        Assert.assertEquals(8080, address.getPort());
+        Assert.assertEquals("127.0.0.1", address.getAddress().getHostAddress());
+
+        resolve("host", 8443);
+        Assert.assertEquals(1, lookup.lookups.get());
+        Assert.assertEquals(1, resolver.getCacheHits());
+        Assert.assertEquals(1, resolver.getCacheMisses());
+        Assert.assertEquals(0.5, resolver.getCacheHitRate(), 0.0);
+    }
+
+    @Test
+    public void testLookupExpires() throws Exception
+    {
+        resolver.setCacheTTL(100);
+        resolve("host", 80);
+        TimeUnit.MILLISECONDS.sleep(200);
+        resolve("host", 80);
+        Assert.assertEquals(2, lookup.lookups.get());
+    }
+
+    @Test
+    public void testZeroTTLDisablesCache() throws Exception
+    {
+        resolver.setCacheTTL(0);
+        resolve("host", 80);
+        resolve("host", 80);
+        Assert.assertEquals(2, lookup.lookups.get());
+    }
+
+    @Test
+    public void testFailedLookupIsCached() throws Exception
+    {
+        for (int i = 0; i < 2; ++i)
+        {
+            try
+            {
+                resolve("unknown", 80);
+                Assert.fail();
+            }
+            catch (ExecutionException x)
+            {
+                Assert.assertThat(x.getCause(), Matchers.instanceOf(UnresolvedAddressException.class));
+            }
+        }
+        Assert.assertEquals(1, lookup.lookups.get());
+
+        resolver.setNegativeCacheTTL(0);
+        resolver.clearCache();
+        try
+        {
+            resolve("unknown", 80);
+            Assert.fail();
+        }
+        catch (ExecutionException x)
+        {
+            Assert.assertEquals(2, lookup.lookups.get());
+        }
+    }
+
+    @Test
+    public void testConcurrentLookupsAreCoalesced() throws Exception
+    {
+        lookup.latch = new CountDownLatch(1);
+        int count = 10;
+        final CountDownLatch resolved = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            resolver.resolve("host", 80, new Promise.Adapter<SocketAddress>()
+            {
+                @Override
+                public void succeeded(SocketAddress result)
+                {
+                    resolved.countDown();
+                }
+            });
+        }
+        Assert.assertEquals(count, resolved.getCount());
+
+        lookup.latch.countDown();
+        Assert.assertTrue(resolved.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, lookup.lookups.get());
+        Assert.assertEquals(count - 1, resolver.getCacheHits());
+    }
+
+    @Test
+    public void testSlowLookupTimesOut() throws Exception
+    {
+        lookup.latch = new CountDownLatch(1);
+        FuturePromise<SocketAddress> promise = new FuturePromise<>();
+        resolver.resolve("host", 80, 100, promise);
+        try
+        {
+            promise.get();
+            Assert.fail();
+        }
+        catch (ExecutionException x)
+        {
+            Assert.assertThat(x.getCause(), Matchers.instanceOf(TimeoutException.class));
+        }
+
+        // The lookup still completes for later resolutions
+        lookup.latch.countDown();
+        Assert.assertNotNull(resolve("host", 80));
+        Assert.assertEquals(1, lookup.lookups.get());
+    }
+
+    @Test
+    public void testMultipleAddressesAreRotated() throws Exception
+    {
+        Assert.assertEquals("127.0.0.1", resolve("multi", 80).getAddress().getHostAddress());
+        Assert.assertEquals("127.0.0.2", resolve("multi", 80).getAddress().getHostAddress());
+        Assert.assertEquals("127.0.0.3", resolve("multi", 80).getAddress().getHostAddress());
+        Assert.assertEquals("127.0.0.1", resolve("multi", 80).getAddress().getHostAddress());
+        Assert.assertEquals(1, lookup.lookups.get());
+    }
+
+    @Test
+    public void testRejectedLookupIsNotCached() throws Exception
+    {
+        final AtomicInteger executions = new AtomicInteger();
+        resolver = new SocketAddressResolver(new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                // Reject the first lookup, as a saturated or stopping pool would
+                if (executions.incrementAndGet() == 1)
+                    throw new RejectedExecutionException();
+                executor.execute(task);
+            }
+        }, scheduler, 5000);
+        resolver.setLookup(lookup);
+
+        try
+        {
+            resolve("host", 80);
+            Assert.fail();
+        }
+        catch (ExecutionException x)
+        {
+            Assert.assertThat(x.getCause(), Matchers.instanceOf(RejectedExecutionException.class));
+        }
+
+        // The next resolution does not join the rejected one
+        Assert.assertEquals(80, resolve("host", 80).getPort());
+        Assert.assertEquals(1, lookup.lookups.get());
+    }
+
+    private static class CountingLookup implements SocketAddressResolver.Lookup
+    {
+        private final AtomicInteger lookups = new AtomicInteger();
+        private volatile CountDownLatch latch;
+
+        @Override
+        public InetAddress[] lookup(String host) throws UnknownHostException
+        {
+            lookups.incrementAndGet();
+            try
+            {
+                if (latch != null)
+                    latch.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException x)
+            {
+                throw new UnknownHostException(host);
+            }
+
+            byte[] loopback = new byte[]{127, 0, 0, 1};
+            switch (host)
+            {
+                case "host":
+                    return new InetAddress[]{InetAddress.getByAddress(host, loopback)};
+                case "multi":
+                    InetAddress[] result = new InetAddress[3];
+                    for (int i = 0; i < result.length; ++i)
+                    {
+                        loopback[3] = (byte)(i + 1);
+                        result[i] = InetAddress.getByAddress(host, loopback);
+                    }
+                    return result;
+                default:
+                    throw new UnknownHostException(host);
+            }
+        }
+    }
+}
@@ -20,13 +20,20 @@ package org.eclipse.jetty.util.ssl;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.KeyStore;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.StdErrLog;
@@ -189,6 +196,83 @@ public class SslContextFactoryTest
         }
     }
 
+    @Test
+    public void testReloadReplacesSslContext() throws Exception
+    {
+        String keystorePath = System.getProperty("basedir",".") + "/src/test/resources/keystore";
+        cf.setKeyStorePath(keystorePath);
+        cf.setKeyStorePassword("storepwd");
+        cf.setKeyManagerPassword("keypwd");
+
+        cf.start();
+        assertTrue(cf.isReloadable());
+
+        SSLContext before = cf.getSslContext();
+        SSLEngine engine = cf.newSSLEngine();
+
+        cf.reload();
+
+        SSLContext after = cf.getSslContext();
+        assertTrue(after!=null);
+        assertTrue(after!=before);
+        // Engines created before the reload are untouched
+        assertTrue(engine.getSession()!=null);
+    }
+
+    @Test
+    public void testReloadFailureKeepsSslContext() throws Exception
+    {
+        File keystore = File.createTempFile("keystore",".jks");
+        keystore.deleteOnExit();
+        try (InputStream in = Resource.newSystemResource("keystore").getInputStream();
+             OutputStream out = new FileOutputStream(keystore))
+        {
+            IO.copy(in,out);
+        }
+
+        cf.setKeyStorePath(keystore.getAbsolutePath());
+        cf.setKeyStorePassword("storepwd");
+        cf.setKeyManagerPassword("keypwd");
+        cf.start();
+
+        SSLContext before = cf.getSslContext();
+
+        try (OutputStream out = new FileOutputStream(keystore))
+        {
+            out.write("garbage".getBytes("UTF-8"));
+        }
+
+        try
+        {
+            cf.reload();
+            Assert.fail();
+        }
+        catch (IOException e)
+        {
+        }
+
+        assertTrue(cf.getSslContext()==before);
+    }
+
+    @Test
+    public void testReloadFromStreamNotSupported() throws Exception
+    {
+        cf.setKeyStoreResource(Resource.newSystemResource("keystore"));
+        cf.setKeyStorePassword("storepwd");
+        cf.setKeyManagerPassword("keypwd");
+        cf.start();
+
+        assertFalse(cf.isReloadable());
+        try
+        {
+            cf.reload();
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+        }
+    }
+
     @Test
     public void testSetIncludeCipherSuitesPreservesOrder()
     {
@@ -0,0 +1,68 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+
+/* ------------------------------------------------------------ */
+public class HistogramStatisticTest
+{
+    @Test
+    public void testBuckets()
+        throws Exception
+    {
+        assertEquals(0,HistogramStatistic.bucketOf(0));
+        assertEquals(1,HistogramStatistic.bucketOf(1));
+        assertEquals(2,HistogramStatistic.bucketOf(2));
+        assertEquals(2,HistogramStatistic.bucketOf(3));
+        assertEquals(3,HistogramStatistic.bucketOf(4));
+        assertEquals(10,HistogramStatistic.bucketOf(1000));
+        assertEquals(1023,HistogramStatistic.upperBoundOf(10));
+        assertEquals(HistogramStatistic.BUCKETS-1,HistogramStatistic.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles()
+        throws Exception
+    {
+        HistogramStatistic stats = new HistogramStatistic();
+        assertEquals(0,stats.getPercentile(50));
+
+        for (int i=0;i<90;i++)
+            stats.set(10);
+        for (int i=0;i<9;i++)
+            stats.set(100);
+        stats.set(1000);
+
+        assertEquals(100,stats.getCount());
+        assertEquals(15,stats.getPercentile(50));
+        assertEquals(15,stats.getPercentile(90));
+        assertEquals(127,stats.getPercentile(99));
+        // capped by the max sample
+        assertEquals(1000,stats.getPercentile(100));
+        assertEquals("<=15:90, <=127:9, <=1023:1",stats.toHistogramString());
+
+        stats.reset();
+        assertEquals(0,stats.getCount());
+        assertEquals(0,stats.getPercentile(99));
+    }
+}
@@ -0,0 +1,47 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.api;
+
+/**
+ * Behavior when a frame is sent while the outgoing queue of a WebSocket connection is full.
+ * <p>
+ * The outgoing queue is bounded by {@link WebSocketPolicy#getMaxOutgoingFrames()} and {@link WebSocketPolicy#getMaxOutgoingBytes()}. Control frames are
+ * never subject to the bounds.
+ */
+public enum OutgoingOverflowPolicy
+{
+    /**
+     * Block the sending thread until there is room in the queue (or until the idle timeout expires, failing the write).
+     * <p>
+     * Must not be used from threads that complete the writes of the connection.
+     */
+    BLOCK,
+    /**
+     * Fail the write of the new frame.
+     */
+    FAIL,
+    /**
+     * Fail the writes of the oldest queued (whole message) frames, to make room for the new frame.
+     */
+    DROP_OLDEST,
+    /**
+     * Fail the write of the new frame, and close the connection with {@link StatusCode#POLICY_VIOLATION}.
+     */
+    CLOSE;
+}
@@ -0,0 +1,44 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.api;
+
+import java.util.List;
+
+/**
+ * A {@link WebSocketListener} that is notified of the received messages in batches.
+ * <p>
+ * All the messages parsed from one network read are handed to {@link #onWebSocketBatch(List)} in a single call, so that the application can amortize
+ * the cost of processing them (locking, database writes, etc) across the batch. The messages are delivered in the order they were received, and a
+ * batch always completes before the close or error that followed its messages is notified.
+ * <p>
+ * The text and binary messages of a batch listener are only delivered through {@link #onWebSocketBatch(List)}, never to
+ * {@link #onWebSocketText(String)} or {@link #onWebSocketBinary(byte[], int, int)}.
+ */
+public interface WebSocketBatchListener extends WebSocketListener
+{
+    /**
+     * The WebSocket messages received by a network read.
+     * 
+     * @param messages
+     *            the messages, in the order they were received: a {@link String} for each text message, a <code>byte[]</code> for each binary
+     *            message. The list is never empty, and is owned by the listener.
+     */
+    void onWebSocketBatch(List<Object> messages);
+}
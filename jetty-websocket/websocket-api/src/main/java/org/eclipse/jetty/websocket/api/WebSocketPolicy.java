@@ -49,6 +49,14 @@ public class WebSocketPolicy
      */
     private long idleTimeout = 300000;
 
+    /**
+     * The time in ms (milliseconds) that a websocket may be idle before hibernating, releasing the resources that are rebuilt on the next read or
+     * write, or -1 to never hibernate.
+     * <p>
+     * Default: -1 (never)
+     */
+    private long hibernateTimeout = -1;
+
     /**
      * The size of the input (read from network layer) buffer size.
      * <p>
@@ -56,6 +64,27 @@ public class WebSocketPolicy
      */
     private int inputBufferSize = 4 * KB;
 
+    /**
+     * The maximum number of frames that may be waiting to be written to the network, or -1 for no limit.
+     * <p>
+     * Default: -1 (unlimited)
+     */
+    private int maxOutgoingFrames = -1;
+
+    /**
+     * The maximum number of payload bytes that may be waiting to be written to the network, or -1 for no limit.
+     * <p>
+     * Default: -1 (unlimited)
+     */
+    private long maxOutgoingBytes = -1;
+
+    /**
+     * What to do when a frame is sent while the outgoing queue is full.
+     * <p>
+     * Default: {@link OutgoingOverflowPolicy#FAIL}
+     */
+    private OutgoingOverflowPolicy outgoingOverflowPolicy = OutgoingOverflowPolicy.FAIL;
+
     /**
      * Behavior of the websockets
      */
@@ -82,8 +111,12 @@ public class WebSocketPolicy
     {
         WebSocketPolicy clone = new WebSocketPolicy(this.behavior);
         clone.idleTimeout = this.idleTimeout;
+        clone.hibernateTimeout = this.hibernateTimeout;
         clone.maxMessageSize = this.maxMessageSize;
         clone.inputBufferSize = this.inputBufferSize;
+        clone.maxOutgoingFrames = this.maxOutgoingFrames;
+        clone.maxOutgoingBytes = this.maxOutgoingBytes;
+        clone.outgoingOverflowPolicy = this.outgoingOverflowPolicy;
         return clone;
     }
 
@@ -92,6 +125,11 @@ public class WebSocketPolicy
         return behavior;
     }
 
+    public long getHibernateTimeout()
+    {
+        return hibernateTimeout;
+    }
+
     public long getIdleTimeout()
     {
         return idleTimeout;
@@ -107,6 +145,26 @@ public class WebSocketPolicy
         return maxMessageSize;
     }
 
+    public long getMaxOutgoingBytes()
+    {
+        return maxOutgoingBytes;
+    }
+
+    public int getMaxOutgoingFrames()
+    {
+        return maxOutgoingFrames;
+    }
+
+    public OutgoingOverflowPolicy getOutgoingOverflowPolicy()
+    {
+        return outgoingOverflowPolicy;
+    }
+
+    public void setHibernateTimeout(long hibernateTimeout)
+    {
+        this.hibernateTimeout = hibernateTimeout;
+    }
+
     public void setIdleTimeout(long idleTimeout)
     {
         this.idleTimeout = idleTimeout;
@@ -121,4 +179,19 @@ public class WebSocketPolicy
     {
         this.maxMessageSize = maxMessageSize;
     }
+
+    public void setMaxOutgoingBytes(long maxOutgoingBytes)
+    {
+        this.maxOutgoingBytes = maxOutgoingBytes;
+    }
+
+    public void setMaxOutgoingFrames(int maxOutgoingFrames)
+    {
+        this.maxOutgoingFrames = maxOutgoingFrames;
+    }
+
+    public void setOutgoingOverflowPolicy(OutgoingOverflowPolicy outgoingOverflowPolicy)
+    {
+        this.outgoingOverflowPolicy = outgoingOverflowPolicy;
+    }
 }
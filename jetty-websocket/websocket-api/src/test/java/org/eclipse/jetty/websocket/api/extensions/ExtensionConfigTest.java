@@ -120,4 +120,11 @@ public class ExtensionConfigTest
         Map<String, String> expectedParams = new HashMap<>();
         assertConfig(cfg,"foo",expectedParams);
     }
+
+    @Test
+    public void testParameterizedNameWithoutValue()
+    {
+        ExtensionConfig cfg = ExtensionConfig.parse("permessage-deflate; server_no_context_takeover");
+        Assert.assertThat("Parameterized Name",cfg.getParameterizedName(),is("permessage-deflate;server_no_context_takeover"));
+    }
 }
@@ -21,12 +21,13 @@ package org.eclipse.jetty.websocket.client;
 import java.net.CookieStore;
 import java.net.HttpCookie;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.eclipse.jetty.util.B64Code;
 import org.eclipse.jetty.util.MultiMap;
@@ -64,6 +65,10 @@ public class ClientUpgradeRequest extends UpgradeRequest
     }
 
     private final String key;
+    /** The generated request of the template this request was created from, split around the Sec-WebSocket-Key value */
+    private String[] template;
+    /** The generated request of this request, when used as a template */
+    private String[] generated;
 
     public ClientUpgradeRequest()
     {
@@ -77,7 +82,43 @@ public class ClientUpgradeRequest extends UpgradeRequest
         this.key = genRandomKey();
     }
 
+    /**
+     * Create a request from a template, for connecting many websockets with the same upgrade request.
+     * <p>
+     * The new request has the URI, headers, cookies, extensions and sub protocols of the template, and its own Sec-WebSocket-Key. The template
+     * request is generated once, and shared by all the requests created from it: later changes to the template or to the new request, other than
+     * to its URI, are not reflected in the generated request.
+     * 
+     * @param template
+     *            the template request
+     */
+    public ClientUpgradeRequest(ClientUpgradeRequest template)
+    {
+        super();
+        super.setRequestURI(template.getRequestURI());
+        setParameterMap(template.getParameterMap());
+        setCookies(new ArrayList<>(template.getCookies()));
+        setSubProtocols(new ArrayList<>(template.getSubProtocols()));
+        getExtensions().addAll(template.getExtensions());
+        for (Map.Entry<String, List<String>> header : template.getHeaders().entrySet())
+        {
+            setHeader(header.getKey(),new ArrayList<>(header.getValue()));
+        }
+        this.key = genRandomKey();
+        this.template = template.getTemplate();
+    }
+
     public String generate()
+    {
+        String[] generated = this.template;
+        if (generated != null)
+        {
+            return generated[0] + key + generated[1];
+        }
+        return generate(key);
+    }
+
+    private String generate(String secKey)
     {
         URI uri = getRequestURI();
 
@@ -107,7 +148,7 @@ public class ClientUpgradeRequest extends UpgradeRequest
         // WebSocket specifics
         request.append("Upgrade: websocket\r\n");
         request.append("Connection: Upgrade\r\n");
-        request.append("Sec-WebSocket-Key: ").append(key).append("\r\n");
+        request.append("Sec-WebSocket-Key: ").append(secKey).append("\r\n");
         request.append("Sec-WebSocket-Version: 13\r\n"); // RFC-6455 specified version
 
         // (Per the hybi list): Add no-cache headers to avoid compatibility issue.
@@ -190,7 +231,7 @@ public class ClientUpgradeRequest extends UpgradeRequest
     private final String genRandomKey()
     {
         byte[] bytes = new byte[16];
-        new Random().nextBytes(bytes);
+        ThreadLocalRandom.current().nextBytes(bytes);
         return new String(B64Code.encode(bytes));
     }
 
@@ -199,6 +240,25 @@ public class ClientUpgradeRequest extends UpgradeRequest
         return key;
     }
 
+    private synchronized String[] getTemplate()
+    {
+        if (generated == null)
+        {
+            String request = generate(key);
+            int index = request.indexOf("Sec-WebSocket-Key: " + key) + "Sec-WebSocket-Key: ".length();
+            generated = new String[] { request.substring(0,index), request.substring(index + key.length()) };
+        }
+        return generated;
+    }
+
+    /**
+     * Discard the generated request shared with the requests created from this template, so that the next ones reflect the changes to this request.
+     */
+    synchronized void resetTemplate()
+    {
+        generated = null;
+    }
+
     public void setCookiesFrom(CookieStore cookieStore)
     {
         if (cookieStore == null)
@@ -212,6 +272,12 @@ public class ClientUpgradeRequest extends UpgradeRequest
     @Override
     public void setRequestURI(URI uri)
     {
+        if (!uri.equals(getRequestURI()))
+        {
+            // the generated requests are for another URI
+            template = null;
+            resetTemplate();
+        }
         super.setRequestURI(uri);
 
         // parse parameter map
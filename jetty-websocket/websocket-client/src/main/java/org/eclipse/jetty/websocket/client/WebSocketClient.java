@@ -72,6 +72,7 @@ public class WebSocketClient extends ContainerLifeCycle
     private Masker masker;
     private SocketAddress bindAddress;
     private long connectTimeout = SelectorManager.DEFAULT_CONNECT_TIMEOUT;
+    private int maxConcurrentHandshakes = -1;
 
     public WebSocketClient()
     {
@@ -98,41 +99,8 @@ public class WebSocketClient extends ContainerLifeCycle
 
     public Future<Session> connect(Object websocket, URI toUri, ClientUpgradeRequest request) throws IOException
     {
-        if (!isStarted())
-        {
-            throw new IllegalStateException(WebSocketClient.class.getSimpleName() + "@" + this.hashCode() + " is not started");
-        }
-
-        // Validate websocket URI
-        if (!toUri.isAbsolute())
-        {
-            throw new IllegalArgumentException("WebSocket URI must be absolute");
-        }
-
-        if (StringUtil.isBlank(toUri.getScheme()))
-        {
-            throw new IllegalArgumentException("WebSocket URI must include a scheme");
-        }
-
-        String scheme = toUri.getScheme().toLowerCase(Locale.ENGLISH);
-        if (("ws".equals(scheme) == false) && ("wss".equals(scheme) == false))
-        {
-            throw new IllegalArgumentException("WebSocket URI scheme only supports [ws] and [wss], not [" + scheme + "]");
-        }
-
-        request.setRequestURI(toUri);
-        request.setCookiesFrom(this.cookieStore);
+        validate(toUri,request);
 
-        // Validate Requested Extensions
-        for (ExtensionConfig reqExt : request.getExtensions())
-        {
-            if (!extensionRegistry.isAvailable(reqExt.getName()))
-            {
-                throw new IllegalArgumentException("Requested extension [" + reqExt.getName() + "] is not installed");
-            }
-        }
-
-        // Validate websocket URI
         LOG.debug("connect websocket:{} to:{}",websocket,toUri);
 
         // Grab Connection Manager
@@ -144,13 +112,49 @@ public class WebSocketClient extends ContainerLifeCycle
         // Create the appropriate (physical vs virtual) connection task
         ConnectPromise promise = manager.connect(this,driver,request);
 
-        // Execute the connection on the executor thread
-        executor.execute(promise);
+        // Execute the connection on the executor thread, once a handshake slot is available
+        manager.execute(promise);
 
         // Return the future
         return promise;
     }
 
+    /**
+     * Connect many websockets to the same URI, typically to generate load.
+     * <p>
+     * The request headers are generated once from the template, and only the <code>Sec-WebSocket-Key</code> differs between the connects. At most
+     * {@link #getMaxConcurrentHandshakes()} handshakes are in progress at any time, the other connects wait for their turn.
+     * 
+     * @param websockets
+     *            the websockets to connect
+     * @param toUri
+     *            the websocket uri to connect to
+     * @param template
+     *            the upgrade request the requests of all the connects are copied from
+     * @return the futures of the connects, in the order of the websockets
+     * @throws IOException
+     *             if unable to connect
+     */
+    public List<Future<Session>> connect(List<?> websockets, URI toUri, ClientUpgradeRequest template) throws IOException
+    {
+        validate(toUri,template);
+        template.resetTemplate();
+
+        LOG.debug("connect {} websockets to:{}",websockets.size(),toUri);
+
+        ConnectionManager manager = getConnectionManager();
+        List<Future<Session>> futures = new ArrayList<>(websockets.size());
+        for (Object websocket : websockets)
+        {
+            ClientUpgradeRequest request = new ClientUpgradeRequest(template);
+            EventDriver driver = eventDriverFactory.wrap(websocket);
+            ConnectPromise promise = manager.connect(this,driver,request);
+            manager.execute(promise);
+            futures.add(promise);
+        }
+        return futures;
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -251,6 +255,14 @@ public class WebSocketClient extends ContainerLifeCycle
         return masker;
     }
 
+    /**
+     * @return the max number of handshakes in progress at the same time, or -1 for no limit
+     */
+    public int getMaxConcurrentHandshakes()
+    {
+        return maxConcurrentHandshakes;
+    }
+
     /**
      * Get the max idle timeout for new connections.
      * 
@@ -340,6 +352,19 @@ public class WebSocketClient extends ContainerLifeCycle
         this.masker = masker;
     }
 
+    /**
+     * Set the max number of handshakes in progress at the same time.
+     * <p>
+     * Limiting the concurrent handshakes avoids overwhelming the server (and the local ports) when connecting many websockets at once.
+     * 
+     * @param maxConcurrentHandshakes
+     *            the max concurrent handshakes, or -1 for no limit (the default)
+     */
+    public void setMaxConcurrentHandshakes(int maxConcurrentHandshakes)
+    {
+        this.maxConcurrentHandshakes = maxConcurrentHandshakes;
+    }
+
     /**
      * Set the max idle timeout for new connections.
      * <p>
@@ -352,4 +377,41 @@ public class WebSocketClient extends ContainerLifeCycle
     {
         this.policy.setIdleTimeout(milliseconds);
     }
+
+    private void validate(URI toUri, ClientUpgradeRequest request)
+    {
+        if (!isStarted())
+        {
+            throw new IllegalStateException(WebSocketClient.class.getSimpleName() + "@" + this.hashCode() + " is not started");
+        }
+
+        // Validate websocket URI
+        if (!toUri.isAbsolute())
+        {
+            throw new IllegalArgumentException("WebSocket URI must be absolute");
+        }
+
+        if (StringUtil.isBlank(toUri.getScheme()))
+        {
+            throw new IllegalArgumentException("WebSocket URI must include a scheme");
+        }
+
+        String scheme = toUri.getScheme().toLowerCase(Locale.ENGLISH);
+        if (("ws".equals(scheme) == false) && ("wss".equals(scheme) == false))
+        {
+            throw new IllegalArgumentException("WebSocket URI scheme only supports [ws] and [wss], not [" + scheme + "]");
+        }
+
+        request.setRequestURI(toUri);
+        request.setCookiesFrom(this.cookieStore);
+
+        // Validate Requested Extensions
+        for (ExtensionConfig reqExt : request.getExtensions())
+        {
+            if (!extensionRegistry.isAvailable(reqExt.getName()))
+            {
+                throw new IllegalArgumentException("Requested extension [" + reqExt.getName() + "] is not installed");
+            }
+        }
+    }
 }
@@ -18,6 +18,9 @@
 
 package org.eclipse.jetty.websocket.client.io;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.eclipse.jetty.util.FuturePromise;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
@@ -29,6 +32,9 @@ import org.eclipse.jetty.websocket.common.events.EventDriver;
 
 /**
  * Holder for the pending connect information.
+ * <p>
+ * Also times the connect (from the start of the connect to the TCP connection being established) and the handshake (from then on to the upgrade
+ * response being accepted), and notifies the {@link ConnectionManager} once done, either way.
  */
 public abstract class ConnectPromise extends FuturePromise<Session> implements Runnable
 {
@@ -37,6 +43,10 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
     private final ClientUpgradeRequest request;
     private final Masker masker;
     private ClientUpgradeResponse response;
+    private final AtomicBoolean complete = new AtomicBoolean();
+    private final AtomicBoolean queued = new AtomicBoolean(true);
+    private volatile long connectBegin;
+    private volatile long handshakeBegin;
 
     public ConnectPromise(WebSocketClient client, EventDriver driver, ClientUpgradeRequest request)
     {
@@ -49,6 +59,8 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
     @Override
     public void failed(Throwable cause)
     {
+        onComplete(false);
+
         // Notify websocket of failure to connect
         driver.onError(cause);
 
@@ -56,6 +68,36 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
         super.failed(cause);
     }
 
+    /**
+     * Takes this connect out of the {@link ConnectionManager} queue, either to start it or because it completed while queued.
+     * 
+     * @return whether this connect was still queued
+     */
+    boolean dequeue()
+    {
+        return queued.compareAndSet(true,false);
+    }
+
+    /**
+     * @return whether this connect is waiting in the {@link ConnectionManager} queue
+     */
+    boolean isQueued()
+    {
+        return queued.get();
+    }
+
+    /**
+     * @return the connect latency in microseconds, or -1 if the connection is not established yet
+     */
+    public long getConnectLatency()
+    {
+        if ((connectBegin == 0) || (handshakeBegin == 0))
+        {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(handshakeBegin - connectBegin);
+    }
+
     public WebSocketClient getClient()
     {
         return client;
@@ -81,6 +123,40 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
         return response;
     }
 
+    /**
+     * The physical connection to the remote endpoint is established, the upgrade handshake begins.
+     */
+    public void onConnected()
+    {
+        handshakeBegin = System.nanoTime();
+        long latency = getConnectLatency();
+        if (latency >= 0)
+        {
+            client.getConnectionManager().getConnectLatency().set(latency);
+        }
+    }
+
+    /**
+     * The connect begins.
+     */
+    protected void onConnecting()
+    {
+        connectBegin = System.nanoTime();
+    }
+
+    private void onComplete(boolean success)
+    {
+        if (complete.compareAndSet(false,true))
+        {
+            ConnectionManager manager = client.getConnectionManager();
+            if (success && (handshakeBegin != 0))
+            {
+                manager.getHandshakeLatency().set(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - handshakeBegin));
+            }
+            manager.onConnectComplete(this);
+        }
+    }
+
     public void setResponse(ClientUpgradeResponse response)
     {
         this.response = response;
@@ -88,6 +164,7 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
 
     public void succeeded(WebSocketSession session)
     {
+        onComplete(true);
         session.setUpgradeRequest(request);
         session.setUpgradeResponse(response);
         session.open();
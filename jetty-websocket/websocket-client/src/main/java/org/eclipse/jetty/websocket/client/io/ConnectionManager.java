@@ -27,10 +27,12 @@ import java.util.Collections;
 import java.util.Locale;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.HistogramStatistic;
 import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
@@ -40,6 +42,9 @@ import org.eclipse.jetty.websocket.common.events.EventDriver;
 /**
  * Internal Connection/Client Manager used to track active clients, their physical vs virtual connection information, and provide some means to create new
  * physical or virtual connections.
+ * <p>
+ * Connects are started on the client executor, at most {@link WebSocketClient#getMaxConcurrentHandshakes()} at a time: the other connects wait
+ * for a running one to complete (successfully or not). The connect and handshake latencies are sampled in microseconds.
  */
 public class ConnectionManager extends ContainerLifeCycle
 {
@@ -56,6 +61,7 @@ public class ConnectionManager extends ContainerLifeCycle
         @Override
         public void run()
         {
+            onConnecting();
             try
             {
                 SocketChannel channel = SocketChannel.open();
@@ -129,6 +135,14 @@ public class ConnectionManager extends ContainerLifeCycle
     }
 
     private final Queue<WebSocketSession> sessions = new ConcurrentLinkedQueue<>();
+    /**
+     * Connects that complete while queued are left in the queue, and skipped when polled.
+     */
+    private final Queue<ConnectPromise> pendingConnects = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger activeConnects = new AtomicInteger();
+    private final HistogramStatistic connectLatency = new HistogramStatistic();
+    private final HistogramStatistic handshakeLatency = new HistogramStatistic();
     private final WebSocketClient client;
     private WebSocketClientSelectorManager selector;
 
@@ -173,6 +187,96 @@ public class ConnectionManager extends ContainerLifeCycle
         return new PhysicalConnect(client,driver,request);
     }
 
+    /**
+     * Start the connect, or queue it until a running one completes if the max concurrent handshakes are running.
+     * 
+     * @param promise
+     *            the connect to start
+     */
+    public void execute(ConnectPromise promise)
+    {
+        pendingCount.incrementAndGet();
+        pendingConnects.offer(promise);
+        startConnects();
+    }
+
+    /**
+     * @return the number of connects started and not yet complete
+     */
+    public int getActiveConnects()
+    {
+        return activeConnects.get();
+    }
+
+    /**
+     * @return the latencies, in microseconds, from the start of the connects to the physical connections being established
+     */
+    public HistogramStatistic getConnectLatency()
+    {
+        return connectLatency;
+    }
+
+    /**
+     * @return the latencies, in microseconds, from the physical connections being established to the upgrade responses being accepted
+     */
+    public HistogramStatistic getHandshakeLatency()
+    {
+        return handshakeLatency;
+    }
+
+    /**
+     * @return the number of connects waiting for a running one to complete
+     */
+    public int getPendingConnects()
+    {
+        return pendingCount.get();
+    }
+
+    /**
+     * A connect completed, successfully or not: start a waiting one.
+     * 
+     * @param promise
+     *            the completed connect
+     */
+    void onConnectComplete(ConnectPromise promise)
+    {
+        if (promise.dequeue())
+        {
+            // failed before being started, it will be skipped when polled
+            pendingCount.decrementAndGet();
+            return;
+        }
+        activeConnects.decrementAndGet();
+        startConnects();
+    }
+
+    private void startConnects()
+    {
+        while (!pendingConnects.isEmpty())
+        {
+            int max = client.getMaxConcurrentHandshakes();
+            int active = activeConnects.get();
+            if ((max > 0) && (active >= max))
+            {
+                // a completing connect will start the next one
+                return;
+            }
+            if (!activeConnects.compareAndSet(active,active + 1))
+            {
+                continue;
+            }
+            ConnectPromise promise = pendingConnects.poll();
+            if ((promise == null) || !promise.dequeue())
+            {
+                // taken by another thread, or completed while queued
+                activeConnects.decrementAndGet();
+                continue;
+            }
+            pendingCount.decrementAndGet();
+            client.getExecutor().execute(promise);
+        }
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -187,6 +291,14 @@ public class ConnectionManager extends ContainerLifeCycle
     @Override
     protected void doStop() throws Exception
     {
+        ConnectPromise promise;
+        while ((promise = pendingConnects.poll()) != null)
+        {
+            if (promise.isQueued())
+            {
+                promise.failed(new WebSocketException("Client stopped before connect"));
+            }
+        }
         closeAllConnections();
         sessions.clear();
         super.doStop();
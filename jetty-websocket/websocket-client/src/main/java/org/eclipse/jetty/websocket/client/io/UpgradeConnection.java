@@ -28,6 +28,7 @@ import java.util.concurrent.Executor;
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.FutureCallback;
 import org.eclipse.jetty.util.QuotedStringTokenizer;
@@ -135,10 +136,22 @@ public class UpgradeConnection extends AbstractConnection
         }
     }
 
+    @Override
+    public void onClose()
+    {
+        super.onClose();
+        if (!connectPromise.isDone())
+        {
+            // closed (or timed out) before the upgrade response
+            connectPromise.failed(new UpgradeException(request.getRequestURI(),new EofException("Connection closed before upgrade")));
+        }
+    }
+
     @Override
     public void onOpen()
     {
         super.onOpen();
+        connectPromise.onConnected();
         // TODO: handle timeout
         getExecutor().execute(new SendUpgradeRequest());
     }
@@ -0,0 +1,145 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.client;
+
+import static org.hamcrest.Matchers.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.client.blockhead.BlockheadServer;
+import org.eclipse.jetty.websocket.client.blockhead.BlockheadServer.ServerConnection;
+import org.eclipse.jetty.websocket.client.io.ConnectionManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test of {@link WebSocketClient#connect(List, URI, ClientUpgradeRequest)}
+ */
+@RunWith(AdvancedRunner.class)
+public class BulkConnectTest
+{
+    private BlockheadServer server;
+    private WebSocketClient client;
+
+    @Before
+    public void startClient() throws Exception
+    {
+        client = new WebSocketClient();
+        client.start();
+    }
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = new BlockheadServer();
+        server.start();
+    }
+
+    @After
+    public void stopClient() throws Exception
+    {
+        client.stop();
+    }
+
+    @After
+    public void stopServer() throws Exception
+    {
+        server.stop();
+    }
+
+    private List<String> withoutKey(String request)
+    {
+        List<String> lines = new ArrayList<>();
+        for (String line : request.split("\r\n"))
+        {
+            if (!line.startsWith("Sec-WebSocket-Key:"))
+            {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testRequestsFromTemplateDifferOnlyByKey() throws Exception
+    {
+        ClientUpgradeRequest template = new ClientUpgradeRequest(server.getWsUri());
+        template.setSubProtocols("echo");
+        template.setHeader("X-Load","test");
+
+        ClientUpgradeRequest first = new ClientUpgradeRequest(template);
+        ClientUpgradeRequest second = new ClientUpgradeRequest(template);
+        Assert.assertThat("Keys",first.getKey(),not(second.getKey()));
+
+        String request = first.generate();
+        Assert.assertThat("Request key",request,containsString("Sec-WebSocket-Key: " + first.getKey() + "\r\n"));
+        Assert.assertThat("Request header",request,containsString("X-Load: test\r\n"));
+        Assert.assertThat("Request protocol",request,containsString("Sec-WebSocket-Protocol: echo\r\n"));
+        Assert.assertThat("Other lines",withoutKey(second.generate()),is(withoutKey(request)));
+        Assert.assertThat("Same as template",withoutKey(template.generate()),is(withoutKey(request)));
+    }
+
+    @Test
+    public void testBulkConnectIsBoundedByMaxConcurrentHandshakes() throws Exception
+    {
+        int count = 5;
+        client.setMaxConcurrentHandshakes(2);
+        List<TrackingSocket> sockets = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            sockets.add(new TrackingSocket());
+        }
+
+        ConnectionManager manager = client.getConnectionManager();
+        List<Future<Session>> futures = client.connect(sockets,server.getWsUri(),new ClientUpgradeRequest());
+        Assert.assertThat("Futures",futures.size(),is(count));
+        Assert.assertThat("Pending connects",manager.getPendingConnects(),is(count - 2));
+        Assert.assertThat("Active connects",manager.getActiveConnects(),is(2));
+
+        for (int i = 0; i < count; i++)
+        {
+            ServerConnection connection = server.accept();
+            Assert.assertThat("Active connects",manager.getActiveConnects(),lessThanOrEqualTo(2));
+            connection.upgrade();
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            Session session = futures.get(i).get(1,TimeUnit.SECONDS);
+            Assert.assertThat("Session.open",session.isOpen(),is(true));
+            sockets.get(i).assertWasOpened();
+        }
+
+        Assert.assertThat("Pending connects",manager.getPendingConnects(),is(0));
+        Assert.assertThat("Active connects",manager.getActiveConnects(),is(0));
+        Assert.assertThat("Connect latency samples",manager.getConnectLatency().getCount(),is((long)count));
+        Assert.assertThat("Handshake latency samples",manager.getHandshakeLatency().getCount(),is((long)count));
+        Assert.assertThat("Sessions",manager.getSessions().size(),is(count));
+    }
+}
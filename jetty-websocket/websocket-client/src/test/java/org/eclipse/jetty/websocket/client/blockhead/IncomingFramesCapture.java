@@ -130,7 +130,7 @@ public class IncomingFramesCapture implements IncomingFrames
     @Override
     public void incomingFrame(Frame frame)
     {
-        WebSocketFrame copy = new WebSocketFrame(frame);
+        WebSocketFrame copy = WebSocketFrame.copy(frame);
         Assert.assertThat("frame.masking must be set",frame.isMasked(),is(true));
         frames.add(copy);
     }
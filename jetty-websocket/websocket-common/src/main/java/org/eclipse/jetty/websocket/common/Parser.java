@@ -68,6 +68,8 @@ public class Parser
     private byte lastDataOpcode;
     // payload specific
     private ByteBuffer payload;
+    /** the accumulated payload of the frame being notified, to be released once notified */
+    private ByteBuffer notifiedPayload;
     private int payloadLength;
     private PayloadProcessor maskProcessor = new DeMaskProcessor();
     private PayloadProcessor strictnessProcessor;
@@ -234,7 +236,15 @@ public class Parser
             while (parseFrame(buffer))
             {
                 LOG.debug("{} Parsed Frame: {}",policy.getBehavior(),frame);
-                notifyFrame(frame);
+                try
+                {
+                    notifyFrame(frame);
+                }
+                finally
+                {
+                    // the frame payload is only valid during the notification
+                    releaseNotifiedPayload();
+                }
                 if (frame.isDataFrame() && frame.isFin())
                 {
                     priorDataFrame = null;
@@ -248,13 +258,13 @@ public class Parser
         catch (WebSocketException e)
         {
             buffer.position(buffer.limit()); // consume remaining
-            this.payload = null; // reset
+            releasePayloads(); // reset
             notifyWebSocketException(e);
         }
         catch (Throwable t)
         {
             buffer.position(buffer.limit()); // consume remaining
-            this.payload = null; // reset
+            releasePayloads(); // reset
             notifyWebSocketException(new WebSocketException(t));
         }
     }
@@ -536,6 +546,10 @@ public class Parser
 
     /**
      * Implementation specific parsing of a payload
+     * <p>
+     * When the whole payload is available in the network buffer, it is unmasked and validated in place, and the frame payload is a slice of the
+     * network buffer (only valid until the frame has been notified). Otherwise the payload is accumulated into a buffer from the
+     * {@link ByteBufferPool}, released once the frame has been notified.
      * 
      * @param buffer
      *            the payload buffer
@@ -548,6 +562,26 @@ public class Parser
             return true;
         }
 
+        if ((payload == null) && (buffer.remaining() >= payloadLength))
+        {
+            frame.assertValid();
+
+            // The whole payload is here, no need to copy it
+            ByteBuffer window = buffer.slice();
+            window.limit(payloadLength);
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Window: {}",BufferUtil.toDetailString(window));
+            }
+
+            maskProcessor.process(window);
+            strictnessProcessor.process(window);
+            frame.setPayload(window);
+            buffer.position(buffer.position() + payloadLength); // update incoming buffer position
+            return true;
+        }
+
         while (buffer.hasRemaining())
         {
             if (payload == null)
@@ -581,6 +615,7 @@ public class Parser
             {
                 BufferUtil.flipToFlush(payload,0);
                 frame.setPayload(payload);
+                this.notifiedPayload = payload;
                 this.payload = null;
                 return true;
             }
@@ -588,6 +623,28 @@ public class Parser
         return false;
     }
 
+    private void releaseNotifiedPayload()
+    {
+        if (notifiedPayload != null)
+        {
+            bufferPool.release(notifiedPayload);
+            notifiedPayload = null;
+        }
+    }
+
+    /**
+     * Return the accumulated payload buffers to the {@link ByteBufferPool}.
+     */
+    private void releasePayloads()
+    {
+        releaseNotifiedPayload();
+        if (payload != null)
+        {
+            bufferPool.release(payload);
+            payload = null;
+        }
+    }
+
     public void setIncomingFramesHandler(IncomingFrames incoming)
     {
         this.incomingFramesHandler = incoming;
@@ -0,0 +1,236 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
+import org.eclipse.jetty.websocket.common.io.AbstractWebSocketConnection;
+import org.eclipse.jetty.websocket.common.io.SharedFrameBuffer;
+
+/**
+ * Sends the same message to many {@link WebSocketSession}s.
+ * <p>
+ * The frame is generated once into a {@link SharedFrameBuffer}, whose bytes are written as is to every session that can accept them: server sessions
+ * (whose frames are not masked) without negotiated extensions. Other sessions are sent a copy of the frame through their regular outgoing path.
+ * <p>
+ * Sessions that have more than {@link #getMaxQueueSize()} frames waiting to be written are slow consumers, and are handled according to the
+ * {@link SlowConsumerPolicy}.
+ */
+public class WebSocketBroadcaster
+{
+    /**
+     * What to do with sessions that do not keep up with the broadcast rate.
+     */
+    public static enum SlowConsumerPolicy
+    {
+        /** Skip the message for the slow session */
+        DROP,
+        /** Close the slow session */
+        CLOSE
+    }
+
+    private static final Logger LOG = Log.getLogger(WebSocketBroadcaster.class);
+
+    private final Generator generator;
+    private int maxQueueSize = -1;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP;
+
+    public WebSocketBroadcaster(ByteBufferPool bufferPool)
+    {
+        this.generator = new Generator(WebSocketPolicy.newServerPolicy(),bufferPool);
+    }
+
+    /**
+     * Send a binary message to all the sessions.
+     *
+     * @param sessions
+     *            the sessions to send the message to
+     * @param data
+     *            the message (not modified)
+     * @param callback
+     *            the callback notified of the write result of each session (may be null)
+     * @return the number of sessions the message was sent to
+     */
+    public int broadcast(Iterable<WebSocketSession> sessions, ByteBuffer data, WriteCallback callback)
+    {
+        return broadcast(sessions,WebSocketFrame.binary().setPayload(data.slice()),callback);
+    }
+
+    /**
+     * Send a text message to all the sessions.
+     *
+     * @param sessions
+     *            the sessions to send the message to
+     * @param text
+     *            the message
+     * @param callback
+     *            the callback notified of the write result of each session (may be null)
+     * @return the number of sessions the message was sent to
+     */
+    public int broadcast(Iterable<WebSocketSession> sessions, String text, WriteCallback callback)
+    {
+        return broadcast(sessions,WebSocketFrame.text(text),callback);
+    }
+
+    /**
+     * Send a frame to all the sessions.
+     *
+     * @param sessions
+     *            the sessions to send the frame to
+     * @param frame
+     *            the (unmasked) frame
+     * @param callback
+     *            the callback notified of the write result of each session (may be null)
+     * @return the number of sessions the frame was sent to
+     */
+    public int broadcast(Iterable<WebSocketSession> sessions, WebSocketFrame frame, WriteCallback callback)
+    {
+        SharedFrameBuffer shared = null;
+        int count = 0;
+        try
+        {
+            for (WebSocketSession session : sessions)
+            {
+                if (!session.isOpen())
+                {
+                    continue;
+                }
+
+                if (isSlowConsumer(session))
+                {
+                    LOG.debug("Slow consumer {}: {}",slowConsumerPolicy,session);
+                    if (slowConsumerPolicy == SlowConsumerPolicy.CLOSE)
+                    {
+                        session.getConnection().close(StatusCode.POLICY_VIOLATION,"Slow consumer");
+                    }
+                    continue;
+                }
+
+                AbstractWebSocketConnection connection = getSharableConnection(session);
+                if (connection == null)
+                {
+                    // The frame is generated by the session itself
+                    session.getOutgoingHandler().outgoingFrame(copy(frame),callback);
+                    ++count;
+                    continue;
+                }
+
+                if (shared == null)
+                {
+                    shared = new SharedFrameBuffer(generator,copy(frame));
+                }
+                if (connection.outgoingFrame(shared,callback))
+                {
+                    ++count;
+                }
+            }
+        }
+        finally
+        {
+            // Release the creation reference, the connections hold their own
+            if (shared != null)
+            {
+                shared.release();
+            }
+        }
+        return count;
+    }
+
+    private WebSocketFrame copy(WebSocketFrame frame)
+    {
+        ByteBuffer payload = frame.getPayload();
+        if (payload == null)
+        {
+            return new WebSocketFrame(frame);
+        }
+        return new WebSocketFrame(frame,payload.slice());
+    }
+
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
+    /**
+     * Get the connection the shared frame bytes can be written to, if the session allows it.
+     */
+    private AbstractWebSocketConnection getSharableConnection(WebSocketSession session)
+    {
+        LogicalConnection logical = session.getConnection();
+        if (!(logical instanceof AbstractWebSocketConnection))
+        {
+            return null;
+        }
+        AbstractWebSocketConnection connection = (AbstractWebSocketConnection)logical;
+
+        // Client frames must be masked, with a different mask for each frame
+        if (connection.getPolicy().getBehavior() != WebSocketBehavior.SERVER)
+        {
+            return null;
+        }
+
+        // Extensions may modify the frames
+        OutgoingFrames outgoing = session.getOutgoingHandler();
+        if (outgoing instanceof ExtensionStack)
+        {
+            ExtensionStack stack = (ExtensionStack)outgoing;
+            if (stack.hasNegotiatedExtensions())
+            {
+                return null;
+            }
+            outgoing = stack.getNextOutgoing();
+        }
+        return (outgoing == connection)?connection:null;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy()
+    {
+        return slowConsumerPolicy;
+    }
+
+    private boolean isSlowConsumer(WebSocketSession session)
+    {
+        return (maxQueueSize >= 0) && (session.getOutgoingQueueSize() > maxQueueSize);
+    }
+
+    /**
+     * Set the maximum number of frames that can be waiting to be written to a session before it is considered a slow consumer.
+     *
+     * @param maxQueueSize
+     *            the max queue size, or -1 for no limit (the default)
+     */
+    public void setMaxQueueSize(int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy)
+    {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+}
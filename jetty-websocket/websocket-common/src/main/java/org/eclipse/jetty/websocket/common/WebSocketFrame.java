@@ -65,6 +65,28 @@ public class WebSocketFrame implements Frame
         return new WebSocketFrame(OpCode.BINARY).setPayload(buf);
     }
 
+    /**
+     * Copy a frame, including its payload bytes.
+     * <p>
+     * The payload of the frames notified by the {@link Parser} is only valid during the notification, frames kept for longer must be copied.
+     * 
+     * @param original
+     *            the frame to copy
+     * @return the copy, with its own payload
+     */
+    public static WebSocketFrame copy(Frame original)
+    {
+        WebSocketFrame copy = new WebSocketFrame(original);
+        ByteBuffer payload = original.getPayload();
+        if (payload != null)
+        {
+            ByteBuffer bytes = ByteBuffer.allocate(payload.remaining());
+            bytes.put(payload.slice()).flip();
+            copy.setPayload(bytes);
+        }
+        return copy;
+    }
+
     public static WebSocketFrame ping()
     {
         return new WebSocketFrame(OpCode.PING);
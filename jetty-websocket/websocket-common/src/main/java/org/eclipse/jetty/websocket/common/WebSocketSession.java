@@ -48,6 +48,7 @@ import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
 import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
 import org.eclipse.jetty.websocket.common.events.EventDriver;
+import org.eclipse.jetty.websocket.common.io.AbstractWebSocketConnection;
 
 @ManagedObject
 public class WebSocketSession extends ContainerLifeCycle implements Session, IncomingFrames
@@ -98,6 +99,16 @@ public class WebSocketSession extends ContainerLifeCycle implements Session, Inc
         }
     }
 
+    /**
+     * The frames parsed from a network read are about to be delivered.
+     * 
+     * @see EventDriver#beginBatch()
+     */
+    public void beginBatch()
+    {
+        websocket.beginBatch();
+    }
+
     @Override
     public void close() throws IOException
     {
@@ -154,6 +165,16 @@ public class WebSocketSession extends ContainerLifeCycle implements Session, Inc
         }
     }
 
+    /**
+     * All the frames parsed from a network read have been delivered.
+     * 
+     * @see EventDriver#endBatch()
+     */
+    public void endBatch()
+    {
+        websocket.endBatch();
+    }
+
     public LogicalConnection getConnection()
     {
         return connection;
@@ -191,6 +212,46 @@ public class WebSocketSession extends ContainerLifeCycle implements Session, Inc
         return maximumMessageSize;
     }
 
+    /**
+     * @return the number of frames that found the outgoing queue full
+     * @see WebSocketPolicy#getOutgoingOverflowPolicy()
+     */
+    @ManagedAttribute(readonly = true)
+    public long getOutgoingOverflows()
+    {
+        if (connection instanceof AbstractWebSocketConnection)
+        {
+            return ((AbstractWebSocketConnection)connection).getOutgoingOverflows();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the payload bytes of the frames waiting to be written to the network
+     */
+    @ManagedAttribute(readonly = true)
+    public long getOutgoingQueuedBytes()
+    {
+        if (connection instanceof AbstractWebSocketConnection)
+        {
+            return ((AbstractWebSocketConnection)connection).getOutgoingQueuedBytes();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of frames waiting to be written to the network
+     */
+    @ManagedAttribute(readonly = true)
+    public int getOutgoingQueueSize()
+    {
+        if (connection instanceof AbstractWebSocketConnection)
+        {
+            return ((AbstractWebSocketConnection)connection).getOutgoingQueueSize();
+        }
+        return 0;
+    }
+
     @ManagedAttribute(readonly = true)
     public OutgoingFrames getOutgoingHandler()
     {
@@ -266,6 +327,19 @@ public class WebSocketSession extends ContainerLifeCycle implements Session, Inc
         incomingHandler.incomingFrame(frame);
     }
 
+    /**
+     * @return true if the connection is hibernating, having been idle for {@link WebSocketPolicy#getHibernateTimeout()}
+     */
+    @ManagedAttribute(readonly = true)
+    public boolean isHibernated()
+    {
+        if (connection instanceof AbstractWebSocketConnection)
+        {
+            return ((AbstractWebSocketConnection)connection).isHibernated();
+        }
+        return false;
+    }
+
     @Override
     public boolean isOpen()
     {
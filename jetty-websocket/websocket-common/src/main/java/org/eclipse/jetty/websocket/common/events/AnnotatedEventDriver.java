@@ -23,10 +23,13 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.nio.ByteBuffer;
 
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.common.CloseInfo;
+import org.eclipse.jetty.websocket.common.LogicalConnection;
+import org.eclipse.jetty.websocket.common.io.AbstractWebSocketConnection;
 import org.eclipse.jetty.websocket.common.message.MessageAppender;
 import org.eclipse.jetty.websocket.common.message.MessageInputStream;
 import org.eclipse.jetty.websocket.common.message.MessageReader;
@@ -76,7 +79,7 @@ public class AnnotatedEventDriver extends EventDriver
         {
             if (events.onBinary.isStreaming())
             {
-                activeMessage = new MessageInputStream(this);
+                activeMessage = new MessageInputStream(this,getBufferPool());
             }
             else
             {
@@ -93,6 +96,16 @@ public class AnnotatedEventDriver extends EventDriver
         }
     }
 
+    private ByteBufferPool getBufferPool()
+    {
+        LogicalConnection connection = (session == null)?null:session.getConnection();
+        if (connection instanceof AbstractWebSocketConnection)
+        {
+            return ((AbstractWebSocketConnection)connection).getBufferPool();
+        }
+        return null;
+    }
+
     @Override
     public void onBinaryMessage(byte[] data)
     {
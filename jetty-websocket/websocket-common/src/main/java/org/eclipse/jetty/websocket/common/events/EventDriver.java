@@ -53,6 +53,24 @@ public abstract class EventDriver implements IncomingFrames
         this.websocket = websocket;
     }
 
+    /**
+     * The frames parsed from a network read are about to be delivered.
+     * <p>
+     * Drivers that deliver the messages in batches collect them until {@link #endBatch()}.
+     */
+    public void beginBatch()
+    {
+        /* messages are delivered one at a time by default */
+    }
+
+    /**
+     * All the frames parsed from a network read have been delivered.
+     */
+    public void endBatch()
+    {
+        /* messages are delivered one at a time by default */
+    }
+
     public WebSocketPolicy getPolicy()
     {
         return policy;
@@ -183,7 +201,7 @@ public abstract class EventDriver implements IncomingFrames
         session.close(statusCode,reason);
     }
 
-    private void unhandled(Throwable t)
+    protected void unhandled(Throwable t)
     {
         LOG.warn("Unhandled Error (closing connection)",t);
 
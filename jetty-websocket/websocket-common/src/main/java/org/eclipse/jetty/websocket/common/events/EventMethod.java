@@ -20,27 +20,57 @@ package org.eclipse.jetty.websocket.common.events;
 
 import java.io.InputStream;
 import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketException;
 
+/**
+ * A method of an annotated WebSocket POJO, called for an event.
+ * <p>
+ * The method is called through a {@link MethodHandle} built once, when the POJO class is scanned, rather than through
+ * {@link Method#invoke(Object, Object...)} for every event. Event arguments not declared by the method (such as the {@link Session}) are dropped
+ * by the handle itself, without copying the arguments. Reflection is only used when the handle cannot be built.
+ */
 public class EventMethod
 {
     private static final Logger LOG = Log.getLogger(EventMethod.class);
-
-    private static Object[] dropFirstArg(Object[] args)
+    /** The max number of leading event arguments a method can leave out (the Session) */
+    private static final int MAX_DROPPED_ARGS = 1;
+
+    /**
+     * Build the invokers of the method, as {@code (Object pojo, Object[] args)void} handles, indexed by the number of leading arguments to drop.
+     * 
+     * @return the invokers, or null if the method is not accessible through a method handle
+     */
+    private static MethodHandle[] newInvokers(Method method, int paramCount)
     {
-        if (args.length == 1)
+        try
         {
-            return new Object[0];
+            MethodHandle target = MethodHandles.lookup().unreflect(method);
+            target = target.asType(MethodType.genericMethodType(paramCount + 1).changeReturnType(void.class));
+            MethodHandle[] invokers = new MethodHandle[MAX_DROPPED_ARGS + 1];
+            for (int dropped = 0; dropped < invokers.length; dropped++)
+            {
+                Class<?>[] droppedTypes = new Class<?>[dropped];
+                Arrays.fill(droppedTypes,Object.class);
+                MethodHandle invoker = MethodHandles.dropArguments(target,1,droppedTypes);
+                invokers[dropped] = invoker.asSpreader(Object[].class,paramCount + dropped);
+            }
+            return invokers;
+        }
+        catch (IllegalAccessException e)
+        {
+            LOG.debug("Using reflection for {}: {}",method,e.getMessage());
+            return null;
         }
-        Object ret[] = new Object[args.length - 1];
-        System.arraycopy(args,1,ret,0,ret.length);
-        return ret;
     }
 
     protected Class<?> pojo;
@@ -48,12 +78,14 @@ public class EventMethod
     private boolean hasSession = false;
     private boolean isStreaming = false;
     private Class<?>[] paramTypes;
+    private MethodHandle[] invokers;
 
     public EventMethod(Class<?> pojo, Method method)
     {
         this.pojo = pojo;
         this.paramTypes = method.getParameterTypes();
         this.method = method;
+        this.invokers = newInvokers(method,paramTypes.length);
         identifyPresentParamTypes();
     }
 
@@ -64,6 +96,7 @@ public class EventMethod
             this.pojo = pojo;
             this.paramTypes = paramTypes;
             this.method = pojo.getMethod(methodName,paramTypes);
+            this.invokers = newInvokers(method,paramTypes.length);
             identifyPresentParamTypes();
         }
         catch (NoSuchMethodException | SecurityException e)
@@ -85,29 +118,51 @@ public class EventMethod
             LOG.warn("Cannot call {} on null object",this.method);
             return;
         }
-        if (args.length > paramTypes.length)
-        {
-            Object trimArgs[] = dropFirstArg(args);
-            call(obj,trimArgs);
-            return;
-        }
         if (args.length < paramTypes.length)
         {
             throw new IllegalArgumentException("Call arguments length [" + args.length + "] must always be greater than or equal to captured args length ["
                     + paramTypes.length + "]");
         }
 
+        int dropped = args.length - paramTypes.length;
+        if ((invokers != null) && (dropped < invokers.length))
+        {
+            invoke(invokers[dropped],obj,args);
+            return;
+        }
+
+        // the leading arguments are not declared by the method
+        Object callArgs[] = (dropped == 0)?args:Arrays.copyOfRange(args,dropped,args.length);
+        if (invokers != null)
+        {
+            invoke(invokers[0],obj,callArgs);
+            return;
+        }
+
         try
         {
-            this.method.invoke(obj,args);
+            this.method.invoke(obj,callArgs);
         }
         catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e)
         {
-            String err = String.format("Cannot call method %s on %s with args: %s",method,pojo,args);
+            String err = String.format("Cannot call method %s on %s with args: %s",method,pojo,Arrays.toString(callArgs));
             throw new WebSocketException(err,e);
         }
     }
 
+    private void invoke(MethodHandle invoker, Object obj, Object[] args)
+    {
+        try
+        {
+            invoker.invokeExact(obj,args);
+        }
+        catch (Throwable t)
+        {
+            String err = String.format("Cannot call method %s on %s with args: %s",method,pojo,Arrays.toString(args));
+            throw new WebSocketException(err,t);
+        }
+    }
+
     protected Method getMethod()
     {
         return method;
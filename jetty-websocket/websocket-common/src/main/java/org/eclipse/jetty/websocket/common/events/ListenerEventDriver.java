@@ -20,9 +20,12 @@ package org.eclipse.jetty.websocket.common.events;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.WebSocketBatchListener;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
@@ -33,11 +36,17 @@ import org.eclipse.jetty.websocket.common.message.SimpleTextMessage;
 
 /**
  * Handler for {@link WebSocketListener} based User WebSocket implementations.
+ * <p>
+ * The messages of a {@link WebSocketBatchListener} are collected between {@link #beginBatch()} and {@link #endBatch()}, and delivered together.
+ * Messages received outside of a batch (for example by a session not attached to a network connection) are delivered in a batch of their own.
  */
 public class ListenerEventDriver extends EventDriver
 {
     private static final Logger LOG = Log.getLogger(ListenerEventDriver.class);
     private final WebSocketListener listener;
+    private final WebSocketBatchListener batchListener;
+    private List<Object> batch;
+    private boolean batching;
     private MessageAppender activeMessage;
     private boolean hasCloseBeenCalled = false;
 
@@ -45,6 +54,55 @@ public class ListenerEventDriver extends EventDriver
     {
         super(policy,listener);
         this.listener = listener;
+        this.batchListener = (listener instanceof WebSocketBatchListener)?(WebSocketBatchListener)listener:null;
+    }
+
+    @Override
+    public void beginBatch()
+    {
+        batching = (batchListener != null);
+    }
+
+    private void batch(Object message)
+    {
+        if (batch == null)
+        {
+            batch = new ArrayList<>();
+        }
+        batch.add(message);
+        if (!batching)
+        {
+            deliverBatch();
+        }
+    }
+
+    private void deliverBatch()
+    {
+        List<Object> messages = batch;
+        if (messages == null)
+        {
+            return;
+        }
+        // the list is handed over to the listener
+        batch = null;
+        batchListener.onWebSocketBatch(messages);
+    }
+
+    @Override
+    public void endBatch()
+    {
+        if (batching)
+        {
+            batching = false;
+            try
+            {
+                deliverBatch();
+            }
+            catch (Throwable t)
+            {
+                unhandled(t);
+            }
+        }
     }
 
     @Override
@@ -67,6 +125,11 @@ public class ListenerEventDriver extends EventDriver
     @Override
     public void onBinaryMessage(byte[] data)
     {
+        if (batchListener != null)
+        {
+            batch(data);
+            return;
+        }
         listener.onWebSocketBinary(data,0,data.length);
     }
 
@@ -80,6 +143,9 @@ public class ListenerEventDriver extends EventDriver
         }
         hasCloseBeenCalled = true;
 
+        // the messages received before the close are notified first
+        endBatch();
+
         int statusCode = close.getStatusCode();
         String reason = close.getReason();
         listener.onWebSocketClose(statusCode,reason);
@@ -95,6 +161,7 @@ public class ListenerEventDriver extends EventDriver
     @Override
     public void onError(Throwable cause)
     {
+        endBatch();
         listener.onWebSocketError(cause);
     }
 
@@ -124,6 +191,11 @@ public class ListenerEventDriver extends EventDriver
     @Override
     public void onTextMessage(String message)
     {
+        if (batchListener != null)
+        {
+            batch(message);
+            return;
+        }
         listener.onWebSocketText(message);
     }
 }
@@ -107,6 +107,26 @@ public abstract class AbstractExtension extends ContainerLifeCycle implements Ex
         return policy;
     }
 
+    /**
+     * The connection is idle: release the resources that can be rebuilt on the next frame.
+     * <p>
+     * Called outside of the processing of frames, but possibly concurrently with a new frame.
+     */
+    public void hibernate()
+    {
+        /* nothing to release by default */
+    }
+
+    /**
+     * The connection is closed: release the resources kept across frames.
+     * <p>
+     * Called once no more frames are expected, but possibly concurrently with a last incoming frame.
+     */
+    public void close()
+    {
+        /* nothing to release by default */
+    }
+
     @Override
     public void incomingError(WebSocketException e)
     {
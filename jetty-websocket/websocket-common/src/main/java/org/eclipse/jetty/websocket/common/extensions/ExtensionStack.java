@@ -191,6 +191,46 @@ public class ExtensionStack extends ContainerLifeCycle implements IncomingFrames
         return (this.extensions != null) && (this.extensions.size() > 0);
     }
 
+    /**
+     * The connection is idle: let the extensions release the resources that can be rebuilt on the next frame.
+     * 
+     * @see AbstractExtension#hibernate()
+     */
+    public void hibernate()
+    {
+        if (extensions == null)
+        {
+            return;
+        }
+        for (Extension ext : extensions)
+        {
+            if (ext instanceof AbstractExtension)
+            {
+                ((AbstractExtension)ext).hibernate();
+            }
+        }
+    }
+
+    /**
+     * The connection is closed: let the extensions release the resources they keep across frames.
+     * 
+     * @see AbstractExtension#close()
+     */
+    public void close()
+    {
+        if (extensions == null)
+        {
+            return;
+        }
+        for (Extension ext : extensions)
+        {
+            if (ext instanceof AbstractExtension)
+            {
+                ((AbstractExtension)ext).close();
+            }
+        }
+    }
+
     @Override
     public void incomingError(WebSocketException e)
     {
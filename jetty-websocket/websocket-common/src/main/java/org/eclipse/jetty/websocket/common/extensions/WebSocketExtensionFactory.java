@@ -25,8 +25,10 @@ import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.extensions.Extension;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
+import org.eclipse.jetty.websocket.common.extensions.compress.DeflaterPool;
 import org.eclipse.jetty.websocket.common.extensions.compress.FrameCompressionExtension;
 import org.eclipse.jetty.websocket.common.extensions.compress.MessageCompressionExtension;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
 import org.eclipse.jetty.websocket.common.extensions.fragment.FragmentExtension;
 import org.eclipse.jetty.websocket.common.extensions.identity.IdentityExtension;
 
@@ -34,6 +36,8 @@ public class WebSocketExtensionFactory extends ExtensionFactory
 {
     private WebSocketPolicy policy;
     private ByteBufferPool bufferPool;
+    private DeflaterPool deflaterPool = new DeflaterPool();
+    private boolean deflateNoContextTakeover;
 
     public WebSocketExtensionFactory(WebSocketPolicy policy, ByteBufferPool bufferPool)
     {
@@ -43,12 +47,26 @@ public class WebSocketExtensionFactory extends ExtensionFactory
 
         register("identity",IdentityExtension.class);
         register("fragment",FragmentExtension.class);
+        register(PerMessageDeflateExtension.NAME,PerMessageDeflateExtension.class);
         /* FIXME: Disabled due to bug report - http://bugs.eclipse.org/395444 
          * register("x-webkit-deflate-frame",FrameCompressionExtension.class);
          * register("permessage-compress",MessageCompressionExtension.class);
          */
     }
 
+    /**
+     * @return the pool of deflaters and inflaters of the {@link PerMessageDeflateExtension}s
+     */
+    public DeflaterPool getDeflaterPool()
+    {
+        return deflaterPool;
+    }
+
+    public boolean isDeflateNoContextTakeover()
+    {
+        return deflateNoContextTakeover;
+    }
+
     @Override
     public Extension newInstance(ExtensionConfig config)
     {
@@ -75,9 +93,20 @@ public class WebSocketExtensionFactory extends ExtensionFactory
             if (ext instanceof AbstractExtension)
             {
                 AbstractExtension aext = (AbstractExtension)ext;
-                aext.setConfig(config);
                 aext.setPolicy(policy);
                 aext.setBufferPool(bufferPool);
+                if (ext instanceof PerMessageDeflateExtension)
+                {
+                    PerMessageDeflateExtension deflate = (PerMessageDeflateExtension)ext;
+                    deflate.setDeflaterPool(deflaterPool);
+                    deflate.setNoContextTakeover(deflateNoContextTakeover);
+                }
+                aext.setConfig(config);
+                if ((ext instanceof PerMessageDeflateExtension) && !((PerMessageDeflateExtension)ext).isAcceptable())
+                {
+                    // Decline the offer
+                    return null;
+                }
             }
             return ext;
         }
@@ -86,4 +115,25 @@ public class WebSocketExtensionFactory extends ExtensionFactory
             throw new WebSocketException("Cannot instantiate extension: " + extClass,e);
         }
     }
+
+    /**
+     * Set the pool of deflaters and inflaters of the {@link PerMessageDeflateExtension}s, which also sets the compression level.
+     * 
+     * @param deflaterPool
+     *            the pool
+     */
+    public void setDeflaterPool(DeflaterPool deflaterPool)
+    {
+        this.deflaterPool = deflaterPool;
+    }
+
+    /**
+     * @param deflateNoContextTakeover
+     *            true if the {@link PerMessageDeflateExtension}s do not keep their compression context across messages, pooling their deflaters
+     * @see PerMessageDeflateExtension#setNoContextTakeover(boolean)
+     */
+    public void setDeflateNoContextTakeover(boolean deflateNoContextTakeover)
+    {
+        this.deflateNoContextTakeover = deflateNoContextTakeover;
+    }
 }
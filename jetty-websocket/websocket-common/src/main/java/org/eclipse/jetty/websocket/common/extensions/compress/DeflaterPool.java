@@ -0,0 +1,181 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * A pool of raw (nowrap) {@link Deflater}s and {@link Inflater}s, shared by the connections.
+ * <p>
+ * Each deflater and inflater holds a large native context, so the connections that do not keep the compression context across messages
+ * (no context takeover) borrow one for the duration of a message only.
+ */
+@ManagedObject("Pool of Deflaters and Inflaters")
+public class DeflaterPool
+{
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger deflaterCount = new AtomicInteger();
+    private final AtomicInteger inflaterCount = new AtomicInteger();
+    private final int compressionLevel;
+    private final int capacity;
+
+    public DeflaterPool()
+    {
+        this(Deflater.DEFAULT_COMPRESSION,DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param compressionLevel
+     *            the compression level of the deflaters, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     *            {@link Deflater#DEFAULT_COMPRESSION}
+     * @param capacity
+     *            the max number of idle deflaters (and inflaters) kept in the pool
+     */
+    public DeflaterPool(int compressionLevel, int capacity)
+    {
+        if ((compressionLevel != Deflater.DEFAULT_COMPRESSION) && ((compressionLevel < Deflater.NO_COMPRESSION) || (compressionLevel > Deflater.BEST_COMPRESSION)))
+        {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        this.capacity = capacity;
+    }
+
+    public Deflater acquireDeflater()
+    {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null)
+        {
+            return new Deflater(compressionLevel,true);
+        }
+        deflaterCount.decrementAndGet();
+        return deflater;
+    }
+
+    public Inflater acquireInflater()
+    {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null)
+        {
+            return new Inflater(true);
+        }
+        inflaterCount.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Release the native resources of the idle deflaters and inflaters.
+     */
+    public void clear()
+    {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null)
+        {
+            deflaterCount.decrementAndGet();
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null)
+        {
+            inflaterCount.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    @ManagedAttribute("The max number of idle deflaters (and inflaters)")
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @ManagedAttribute("The compression level of the deflaters")
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    @ManagedAttribute("The number of idle deflaters")
+    public int getIdleDeflaters()
+    {
+        return deflaterCount.get();
+    }
+
+    @ManagedAttribute("The number of idle inflaters")
+    public int getIdleInflaters()
+    {
+        return inflaterCount.get();
+    }
+
+    /**
+     * Return a deflater to the pool, resetting its compression context.
+     * 
+     * @param deflater
+     *            the deflater, acquired from this pool
+     */
+    public void release(Deflater deflater)
+    {
+        deflater.reset();
+        if (deflaterCount.incrementAndGet() <= capacity)
+        {
+            deflaters.offer(deflater);
+        }
+        else
+        {
+            deflaterCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Return an inflater to the pool, resetting its decompression context.
+     * 
+     * @param inflater
+     *            the inflater, acquired from this pool
+     */
+    public void release(Inflater inflater)
+    {
+        inflater.reset();
+        if (inflaterCount.incrementAndGet() <= capacity)
+        {
+            inflaters.offer(inflater);
+        }
+        else
+        {
+            inflaterCount.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[level=%d,deflaters=%d,inflaters=%d]",getClass().getSimpleName(),hashCode(),compressionLevel,deflaterCount.get(),
+                inflaterCount.get());
+    }
+}
@@ -0,0 +1,583 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.BadPayloadException;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
+
+/**
+ * Per Message Deflate extension for WebSocket.
+ * <p>
+ * Attempts to follow <a href="https://tools.ietf.org/html/draft-ietf-hybi-permessage-compression-10">draft-ietf-hybi-permessage-compression-10</a>
+ * (the "permessage-deflate" extension).
+ * <p>
+ * The context takeover parameters are negotiated: when the compression (or decompression) context is not kept across messages, the
+ * {@link Deflater} (or {@link Inflater}) is borrowed from the {@link DeflaterPool} for the duration of a message only. The
+ * <code>java.util.zip</code> deflater always uses a 32K (15 bits) LZ77 window, so offers that require a smaller window for our compressor are
+ * declined, while any window size is accepted for the remote compressor.
+ * <p>
+ * The compressed and decompressed bytes are written directly into buffers from the {@link ByteBufferPool}.
+ * <p>
+ * When the connection {@link #hibernate() hibernates}, the {@link Deflater} is returned to the pool even if the compression context is kept across
+ * messages: the next message is compressed with a new deflater, whose output does not refer to the previous messages, and that the remote
+ * decompressor reads as a continuation of its stream. The {@link Inflater} must be kept though, as the remote compressor may refer to the previous
+ * messages.
+ * <p>
+ * When the connection is {@link #close() closed}, both are released.
+ * <p>
+ * The deflater and the inflater are guarded by the lock of this extension, so that neither is released while a frame is being compressed or
+ * decompressed. The decompressed frames are notified outside of the lock.
+ */
+public class PerMessageDeflateExtension extends AbstractExtension
+{
+    /**
+     * Releases the compressed payload to the pool once written.
+     */
+    private class ReleaseCallback implements WriteCallback
+    {
+        private final ByteBuffer buffer;
+        private final WriteCallback callback;
+
+        private ReleaseCallback(ByteBuffer buffer, WriteCallback callback)
+        {
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+
+        @Override
+        public void writeFailed(Throwable x)
+        {
+            getBufferPool().release(buffer);
+            if (callback != null)
+            {
+                callback.writeFailed(x);
+            }
+        }
+
+        @Override
+        public void writeSuccess()
+        {
+            getBufferPool().release(buffer);
+            if (callback != null)
+            {
+                callback.writeSuccess();
+            }
+        }
+    }
+
+    public static final String NAME = "permessage-deflate";
+    public static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    public static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    public static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    public static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+    private static final Logger LOG = Log.getLogger(PerMessageDeflateExtension.class);
+    /** The LZ77 window of java.util.zip */
+    private static final int WINDOW_BITS = 15;
+    /** The end of a SYNC_FLUSH, removed from the end of the compressed messages */
+    private static final byte[] TAIL_BYTES = new byte[]
+    { 0x00, 0x00, (byte)0xFF, (byte)0xFF };
+
+    private DeflaterPool deflaterPool;
+    private boolean closed;
+    private boolean noContextTakeover;
+    private boolean acceptable = true;
+    private boolean outgoingContextTakeover = true;
+    private boolean incomingContextTakeover = true;
+    private Deflater deflater;
+    private boolean outgoingFragmented;
+    private Inflater inflater;
+    private boolean incomingCompressed;
+    private int incomingMessageSize;
+
+    private ByteBuffer acquire(int size)
+    {
+        ByteBuffer buffer = getBufferPool().acquire(size,false);
+        BufferUtil.clearToFill(buffer);
+        return buffer;
+    }
+
+    /**
+     * Compress the payload of a frame.
+     * 
+     * @return a pooled buffer (in flush mode), released once written
+     */
+    private ByteBuffer compress(ByteBuffer payload, boolean fin)
+    {
+        ByteBuffer input = null;
+        int length = (payload == null)?0:payload.remaining();
+        if (length > 0)
+        {
+            if (payload.hasArray())
+            {
+                deflater.setInput(payload.array(),payload.arrayOffset() + payload.position(),length);
+            }
+            else
+            {
+                input = acquire(length);
+                input.put(payload.slice());
+                deflater.setInput(input.array(),input.arrayOffset(),length);
+            }
+        }
+
+        // room for stored blocks, in the worst case
+        ByteBuffer buffer = acquire(length + (((length / 16383) + 2) * 5) + 16);
+        try
+        {
+            while (true)
+            {
+                int written = deflater.deflate(buffer.array(),buffer.arrayOffset() + buffer.position(),buffer.remaining(),Deflater.SYNC_FLUSH);
+                buffer.position(buffer.position() + written);
+                if (buffer.hasRemaining())
+                {
+                    // the input has been consumed, and the output flushed
+                    break;
+                }
+                buffer = grow(buffer);
+            }
+        }
+        finally
+        {
+            if (input != null)
+            {
+                getBufferPool().release(input);
+            }
+        }
+        BufferUtil.flipToFlush(buffer,0);
+
+        if (fin && endsWithTail(buffer))
+        {
+            buffer.limit(buffer.limit() - TAIL_BYTES.length);
+        }
+        return buffer;
+    }
+
+    /**
+     * Decompress the payload of a frame.
+     * 
+     * @return a pooled buffer (in flush mode), to be released once the frame has been notified
+     */
+    private ByteBuffer decompress(ByteBuffer payload, boolean fin)
+    {
+        int length = (payload == null)?0:payload.remaining();
+        ByteBuffer buffer = acquire(Math.max(1024,length * 4));
+        ByteBuffer input = null;
+        try
+        {
+            if (length > 0)
+            {
+                if (payload.hasArray())
+                {
+                    inflater.setInput(payload.array(),payload.arrayOffset() + payload.position(),length);
+                }
+                else
+                {
+                    input = acquire(length);
+                    input.put(payload.slice());
+                    inflater.setInput(input.array(),input.arrayOffset(),length);
+                }
+                buffer = inflate(buffer);
+            }
+            if (fin && !inflater.finished())
+            {
+                // the end of the message, removed by the remote compressor
+                inflater.setInput(TAIL_BYTES);
+                buffer = inflate(buffer);
+            }
+        }
+        catch (DataFormatException e)
+        {
+            getBufferPool().release(buffer);
+            throw new BadPayloadException(e);
+        }
+        finally
+        {
+            if (input != null)
+            {
+                getBufferPool().release(input);
+            }
+        }
+
+        if (fin && inflater.finished())
+        {
+            // the remote compressor ended the deflate stream (BFINAL) with the message
+            inflater.reset();
+        }
+        BufferUtil.flipToFlush(buffer,0);
+        return buffer;
+    }
+
+    private boolean endsWithTail(ByteBuffer buffer)
+    {
+        int end = buffer.limit();
+        if (buffer.remaining() < TAIL_BYTES.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < TAIL_BYTES.length; i++)
+        {
+            if (buffer.get((end - TAIL_BYTES.length) + i) != TAIL_BYTES[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the {@link Deflater} to the pool, and release the {@link Inflater}.
+     * <p>
+     * The inflater is ended rather than returned to the pool, since it may be in the middle of a message; the frames received afterwards are
+     * dropped. The frames sent afterwards use a deflater for the duration of a message only.
+     */
+    @Override
+    public synchronized void close()
+    {
+        closed = true;
+        if (deflater != null)
+        {
+            deflaterPool.release(deflater);
+            deflater = null;
+        }
+        if (inflater != null)
+        {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    public DeflaterPool getDeflaterPool()
+    {
+        return deflaterPool;
+    }
+
+    /**
+     * Grow a pooled buffer (in fill mode), releasing the old one.
+     */
+    private ByteBuffer grow(ByteBuffer buffer)
+    {
+        ByteBuffer bigger = acquire(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        getBufferPool().release(buffer);
+        return bigger;
+    }
+
+    /**
+     * Return the {@link Deflater} to the pool, unless a fragmented message is being compressed.
+     */
+    @Override
+    public synchronized void hibernate()
+    {
+        if ((deflater != null) && !outgoingFragmented)
+        {
+            deflaterPool.release(deflater);
+            deflater = null;
+        }
+    }
+
+    @Override
+    public void incomingFrame(Frame frame)
+    {
+        if (frame.getType().isControl())
+        {
+            nextIncomingFrame(frame);
+            return;
+        }
+
+        if (!isContinuation(frame))
+        {
+            // Only the first frame of a compressed message has RSV1 set
+            incomingCompressed = frame.isRsv1();
+            incomingMessageSize = 0;
+        }
+
+        if (!incomingCompressed)
+        {
+            nextIncomingFrame(frame);
+            return;
+        }
+
+        ByteBuffer decompressed;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                // the inflater has been ended
+                LOG.debug("Dropping {} received after close",frame);
+                return;
+            }
+
+            if (inflater == null)
+            {
+                inflater = deflaterPool.acquireInflater();
+            }
+
+            try
+            {
+                decompressed = decompress(frame.getPayload(),frame.isFin());
+            }
+            finally
+            {
+                if (frame.isFin() && !incomingContextTakeover)
+                {
+                    deflaterPool.release(inflater);
+                    inflater = null;
+                }
+            }
+        }
+
+        try
+        {
+            incomingMessageSize += decompressed.remaining();
+            getPolicy().assertValidMessageSize(incomingMessageSize);
+
+            WebSocketFrame out = new WebSocketFrame(frame);
+            out.setPayload(decompressed);
+            out.setRsv1(false);
+            nextIncomingFrame(out);
+        }
+        finally
+        {
+            getBufferPool().release(decompressed);
+        }
+    }
+
+    /**
+     * Inflate the input of the inflater into the buffer (in fill mode), growing it as needed.
+     */
+    private ByteBuffer inflate(ByteBuffer buffer) throws DataFormatException
+    {
+        ByteBuffer output = buffer;
+        while (true)
+        {
+            if (!output.hasRemaining())
+            {
+                getPolicy().assertValidMessageSize(incomingMessageSize + output.position());
+                output = grow(output);
+            }
+            int inflated = inflater.inflate(output.array(),output.arrayOffset() + output.position(),output.remaining());
+            output.position(output.position() + inflated);
+            if (inflated == 0)
+            {
+                if (inflater.needsDictionary())
+                {
+                    throw new DataFormatException("Preset dictionary not supported");
+                }
+                if (inflater.needsInput() || inflater.finished())
+                {
+                    return output;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the negotiated parameters can be honoured
+     */
+    public boolean isAcceptable()
+    {
+        return acceptable;
+    }
+
+    private boolean isContinuation(Frame frame)
+    {
+        return frame.isContinuation() || (frame.getOpCode() == OpCode.CONTINUATION);
+    }
+
+    public boolean isIncomingContextTakeover()
+    {
+        return incomingContextTakeover;
+    }
+
+    /**
+     * @return true if the compression context is not kept across messages, whatever the remote endpoint accepts
+     */
+    public boolean isNoContextTakeover()
+    {
+        return noContextTakeover;
+    }
+
+    public boolean isOutgoingContextTakeover()
+    {
+        return outgoingContextTakeover;
+    }
+
+    /**
+     * Indicates use of RSV1 flag for indicating deflation is in use.
+     */
+    @Override
+    public boolean isRsv1User()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isTextDataDecoder()
+    {
+        // this extension is responsible for text data frames
+        return true;
+    }
+
+    @Override
+    public synchronized void outgoingFrame(Frame frame, WriteCallback callback)
+    {
+        if (frame.getType().isControl())
+        {
+            // skip, cannot compress control frames.
+            nextOutgoingFrame(frame,callback);
+            return;
+        }
+
+        if (deflater == null)
+        {
+            deflater = deflaterPool.acquireDeflater();
+        }
+
+        ByteBuffer compressed = compress(frame.getPayload(),frame.isFin());
+        outgoingFragmented = !frame.isFin();
+        if (frame.isFin() && (!outgoingContextTakeover || closed))
+        {
+            deflaterPool.release(deflater);
+            deflater = null;
+        }
+
+        WebSocketFrame out = new WebSocketFrame(frame);
+        out.setPayload(compressed);
+        // Only the first frame of a compressed message has RSV1 set
+        out.setRsv1(!isContinuation(frame));
+        nextOutgoingFrame(out,new ReleaseCallback(compressed,callback));
+    }
+
+    @Override
+    public void setConfig(ExtensionConfig config)
+    {
+        if (deflaterPool == null)
+        {
+            deflaterPool = new DeflaterPool();
+        }
+
+        if (getPolicy().getBehavior() == WebSocketBehavior.SERVER)
+        {
+            // the config is the offer of the client, reply with the accepted parameters
+            ExtensionConfig response = new ExtensionConfig(config.getName());
+            for (String key : config.getParameterKeys())
+            {
+                String value = config.getParameter(key,(String)null);
+                switch (key)
+                {
+                    case SERVER_NO_CONTEXT_TAKEOVER:
+                        outgoingContextTakeover = false;
+                        break;
+                    case CLIENT_NO_CONTEXT_TAKEOVER:
+                        incomingContextTakeover = false;
+                        response.setParameter(CLIENT_NO_CONTEXT_TAKEOVER,(String)null);
+                        break;
+                    case SERVER_MAX_WINDOW_BITS:
+                        if (!isFullWindow(value))
+                        {
+                            LOG.debug("Declining {}={}",key,value);
+                            acceptable = false;
+                        }
+                        break;
+                    case CLIENT_MAX_WINDOW_BITS:
+                        // any window size of the client compressor can be decompressed
+                        break;
+                    default:
+                        LOG.debug("Declining unknown parameter {}",key);
+                        acceptable = false;
+                        break;
+                }
+            }
+            if (noContextTakeover)
+            {
+                outgoingContextTakeover = false;
+            }
+            if (!outgoingContextTakeover)
+            {
+                response.setParameter(SERVER_NO_CONTEXT_TAKEOVER,(String)null);
+            }
+            super.setConfig(response);
+        }
+        else
+        {
+            // the config is the response of the server
+            incomingContextTakeover = !config.getParameterKeys().contains(SERVER_NO_CONTEXT_TAKEOVER);
+            outgoingContextTakeover = !noContextTakeover && !config.getParameterKeys().contains(CLIENT_NO_CONTEXT_TAKEOVER);
+            if (config.getParameterKeys().contains(CLIENT_MAX_WINDOW_BITS) && !isFullWindow(config.getParameter(CLIENT_MAX_WINDOW_BITS,(String)null)))
+            {
+                LOG.warn("Cannot compress with {}={}",CLIENT_MAX_WINDOW_BITS,config.getParameter(CLIENT_MAX_WINDOW_BITS,(String)null));
+                acceptable = false;
+            }
+            super.setConfig(config);
+        }
+    }
+
+    private boolean isFullWindow(String windowBits)
+    {
+        try
+        {
+            return (windowBits == null) || (Integer.parseInt(windowBits.trim()) >= WINDOW_BITS);
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    public void setDeflaterPool(DeflaterPool deflaterPool)
+    {
+        this.deflaterPool = deflaterPool;
+    }
+
+    /**
+     * Do not keep the compression context across messages, even if the remote endpoint accepts it.
+     * <p>
+     * This trades compression ratio for memory, since the {@link Deflater}s are then pooled between messages.
+     * 
+     * @param noContextTakeover
+     *            true to not keep the compression context across messages
+     */
+    public void setNoContextTakeover(boolean noContextTakeover)
+    {
+        this.noContextTakeover = noContextTakeover;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[outgoingContextTakeover=%b,incomingContextTakeover=%b,pool=%s]",getClass().getSimpleName(),outgoingContextTakeover,
+                incomingContextTakeover,deflaterPool);
+    }
+}
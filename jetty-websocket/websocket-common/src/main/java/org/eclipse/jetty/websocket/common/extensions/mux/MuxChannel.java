@@ -19,6 +19,11 @@
 package org.eclipse.jetty.websocket.common.extensions.mux;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -34,6 +39,7 @@ import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
 import org.eclipse.jetty.websocket.common.CloseInfo;
 import org.eclipse.jetty.websocket.common.ConnectionState;
 import org.eclipse.jetty.websocket.common.LogicalConnection;
+import org.eclipse.jetty.websocket.common.OpCode;
 import org.eclipse.jetty.websocket.common.WebSocketFrame;
 import org.eclipse.jetty.websocket.common.WebSocketSession;
 import org.eclipse.jetty.websocket.common.io.FutureWriteCallback;
@@ -41,9 +47,66 @@ import org.eclipse.jetty.websocket.common.io.IOState;
 
 /**
  * MuxChannel, acts as WebSocketConnection for specific sub-channel.
+ * <p>
+ * Keeps the flow control accounting of the sub-channel: the send quota (how many payload bytes the remote endpoint allows this endpoint to send), and
+ * the receive quota (how many payload bytes the remote endpoint is still allowed to send).
+ * <p>
+ * Outgoing frames are queued in the channel and written by the {@link Muxer}, which fragments them to fit the send quota. The outgoing state is
+ * guarded by the Muxer lock, the incoming state is only accessed by the thread parsing the physical connection.
  */
 public class MuxChannel implements LogicalConnection, IncomingFrames, SuspendToken
 {
+    /**
+     * A queued outgoing frame, and how much of its payload has already been sent.
+     */
+    private static class Entry
+    {
+        private final Frame frame;
+        private final WriteCallback callback;
+        private final ByteBuffer payload;
+        private boolean started;
+
+        private Entry(Frame frame, WriteCallback callback)
+        {
+            this.frame = frame;
+            this.callback = callback;
+            this.payload = frame.hasPayload()?frame.getPayload().slice():null;
+        }
+
+        private int remaining()
+        {
+            return (payload == null)?0:payload.remaining();
+        }
+    }
+
+    /**
+     * A frame (or fragment of a frame) ready to be written on the physical connection.
+     */
+    public static class Fragment
+    {
+        private final Frame frame;
+        private final WriteCallback callback;
+
+        private Fragment(Frame frame, WriteCallback callback)
+        {
+            this.frame = frame;
+            this.callback = callback;
+        }
+
+        /**
+         * @return the callback to notify once the fragment is written, null for all but the last fragment of a frame
+         */
+        public WriteCallback getCallback()
+        {
+            return callback;
+        }
+
+        public Frame getFrame()
+        {
+            return frame;
+        }
+    }
+
     private static final Logger LOG = Log.getLogger(MuxChannel.class);
 
     private final long channelId;
@@ -56,12 +119,24 @@ public class MuxChannel implements LogicalConnection, IncomingFrames, SuspendTok
     private WebSocketSession session;
     private IncomingFrames incoming;
     private String subProtocol;
+    /** Outgoing frames waiting for send quota, or for their turn */
+    private final Deque<Entry> outgoingQueue = new ArrayDeque<>();
+    private long sendQuota;
+    /** Is the channel in the Muxer round-robin schedule */
+    private boolean scheduled;
+    private long receiveQuota;
+    /** Received payload bytes not yet given back to the remote endpoint */
+    private long receivedBytes;
+    /** The opcode of the incoming message, for its continuation frames */
+    private byte incomingOpCode;
 
     public MuxChannel(long channelId, Muxer muxer)
     {
         this.channelId = channelId;
         this.muxer = muxer;
         this.policy = muxer.getPolicy().clonePolicy();
+        this.sendQuota = muxer.getInitialSendQuota();
+        this.receiveQuota = muxer.getInitialReceiveQuota();
 
         this.suspendToken = new AtomicBoolean(false);
         this.ioState = new IOState();
@@ -85,6 +160,46 @@ public class MuxChannel implements LogicalConnection, IncomingFrames, SuspendTok
         outgoingFrame(close.asFrame(),null);
     }
 
+    /**
+     * Add to the send quota, as granted by a remote FlowControl block.
+     * <p>
+     * Guarded by the Muxer lock.
+     * 
+     * @param quota
+     *            the quota to add
+     * @return false if the send quota would overflow
+     */
+    boolean addSendQuota(long quota)
+    {
+        if (quota > (Long.MAX_VALUE - sendQuota))
+        {
+            return false;
+        }
+        sendQuota += quota;
+        return true;
+    }
+
+    /**
+     * Remove all the queued outgoing frames.
+     * <p>
+     * Guarded by the Muxer lock.
+     * 
+     * @return the callbacks of the removed frames, to be failed outside of the lock
+     */
+    List<WriteCallback> clearOutgoing()
+    {
+        List<WriteCallback> callbacks = new ArrayList<>();
+        for (Entry entry : outgoingQueue)
+        {
+            if (entry.callback != null)
+            {
+                callbacks.add(entry.callback);
+            }
+        }
+        outgoingQueue.clear();
+        return callbacks;
+    }
+
     @Override
     public void disconnect()
     {
@@ -97,6 +212,36 @@ public class MuxChannel implements LogicalConnection, IncomingFrames, SuspendTok
         return channelId;
     }
 
+    /**
+     * @return the number of outgoing frames waiting to be written
+     */
+    public int getOutgoingQueueSize()
+    {
+        synchronized (muxer.getLock())
+        {
+            return outgoingQueue.size();
+        }
+    }
+
+    /**
+     * @return the number of payload bytes the remote endpoint is still allowed to send
+     */
+    public long getReceiveQuota()
+    {
+        return receiveQuota;
+    }
+
+    /**
+     * @return the number of payload bytes this endpoint is allowed to send
+     */
+    public long getSendQuota()
+    {
+        synchronized (muxer.getLock())
+        {
+            return sendQuota;
+        }
+    }
+
     @Override
     public IOState getIOState()
     {
@@ -147,11 +292,156 @@ public class MuxChannel implements LogicalConnection, IncomingFrames, SuspendTok
         incoming.incomingFrame(frame);
     }
 
+    /**
+     * Account for an incoming frame, against the receive quota.
+     * <p>
+     * Also restores the message opcode on continuation frames, as fragments of the messages of different channels are interleaved on the physical
+     * connection.
+     * 
+     * @param frame
+     *            the incoming frame
+     * @return false if the remote endpoint exceeded its send quota
+     */
+    boolean onIncomingFrame(MuxedFrame frame)
+    {
+        if (frame.isControlFrame())
+        {
+            // control frames are not flow controlled
+            return true;
+        }
+
+        if (frame.isContinuation())
+        {
+            frame.setOpCode(incomingOpCode);
+        }
+        else
+        {
+            incomingOpCode = frame.getOpCode();
+        }
+
+        long length = frame.getPayloadLength();
+        if (length > receiveQuota)
+        {
+            return false;
+        }
+        receiveQuota -= length;
+        receivedBytes += length;
+        return true;
+    }
+
+    /**
+     * Give the received bytes back to the remote endpoint, once enough of them have been consumed.
+     * 
+     * @param threshold
+     *            the minimum number of received bytes to give back
+     * @return the quota to grant to the remote endpoint, or 0 if not enough bytes have been received yet
+     */
+    long takeReceivedBytes(long threshold)
+    {
+        if (receivedBytes < threshold)
+        {
+            return 0;
+        }
+        long quota = receivedBytes;
+        receivedBytes = 0;
+        receiveQuota += quota;
+        return quota;
+    }
+
     public boolean isActive()
     {
         return (ioState.isOpen());
     }
 
+    /**
+     * Guarded by the Muxer lock.
+     * 
+     * @return true if the channel is in the Muxer round-robin schedule
+     */
+    boolean isScheduled()
+    {
+        return scheduled;
+    }
+
+    /**
+     * Guarded by the Muxer lock.
+     * 
+     * @return true if there is an outgoing frame that can be (at least partially) written now
+     */
+    boolean isWritable()
+    {
+        Entry entry = outgoingQueue.peek();
+        if (entry == null)
+        {
+            return false;
+        }
+        return (entry.remaining() == 0) || entry.frame.getType().isControl() || (sendQuota > 0);
+    }
+
+    /**
+     * Take the next fragment to write, of at most {@code maxFragmentSize} payload bytes, and within the send quota.
+     * <p>
+     * Frames that fit are written as is, larger ones are split into fragments (continuations of the same message). Control frames and empty frames
+     * are not flow controlled.
+     * <p>
+     * Guarded by the Muxer lock.
+     * 
+     * @param maxFragmentSize
+     *            the max payload size of the fragment
+     * @return the next fragment, or null if nothing can be written now
+     */
+    Fragment nextFragment(int maxFragmentSize)
+    {
+        if (!isWritable())
+        {
+            return null;
+        }
+
+        Entry entry = outgoingQueue.peek();
+        Frame frame = entry.frame;
+        int remaining = entry.remaining();
+        if ((remaining == 0) || frame.getType().isControl())
+        {
+            outgoingQueue.poll();
+            return new Fragment(frame,entry.callback);
+        }
+
+        int length = (int)Math.min(Math.min(remaining,maxFragmentSize),sendQuota);
+        sendQuota -= length;
+
+        if (!entry.started && (length == remaining))
+        {
+            // the whole frame fits
+            outgoingQueue.poll();
+            return new Fragment(frame,entry.callback);
+        }
+
+        ByteBuffer chunk = entry.payload.slice();
+        chunk.limit(length);
+        entry.payload.position(entry.payload.position() + length);
+        boolean last = !entry.payload.hasRemaining();
+
+        WebSocketFrame fragment = new WebSocketFrame(frame.getOpCode());
+        fragment.setContinuation(entry.started || frame.isContinuation() || (frame.getOpCode() == OpCode.CONTINUATION));
+        fragment.setFin(last && frame.isFin());
+        if (!entry.started)
+        {
+            // the rsv bits apply to the first fragment of the message only
+            fragment.setRsv1(frame.isRsv1());
+            fragment.setRsv2(frame.isRsv2());
+            fragment.setRsv3(frame.isRsv3());
+        }
+        fragment.setPayload(chunk);
+        entry.started = true;
+
+        if (last)
+        {
+            outgoingQueue.poll();
+            return new Fragment(fragment,entry.callback);
+        }
+        return new Fragment(fragment,null);
+    }
+
     @Override
     public boolean isOpen()
     {
@@ -187,6 +477,16 @@ public class MuxChannel implements LogicalConnection, IncomingFrames, SuspendTok
         return future;
     }
 
+    /**
+     * Queue an outgoing frame.
+     * <p>
+     * Guarded by the Muxer lock.
+     */
+    void offerOutgoing(Frame frame, WriteCallback callback)
+    {
+        outgoingQueue.offer(new Entry(frame,callback));
+    }
+
     /**
      * Frames destined for the Muxer
      */
@@ -205,6 +505,11 @@ public class MuxChannel implements LogicalConnection, IncomingFrames, SuspendTok
         }
     }
 
+    void setScheduled(boolean scheduled)
+    {
+        this.scheduled = scheduled;
+    }
+
     @Override
     public void setNextIncomingFrames(IncomingFrames incoming)
     {
@@ -27,6 +27,7 @@ import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
+import org.eclipse.jetty.websocket.common.OpCode;
 import org.eclipse.jetty.websocket.common.WebSocketFrame;
 import org.eclipse.jetty.websocket.common.extensions.mux.op.MuxAddChannelRequest;
 import org.eclipse.jetty.websocket.common.extensions.mux.op.MuxAddChannelResponse;
@@ -39,6 +40,41 @@ import org.eclipse.jetty.websocket.common.extensions.mux.op.MuxNewChannelSlot;
  */
 public class MuxGenerator
 {
+    /**
+     * Release the mux payload buffer once written, then notify the original callback.
+     */
+    private class ReleaseCallback implements WriteCallback
+    {
+        private final ByteBuffer buffer;
+        private final WriteCallback callback;
+
+        private ReleaseCallback(ByteBuffer buffer, WriteCallback callback)
+        {
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+
+        @Override
+        public void writeFailed(Throwable x)
+        {
+            bufferPool.release(buffer);
+            if (callback != null)
+            {
+                callback.writeFailed(x);
+            }
+        }
+
+        @Override
+        public void writeSuccess()
+        {
+            bufferPool.release(buffer);
+            if (callback != null)
+            {
+                callback.writeSuccess();
+            }
+        }
+    }
+
     private static final int CONTROL_BUFFER_SIZE = 2 * 1024;
     /** 4 bytes for channel ID + 1 for fin/rsv/opcode */
     private static final int DATA_FRAME_OVERHEAD = 5;
@@ -66,7 +102,13 @@ public class MuxGenerator
         b |= (byte)(frame.isRsv1()?0x40:0x00); // rsv1
         b |= (byte)(frame.isRsv2()?0x20:0x00); // rsv2
         b |= (byte)(frame.isRsv3()?0x10:0x00); // rsv3
-        b |= (byte)(frame.getType().getOpCode() & 0x0F); // opcode
+        byte opcode = frame.getType().getOpCode();
+        if (frame.isContinuation())
+        {
+            // Continuations are not the same OPCODE
+            opcode = OpCode.CONTINUATION;
+        }
+        b |= (byte)(opcode & 0x0F); // opcode
         muxPayload.put(b);
         BufferUtil.put(frame.getPayload(),muxPayload);
 
@@ -76,11 +118,9 @@ public class MuxGenerator
         muxFrame.setPayload(muxPayload);
         // NOTE: the physical connection will handle masking rules for this frame.
 
-        // release original buffer (no longer needed)
-        bufferPool.release(frame.getPayload());
-
         // send muxed frame down to the physical connection.
-        outgoing.outgoingFrame(muxFrame,callback);
+        // NOTE: the original payload belongs to the caller, only the mux payload is released once written.
+        outgoing.outgoingFrame(muxFrame,new ReleaseCallback(muxPayload,callback));
     }
 
     public void generate(WriteCallback callback,MuxControlBlock... blocks) throws IOException
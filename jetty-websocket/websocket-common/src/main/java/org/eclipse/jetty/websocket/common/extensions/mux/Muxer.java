@@ -20,9 +20,11 @@ package org.eclipse.jetty.websocket.common.extensions.mux;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.log.Log;
@@ -54,17 +56,39 @@ import org.eclipse.jetty.websocket.common.extensions.mux.op.MuxNewChannelSlot;
  * routing of {@link MuxControlBlock} events.
  * <p>
  * Control Channel events (channel ID == 0) are handled by the Muxer.
+ * <p>
+ * Outgoing frames are flow controlled per sub-channel, as per <a
+ * href="https://tools.ietf.org/html/draft-ietf-hybi-websocket-multiplexing-08#section-14">Section 14. Flow Control</a>: a sub-channel only sends as
+ * many payload bytes as its send quota allows, and the quota is replenished by the FlowControl blocks of the remote endpoint. In turn, the Muxer gives
+ * the received bytes back to the remote endpoint once half of the initial receive quota has been consumed by a sub-channel.
+ * <p>
+ * The sub-channels with frames to send are written in round-robin, one fragment of at most {@link #getMaxFragmentSize()} bytes at a time, so that a
+ * sub-channel sending large messages does not starve the others. Only one thread writes at a time, other threads just queue their frames.
+ * <p>
+ * Control frames (close, ping, pong) are not flow controlled.
  */
 public class Muxer implements IncomingFrames, MuxParser.Listener
 {
     private static final int CONTROL_CHANNEL_ID = 0;
+    /** The default initial send quota, per draft-ietf-hybi-websocket-multiplexing-08 */
+    public static final long DEFAULT_INITIAL_QUOTA = 65536;
+    public static final int DEFAULT_MAX_FRAGMENT_SIZE = 8 * 1024;
 
     private static final Logger LOG = Log.getLogger(Muxer.class);
 
     /**
      * Map of sub-channels, key is the channel Id.
      */
-    private Map<Long, MuxChannel> channels = new HashMap<Long, MuxChannel>();
+    private Map<Long, MuxChannel> channels = new ConcurrentHashMap<Long, MuxChannel>();
+    /** Guards the outgoing state of the Muxer and of its sub-channels */
+    private final Object lock = new Object();
+    /** The round-robin schedule of sub-channels with writable frames */
+    private final Deque<MuxChannel> scheduled = new ArrayDeque<>();
+    /** Is a thread writing the scheduled frames */
+    private boolean flushing;
+    private long initialSendQuota = DEFAULT_INITIAL_QUOTA;
+    private long initialReceiveQuota = DEFAULT_INITIAL_QUOTA;
+    private int maxFragmentSize = DEFAULT_MAX_FRAGMENT_SIZE;
 
     private final WebSocketPolicy policy;
     private final LogicalConnection physicalConnection;
@@ -89,6 +113,97 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
         this.generator = new MuxGenerator();
     }
 
+    /**
+     * Drop a sub-channel, failing its queued outgoing frames.
+     */
+    private void dropChannel(MuxChannel channel, MuxDropChannel.Reason reason, String phrase)
+    {
+        LOG.debug("Dropping {}: {} {}",channel.getChannelId(),reason,phrase);
+        channels.remove(channel.getChannelId());
+        failOutgoing(channel,new MuxException(phrase));
+        try
+        {
+            output(new MuxDropChannel(channel.getChannelId(),reason,phrase));
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Unable to send mux DropChannel",e);
+        }
+        channel.onClose();
+    }
+
+    private void failOutgoing(MuxChannel channel, Throwable cause)
+    {
+        List<WriteCallback> callbacks;
+        synchronized (lock)
+        {
+            callbacks = channel.clearOutgoing();
+            if (channel.isScheduled())
+            {
+                scheduled.remove(channel);
+                channel.setScheduled(false);
+            }
+        }
+        for (WriteCallback callback : callbacks)
+        {
+            callback.writeFailed(cause);
+        }
+    }
+
+    /**
+     * Write the scheduled fragments, in round-robin, until no sub-channel can write.
+     * <p>
+     * Called by the single thread that set {@link #flushing}, the fragments are generated outside of the lock.
+     */
+    private void flush()
+    {
+        while (true)
+        {
+            long channelId = 0;
+            MuxChannel.Fragment fragment = null;
+            synchronized (lock)
+            {
+                MuxChannel channel;
+                while ((fragment == null) && ((channel = scheduled.poll()) != null))
+                {
+                    fragment = channel.nextFragment(maxFragmentSize);
+                    channelId = channel.getChannelId();
+                    if (channel.isWritable())
+                    {
+                        // back to the end of the round-robin
+                        scheduled.offer(channel);
+                    }
+                    else
+                    {
+                        channel.setScheduled(false);
+                    }
+                }
+                if (fragment == null)
+                {
+                    flushing = false;
+                    return;
+                }
+            }
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("flush({}, {})",channelId,fragment.getFrame());
+            }
+            try
+            {
+                generator.generate(channelId,fragment.getFrame(),fragment.getCallback());
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Unable to write fragment on channel " + channelId,x);
+                if (fragment.getCallback() != null)
+                {
+                    fragment.getCallback().writeFailed(x);
+                }
+            }
+        }
+    }
+
     public MuxAddClient getAddClient()
     {
         return addClient;
@@ -122,6 +237,35 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
         return channel;
     }
 
+    /**
+     * @return the send quota of the remote endpoint for new sub-channels
+     */
+    public long getInitialReceiveQuota()
+    {
+        return initialReceiveQuota;
+    }
+
+    /**
+     * @return the send quota of new sub-channels, before any FlowControl block
+     */
+    public long getInitialSendQuota()
+    {
+        return initialSendQuota;
+    }
+
+    Object getLock()
+    {
+        return lock;
+    }
+
+    /**
+     * @return the max payload size written for a sub-channel before the other sub-channels get their turn
+     */
+    public int getMaxFragmentSize()
+    {
+        return maxFragmentSize;
+    }
+
     public WebSocketPolicy getPolicy()
     {
         return policy;
@@ -185,6 +329,11 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
     {
         // TODO: stop muxer from receiving incoming sub-channel traffic.
 
+        for (MuxChannel channel : channels.values())
+        {
+            failOutgoing(channel,muxe);
+        }
+
         MuxDropChannel drop = muxe.getMuxDropChannel();
         LOG.warn(muxe);
         try
@@ -320,8 +469,31 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
     @Override
     public void onMuxedFrame(MuxedFrame frame)
     {
-        MuxChannel subchannel = channels.get(frame.getChannelId());
+        MuxChannel subchannel = getChannel(frame.getChannelId(),false);
+        if (!subchannel.onIncomingFrame(frame))
+        {
+            dropChannel(subchannel,MuxDropChannel.Reason.SEND_QUOTA_VIOLATION,"Send Quota Violation");
+            return;
+        }
+
         subchannel.incomingFrame(frame);
+
+        // The frame has been consumed, give the bytes back to the remote endpoint
+        long quota = subchannel.takeReceivedBytes(initialReceiveQuota / 2);
+        if (quota > 0)
+        {
+            MuxFlowControl flow = new MuxFlowControl();
+            flow.setChannelId(subchannel.getChannelId());
+            flow.setSendQuotaSize(quota);
+            try
+            {
+                output(flow);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to send mux FlowControl",e);
+            }
+        }
     }
 
     @Override
@@ -351,7 +523,28 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
         long channelId = flow.getChannelId();
         MuxChannel channel = getChannel(channelId,false);
 
-        // TODO: set channel quota
+        boolean overflow = false;
+        synchronized (lock)
+        {
+            overflow = !channel.addSendQuota(flow.getSendQuotaSize());
+            if (!overflow)
+            {
+                schedule(channel);
+                if (flushing)
+                {
+                    // the flushing thread will write the frames of the channel
+                    return;
+                }
+                flushing = true;
+            }
+        }
+
+        if (overflow)
+        {
+            dropChannel(channel,MuxDropChannel.Reason.SEND_QUOTA_OVERFLOW,"Send Quota Overflow");
+            return;
+        }
+        flush();
     }
 
     /**
@@ -378,6 +571,9 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
         }
 
         // TODO: handle channel slot
+
+        // the quota of the channels the client adds from now on
+        initialSendQuota = slot.getInitialSendQuota();
     }
 
     /**
@@ -389,7 +585,29 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
         {
             LOG.debug("output({}, {})",channelId,frame,callback);
         }
-        generator.generate(channelId,frame,callback);
+
+        MuxChannel channel = channels.get(channelId);
+        if (channel == null)
+        {
+            if (callback != null)
+            {
+                callback.writeFailed(new MuxException("Unknown Channel ID: " + channelId));
+            }
+            return;
+        }
+
+        synchronized (lock)
+        {
+            channel.offerOutgoing(frame,callback);
+            schedule(channel);
+            if (flushing)
+            {
+                // the flushing thread will write the frame
+                return;
+            }
+            flushing = true;
+        }
+        flush();
     }
 
     /**
@@ -404,6 +622,20 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
         generator.generate(null,op);
     }
 
+    /**
+     * Add the channel to the round-robin schedule, if it has writable frames.
+     * <p>
+     * Guarded by the lock.
+     */
+    private void schedule(MuxChannel channel)
+    {
+        if (!channel.isScheduled() && channel.isWritable())
+        {
+            channel.setScheduled(true);
+            scheduled.offer(channel);
+        }
+    }
+
     public void setAddClient(MuxAddClient addClient)
     {
         this.addClient = addClient;
@@ -414,6 +646,43 @@ public class Muxer implements IncomingFrames, MuxParser.Listener
         this.addServer = addServer;
     }
 
+    /**
+     * Set the send quota of the remote endpoint for new sub-channels.
+     * <p>
+     * Received bytes are given back to the remote endpoint once half of this quota has been consumed.
+     * 
+     * @param initialReceiveQuota
+     *            the initial receive quota, in payload bytes
+     */
+    public void setInitialReceiveQuota(long initialReceiveQuota)
+    {
+        this.initialReceiveQuota = initialReceiveQuota;
+    }
+
+    /**
+     * Set the send quota of new sub-channels, before any FlowControl block.
+     * 
+     * @param initialSendQuota
+     *            the initial send quota, in payload bytes
+     */
+    public void setInitialSendQuota(long initialSendQuota)
+    {
+        this.initialSendQuota = initialSendQuota;
+    }
+
+    /**
+     * Set the max payload size written for a sub-channel before the other sub-channels get their turn.
+     * <p>
+     * Larger frames are fragmented.
+     * 
+     * @param maxFragmentSize
+     *            the max fragment payload size
+     */
+    public void setMaxFragmentSize(int maxFragmentSize)
+    {
+        this.maxFragmentSize = maxFragmentSize;
+    }
+
     public void setOutgoingFramesHandler(OutgoingFrames outgoing)
     {
         this.generator.setOutgoing(outgoing);
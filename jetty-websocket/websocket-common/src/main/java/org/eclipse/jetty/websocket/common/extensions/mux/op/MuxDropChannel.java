@@ -22,6 +22,8 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.websocket.common.extensions.mux.MuxControlBlock;
 import org.eclipse.jetty.websocket.common.extensions.mux.MuxOp;
 
@@ -90,10 +92,27 @@ public class MuxDropChannel implements MuxControlBlock
         }
     }
 
+    /**
+     * Parse the reason of a DropChannel block: a 2 byte reason code, followed by the optional UTF-8 phrase.
+     * <p>
+     * An empty reason is a normal closure.
+     * 
+     * @param channelId
+     *            the logical channel Id being dropped
+     * @param payload
+     *            the reason bytes
+     * @return the DropChannel block
+     */
     public static MuxDropChannel parse(long channelId, ByteBuffer payload)
     {
-        // TODO Auto-generated method stub
-        return null;
+        if ((payload == null) || (payload.remaining() < 2))
+        {
+            return new MuxDropChannel(channelId);
+        }
+        ByteBuffer reason = payload.slice();
+        int code = reason.getShort() & 0xFFFF;
+        String phrase = reason.hasRemaining()?BufferUtil.toUTF8String(reason):null;
+        return new MuxDropChannel(channelId,code,phrase);
     }
 
     private final long channelId;
@@ -146,8 +165,12 @@ public class MuxDropChannel implements MuxControlBlock
 
     public ByteBuffer asReasonBuffer()
     {
-        // TODO: convert to reason buffer
-        return null;
+        byte[] phraseBytes = (phrase == null)?new byte[0]:StringUtil.getUtf8Bytes(phrase);
+        ByteBuffer reason = ByteBuffer.allocate(2 + phraseBytes.length);
+        reason.putShort((short)code.getValue());
+        reason.put(phraseBytes);
+        BufferUtil.flipToFlush(reason,0);
+        return reason;
     }
 
     public long getChannelId()
@@ -25,7 +25,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -38,6 +40,7 @@ import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.websocket.api.CloseException;
+import org.eclipse.jetty.websocket.api.OutgoingOverflowPolicy;
 import org.eclipse.jetty.websocket.api.StatusCode;
 import org.eclipse.jetty.websocket.api.SuspendToken;
 import org.eclipse.jetty.websocket.api.WebSocketException;
@@ -51,9 +54,14 @@ import org.eclipse.jetty.websocket.common.Generator;
 import org.eclipse.jetty.websocket.common.LogicalConnection;
 import org.eclipse.jetty.websocket.common.Parser;
 import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
 
 /**
  * Provides the implementation of {@link WebSocketConnection} within the framework of the new {@link Connection} framework of jetty-io
+ * <p>
+ * A connection that has not read nor written for {@link WebSocketPolicy#getHibernateTimeout()} hibernates: the memory grown to write bursts of
+ * frames is released, and so is the compression state of the extensions that can rebuild it. The state is rebuilt lazily on the next read or
+ * write.
  */
 public abstract class AbstractWebSocketConnection extends AbstractConnection implements LogicalConnection
 {
@@ -106,6 +114,15 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         }
     }
 
+    private class HibernateTask implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            checkHibernate();
+        }
+    }
+
     private class OnCloseCallback implements WriteCallback
     {
         @Override
@@ -136,6 +153,12 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
     private final WebSocketPolicy policy;
     private final WriteBytesProvider writeBytes;
     private final AtomicBoolean suspendToken;
+    private final AtomicLong outgoingOverflows = new AtomicLong();
+    private final AtomicBoolean hibernated = new AtomicBoolean();
+    private final AtomicLong hibernations = new AtomicLong();
+    private final Runnable hibernateTask = new HibernateTask();
+    private volatile long lastActivity = System.nanoTime();
+    private volatile Scheduler.Task hibernateTimeout;
     private WebSocketSession session;
     private List<ExtensionConfig> extensions;
     private boolean flushing;
@@ -155,9 +178,34 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         this.ioState = new IOState();
         this.ioState.setState(ConnectionState.CONNECTING);
         this.writeBytes = new WriteBytesProvider(generator,new FlushCallback());
+        this.writeBytes.setMaxQueueSize(policy.getMaxOutgoingFrames());
+        this.writeBytes.setMaxQueuedBytes(policy.getMaxOutgoingBytes());
         this.setInputBufferSize(policy.getInputBufferSize());
     }
 
+    /**
+     * Hibernate if idle for the hibernate timeout, otherwise check again when it could be.
+     */
+    private void checkHibernate()
+    {
+        long timeout = policy.getHibernateTimeout();
+        if ((timeout <= 0) || !isOpen() || hibernated.get())
+        {
+            return;
+        }
+
+        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+        if (idle < timeout)
+        {
+            scheduleHibernate(timeout - idle);
+        }
+        else if (!hibernate())
+        {
+            // busy writing
+            scheduleHibernate(timeout);
+        }
+    }
+
     @Override
     public void close()
     {
@@ -247,7 +295,7 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
 
     public void flush()
     {
-        ByteBuffer buffer = null;
+        ByteBuffer[] buffers = null;
 
         synchronized (writeBytes)
         {
@@ -274,9 +322,9 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
                 return;
             }
 
-            buffer = writeBytes.getByteBuffer();
+            buffers = writeBytes.getByteBuffers();
 
-            if (buffer == null)
+            if (buffers == null)
             {
                 return;
             }
@@ -285,11 +333,11 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
 
             if (LOG.isDebugEnabled())
             {
-                LOG.debug("Flushing {} - {}",BufferUtil.toDetailString(buffer),writeBytes);
+                LOG.debug("Flushing {} buffers - {}",buffers.length,writeBytes);
             }
         }
 
-        write(buffer);
+        write(buffers);
     }
 
     public ByteBufferPool getBufferPool()
@@ -297,6 +345,14 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         return bufferPool;
     }
 
+    /**
+     * @return the number of times this connection hibernated
+     */
+    public long getHibernations()
+    {
+        return hibernations.get();
+    }
+
     /**
      * Get the list of extensions in use.
      * <p>
@@ -348,6 +404,44 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         return session;
     }
 
+    /**
+     * Release the resources that are rebuilt on the next read or write.
+     * <p>
+     * The connection does not hibernate while frames are waiting to be written or being written.
+     * 
+     * @return true if the connection hibernated (or already was), false if busy
+     */
+    public boolean hibernate()
+    {
+        synchronized (writeBytes)
+        {
+            if (flushing || !writeBytes.compact())
+            {
+                return false;
+            }
+        }
+
+        if (hibernated.compareAndSet(false,true))
+        {
+            hibernations.incrementAndGet();
+            WebSocketSession session = this.session;
+            if ((session != null) && (session.getOutgoingHandler() instanceof ExtensionStack))
+            {
+                ((ExtensionStack)session.getOutgoingHandler()).hibernate();
+            }
+            LOG.debug("Hibernated {}",this);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the connection is hibernating, since it was idle for {@link WebSocketPolicy#getHibernateTimeout()}
+     */
+    public boolean isHibernated()
+    {
+        return hibernated.get();
+    }
+
     @Override
     public boolean isOpen()
     {
@@ -363,6 +457,16 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
     @Override
     public void onClose()
     {
+        Scheduler.Task task = hibernateTimeout;
+        if (task != null)
+        {
+            task.cancel();
+        }
+        WebSocketSession session = this.session;
+        if ((session != null) && (session.getOutgoingHandler() instanceof ExtensionStack))
+        {
+            ((ExtensionStack)session.getOutgoingHandler()).close();
+        }
         super.onClose();
         this.getIOState().setState(ConnectionState.CLOSED);
     }
@@ -371,7 +475,9 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
     public void onFillable()
     {
         LOG.debug("{} onFillable()",policy.getBehavior());
-        ByteBuffer buffer = bufferPool.acquire(getInputBufferSize(),false);
+        onActivity();
+        // direct, so that the bytes are not copied when read, and unmasked in place by the parser
+        ByteBuffer buffer = bufferPool.acquire(getInputBufferSize(),true);
         BufferUtil.clear(buffer);
         boolean readMore = false;
         try
@@ -399,10 +505,24 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
     {
         super.onOpen();
         this.ioState.setState(ConnectionState.OPEN);
+        scheduleHibernate(policy.getHibernateTimeout());
         LOG.debug("fillInterested");
         fillInterested();
     }
 
+    /**
+     * The connection reads or writes: wake it up if hibernating.
+     */
+    private void onActivity()
+    {
+        lastActivity = System.nanoTime();
+        if (hibernated.compareAndSet(true,false))
+        {
+            LOG.debug("Woke up {}",this);
+            scheduleHibernate(policy.getHibernateTimeout());
+        }
+    }
+
     @Override
     protected boolean onReadTimeout()
     {
@@ -445,13 +565,163 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         {
             return;
         }
+        onActivity();
+
+        Callback writeCallback = WriteCallbackWrapper.wrap(callback);
+        OutgoingOverflowPolicy overflow;
+        synchronized (writeBytes)
+        {
+            overflow = makeRoom(frame,writeCallback,true);
+            if (overflow == null)
+            {
+                writeBytes.enqueue(frame,writeCallback);
+            }
+        }
+
+        if (overflow == OutgoingOverflowPolicy.CLOSE)
+        {
+            close(StatusCode.POLICY_VIOLATION,"Outgoing queue full");
+        }
+
+        flush();
+    }
+
+    /**
+     * Frame bytes, already generated and shared with other connections, destined for network.
+     * <p>
+     * The bytes bypass the extensions, so this must only be used on connections without negotiated extensions that modify the frames.
+     *
+     * @param shared
+     *            the shared frame bytes, a reference to which is acquired by this connection until written
+     * @param callback
+     *            the callback to notify of the write result
+     * @return true if the frame has been enqueued, false if the connection is closed or the shared bytes are already released
+     */
+    public boolean outgoingFrame(SharedFrameBuffer shared, WriteCallback callback)
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("outgoingFrame({}, {})",shared,callback);
+        }
 
+        if (!isOpen() || !shared.retain())
+        {
+            return false;
+        }
+        onActivity();
+
+        Callback writeCallback = WriteCallbackWrapper.wrap(callback);
+        OutgoingOverflowPolicy overflow;
         synchronized (writeBytes)
         {
-            writeBytes.enqueue(frame,WriteCallbackWrapper.wrap(callback));
+            // never block a broadcast on a single connection
+            overflow = makeRoom(shared.getFrame(),writeCallback,false);
+            if (overflow == null)
+            {
+                writeBytes.enqueue(shared,writeCallback);
+            }
+        }
+
+        if (overflow != null)
+        {
+            shared.release();
+            if (overflow == OutgoingOverflowPolicy.CLOSE)
+            {
+                close(StatusCode.POLICY_VIOLATION,"Outgoing queue full");
+            }
+            return false;
         }
 
         flush();
+        return true;
+    }
+
+    /**
+     * Make room in the outgoing queue for the frame, according to the {@link WebSocketPolicy#getOutgoingOverflowPolicy()}.
+     * <p>
+     * Must be called with the lock on the {@link WriteBytesProvider} held.
+     * 
+     * @return null if the frame can be enqueued, or the overflow policy that rejected the frame (the callback has been failed)
+     */
+    private OutgoingOverflowPolicy makeRoom(Frame frame, Callback callback, boolean canBlock)
+    {
+        if (!writeBytes.isFull(frame))
+        {
+            return null;
+        }
+
+        outgoingOverflows.incrementAndGet();
+        OutgoingOverflowPolicy overflow = policy.getOutgoingOverflowPolicy();
+        LOG.debug("Outgoing queue full ({}): {}",overflow,writeBytes);
+        switch (overflow)
+        {
+            case BLOCK:
+                if (canBlock && awaitRoom(frame))
+                {
+                    return null;
+                }
+                break;
+            case DROP_OLDEST:
+                if (writeBytes.dropOldest(frame))
+                {
+                    return null;
+                }
+                break;
+            default:
+                break;
+        }
+
+        callback.failed(new IOException("Outgoing queue full"));
+        return overflow;
+    }
+
+    private boolean awaitRoom(Frame frame)
+    {
+        long timeout = policy.getIdleTimeout();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try
+        {
+            while (writeBytes.isFull(frame) && !writeBytes.isFailed() && !writeBytes.isClosed())
+            {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if ((timeout > 0) && (remaining <= 0))
+                {
+                    return false;
+                }
+                writeBytes.wait((timeout > 0)?remaining:0);
+            }
+            // enqueue() fails the frame if the queue has been failed or closed meanwhile
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            LOG.ignore(e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of frames waiting to be written to the network
+     */
+    public int getOutgoingQueueSize()
+    {
+        return writeBytes.getQueueSize();
+    }
+
+    /**
+     * @return the payload bytes of the frames waiting to be written to the network
+     */
+    public long getOutgoingQueuedBytes()
+    {
+        return writeBytes.getQueuedBytes();
+    }
+
+    /**
+     * @return the number of frames that found the outgoing queue full
+     */
+    public long getOutgoingOverflows()
+    {
+        return outgoingOverflows.get();
     }
 
     private int read(ByteBuffer buffer)
@@ -477,7 +747,7 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
                     {
                         LOG.debug("Filled {} bytes - {}",filled,BufferUtil.toDetailString(buffer));
                     }
-                    parser.parse(buffer);
+                    parse(buffer);
                 }
             }
         }
@@ -495,6 +765,28 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         }
     }
 
+    /**
+     * Parse the bytes of a network read, the messages they complete forming a batch.
+     */
+    private void parse(ByteBuffer buffer)
+    {
+        if (session == null)
+        {
+            parser.parse(buffer);
+            return;
+        }
+
+        session.beginBatch();
+        try
+        {
+            parser.parse(buffer);
+        }
+        finally
+        {
+            session.endBatch();
+        }
+    }
+
     @Override
     public void resume()
     {
@@ -526,6 +818,14 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         super.setInputBufferSize(inputBufferSize);
     }
 
+    private void scheduleHibernate(long delay)
+    {
+        if ((delay > 0) && (scheduler != null))
+        {
+            hibernateTimeout = scheduler.schedule(hibernateTask,delay,TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Override
     public void setSession(WebSocketSession session)
     {
@@ -545,7 +845,7 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         return String.format("%s{g=%s,p=%s}",super.toString(),generator,parser);
     }
 
-    private <C> void write(ByteBuffer buffer)
+    private void write(ByteBuffer... buffers)
     {
         EndPoint endpoint = getEndPoint();
 
@@ -557,7 +857,7 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
 
         try
         {
-            endpoint.write(writeBytes,buffer);
+            endpoint.write(writeBytes,buffers);
         }
         catch (Throwable t)
         {
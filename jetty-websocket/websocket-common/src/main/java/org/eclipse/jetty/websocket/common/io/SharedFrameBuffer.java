@@ -0,0 +1,126 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.Generator;
+
+/**
+ * A frame generated once into a {@link ByteBuffer} that is written, as is, to many connections.
+ * <p>
+ * The buffer is reference counted: every connection the buffer is enqueued to must {@link #retain()} it, and {@link #release()} it once written (or
+ * failed). The buffer is returned to the {@link ByteBufferPool} when the last reference is released.
+ * <p>
+ * Since the bytes are shared, the frame must not be masked, nor be modified by extensions.
+ */
+public class SharedFrameBuffer
+{
+    private final ByteBufferPool bufferPool;
+    private final Frame frame;
+    private final ByteBuffer buffer;
+    /** The creator holds the initial reference */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Generate the frame into a new shared buffer.
+     *
+     * @param generator
+     *            the generator (with a server policy, so that the frame is not masked)
+     * @param frame
+     *            the frame to generate
+     */
+    public SharedFrameBuffer(Generator generator, Frame frame)
+    {
+        if (frame.isMasked())
+        {
+            throw new IllegalArgumentException("Cannot share a masked frame");
+        }
+        this.bufferPool = generator.getBufferPool();
+        this.frame = frame;
+        this.buffer = generator.generate(frame);
+    }
+
+    public Frame getFrame()
+    {
+        return frame;
+    }
+
+    /**
+     * @return the number of outstanding references
+     */
+    public int getReferences()
+    {
+        return references.get();
+    }
+
+    /**
+     * @return a read-only view of the frame bytes, with its own position and limit
+     */
+    public ByteBuffer newView()
+    {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Release a reference, returning the buffer to the pool if it was the last one.
+     */
+    public void release()
+    {
+        int refs = references.decrementAndGet();
+        if (refs == 0)
+        {
+            bufferPool.release(buffer);
+        }
+        else if (refs < 0)
+        {
+            throw new IllegalStateException("Released too many times: " + this);
+        }
+    }
+
+    /**
+     * Acquire a reference.
+     *
+     * @return true if the reference was acquired, false if the buffer has already been released
+     */
+    public boolean retain()
+    {
+        while (true)
+        {
+            int refs = references.get();
+            if (refs <= 0)
+            {
+                return false;
+            }
+            if (references.compareAndSet(refs,refs + 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,refs=%d]",getClass().getSimpleName(),hashCode(),frame,references.get());
+    }
+}
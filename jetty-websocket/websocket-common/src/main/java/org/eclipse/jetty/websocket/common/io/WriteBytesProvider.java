@@ -20,7 +20,10 @@ package org.eclipse.jetty.websocket.common.io;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -32,6 +35,7 @@ import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.common.Generator;
+import org.eclipse.jetty.websocket.common.OpCode;
 
 /**
  * Interface for working with bytes destined for {@link EndPoint#write(Callback, ByteBuffer...)}
@@ -42,6 +46,10 @@ public class WriteBytesProvider implements Callback
     {
         protected final Frame frame;
         protected final Callback callback;
+        /** The buffer generated for the last write, to release once written */
+        private ByteBuffer generated;
+        /** Whether all the bytes of the frame have been handed out for writing */
+        protected boolean complete;
 
         public FrameEntry(Frame frame, Callback callback)
         {
@@ -49,18 +57,114 @@ public class WriteBytesProvider implements Callback
             this.callback = callback;
         }
 
-        public ByteBuffer getByteBuffer()
+        /**
+         * Add the next buffers to write for this frame.
+         * <p>
+         * Unmasked frames are written as a small header buffer followed by the payload itself, without copying it. Masked frames are generated (and
+         * masked) in windows of {@link #getBufferSize()} bytes.
+         * 
+         * @param buffers
+         *            the list to add the buffers to
+         * @return the number of bytes added
+         */
+        public int addByteBuffers(List<ByteBuffer> buffers)
         {
-            ByteBuffer buffer = generator.generate(bufferSize,frame);
+            if (!frame.isMasked())
+            {
+                generated = generator.generateHeaderBytes(frame);
+                buffers.add(generated);
+                int length = generated.remaining();
+                if (frame.hasPayload())
+                {
+                    ByteBuffer payload = frame.getPayload().slice();
+                    buffers.add(payload);
+                    length += payload.remaining();
+                }
+                complete = true;
+                return length;
+            }
+
+            generated = generator.generate(bufferSize,frame);
             if (LOG.isDebugEnabled())
             {
-                LOG.debug("getByteBuffer() - {}",BufferUtil.toDetailString(buffer));
+                LOG.debug("addByteBuffers() - {}",BufferUtil.toDetailString(generated));
+            }
+            buffers.add(generated);
+            complete = (frame.remaining() <= 0);
+            return generated.remaining();
+        }
+
+        /**
+         * @return true if all the bytes of the frame have been handed out by {@link #addByteBuffers(List)}
+         */
+        public boolean isComplete()
+        {
+            return complete;
+        }
+
+        /**
+         * Release the buffers obtained from {@link #addByteBuffers(List)}, once written.
+         */
+        public void release()
+        {
+            if (generated != null)
+            {
+                generator.getBufferPool().release(generated);
+                generated = null;
             }
-            return buffer;
+        }
+
+        /**
+         * Discard the entry without it being (completely) written.
+         */
+        public void discard()
+        {
+        }
+    }
+
+    /**
+     * Entry for frame bytes generated once and shared with other connections.
+     */
+    private class SharedFrameEntry extends FrameEntry
+    {
+        private final SharedFrameBuffer shared;
+        private boolean released;
+
+        public SharedFrameEntry(SharedFrameBuffer shared, Callback callback)
+        {
+            super(shared.getFrame(),callback);
+            this.shared = shared;
+        }
+
+        @Override
+        public int addByteBuffers(List<ByteBuffer> buffers)
+        {
+            ByteBuffer view = shared.newView();
+            buffers.add(view);
+            // The whole frame is written at once
+            complete = true;
+            return view.remaining();
+        }
+
+        @Override
+        public void release()
+        {
+            if (!released)
+            {
+                released = true;
+                shared.release();
+            }
+        }
+
+        @Override
+        public void discard()
+        {
+            release();
         }
     }
 
     private static final Logger LOG = Log.getLogger(WriteBytesProvider.class);
+    public static final int DEFAULT_MAX_GATHER_BYTES = 64 * 1024;
 
     /** The websocket generator */
     private final Generator generator;
@@ -70,12 +174,20 @@ public class WriteBytesProvider implements Callback
     private LinkedList<FrameEntry> queue;
     /** the buffer input size */
     private int bufferSize = 2048;
-    /** Currently active frame */
-    private FrameEntry active;
+    /** the payload bytes of the frames in the backlog */
+    private long queuedBytes;
+    /** the max number of frames in the backlog, or -1 for no limit */
+    private int maxQueueSize = -1;
+    /** the max number of payload bytes in the backlog, or -1 for no limit */
+    private long maxQueuedBytes = -1;
+    /** Currently active frames, being written */
+    private final ArrayList<FrameEntry> active = new ArrayList<>();
+    /** The buffers of the active frames */
+    private final ArrayList<ByteBuffer> buffers = new ArrayList<>();
+    /** the max number of bytes gathered into a single write */
+    private int maxGatherBytes = DEFAULT_MAX_GATHER_BYTES;
     /** Failure state for the entire WriteBytesProvider */
     private Throwable failure;
-    /** The last requested buffer */
-    private ByteBuffer buffer;
     /** Is WriteBytesProvider closed to more WriteBytes being enqueued? */
     private AtomicBoolean closed;
 
@@ -97,19 +209,63 @@ public class WriteBytesProvider implements Callback
         this.closed = new AtomicBoolean(false);
     }
 
+    /**
+     * Release the memory grown to write bursts of frames, if nothing is waiting to be written or being written.
+     * 
+     * @return true if idle (and compacted), false if frames are waiting to be written or being written
+     */
+    public boolean compact()
+    {
+        synchronized (this)
+        {
+            if (!queue.isEmpty() || !active.isEmpty())
+            {
+                return false;
+            }
+            active.trimToSize();
+            buffers.clear();
+            buffers.trimToSize();
+            return true;
+        }
+    }
+
     public void enqueue(Frame frame, Callback callback)
     {
         Objects.requireNonNull(frame);
         LOG.debug("enqueue({}, {})",frame,callback);
+        enqueue(new FrameEntry(frame,callback));
+    }
+
+    /**
+     * Enqueue a frame already generated into a {@link SharedFrameBuffer}.
+     * <p>
+     * The caller must have acquired a reference with {@link SharedFrameBuffer#retain()}, that is released once the bytes have been written, or on
+     * failure.
+     *
+     * @param shared
+     *            the shared frame bytes
+     * @param callback
+     *            the callback to notify of the write result
+     */
+    public void enqueue(SharedFrameBuffer shared, Callback callback)
+    {
+        Objects.requireNonNull(shared);
+        LOG.debug("enqueue({}, {})",shared,callback);
+        enqueue(new SharedFrameEntry(shared,callback));
+    }
+
+    private void enqueue(FrameEntry entry)
+    {
         synchronized (this)
         {
             if (closed.get())
             {
                 // Closed for more frames.
-                LOG.debug("Write is closed: {}",frame,callback);
-                if (callback != null)
+                LOG.debug("Write is closed: {}",entry.frame,entry.callback);
+                entry.discard();
+                if (entry.callback != null)
                 {
-                    callback.failed(new IOException("Write is closed"));
+                    entry.callback.failed(new IOException("Write is closed"));
                 }
                 return;
             }
@@ -117,13 +273,13 @@ public class WriteBytesProvider implements Callback
             if (isFailed())
             {
                 // no changes when failed
-                notifyFailure(callback);
+                entry.discard();
+                notifyFailure(entry.callback);
                 return;
             }
 
-            FrameEntry entry = new FrameEntry(frame,callback);
-
-            switch (frame.getType())
+            queuedBytes += entry.frame.getPayloadLength();
+            switch (entry.frame.getType())
             {
                 case PING:
                     queue.addFirst(entry);
@@ -153,13 +309,27 @@ public class WriteBytesProvider implements Callback
 
             for (FrameEntry fe : queue)
             {
+                fe.discard();
                 notifyFailure(fe.callback);
             }
 
             queue.clear();
+            queuedBytes = 0;
+
+            for (FrameEntry fe : active)
+            {
+                // the active entries will never complete
+                fe.discard();
+                notifyFailure(fe.callback);
+            }
+
+            active.clear();
 
             // notify flush callback
             flushCallback.failed(failure);
+
+            // wake up the threads waiting for room in the queue
+            notifyAll();
         }
     }
 
@@ -180,35 +350,84 @@ public class WriteBytesProvider implements Callback
         return bufferSize;
     }
 
+    public int getMaxGatherBytes()
+    {
+        return maxGatherBytes;
+    }
+
+    public long getMaxQueuedBytes()
+    {
+        return maxQueuedBytes;
+    }
+
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
     /**
-     * Get the next ByteBuffer to write.
+     * @return the payload bytes of the frames waiting to be written, not counting the ones being written
+     */
+    public long getQueuedBytes()
+    {
+        synchronized (this)
+        {
+            return queuedBytes;
+        }
+    }
+
+    /**
+     * @return the number of frames waiting to be written, not counting the one being written
+     */
+    public int getQueueSize()
+    {
+        synchronized (this)
+        {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Get the next ByteBuffers to write.
+     * <p>
+     * As many queued frames as fit in {@link #getMaxGatherBytes()} (but at least one) are gathered into a single write. A frame generated in
+     * windows is always the last of its write.
      * 
-     * @return the next ByteBuffer (or null if nothing to write)
+     * @return the next ByteBuffers (or null if nothing to write)
      */
-    public ByteBuffer getByteBuffer()
+    public ByteBuffer[] getByteBuffers()
     {
         synchronized (this)
         {
-            if (active == null)
+            buffers.clear();
+            int length = 0;
+
+            // continue the frame that is partially written, if any
+            for (FrameEntry entry : active)
             {
-                if (queue.isEmpty())
-                {
-                    // nothing in queue
-                    return null;
-                }
-                // get current topmost entry
-                active = queue.pop();
+                length += entry.addByteBuffers(buffers);
+            }
+
+            while (!queue.isEmpty() && ((active.isEmpty()) || ((length < maxGatherBytes) && active.get(active.size() - 1).isComplete())))
+            {
+                FrameEntry entry = queue.pop();
+                queuedBytes -= entry.frame.getPayloadLength();
+                active.add(entry);
+                length += entry.addByteBuffers(buffers);
             }
 
-            if (active == null)
+            if (buffers.isEmpty())
             {
-                // no active frame available, even in queue.
+                // nothing in queue
                 return null;
             }
 
-            buffer = active.getByteBuffer();
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("getByteBuffers() - {} frames, {} buffers, {} bytes",active.size(),buffers.size(),length);
+            }
+            return buffers.toArray(new ByteBuffer[buffers.size()]);
         }
-        return buffer;
     }
 
     public Throwable getFailure()
@@ -229,6 +448,67 @@ public class WriteBytesProvider implements Callback
         }
     }
 
+    /**
+     * Test if the backlog has no room for the frame.
+     * <p>
+     * Control frames are always accepted. A frame larger than the max queued bytes is accepted when the backlog is empty, so that it can be sent at
+     * all.
+     * 
+     * @param frame
+     *            the frame to enqueue
+     * @return true if enqueuing the frame would exceed the backlog limits
+     */
+    public boolean isFull(Frame frame)
+    {
+        if (frame.getType().isControl())
+        {
+            return false;
+        }
+        synchronized (this)
+        {
+            if ((maxQueueSize >= 0) && (queue.size() >= maxQueueSize))
+            {
+                return true;
+            }
+            return (maxQueuedBytes >= 0) && (queuedBytes > 0) && ((queuedBytes + frame.getPayloadLength()) > maxQueuedBytes);
+        }
+    }
+
+    /**
+     * Fail the oldest frames of the backlog until there is room for the frame.
+     * <p>
+     * Only frames that are whole messages are dropped: dropping a fragment would corrupt the message it belongs to.
+     * 
+     * @param frame
+     *            the frame to make room for
+     * @return true if there is room for the frame
+     */
+    public boolean dropOldest(Frame frame)
+    {
+        synchronized (this)
+        {
+            Iterator<FrameEntry> entries = queue.iterator();
+            while (isFull(frame) && entries.hasNext())
+            {
+                FrameEntry entry = entries.next();
+                Frame queued = entry.frame;
+                if (queued.getType().isControl() || !queued.isFin() || queued.isContinuation() || (queued.getOpCode() == OpCode.CONTINUATION))
+                {
+                    continue;
+                }
+                LOG.debug("Dropping {}",queued);
+                entries.remove();
+                queuedBytes -= queued.getPayloadLength();
+                entry.discard();
+                if (entry.callback != null)
+                {
+                    entry.callback.failed(new IOException("Dropped: outgoing queue full"));
+                }
+            }
+            return !isFull(frame);
+        }
+    }
+
     public boolean isFailed()
     {
         return (failure != null);
@@ -263,41 +543,81 @@ public class WriteBytesProvider implements Callback
     }
 
     /**
-     * Write of ByteBuffer succeeded.
+     * Set the max number of bytes of queued frames gathered into a single write.
+     * 
+     * @param maxGatherBytes
+     *            the max number of bytes per write
+     */
+    public void setMaxGatherBytes(int maxGatherBytes)
+    {
+        this.maxGatherBytes = maxGatherBytes;
+    }
+
+    /**
+     * Set the max number of payload bytes of the frames waiting to be written.
+     * 
+     * @param maxQueuedBytes
+     *            the max queued bytes, or -1 for no limit
+     * @see #isFull(Frame)
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes)
+    {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Set the max number of frames waiting to be written.
+     * 
+     * @param maxQueueSize
+     *            the max queue size, or -1 for no limit
+     * @see #isFull(Frame)
+     */
+    public void setMaxQueueSize(int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Write of ByteBuffers succeeded.
      */
     @Override
     public void succeeded()
     {
         synchronized (this)
         {
-            // Release the active byte buffer first
-            generator.getBufferPool().release(buffer);
-
-            if (active == null)
+            Iterator<FrameEntry> entries = active.iterator();
+            while (entries.hasNext())
             {
-                return;
-            }
+                FrameEntry entry = entries.next();
+                // Release the written byte buffers first
+                entry.release();
 
-            if (active.frame.remaining() <= 0)
-            {
-                // All done with active FrameEntry
-                if (active.callback != null)
+                if (!entry.isComplete())
+                {
+                    // windowed frame, more to write
+                    continue;
+                }
+
+                // All done with this FrameEntry
+                entries.remove();
+                if (entry.callback != null)
                 {
                     try
                     {
                         // TODO: should probably have callback invoked in new thread as part of scheduler
                         // notify of success
-                        active.callback.succeeded();
+                        entry.callback.succeeded();
                     }
                     catch (Throwable t)
                     {
                         LOG.warn("Callback failure",t);
                     }
                 }
-
-                // null it out
-                active = null;
             }
+            buffers.clear();
+
+            // wake up the threads waiting for room in the queue
+            notifyAll();
 
             // notify flush callback
             flushCallback.succeeded();
@@ -317,8 +637,9 @@ public class WriteBytesProvider implements Callback
         }
         else
         {
-            b.append(",active=").append(active);
+            b.append(",active.size=").append(active.size());
             b.append(",queue.size=").append(queue.size());
+            b.append(",queuedBytes=").append(queuedBytes);
         }
         b.append(']');
         return b.toString();
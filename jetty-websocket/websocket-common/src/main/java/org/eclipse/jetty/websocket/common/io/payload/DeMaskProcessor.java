@@ -19,13 +19,23 @@
 package org.eclipse.jetty.websocket.common.io.payload;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 
+/**
+ * Unmask the payload in place.
+ * <p>
+ * The bytes are unmasked a long word (8 bytes) at a time, with the 4 byte mask repeated twice, and only the bytes before and after the long
+ * words are unmasked one at a time.
+ */
 public class DeMaskProcessor implements PayloadProcessor
 {
     private boolean isMasked;
     private byte mask[];
+    /** the mask, repeated twice, in big endian order */
+    private long maskLong;
+    /** the index in the mask of the next byte to unmask */
     private int offset;
 
     @Override
@@ -38,9 +48,30 @@ public class DeMaskProcessor implements PayloadProcessor
 
         int start = payload.position();
         int end = payload.limit();
-        for (int i = start; i < end; i++, offset++)
+        int i = start;
+
+        // unmask up to the start of the mask
+        for (; (i < end) && (offset != 0); i++)
+        {
+            payload.put(i,(byte)(payload.get(i) ^ mask[offset]));
+            offset = (offset + 1) & 3;
+        }
+
+        // unmask a long word at a time (this keeps the offset at the start of the mask)
+        if ((end - i) >= 8)
+        {
+            long longMask = (payload.order() == ByteOrder.BIG_ENDIAN)?maskLong:Long.reverseBytes(maskLong);
+            for (; i <= (end - 8); i += 8)
+            {
+                payload.putLong(i,payload.getLong(i) ^ longMask);
+            }
+        }
+
+        // unmask the remaining bytes
+        for (; i < end; i++)
         {
-            payload.put(i,(byte)(payload.get(i) ^ mask[offset % 4]));
+            payload.put(i,(byte)(payload.get(i) ^ mask[offset]));
+            offset = (offset + 1) & 3;
         }
     }
 
@@ -51,10 +82,13 @@ public class DeMaskProcessor implements PayloadProcessor
         if (isMasked)
         {
             this.mask = frame.getMask();
+            long maskInt = ((mask[0] & 0xFFL) << 24) | ((mask[1] & 0xFFL) << 16) | ((mask[2] & 0xFFL) << 8) | (mask[3] & 0xFFL);
+            this.maskLong = (maskInt << 32) | maskInt;
         }
         else
         {
             this.mask = null;
+            this.maskLong = 0;
         }
 
         offset = 0;
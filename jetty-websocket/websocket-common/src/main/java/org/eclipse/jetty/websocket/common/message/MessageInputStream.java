@@ -22,11 +22,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.websocket.common.events.AnnotatedEventDriver;
 
 /**
  * Support class for reading binary message data as an InputStream.
+ * <p>
+ * The message data is buffered into a buffer from the {@link ByteBufferPool}, acquired on the first frame of the message and released when the
+ * stream is closed.
  */
 public class MessageInputStream extends InputStream implements MessageAppender
 {
@@ -36,19 +40,30 @@ public class MessageInputStream extends InputStream implements MessageAppender
      */
     private static final int COMPACT_THRESHOLD = 5;
     private final AnnotatedEventDriver driver;
-    private final ByteBuffer buf;
+    private final ByteBufferPool bufferPool;
+    private final Object lock = new Object();
+    private ByteBuffer buf;
     private int size;
     private boolean finished;
     private boolean needsNotification;
     private int readPosition;
 
     public MessageInputStream(AnnotatedEventDriver driver)
+    {
+        this(driver,null);
+    }
+
+    /**
+     * @param driver
+     *            the driver to notify of the stream
+     * @param bufferPool
+     *            the pool to acquire the message buffer from, or null to allocate it
+     */
+    public MessageInputStream(AnnotatedEventDriver driver, ByteBufferPool bufferPool)
     {
         this.driver = driver;
-        this.buf = ByteBuffer.allocate(BUFFER_SIZE);
-        BufferUtil.clearToFill(this.buf);
+        this.bufferPool = bufferPool;
         size = 0;
-        readPosition = this.buf.position();
         finished = false;
         needsNotification = true;
     }
@@ -70,8 +85,14 @@ public class MessageInputStream extends InputStream implements MessageAppender
         driver.getPolicy().assertValidMessageSize(size + payload.remaining());
         size += payload.remaining();
 
-        synchronized (buf)
+        synchronized (lock)
         {
+            if (buf == null)
+            {
+                buf = (bufferPool == null)?ByteBuffer.allocate(BUFFER_SIZE):bufferPool.acquire(BUFFER_SIZE,false);
+                BufferUtil.clearToFill(buf);
+                readPosition = buf.position();
+            }
             // TODO: grow buffer till max binary message size?
             // TODO: compact this buffer to fit incoming buffer?
             // TODO: tell connection to suspend if buffer too full?
@@ -89,6 +110,14 @@ public class MessageInputStream extends InputStream implements MessageAppender
     public void close() throws IOException
     {
         finished = true;
+        synchronized (lock)
+        {
+            if ((buf != null) && (bufferPool != null))
+            {
+                bufferPool.release(buf);
+            }
+            buf = null;
+        }
         super.close();
     }
 
@@ -101,8 +130,12 @@ public class MessageInputStream extends InputStream implements MessageAppender
     @Override
     public int read() throws IOException
     {
-        synchronized (buf)
+        synchronized (lock)
         {
+            if (buf == null)
+            {
+                throw new IOException("Stream closed");
+            }
             byte b = buf.get(readPosition);
             readPosition++;
             if (readPosition <= (buf.limit() - COMPACT_THRESHOLD))
@@ -23,7 +23,10 @@ import static org.hamcrest.Matchers.*;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.TypeUtil;
@@ -32,7 +35,10 @@ import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.BadPayloadException;
 import org.eclipse.jetty.websocket.api.StatusCode;
 import org.eclipse.jetty.websocket.api.WebSocketBehavior;
+import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -248,4 +254,83 @@ public class ParserTest
         capture.assertNoErrors();
         Assert.assertThat("Frame Count",capture.getFrames().size(),is(0));
     }
+
+    /**
+     * A frame fully contained in the network buffer is unmasked in place, and notified with a slice of the network buffer.
+     */
+    @Test
+    public void testParseWholeFrameIsNotCopied()
+    {
+        String message = "Hello in place unmasking, from a direct network buffer";
+        WebSocketFrame frame = WebSocketFrame.text(message);
+        frame.setMask(TypeUtil.fromHexString("11223344"));
+        ByteBuffer generated = new UnitGenerator().generate(frame);
+        ByteBuffer network = ByteBuffer.allocateDirect(generated.remaining());
+        network.put(generated).flip();
+
+        final List<Boolean> direct = new ArrayList<>();
+        final List<String> texts = new ArrayList<>();
+        Parser parser = new UnitParser(WebSocketPolicy.newServerPolicy());
+        parser.setIncomingFramesHandler(new IncomingFrames()
+        {
+            @Override
+            public void incomingError(WebSocketException e)
+            {
+                Assert.fail(e.toString());
+            }
+
+            @Override
+            public void incomingFrame(Frame frame)
+            {
+                direct.add(frame.getPayload().isDirect());
+                texts.add(BufferUtil.toUTF8String(frame.getPayload()));
+            }
+        });
+        parser.parse(network);
+
+        Assert.assertThat("Frames",texts,contains(message));
+        Assert.assertThat("Payload is a slice of the network buffer",direct.get(0),is(true));
+        Assert.assertThat("Network buffer consumed",network.remaining(),is(0));
+    }
+
+    /**
+     * A frame split across network buffers is accumulated in a pooled buffer, released once the frame has been notified.
+     */
+    @Test
+    public void testParseSplitFrameReleasesPooledPayload()
+    {
+        final AtomicInteger outstanding = new AtomicInteger();
+        ByteBufferPool bufferPool = new MappedByteBufferPool()
+        {
+            @Override
+            public ByteBuffer acquire(int size, boolean direct)
+            {
+                outstanding.incrementAndGet();
+                return super.acquire(size,direct);
+            }
+
+            @Override
+            public void release(ByteBuffer buffer)
+            {
+                outstanding.decrementAndGet();
+                super.release(buffer);
+            }
+        };
+
+        List<WebSocketFrame> send = new ArrayList<>();
+        send.add(WebSocketFrame.text("first message, split in many network buffers"));
+        send.add(WebSocketFrame.binary(new byte[300]));
+        ByteBuffer completeBuf = UnitGenerator.generate(send);
+
+        UnitParser parser = new UnitParser(bufferPool,WebSocketPolicy.newServerPolicy());
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        parser.setIncomingFramesHandler(capture);
+        parser.parseSlowly(completeBuf,7);
+
+        capture.assertNoErrors();
+        capture.assertHasFrame(OpCode.TEXT,1);
+        capture.assertHasFrame(OpCode.BINARY,1);
+        Assert.assertThat("Text",capture.getFrames().get(0).getPayloadAsUTF8(),is("first message, split in many network buffers"));
+        Assert.assertThat("Outstanding pooled buffers",outstanding.get(),is(0));
+    }
 }
@@ -38,6 +38,7 @@ import examples.AnnotatedBinaryStreamSocket;
 import examples.AnnotatedFramesSocket;
 import examples.AnnotatedTextSocket;
 import examples.ListenerBasicSocket;
+import examples.ListenerBatchSocket;
 
 public class EventDriverTest
 {
@@ -166,6 +167,55 @@ public class EventDriverTest
         }
     }
 
+    @Test
+    public void testListener_Batch() throws IOException
+    {
+        ListenerBatchSocket socket = new ListenerBatchSocket();
+        EventDriver driver = wrap(socket);
+
+        try (LocalWebSocketSession conn = new LocalWebSocketSession(testname,driver))
+        {
+            conn.open();
+            driver.beginBatch();
+            driver.incomingFrame(WebSocketFrame.text("Hello"));
+            driver.incomingFrame(makeBinaryFrame("Hello ",false));
+            driver.incomingFrame(WebSocketFrame.binary().setPayload("World").setContinuation(true));
+            driver.incomingFrame(WebSocketFrame.text("Bye"));
+            socket.capture.assertEventCount(1);
+            driver.endBatch();
+
+            // outside of a batch, each message is delivered on its own
+            driver.incomingFrame(WebSocketFrame.text("Alone"));
+
+            socket.capture.assertEventCount(3);
+            socket.capture.assertEventStartsWith(0,"onWebSocketConnect");
+            socket.capture.assertEvent(1,"onWebSocketBatch(\"Hello\", [11], \"Bye\")");
+            socket.capture.assertEvent(2,"onWebSocketBatch(\"Alone\")");
+        }
+    }
+
+    @Test
+    public void testListener_BatchBeforeClose() throws IOException
+    {
+        ListenerBatchSocket socket = new ListenerBatchSocket();
+        EventDriver driver = wrap(socket);
+
+        try (LocalWebSocketSession conn = new LocalWebSocketSession(testname,driver))
+        {
+            conn.open();
+            driver.beginBatch();
+            driver.incomingFrame(WebSocketFrame.text("Hello"));
+            driver.incomingFrame(WebSocketFrame.text("World"));
+            driver.incomingFrame(new CloseInfo(StatusCode.NORMAL).asFrame());
+            driver.endBatch();
+
+            socket.capture.assertEventCount(3);
+            socket.capture.assertEventStartsWith(0,"onWebSocketConnect");
+            socket.capture.assertEvent(1,"onWebSocketBatch(\"Hello\", \"World\")");
+            socket.capture.assertEventStartsWith(2,"onWebSocketClose(1000,");
+        }
+    }
+
     private EventDriver wrap(Object websocket)
     {
         WebSocketPolicy policy = WebSocketPolicy.newServerPolicy();
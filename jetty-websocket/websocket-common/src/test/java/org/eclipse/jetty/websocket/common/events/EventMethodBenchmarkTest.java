@@ -0,0 +1,110 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.events;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the cost of dispatching a text message to an annotated method through {@link EventMethod} and through plain
+ * {@link Method#invoke(Object, Object...)}.
+ */
+@Ignore
+public class EventMethodBenchmarkTest
+{
+    private static final Logger LOG = Log.getLogger(EventMethodBenchmarkTest.class);
+    private static final int CALLS = 10000000;
+
+    public static class TextSocket
+    {
+        private long length;
+
+        public void onText(String message)
+        {
+            length += message.length();
+        }
+
+        public void onSessionText(Session session, String message)
+        {
+            length += message.length();
+        }
+    }
+
+    @Test
+    public void testDispatchCost() throws Exception
+    {
+        TextSocket socket = new TextSocket();
+        Method onText = TextSocket.class.getMethod("onText",String.class);
+        Method onSessionText = TextSocket.class.getMethod("onSessionText",Session.class,String.class);
+        EventMethod textEvent = new EventMethod(TextSocket.class,onText);
+        EventMethod sessionTextEvent = new EventMethod(TextSocket.class,onSessionText);
+
+        for (int i = 0; i < 3; ++i)
+        {
+            reflection("reflection onText(String)",socket,onText,false);
+            eventMethod("EventMethod onText(String)",socket,textEvent);
+            reflection("reflection onText(Session,String)",socket,onSessionText,true);
+            eventMethod("EventMethod onText(Session,String)",socket,sessionTextEvent);
+        }
+    }
+
+    private void eventMethod(String name, TextSocket socket, EventMethod event)
+    {
+        Session session = null;
+        String message = "Hello World";
+        long begin = System.nanoTime();
+        for (int i = 0; i < CALLS; ++i)
+        {
+            event.call(socket,session,message);
+        }
+        report(name,begin);
+    }
+
+    private void reflection(String name, TextSocket socket, Method method, boolean hasSession) throws Exception
+    {
+        Session session = null;
+        String message = "Hello World";
+        long begin = System.nanoTime();
+        for (int i = 0; i < CALLS; ++i)
+        {
+            // the arguments the driver passes, trimmed as EventMethod used to
+            Object[] args = new Object[] { session, message };
+            if (!hasSession)
+            {
+                Object[] trimmed = new Object[1];
+                System.arraycopy(args,1,trimmed,0,1);
+                args = trimmed;
+            }
+            method.invoke(socket,args);
+        }
+        report(name,begin);
+    }
+
+    private void report(String name, long begin)
+    {
+        long elapsed = System.nanoTime() - begin;
+        LOG.info("{} {} ns/call ({} ms)",name,String.format("%.1f",(double)elapsed / CALLS),TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+}
@@ -0,0 +1,85 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.events;
+
+import static org.hamcrest.Matchers.*;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WebSocketException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import examples.AnnotatedTextSocket;
+
+public class EventMethodTest
+{
+    public static class ThrowingSocket
+    {
+        public void onText(Session session, String message)
+        {
+            throw new IllegalStateException("Bad " + message);
+        }
+    }
+
+    @Test
+    public void testCallDropsUndeclaredSession() throws Exception
+    {
+        AnnotatedTextSocket socket = new AnnotatedTextSocket();
+        EventMethod onText = new EventMethod(AnnotatedTextSocket.class,"onText",String.class);
+
+        Session session = null;
+        onText.call(socket,session,"Hello");
+        onText.call(socket,"World");
+
+        socket.capture.assertEventCount(2);
+        socket.capture.assertEvent(0,"onText(\"Hello\")");
+        socket.capture.assertEvent(1,"onText(\"World\")");
+    }
+
+    @Test
+    public void testCallUnboxesPrimitiveArguments() throws Exception
+    {
+        AnnotatedTextSocket socket = new AnnotatedTextSocket();
+        EventMethod onClose = new EventMethod(AnnotatedTextSocket.class,"onClose",int.class,String.class);
+
+        Session session = null;
+        onClose.call(socket,session,StatusCode.NORMAL,"Bye");
+
+        socket.capture.assertEventCount(1);
+        socket.capture.assertEvent(0,"onClose(1000, \"Bye\")");
+    }
+
+    @Test
+    public void testCallWrapsMethodException() throws Exception
+    {
+        EventMethod onText = new EventMethod(ThrowingSocket.class,"onText",Session.class,String.class);
+        try
+        {
+            Session session = null;
+            onText.call(new ThrowingSocket(),session,"Message");
+            Assert.fail("Expected WebSocketException");
+        }
+        catch (WebSocketException e)
+        {
+            Assert.assertThat("Cause",e.getCause(),instanceOf(IllegalStateException.class));
+            Assert.assertThat("Cause message",e.getCause().getMessage(),is("Bad Message"));
+        }
+    }
+}
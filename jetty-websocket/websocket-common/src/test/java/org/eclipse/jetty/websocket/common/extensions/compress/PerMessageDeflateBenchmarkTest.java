@@ -0,0 +1,121 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the CPU time spent to compress 1 MB of realtime-like text messages by the {@link FrameCompressionExtension} and the
+ * {@link PerMessageDeflateExtension}.
+ */
+@Ignore
+public class PerMessageDeflateBenchmarkTest
+{
+    private static final Logger LOG = Log.getLogger(PerMessageDeflateBenchmarkTest.class);
+    private static final int MESSAGES = 20000;
+
+    /**
+     * Counts the compressed bytes, and completes the writes.
+     */
+    private static class CountingOutgoingFrames implements OutgoingFrames
+    {
+        private long bytes;
+
+        @Override
+        public void outgoingFrame(Frame frame, WriteCallback callback)
+        {
+            bytes += frame.getPayloadLength();
+            if (callback != null)
+            {
+                callback.writeSuccess();
+            }
+        }
+    }
+
+    @Test
+    public void testCpuPerMegabyte() throws Exception
+    {
+        for (int i = 0; i < 3; ++i)
+        {
+            benchmark("x-webkit-deflate-frame",newFrameCompression());
+            benchmark("permessage-deflate level=default",newPerMessageDeflate(Deflater.DEFAULT_COMPRESSION,false));
+            benchmark("permessage-deflate level=1",newPerMessageDeflate(Deflater.BEST_SPEED,false));
+            benchmark("permessage-deflate level=1 no_context_takeover",newPerMessageDeflate(Deflater.BEST_SPEED,true));
+        }
+    }
+
+    private AbstractExtension newFrameCompression()
+    {
+        FrameCompressionExtension ext = new FrameCompressionExtension();
+        ext.setBufferPool(new MappedByteBufferPool());
+        ext.setPolicy(WebSocketPolicy.newServerPolicy());
+        ext.setConfig(ExtensionConfig.parse("x-webkit-deflate-frame"));
+        return ext;
+    }
+
+    private AbstractExtension newPerMessageDeflate(int level, boolean noContextTakeover)
+    {
+        PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.setBufferPool(new MappedByteBufferPool());
+        ext.setPolicy(WebSocketPolicy.newServerPolicy());
+        ext.setDeflaterPool(new DeflaterPool(level,DeflaterPool.DEFAULT_CAPACITY));
+        ext.setNoContextTakeover(noContextTakeover);
+        ext.setConfig(ExtensionConfig.parse("permessage-deflate"));
+        return ext;
+    }
+
+    private void benchmark(String name, AbstractExtension ext)
+    {
+        CountingOutgoingFrames network = new CountingOutgoingFrames();
+        ext.setNextOutgoingFrames(network);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long bytes = 0;
+        long cpuBegin = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < MESSAGES; ++i)
+        {
+            // A typical realtime message: a small JSON document
+            String message = "{\"id\":" + i + ",\"type\":\"quote\",\"symbol\":\"ACME\",\"bid\":" + (100 + (i % 37)) + ".25,\"ask\":" + (101 + (i % 41)) +
+                    ".75,\"volume\":" + (i * 13) + "}";
+            WebSocketFrame frame = WebSocketFrame.text(message);
+            bytes += frame.getPayloadLength();
+            ext.outgoingFrame(frame,null);
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuBegin;
+
+        double megabytes = bytes / (1024.0 * 1024.0);
+        LOG.info("{}: {} ms CPU/MB, ratio {}",name,String.format("%.3f",TimeUnit.NANOSECONDS.toMicros(cpu) / 1000.0 / megabytes),String.format("%.2f",(double)network.bytes / bytes));
+    }
+}
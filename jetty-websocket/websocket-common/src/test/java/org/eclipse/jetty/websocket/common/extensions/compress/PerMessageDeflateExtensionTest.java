@@ -0,0 +1,322 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import static org.hamcrest.Matchers.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.Extension;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.common.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.OutgoingFramesCapture;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PerMessageDeflateExtensionTest
+{
+    private final MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+    private final DeflaterPool deflaterPool = new DeflaterPool();
+
+    private PerMessageDeflateExtension newExtension(WebSocketPolicy policy, String config)
+    {
+        PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.setBufferPool(bufferPool);
+        ext.setPolicy(policy);
+        ext.setDeflaterPool(deflaterPool);
+        ext.setConfig(ExtensionConfig.parse(config));
+        return ext;
+    }
+
+    /**
+     * Send the messages through the server extension, and receive the compressed frames with the client extension.
+     */
+    private List<String> roundTrip(PerMessageDeflateExtension server, PerMessageDeflateExtension client, String... messages)
+    {
+        OutgoingFramesCapture network = new OutgoingFramesCapture();
+        server.setNextOutgoingFrames(network);
+        for (String message : messages)
+        {
+            server.outgoingFrame(WebSocketFrame.text(message),null);
+        }
+
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        client.setNextIncomingFrames(capture);
+        for (WebSocketFrame frame : network.getFrames())
+        {
+            Assert.assertThat("Compressed frame RSV1",frame.isRsv1(),is(true));
+            client.incomingFrame(frame);
+        }
+
+        capture.assertNoErrors();
+        List<String> received = new ArrayList<>();
+        for (WebSocketFrame frame : capture.getFrames())
+        {
+            Assert.assertThat("Decompressed frame RSV1",frame.isRsv1(),is(false));
+            received.add(frame.getPayloadAsUTF8());
+        }
+        return received;
+    }
+
+    @Test
+    public void testNegotiateDefaultOffer()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate; client_max_window_bits");
+        Assert.assertThat("Acceptable",server.isAcceptable(),is(true));
+        Assert.assertThat("Response",server.getConfig().getParameterizedName(),is("permessage-deflate"));
+        Assert.assertThat("Outgoing context takeover",server.isOutgoingContextTakeover(),is(true));
+        Assert.assertThat("Incoming context takeover",server.isIncomingContextTakeover(),is(true));
+    }
+
+    @Test
+    public void testNegotiateNoContextTakeover()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),
+                "permessage-deflate; server_no_context_takeover; client_no_context_takeover");
+        ExtensionConfig response = server.getConfig();
+        Assert.assertThat("Response",response.getParameterKeys(),containsInAnyOrder("server_no_context_takeover","client_no_context_takeover"));
+        Assert.assertThat("Outgoing context takeover",server.isOutgoingContextTakeover(),is(false));
+        Assert.assertThat("Incoming context takeover",server.isIncomingContextTakeover(),is(false));
+
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),response.getParameterizedName());
+        Assert.assertThat("Client outgoing context takeover",client.isOutgoingContextTakeover(),is(false));
+        Assert.assertThat("Client incoming context takeover",client.isIncomingContextTakeover(),is(false));
+    }
+
+    @Test
+    public void testServerImposesNoContextTakeover()
+    {
+        PerMessageDeflateExtension server = new PerMessageDeflateExtension();
+        server.setBufferPool(bufferPool);
+        server.setPolicy(WebSocketPolicy.newServerPolicy());
+        server.setNoContextTakeover(true);
+        server.setConfig(ExtensionConfig.parse("permessage-deflate"));
+        Assert.assertThat("Response",server.getConfig().getParameterizedName(),is("permessage-deflate;server_no_context_takeover"));
+    }
+
+    @Test
+    public void testFactoryDeclinesSmallServerWindow()
+    {
+        WebSocketExtensionFactory factory = new WebSocketExtensionFactory(WebSocketPolicy.newServerPolicy(),bufferPool);
+        Extension declined = factory.newInstance(ExtensionConfig.parse("permessage-deflate; server_max_window_bits=10"));
+        Assert.assertThat("Declined",declined,nullValue());
+        Extension accepted = factory.newInstance(ExtensionConfig.parse("permessage-deflate; client_max_window_bits=10"));
+        Assert.assertThat("Accepted",accepted,instanceOf(PerMessageDeflateExtension.class));
+        Extension unknown = factory.newInstance(ExtensionConfig.parse("permessage-deflate; foo=bar"));
+        Assert.assertThat("Unknown parameter",unknown,nullValue());
+    }
+
+    /**
+     * The "Hello" example of the specification: the compressed message has its trailing 0x00 0x00 0xFF 0xFF removed.
+     */
+    @Test
+    public void testDecompressSpecExample()
+    {
+        PerMessageDeflateExtension ext = newExtension(WebSocketPolicy.newClientPolicy(),"permessage-deflate");
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        ext.setNextIncomingFrames(capture);
+
+        WebSocketFrame frame = WebSocketFrame.text();
+        frame.setRsv1(true);
+        frame.setPayload(TypeUtil.fromHexString("f248cdc9c90700"));
+        ext.incomingFrame(frame);
+
+        capture.assertHasFrame(OpCode.TEXT,1);
+        Assert.assertThat("Message",capture.getFrames().get(0).getPayloadAsUTF8(),is("Hello"));
+    }
+
+    @Test
+    public void testCompressRemovesTail()
+    {
+        PerMessageDeflateExtension ext = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        OutgoingFramesCapture capture = new OutgoingFramesCapture();
+        ext.setNextOutgoingFrames(capture);
+        ext.outgoingFrame(WebSocketFrame.text("Hello"),null);
+        ext.outgoingFrame(WebSocketFrame.text(""),null);
+
+        WebSocketFrame hello = capture.getFrames().get(0);
+        Assert.assertThat("Compressed Hello",TypeUtil.toHexString(BufferUtil.toArray(hello.getPayload())),equalToIgnoringCase("f248cdc9c90700"));
+
+        // The empty message is still decompressed by the remote endpoint
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),"permessage-deflate");
+        IncomingFramesCapture received = new IncomingFramesCapture();
+        client.setNextIncomingFrames(received);
+        for (WebSocketFrame frame : capture.getFrames())
+        {
+            client.incomingFrame(frame);
+        }
+        received.assertHasFrame(OpCode.TEXT,2);
+        Assert.assertThat("Hello",received.getFrames().get(0).getPayloadAsUTF8(),is("Hello"));
+        Assert.assertThat("Empty message",received.getFrames().get(1).getPayloadLength(),is(0));
+    }
+
+    @Test
+    public void testRoundTripWithContextTakeover()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),server.getConfig().getParameterizedName());
+
+        List<String> received = roundTrip(server,client,"Hello","Hello","Hello World");
+        Assert.assertThat("Messages",received,contains("Hello","Hello","Hello World"));
+        // The deflaters are kept across messages
+        Assert.assertThat("Idle deflaters",deflaterPool.getIdleDeflaters(),is(0));
+        Assert.assertThat("Idle inflaters",deflaterPool.getIdleInflaters(),is(0));
+    }
+
+    @Test
+    public void testRoundTripWithoutContextTakeoverPoolsDeflaters()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate; server_no_context_takeover");
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),server.getConfig().getParameterizedName());
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+        {
+            large.append("Line ").append(i).append('\n');
+        }
+        List<String> received = roundTrip(server,client,"Hello",large.toString(),"Hello");
+        Assert.assertThat("Messages",received,contains("Hello",large.toString(),"Hello"));
+        Assert.assertThat("Idle deflaters",deflaterPool.getIdleDeflaters(),is(1));
+        Assert.assertThat("Idle inflaters",deflaterPool.getIdleInflaters(),is(1));
+    }
+
+    @Test
+    public void testHibernateReleasesDeflaterWithContextTakeover()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),server.getConfig().getParameterizedName());
+
+        Assert.assertThat("Before",roundTrip(server,client,"Hello","Hello"),contains("Hello","Hello"));
+        server.hibernate();
+        Assert.assertThat("Idle deflaters",deflaterPool.getIdleDeflaters(),is(1));
+        // the inflater may be referred to by the next messages of the remote compressor
+        client.hibernate();
+        Assert.assertThat("Idle inflaters",deflaterPool.getIdleInflaters(),is(0));
+
+        // the client keeps decompressing the same stream
+        Assert.assertThat("After",roundTrip(server,client,"Hello","Hello World"),contains("Hello","Hello World"));
+    }
+
+    @Test
+    public void testCloseReleasesDeflatersWithContextTakeover()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),server.getConfig().getParameterizedName());
+
+        Assert.assertThat("Messages",roundTrip(server,client,"Hello","Hello"),contains("Hello","Hello"));
+        server.close();
+        client.close();
+        Assert.assertThat("Idle deflaters",deflaterPool.getIdleDeflaters(),is(1));
+        // the inflater is ended, not pooled
+        Assert.assertThat("Idle inflaters",deflaterPool.getIdleInflaters(),is(0));
+
+        // a message after the close does not keep a deflater
+        server.close();
+        server.setNextOutgoingFrames(new OutgoingFramesCapture());
+        server.outgoingFrame(WebSocketFrame.text("Hello"),null);
+        Assert.assertThat("Idle deflaters after close",deflaterPool.getIdleDeflaters(),is(1));
+    }
+
+    @Test
+    public void testIncomingFrameAfterCloseIsDropped()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),server.getConfig().getParameterizedName());
+
+        OutgoingFramesCapture network = new OutgoingFramesCapture();
+        server.setNextOutgoingFrames(network);
+        server.outgoingFrame(WebSocketFrame.text("Hello ").setFin(false),null);
+        server.outgoingFrame(new WebSocketFrame(OpCode.CONTINUATION).setPayload("World"),null);
+
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        client.setNextIncomingFrames(capture);
+        client.incomingFrame(network.getFrames().get(0));
+        // the inflater is ended in the middle of the message
+        client.close();
+        client.incomingFrame(network.getFrames().get(1));
+
+        capture.assertNoErrors();
+        Assert.assertThat("Frames",capture.getFrames().size(),is(1));
+        Assert.assertThat("Idle inflaters",deflaterPool.getIdleInflaters(),is(0));
+    }
+
+    @Test
+    public void testHibernateKeepsDeflaterOfFragmentedMessage()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        server.setNextOutgoingFrames(new OutgoingFramesCapture());
+        server.outgoingFrame(WebSocketFrame.text("Hello ").setFin(false),null);
+        server.hibernate();
+        Assert.assertThat("Idle deflaters",deflaterPool.getIdleDeflaters(),is(0));
+
+        server.outgoingFrame(new WebSocketFrame(OpCode.CONTINUATION).setPayload("World"),null);
+        server.hibernate();
+        Assert.assertThat("Idle deflaters",deflaterPool.getIdleDeflaters(),is(1));
+    }
+
+    @Test
+    public void testFragmentedMessage()
+    {
+        PerMessageDeflateExtension server = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        OutgoingFramesCapture network = new OutgoingFramesCapture();
+        server.setNextOutgoingFrames(network);
+        server.outgoingFrame(WebSocketFrame.text("Hello ").setFin(false),null);
+        server.outgoingFrame(new WebSocketFrame(OpCode.CONTINUATION).setPayload("World"),null);
+
+        Assert.assertThat("First frame RSV1",network.getFrames().get(0).isRsv1(),is(true));
+        Assert.assertThat("Continuation RSV1",network.getFrames().get(1).isRsv1(),is(false));
+
+        PerMessageDeflateExtension client = newExtension(WebSocketPolicy.newClientPolicy(),"permessage-deflate");
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        client.setNextIncomingFrames(capture);
+        for (WebSocketFrame frame : network.getFrames())
+        {
+            client.incomingFrame(frame);
+        }
+        StringBuilder message = new StringBuilder();
+        for (WebSocketFrame frame : capture.getFrames())
+        {
+            message.append(frame.getPayloadAsUTF8());
+        }
+        Assert.assertThat("Message",message.toString(),is("Hello World"));
+    }
+
+    @Test
+    public void testIncomingUncompressedMessagePassesThrough()
+    {
+        PerMessageDeflateExtension ext = newExtension(WebSocketPolicy.newServerPolicy(),"permessage-deflate");
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        ext.setNextIncomingFrames(capture);
+        ext.incomingFrame(WebSocketFrame.text("plain"));
+        ext.incomingFrame(WebSocketFrame.ping().setPayload("ping"));
+
+        capture.assertHasFrame(OpCode.TEXT,1);
+        capture.assertHasFrame(OpCode.PING,1);
+        Assert.assertThat("Message",capture.getFrames().get(0).getPayloadAsUTF8(),is("plain"));
+    }
+}
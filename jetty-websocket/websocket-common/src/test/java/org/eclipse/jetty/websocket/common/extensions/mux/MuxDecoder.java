@@ -41,5 +41,9 @@ public class MuxDecoder extends MuxEventCapture implements OutgoingFrames
     public void outgoingFrame(Frame frame, WriteCallback callback)
     {
         parser.parse(frame);
+        if (callback != null)
+        {
+            callback.writeSuccess();
+        }
     }
 }
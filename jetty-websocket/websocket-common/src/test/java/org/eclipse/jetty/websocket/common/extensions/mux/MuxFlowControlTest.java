@@ -0,0 +1,225 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.mux;
+
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
+import org.eclipse.jetty.websocket.common.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.extensions.mux.op.MuxDropChannel;
+import org.eclipse.jetty.websocket.common.extensions.mux.op.MuxFlowControl;
+import org.eclipse.jetty.websocket.common.io.FutureWriteCallback;
+import org.eclipse.jetty.websocket.common.io.LocalWebSocketConnection;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+/**
+ * Per sub-channel flow control, and fair scheduling of the sub-channels, of the {@link Muxer}
+ */
+public class MuxFlowControlTest
+{
+    @Rule
+    public TestName testname = new TestName();
+
+    private Muxer muxer;
+    private MuxDecoder remote;
+
+    @Before
+    public void initMuxer()
+    {
+        LocalWebSocketConnection physical = new LocalWebSocketConnection(testname);
+        physical.onOpen();
+        muxer = new Muxer(physical);
+        remote = new MuxDecoder();
+        muxer.setOutgoingFramesHandler(remote);
+    }
+
+    private MuxFlowControl newFlowControl(long channelId, long quota)
+    {
+        MuxFlowControl flow = new MuxFlowControl();
+        flow.setChannelId(channelId);
+        flow.setSendQuotaSize(quota);
+        return flow;
+    }
+
+    private String payload(int length)
+    {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++)
+        {
+            b.append((char)('a' + (i % 26)));
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void testFrameLargerThanSendQuotaIsFragmented() throws Exception
+    {
+        muxer.setInitialSendQuota(10);
+        MuxChannel channel = muxer.getChannel(1,true);
+
+        FutureWriteCallback callback = new FutureWriteCallback();
+        String text = payload(25);
+        channel.outgoingFrame(WebSocketFrame.text(text),callback);
+
+        // Only the send quota is written
+        remote.assertFrameCount(1);
+        MuxedFrame first = remote.getFrames().get(0);
+        Assert.assertThat("First fragment opcode",first.getOpCode(),is(OpCode.TEXT));
+        Assert.assertThat("First fragment fin",first.isFin(),is(false));
+        Assert.assertThat("First fragment payload",first.getPayloadAsUTF8(),is(text.substring(0,10)));
+        Assert.assertThat("Send quota",channel.getSendQuota(),is(0L));
+        Assert.assertThat("Queued frames",channel.getOutgoingQueueSize(),is(1));
+        Assert.assertThat("Callback done",callback.isDone(),is(false));
+
+        // The remote endpoint gives more quota
+        muxer.onMuxFlowControl(newFlowControl(1,100));
+
+        remote.assertFrameCount(2);
+        MuxedFrame last = remote.getFrames().get(1);
+        Assert.assertThat("Last fragment continuation",last.isContinuation(),is(true));
+        Assert.assertThat("Last fragment fin",last.isFin(),is(true));
+        Assert.assertThat("Last fragment payload",last.getPayloadAsUTF8(),is(text.substring(10)));
+        Assert.assertThat("Send quota",channel.getSendQuota(),is(85L));
+        Assert.assertThat("Queued frames",channel.getOutgoingQueueSize(),is(0));
+        Assert.assertThat("Callback done",callback.isDone(),is(true));
+    }
+
+    @Test
+    public void testControlFramesAreNotFlowControlled() throws Exception
+    {
+        muxer.setInitialSendQuota(0);
+        MuxChannel channel = muxer.getChannel(1,true);
+
+        channel.outgoingFrame(WebSocketFrame.ping().setPayload("ping"),null);
+        channel.outgoingFrame(WebSocketFrame.text("held"),null);
+
+        remote.assertHasFrame(OpCode.PING,1L,1);
+        remote.assertHasFrame(OpCode.TEXT,1L,0);
+        Assert.assertThat("Queued frames",channel.getOutgoingQueueSize(),is(1));
+    }
+
+    @Test
+    public void testChannelsAreWrittenInRoundRobin() throws Exception
+    {
+        muxer.setInitialSendQuota(0);
+        muxer.setMaxFragmentSize(4);
+        final List<Long> order = new ArrayList<>();
+        muxer.setOutgoingFramesHandler(new OutgoingFrames()
+        {
+            @Override
+            public void outgoingFrame(Frame frame, WriteCallback callback)
+            {
+                remote.outgoingFrame(frame,callback);
+                MuxedFrame muxed = remote.getFrames().getLast();
+                order.add(muxed.getChannelId());
+                if (order.size() == 1)
+                {
+                    // The other channels get their quota while the first one is being written
+                    muxer.onMuxFlowControl(newFlowControl(2,100));
+                    muxer.onMuxFlowControl(newFlowControl(3,100));
+                }
+            }
+        });
+
+        for (long channelId = 1; channelId <= 3; channelId++)
+        {
+            muxer.getChannel(channelId,true).outgoingFrame(WebSocketFrame.binary(new byte[12]),null);
+        }
+        Assert.assertThat("Nothing written without quota",order.size(),is(0));
+
+        muxer.onMuxFlowControl(newFlowControl(1,100));
+
+        // 3 fragments per channel, interleaved
+        Assert.assertThat("Channel order",order,contains(1L,1L,2L,3L,1L,2L,3L,2L,3L));
+    }
+
+    @Test
+    public void testReceivedBytesAreGivenBack() throws Exception
+    {
+        muxer.setInitialReceiveQuota(100);
+        MuxChannel channel = muxer.getChannel(1,true);
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        channel.setNextIncomingFrames(capture);
+        MuxEncoder local = MuxEncoder.toIncoming(muxer);
+
+        local.frame(1,WebSocketFrame.text(payload(40)));
+        capture.assertHasFrame(OpCode.TEXT,1);
+        remote.assertHasOp(MuxOp.FLOW_CONTROL,0);
+        Assert.assertThat("Receive quota",channel.getReceiveQuota(),is(60L));
+
+        // Half of the quota is consumed
+        local.frame(1,WebSocketFrame.text(payload(20)));
+        capture.assertHasFrame(OpCode.TEXT,2);
+        remote.assertHasOp(MuxOp.FLOW_CONTROL,1);
+        MuxFlowControl flow = (MuxFlowControl)remote.getOps().pop();
+        Assert.assertThat("FlowControl.channelId",flow.getChannelId(),is(1L));
+        Assert.assertThat("FlowControl.sendQuotaSize",flow.getSendQuotaSize(),is(60L));
+        Assert.assertThat("Receive quota",channel.getReceiveQuota(),is(100L));
+    }
+
+    @Test
+    public void testInterleavedContinuationsKeepTheirOpCode() throws Exception
+    {
+        MuxChannel text = muxer.getChannel(1,true);
+        IncomingFramesCapture textCapture = new IncomingFramesCapture();
+        text.setNextIncomingFrames(textCapture);
+        MuxChannel binary = muxer.getChannel(2,true);
+        IncomingFramesCapture binaryCapture = new IncomingFramesCapture();
+        binary.setNextIncomingFrames(binaryCapture);
+        MuxEncoder local = MuxEncoder.toIncoming(muxer);
+
+        local.frame(1,WebSocketFrame.text("Hello ").setFin(false));
+        local.frame(2,WebSocketFrame.binary(new byte[4]).setFin(false));
+        local.frame(1,new WebSocketFrame(OpCode.CONTINUATION).setPayload("World"));
+
+        WebSocketFrame continuation = textCapture.getFrames().get(1);
+        Assert.assertThat("Continuation",continuation.isContinuation(),is(true));
+        Assert.assertThat("Continuation opcode",continuation.getOpCode(),is(OpCode.TEXT));
+        binaryCapture.assertHasFrame(OpCode.BINARY,1);
+    }
+
+    @Test
+    public void testSendQuotaViolationDropsChannel() throws Exception
+    {
+        muxer.setInitialReceiveQuota(10);
+        MuxChannel channel = muxer.getChannel(1,true);
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        channel.setNextIncomingFrames(capture);
+        MuxEncoder local = MuxEncoder.toIncoming(muxer);
+
+        local.frame(1,WebSocketFrame.binary(new byte[20]));
+
+        capture.assertHasNoFrames();
+        remote.assertHasOp(MuxOp.DROP_CHANNEL,1);
+        MuxDropChannel drop = (MuxDropChannel)remote.getOps().pop();
+        Assert.assertThat("DropChannel.channelId",drop.getChannelId(),is(1L));
+        Assert.assertThat("DropChannel.code",drop.getCode(),is(MuxDropChannel.Reason.SEND_QUOTA_VIOLATION));
+    }
+}
@@ -0,0 +1,178 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.mux;
+
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.WebSocketException;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.io.FramePipes;
+import org.eclipse.jetty.websocket.common.io.FutureWriteCallback;
+import org.eclipse.jetty.websocket.common.io.LocalWebSocketConnection;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Many sub-channels, written concurrently over a single (in memory) physical connection between two {@link Muxer}s.
+ */
+public class MuxLoadTest
+{
+    private static final Logger LOG = Log.getLogger(MuxLoadTest.class);
+    private static final int CHANNELS = 1000;
+    private static final int MESSAGES = 10;
+    private static final int MAX_MESSAGE_SIZE = 32 * 1024;
+    private static final int THREADS = 8;
+
+    /**
+     * Count the received messages and bytes of a sub-channel.
+     */
+    private static class ChannelCounter implements IncomingFrames
+    {
+        private final AtomicInteger messages = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final CountDownLatch done = new CountDownLatch(MESSAGES);
+
+        @Override
+        public void incomingError(WebSocketException e)
+        {
+            Assert.fail(e.toString());
+        }
+
+        @Override
+        public void incomingFrame(Frame frame)
+        {
+            bytes.addAndGet(frame.getPayloadLength());
+            if (frame.isFin())
+            {
+                messages.incrementAndGet();
+                done.countDown();
+            }
+        }
+    }
+
+    private ExecutorService threadPool;
+
+    @Before
+    public void startThreadPool()
+    {
+        threadPool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void stopThreadPool()
+    {
+        threadPool.shutdownNow();
+    }
+
+    private Muxer newMuxer(WebSocketPolicy policy)
+    {
+        LocalWebSocketConnection physical = new LocalWebSocketConnection("mux-" + policy.getBehavior());
+        physical.setPolicy(policy);
+        physical.onOpen();
+        return new Muxer(physical);
+    }
+
+    @Test
+    public void testManyChannels() throws Exception
+    {
+        final Muxer client = newMuxer(WebSocketPolicy.newClientPolicy());
+        final Muxer server = newMuxer(WebSocketPolicy.newServerPolicy());
+        client.setOutgoingFramesHandler(FramePipes.to(server));
+        server.setOutgoingFramesHandler(FramePipes.to(client));
+
+        final List<ChannelCounter> counters = new ArrayList<>();
+        final AtomicLong expectedBytes = new AtomicLong();
+        for (long channelId = 1; channelId <= CHANNELS; channelId++)
+        {
+            client.getChannel(channelId,true);
+            ChannelCounter counter = new ChannelCounter();
+            server.getChannel(channelId,true).setNextIncomingFrames(counter);
+            counters.add(counter);
+        }
+
+        final CountDownLatch written = new CountDownLatch(CHANNELS * MESSAGES);
+        final AtomicInteger failures = new AtomicInteger();
+        long begin = System.nanoTime();
+        for (int t = 0; t < THREADS; t++)
+        {
+            final int thread = t;
+            threadPool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random(thread);
+                    for (int m = 0; m < MESSAGES; m++)
+                    {
+                        for (long channelId = 1 + thread; channelId <= CHANNELS; channelId += THREADS)
+                        {
+                            byte[] payload = new byte[random.nextInt(MAX_MESSAGE_SIZE)];
+                            expectedBytes.addAndGet(payload.length);
+                            FutureWriteCallback callback = new FutureWriteCallback()
+                            {
+                                @Override
+                                public void writeFailed(Throwable cause)
+                                {
+                                    failures.incrementAndGet();
+                                }
+                            };
+                            client.getChannel(channelId,false).outgoingFrame(WebSocketFrame.binary(payload),callback);
+                            written.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        Assert.assertTrue("All messages queued",written.await(30,TimeUnit.SECONDS));
+        long receivedBytes = 0;
+        for (ChannelCounter counter : counters)
+        {
+            Assert.assertTrue("All messages received",counter.done.await(30,TimeUnit.SECONDS));
+            Assert.assertThat("Messages per channel",counter.messages.get(),is(MESSAGES));
+            receivedBytes += counter.bytes.get();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        Assert.assertThat("Write failures",failures.get(),is(0));
+        Assert.assertThat("Received bytes",receivedBytes,is(expectedBytes.get()));
+        for (long channelId = 1; channelId <= CHANNELS; channelId++)
+        {
+            Assert.assertThat("Nothing left queued",client.getChannel(channelId,false).getOutgoingQueueSize(),is(0));
+        }
+        LOG.info("{} channels, {} messages, {} bytes in {} ms",CHANNELS,CHANNELS * MESSAGES,receivedBytes,elapsed);
+    }
+}
@@ -0,0 +1,237 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.io;
+
+import static org.hamcrest.Matchers.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.common.Generator;
+import org.eclipse.jetty.websocket.common.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.Parser;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriteBytesProviderTest
+{
+    private final ByteBufferPool bufferPool = new MappedByteBufferPool();
+
+    private IncomingFramesCapture parse(ByteBuffer... buffers)
+    {
+        Parser parser = new Parser(WebSocketPolicy.newClientPolicy(),bufferPool);
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        parser.setIncomingFramesHandler(capture);
+        int length = 0;
+        for (ByteBuffer buffer : buffers)
+        {
+            length += buffer.remaining();
+        }
+        ByteBuffer network = ByteBuffer.allocate(length);
+        for (ByteBuffer buffer : buffers)
+        {
+            network.put(buffer.slice());
+        }
+        network.flip();
+        parser.parse(network);
+        return capture;
+    }
+
+    private List<FutureCallback> enqueueTextFrames(WriteBytesProvider writeBytes, int count, String prefix)
+    {
+        List<FutureCallback> callbacks = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            FutureCallback callback = new FutureCallback();
+            callbacks.add(callback);
+            writeBytes.enqueue(WebSocketFrame.text(prefix + i),callback);
+        }
+        return callbacks;
+    }
+
+    @Test
+    public void testQueuedFramesAreGatheredInOneWrite() throws Exception
+    {
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(),bufferPool);
+        WriteBytesProvider writeBytes = new WriteBytesProvider(generator,new Callback.Adapter());
+        List<FutureCallback> callbacks = enqueueTextFrames(writeBytes,3,"message-");
+
+        ByteBuffer[] buffers = writeBytes.getByteBuffers();
+        // The header and the (not copied) payload of each frame
+        Assert.assertThat("Buffers",buffers.length,is(6));
+
+        IncomingFramesCapture capture = parse(buffers);
+        capture.assertNoErrors();
+        capture.assertHasFrame(OpCode.TEXT,3);
+        for (int i = 0; i < 3; i++)
+        {
+            Assert.assertThat("Frame text",capture.getFrames().get(i).getPayloadAsUTF8(),is("message-" + i));
+            Assert.assertThat("Callback done before write",callbacks.get(i).isDone(),is(false));
+        }
+
+        writeBytes.succeeded();
+        for (FutureCallback callback : callbacks)
+        {
+            Assert.assertThat("Callback done after write",callback.isDone(),is(true));
+        }
+        Assert.assertThat("Nothing left",writeBytes.getByteBuffers(),nullValue());
+    }
+
+    @Test
+    public void testGatheredWriteIsBoundedByMaxGatherBytes() throws Exception
+    {
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(),bufferPool);
+        WriteBytesProvider writeBytes = new WriteBytesProvider(generator,new Callback.Adapter());
+        writeBytes.setMaxGatherBytes(1);
+        List<FutureCallback> callbacks = enqueueTextFrames(writeBytes,3,"message-");
+
+        for (int i = 0; i < 3; i++)
+        {
+            ByteBuffer[] buffers = writeBytes.getByteBuffers();
+            IncomingFramesCapture capture = parse(buffers);
+            capture.assertHasFrame(OpCode.TEXT,1);
+            Assert.assertThat("Frame text",capture.getFrames().get(0).getPayloadAsUTF8(),is("message-" + i));
+            writeBytes.succeeded();
+            Assert.assertThat("Callback done",callbacks.get(i).isDone(),is(true));
+        }
+        Assert.assertThat("Nothing left",writeBytes.getByteBuffers(),nullValue());
+    }
+
+    @Test
+    public void testWindowedMaskedFrameIsNotGatheredWithNextFrame() throws Exception
+    {
+        Generator generator = new Generator(WebSocketPolicy.newClientPolicy(),bufferPool);
+        WriteBytesProvider writeBytes = new WriteBytesProvider(generator,new Callback.Adapter());
+        writeBytes.setBufferSize(1024);
+
+        byte[] payload = new byte[2500];
+        WebSocketFrame large = WebSocketFrame.binary(payload);
+        large.setMask(new byte[] { 0x11, 0x22, 0x33, 0x44 });
+        FutureCallback largeCallback = new FutureCallback();
+        writeBytes.enqueue(large,largeCallback);
+        WebSocketFrame small = WebSocketFrame.text("small");
+        small.setMask(new byte[] { 0x11, 0x22, 0x33, 0x44 });
+        FutureCallback smallCallback = new FutureCallback();
+        writeBytes.enqueue(small,smallCallback);
+
+        // The large frame is generated in 3 windows, the last one gathered with the small frame
+        int writes = 0;
+        ByteBuffer[] buffers;
+        List<ByteBuffer> network = new ArrayList<>();
+        while ((buffers = writeBytes.getByteBuffers()) != null)
+        {
+            for (ByteBuffer buffer : buffers)
+            {
+                ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+                copy.put(buffer.slice()).flip();
+                network.add(copy);
+            }
+            writeBytes.succeeded();
+            ++writes;
+        }
+        Assert.assertThat("Writes",writes,is(3));
+        Assert.assertThat("Large callback",largeCallback.isDone(),is(true));
+        Assert.assertThat("Small callback",smallCallback.isDone(),is(true));
+
+        Parser parser = new Parser(WebSocketPolicy.newServerPolicy(),bufferPool);
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        parser.setIncomingFramesHandler(capture);
+        for (ByteBuffer buffer : network)
+        {
+            parser.parse(buffer);
+        }
+        capture.assertNoErrors();
+        capture.assertHasFrame(OpCode.BINARY,1);
+        capture.assertHasFrame(OpCode.TEXT,1);
+        Assert.assertThat("Binary length",capture.getFrames().get(0).getPayloadLength(),is(payload.length));
+        Assert.assertThat("Text",capture.getFrames().get(1).getPayloadAsUTF8(),is("small"));
+    }
+
+    @Test
+    public void testQueueIsFullAtMaxQueueSize() throws Exception
+    {
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(),bufferPool);
+        WriteBytesProvider writeBytes = new WriteBytesProvider(generator,new Callback.Adapter());
+        writeBytes.setMaxQueueSize(2);
+        enqueueTextFrames(writeBytes,2,"message-");
+
+        Assert.assertThat("Data frame",writeBytes.isFull(WebSocketFrame.text("more")),is(true));
+        // Control frames are never held back by the limits
+        Assert.assertThat("Control frame",writeBytes.isFull(WebSocketFrame.ping()),is(false));
+        Assert.assertThat("Queued bytes",writeBytes.getQueuedBytes(),is(18L));
+
+        writeBytes.getByteBuffers();
+        writeBytes.succeeded();
+        Assert.assertThat("Data frame after write",writeBytes.isFull(WebSocketFrame.text("more")),is(false));
+        Assert.assertThat("Queued bytes after write",writeBytes.getQueuedBytes(),is(0L));
+    }
+
+    @Test
+    public void testQueueIsFullAtMaxQueuedBytes() throws Exception
+    {
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(),bufferPool);
+        WriteBytesProvider writeBytes = new WriteBytesProvider(generator,new Callback.Adapter());
+        writeBytes.setMaxQueuedBytes(100);
+
+        // A single frame larger than the limit is accepted in an empty queue
+        WebSocketFrame large = WebSocketFrame.binary(new byte[500]);
+        Assert.assertThat("Empty queue",writeBytes.isFull(large),is(false));
+        writeBytes.enqueue(large,new FutureCallback());
+        Assert.assertThat("Small frame",writeBytes.isFull(WebSocketFrame.text("small")),is(true));
+    }
+
+    @Test
+    public void testDropOldestFailsWholeMessages() throws Exception
+    {
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(),bufferPool);
+        WriteBytesProvider writeBytes = new WriteBytesProvider(generator,new Callback.Adapter());
+        writeBytes.setMaxQueueSize(3);
+
+        FutureCallback partial = new FutureCallback();
+        writeBytes.enqueue(WebSocketFrame.text("part-").setFin(false),partial);
+        FutureCallback continuation = new FutureCallback();
+        writeBytes.enqueue(new WebSocketFrame(OpCode.CONTINUATION).setPayload("end"),continuation);
+        List<FutureCallback> callbacks = enqueueTextFrames(writeBytes,1,"message-");
+
+        WebSocketFrame next = WebSocketFrame.text("next");
+        Assert.assertThat("Room made",writeBytes.dropOldest(next),is(true));
+        Assert.assertThat("Fragmented message kept",partial.isDone(),is(false));
+        Assert.assertThat("Continuation kept",continuation.isDone(),is(false));
+        Assert.assertThat("Whole message dropped",callbacks.get(0).isDone(),is(true));
+        try
+        {
+            callbacks.get(0).get();
+            Assert.fail("Dropped frame must fail its callback");
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertThat("Cause",e.getCause().getMessage(),containsString("Dropped"));
+        }
+        Assert.assertThat("Queue size",writeBytes.getQueueSize(),is(2));
+    }
+}
@@ -18,7 +18,10 @@
 
 package org.eclipse.jetty.websocket.common.io.payload;
 
+import static org.hamcrest.Matchers.*;
+
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.TypeUtil;
@@ -28,6 +31,7 @@ import org.eclipse.jetty.websocket.common.ByteBufferAssert;
 import org.eclipse.jetty.websocket.common.UnitGenerator;
 import org.eclipse.jetty.websocket.common.WebSocketFrame;
 import org.eclipse.jetty.websocket.common.io.payload.DeMaskProcessor;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class DeMaskProcessorTest
@@ -55,4 +59,45 @@ public class DeMaskProcessorTest
 
         ByteBufferAssert.assertEquals("DeMasked Text Payload",message,payload);
     }
+
+    @Test
+    public void testDeMaskLongWordsInChunks()
+    {
+        byte mask[] = TypeUtil.fromHexString("11223344");
+        byte data[] = new byte[1000];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte)(i * 7);
+        }
+
+        WebSocketFrame frame = WebSocketFrame.binary();
+        frame.setMask(mask);
+
+        // little endian direct buffer, to check the long word mask byte order
+        ByteBuffer payload = ByteBuffer.allocateDirect(data.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < data.length; i++)
+        {
+            payload.put((byte)(data[i] ^ mask[i % 4]));
+        }
+        payload.flip();
+
+        DeMaskProcessor demask = new DeMaskProcessor();
+        demask.reset(frame);
+        // odd sized chunks, so that the mask offset is carried across chunks
+        int[] chunks = { 3, 17, 1, 64, 5, 410 };
+        int position = 0;
+        for (int chunk : chunks)
+        {
+            ByteBuffer window = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            window.position(position);
+            window.limit(position + chunk);
+            demask.process(window);
+            position += chunk;
+        }
+        ByteBuffer window = payload.duplicate();
+        window.position(position);
+        demask.process(window);
+
+        Assert.assertThat("Unmasked",BufferUtil.toArray(payload),is(data));
+    }
 }
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.websocket.server;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -36,6 +37,8 @@ import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.server.HttpConnection;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -45,8 +48,10 @@ import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.eclipse.jetty.websocket.api.UpgradeResponse;
 import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
 import org.eclipse.jetty.websocket.common.LogicalConnection;
+import org.eclipse.jetty.websocket.common.WebSocketBroadcaster;
 import org.eclipse.jetty.websocket.common.WebSocketSession;
 import org.eclipse.jetty.websocket.common.events.EventDriver;
 import org.eclipse.jetty.websocket.common.events.EventDriverFactory;
@@ -58,6 +63,7 @@ import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 /**
  * Factory to create WebSocket connections
  */
+@ManagedObject("WebSocket Server Factory")
 public class WebSocketServerFactory extends ContainerLifeCycle implements WebSocketCreator, WebSocketServletFactory
 {
     private static final Logger LOG = Log.getLogger(WebSocketServerFactory.class);
@@ -88,6 +94,7 @@ public class WebSocketServerFactory extends ContainerLifeCycle implements WebSoc
     private final WebSocketPolicy basePolicy;
     private final EventDriverFactory eventDriverFactory;
     private final WebSocketExtensionFactory extensionFactory;
+    private final WebSocketBroadcaster broadcaster;
     private WebSocketCreator creator;
     private List<Class<?>> registeredSocketClasses;
 
@@ -111,6 +118,7 @@ public class WebSocketServerFactory extends ContainerLifeCycle implements WebSoc
         this.basePolicy = policy;
         this.eventDriverFactory = new EventDriverFactory(basePolicy);
         this.extensionFactory = new WebSocketExtensionFactory(basePolicy,bufferPool);
+        this.broadcaster = new WebSocketBroadcaster(bufferPool);
         this.creator = this;
 
         // Create supportedVersions
@@ -169,6 +177,40 @@ public class WebSocketServerFactory extends ContainerLifeCycle implements WebSoc
         return upgrade(sockreq,sockresp,driver);
     }
 
+    /**
+     * Send a binary message to all the open sessions.
+     * <p>
+     * The frame is generated once, and its bytes are shared by the sessions that do not use extensions.
+     *
+     * @param data
+     *            the message (not modified)
+     * @param callback
+     *            the callback notified of the write result of each session (may be null)
+     * @return the number of sessions the message was sent to
+     * @see WebSocketBroadcaster
+     */
+    public int broadcast(ByteBuffer data, WriteCallback callback)
+    {
+        return broadcaster.broadcast(sessions,data,callback);
+    }
+
+    /**
+     * Send a text message to all the open sessions.
+     * <p>
+     * The frame is generated once, and its bytes are shared by the sessions that do not use extensions.
+     *
+     * @param text
+     *            the message
+     * @param callback
+     *            the callback notified of the write result of each session (may be null)
+     * @return the number of sessions the message was sent to
+     * @see WebSocketBroadcaster
+     */
+    public int broadcast(String text, WriteCallback callback)
+    {
+        return broadcaster.broadcast(sessions,text,callback);
+    }
+
     @Override
     public void cleanup()
     {
@@ -238,6 +280,23 @@ public class WebSocketServerFactory extends ContainerLifeCycle implements WebSoc
         super.doStop();
     }
 
+    /**
+     * @return the number of open sessions that are not hibernating
+     */
+    @ManagedAttribute("Number of open sessions that are not hibernating")
+    public int getActiveSessionCount()
+    {
+        return sessions.size() - getHibernatedSessionCount();
+    }
+
+    /**
+     * @return the broadcaster used by {@link #broadcast(String, WriteCallback)}, to configure its slow consumer policy
+     */
+    public WebSocketBroadcaster getBroadcaster()
+    {
+        return broadcaster;
+    }
+
     @Override
     public WebSocketCreator getCreator()
     {
@@ -250,6 +309,57 @@ public class WebSocketServerFactory extends ContainerLifeCycle implements WebSoc
         return extensionFactory;
     }
 
+    /**
+     * @return the number of open sessions hibernating, having been idle for {@link WebSocketPolicy#getHibernateTimeout()}
+     */
+    @ManagedAttribute("Number of open sessions that are hibernating")
+    public int getHibernatedSessionCount()
+    {
+        int hibernated = 0;
+        for (WebSocketSession session : sessions)
+        {
+            if (session.isHibernated())
+            {
+                ++hibernated;
+            }
+        }
+        return hibernated;
+    }
+
+    /**
+     * @return the number of frames, of all the open sessions, that found the outgoing queue full
+     */
+    @ManagedAttribute("Number of frames that found the outgoing queue full")
+    public long getOutgoingOverflows()
+    {
+        long overflows = 0;
+        for (WebSocketSession session : sessions)
+        {
+            overflows += session.getOutgoingOverflows();
+        }
+        return overflows;
+    }
+
+    /**
+     * @return the payload bytes of the frames waiting to be written to the network, for all the open sessions
+     */
+    @ManagedAttribute("Payload bytes waiting to be written to the network")
+    public long getOutgoingQueuedBytes()
+    {
+        long bytes = 0;
+        for (WebSocketSession session : sessions)
+        {
+            bytes += session.getOutgoingQueuedBytes();
+        }
+        return bytes;
+    }
+
+    @ManagedAttribute("Number of open sessions")
+    public int getSessionCount()
+    {
+        return sessions.size();
+    }
+
     @Override
     public WebSocketPolicy getPolicy()
     {
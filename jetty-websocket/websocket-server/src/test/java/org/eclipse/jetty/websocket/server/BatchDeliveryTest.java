@@ -0,0 +1,115 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.server;
+
+import static org.hamcrest.Matchers.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.api.WebSocketBatchListener;
+import org.eclipse.jetty.websocket.common.Generator;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.server.blockhead.BlockheadClient;
+import org.eclipse.jetty.websocket.server.helper.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the delivery of messages to a {@link WebSocketBatchListener}
+ */
+public class BatchDeliveryTest
+{
+    @SuppressWarnings("serial")
+    public static class BatchServlet extends WebSocketServlet
+    {
+        @Override
+        public void configure(WebSocketServletFactory factory)
+        {
+            factory.register(BatchSocket.class);
+        }
+    }
+
+    /**
+     * Replies to each batch with its size and messages.
+     */
+    public static class BatchSocket extends WebSocketAdapter implements WebSocketBatchListener
+    {
+        @Override
+        public void onWebSocketBatch(List<Object> messages)
+        {
+            getRemote().sendStringByFuture(messages.size() + ":" + messages);
+        }
+    }
+
+    private static Generator generator = new UnitGenerator();
+    private static SimpleServletServer server;
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        server = new SimpleServletServer(new BatchServlet());
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer()
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testMessagesOfOneWriteAreDeliveredInOneBatch() throws Exception
+    {
+        BlockheadClient client = new BlockheadClient(server.getServerUri());
+        try
+        {
+            client.connect();
+            client.sendStandardRequest();
+            client.expectUpgradeResponse();
+
+            // the 3 messages are written (and most likely read) at once
+            ByteBuffer network = ByteBuffer.allocate(1024);
+            for (String text : new String[] { "one", "two", "three" })
+            {
+                WebSocketFrame frame = WebSocketFrame.text(text);
+                frame.setMask(new byte[] { 0x11, 0x22, 0x33, 0x44 });
+                network.put(generator.generate(frame));
+            }
+            network.flip();
+            client.writeRaw(network);
+            client.flush();
+
+            IncomingFramesCapture capture = client.readFrames(1,TimeUnit.SECONDS,1);
+            WebSocketFrame reply = capture.getFrames().pop();
+            Assert.assertThat("Batch",reply.getPayloadAsUTF8(),is("3:[one, two, three]"));
+        }
+        finally
+        {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.server;
+
+import static org.hamcrest.Matchers.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.server.blockhead.BlockheadClient;
+import org.eclipse.jetty.websocket.server.helper.EchoSocket;
+import org.eclipse.jetty.websocket.server.helper.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link WebSocketServerFactory#broadcast(String, WriteCallback)}
+ */
+public class BroadcastTest
+{
+    @SuppressWarnings("serial")
+    public static class BroadcastServlet extends WebSocketServlet
+    {
+        private WebSocketServerFactory factory;
+
+        @Override
+        public void configure(WebSocketServletFactory factory)
+        {
+            this.factory = (WebSocketServerFactory)factory;
+            factory.register(EchoSocket.class);
+        }
+    }
+
+    private static class CountingWriteCallback implements WriteCallback
+    {
+        private final CountDownLatch latch;
+        private final AtomicInteger failures = new AtomicInteger();
+
+        public CountingWriteCallback(int count)
+        {
+            this.latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void writeFailed(Throwable x)
+        {
+            failures.incrementAndGet();
+            latch.countDown();
+        }
+
+        @Override
+        public void writeSuccess()
+        {
+            latch.countDown();
+        }
+    }
+
+    private BroadcastServlet servlet;
+    private SimpleServletServer server;
+
+    @Before
+    public void startServer() throws Exception
+    {
+        servlet = new BroadcastServlet();
+        server = new SimpleServletServer(servlet);
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop();
+    }
+
+    private List<BlockheadClient> connect(int count, int withExtensions) throws Exception
+    {
+        List<BlockheadClient> clients = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            BlockheadClient client = new BlockheadClient(server.getServerUri());
+            if (i < withExtensions)
+            {
+                // Sessions with extensions cannot share the frame bytes
+                client.addExtensions("identity");
+            }
+            client.connect();
+            client.sendStandardRequest();
+            client.expectUpgradeResponse();
+            clients.add(client);
+        }
+
+        // Wait for the server side sessions to be opened
+        for (BlockheadClient client : clients)
+        {
+            client.write(WebSocketFrame.text("ready"));
+            IncomingFramesCapture capture = client.readFrames(1,TimeUnit.SECONDS,1);
+            Assert.assertThat("Echo",capture.getFrames().pop().getPayloadAsUTF8(),is("ready"));
+            client.clearCaptured();
+        }
+        return clients;
+    }
+
+    @Test
+    public void testBroadcastText() throws Exception
+    {
+        List<BlockheadClient> clients = connect(4,1);
+        try
+        {
+            CountingWriteCallback callback = new CountingWriteCallback(clients.size());
+            int count = servlet.factory.broadcast("Hello All",callback);
+            Assert.assertThat("Sessions",count,is(clients.size()));
+            Assert.assertTrue(callback.latch.await(5,TimeUnit.SECONDS));
+            Assert.assertThat("Write failures",callback.failures.get(),is(0));
+
+            for (BlockheadClient client : clients)
+            {
+                IncomingFramesCapture capture = client.readFrames(1,TimeUnit.SECONDS,1);
+                WebSocketFrame frame = capture.getFrames().pop();
+                Assert.assertThat("Frame opcode",frame.getOpCode(),is(OpCode.TEXT));
+                Assert.assertThat("Frame text",frame.getPayloadAsUTF8(),is("Hello All"));
+            }
+        }
+        finally
+        {
+            for (BlockheadClient client : clients)
+            {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testBroadcastBinaryDoesNotModifyData() throws Exception
+    {
+        List<BlockheadClient> clients = connect(3,0);
+        try
+        {
+            byte[] bytes = new byte[10 * 1024];
+            for (int i = 0; i < bytes.length; i++)
+            {
+                bytes[i] = (byte)i;
+            }
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+
+            CountingWriteCallback callback = new CountingWriteCallback(clients.size());
+            servlet.factory.broadcast(data,callback);
+            Assert.assertTrue(callback.latch.await(5,TimeUnit.SECONDS));
+            Assert.assertThat("Data remaining",data.remaining(),is(bytes.length));
+
+            for (BlockheadClient client : clients)
+            {
+                IncomingFramesCapture capture = client.readFrames(1,TimeUnit.SECONDS,1);
+                WebSocketFrame frame = capture.getFrames().pop();
+                Assert.assertThat("Frame opcode",frame.getOpCode(),is(OpCode.BINARY));
+                Assert.assertThat("Frame payload",BufferUtil.toArray(frame.getPayload()),is(bytes));
+            }
+        }
+        finally
+        {
+            for (BlockheadClient client : clients)
+            {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.server;
+
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.server.blockhead.BlockheadClient;
+import org.eclipse.jetty.websocket.server.helper.EchoSocket;
+import org.eclipse.jetty.websocket.server.helper.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the hibernation of idle connections, after {@link WebSocketPolicy#getHibernateTimeout()}
+ */
+public class HibernateTest
+{
+    @SuppressWarnings("serial")
+    public static class HibernateServlet extends WebSocketServlet
+    {
+        private WebSocketServerFactory factory;
+
+        @Override
+        public void configure(WebSocketServletFactory factory)
+        {
+            this.factory = (WebSocketServerFactory)factory;
+            factory.getPolicy().setHibernateTimeout(HIBERNATE_TIMEOUT);
+            factory.register(EchoSocket.class);
+        }
+    }
+
+    private static final long HIBERNATE_TIMEOUT = 200;
+
+    private HibernateServlet servlet;
+    private SimpleServletServer server;
+
+    @Before
+    public void startServer() throws Exception
+    {
+        servlet = new HibernateServlet();
+        server = new SimpleServletServer(servlet);
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop();
+    }
+
+    private void awaitHibernatedSessions(int expected) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((servlet.factory.getHibernatedSessionCount() != expected) && (System.nanoTime() < deadline))
+        {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        Assert.assertThat("Hibernated sessions",servlet.factory.getHibernatedSessionCount(),is(expected));
+    }
+
+    private void echo(BlockheadClient client, String text) throws Exception
+    {
+        client.write(WebSocketFrame.text(text));
+        IncomingFramesCapture capture = client.readFrames(1,TimeUnit.SECONDS,1);
+        Assert.assertThat("Echo",capture.getFrames().pop().getPayloadAsUTF8(),is(text));
+        client.clearCaptured();
+    }
+
+    @Test
+    public void testIdleConnectionHibernatesAndWakesUp() throws Exception
+    {
+        BlockheadClient client = new BlockheadClient(server.getServerUri());
+        try
+        {
+            client.connect();
+            client.sendStandardRequest();
+            client.expectUpgradeResponse();
+            echo(client,"ready");
+
+            awaitHibernatedSessions(1);
+            Assert.assertThat("Active sessions",servlet.factory.getActiveSessionCount(),is(0));
+
+            // reading and writing wakes the connection up
+            echo(client,"wake up");
+            Assert.assertThat("Active sessions",servlet.factory.getActiveSessionCount(),is(1));
+
+            // and it hibernates again once idle
+            awaitHibernatedSessions(1);
+            echo(client,"still working");
+        }
+        finally
+        {
+            client.close();
+        }
+    }
+}
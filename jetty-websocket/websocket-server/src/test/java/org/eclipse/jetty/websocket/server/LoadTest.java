@@ -19,8 +19,11 @@
 package org.eclipse.jetty.websocket.server;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -28,14 +31,19 @@ import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.jetty.websocket.client.io.ConnectionManager;
 import org.eclipse.jetty.websocket.common.WebSocketFrame;
 import org.eclipse.jetty.websocket.server.blockhead.BlockheadClient;
 import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -153,4 +161,38 @@ public class LoadTest
             client.close(StatusCode.NORMAL,"All Done");
         }
     }
+
+    @Test
+    public void testManyConnections() throws Exception
+    {
+        int connections = 1000;
+        WebSocketClient client = new WebSocketClient();
+        client.setMaxConcurrentHandshakes(50);
+        client.start();
+        try
+        {
+            List<WebSocketAdapter> sockets = new ArrayList<>();
+            for (int i = 0; i < connections; i++)
+            {
+                sockets.add(new WebSocketAdapter());
+            }
+
+            long begin = System.nanoTime();
+            List<Future<Session>> futures = client.connect(sockets,server.getServerUri(),new ClientUpgradeRequest());
+            for (Future<Session> future : futures)
+            {
+                Assert.assertTrue(future.get(30,TimeUnit.SECONDS).isOpen());
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+            ConnectionManager manager = client.getConnectionManager();
+            LOG.info("Connected {} websockets in {} ms",connections,elapsed);
+            LOG.info("Connect latency (us): {}",manager.getConnectLatency().toHistogramString());
+            LOG.info("Handshake latency (us): {}",manager.getHandshakeLatency().toHistogramString());
+        }
+        finally
+        {
+            client.stop();
+        }
+    }
 }